@@ -0,0 +1,138 @@
+package com.helenusdb.index.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Analyzer turns text into the terms an index stores and searches for: a Tokenizer followed by a chain of TokenFilters,
+ * such as tokenizer, lower case, stop words and stemmer. The chain is built once per thread and reset for each text,
+ * so analyzing allocates nothing per token and one Analyzer can be shared by concurrent readers.
+ *
+ * Filters must be added before the analyzer is first used.
+ *
+ * Usage:
+ *		 Analyzer analyzer = Analyzer.standard().addFilter(input -> new StopFilter(input, stopWords));
+ *		 TokenStream stream = analyzer.tokenStream(text);
+ *
+ *		 for (Term term = stream.next(); term != null; term = stream.next()) ...
+ */
+public class Analyzer
+{
+	private final Supplier<? extends Tokenizer> tokenizer;
+	private final List<UnaryOperator<TokenStream>> filters = new ArrayList<>();
+	private final ThreadLocal<TokenStream> chains = ThreadLocal.withInitial(this::buildChain);
+	private volatile boolean isUsed;
+
+	/**
+	 * Constructs an Analyzer that splits text into words with a WordTokenizer, without any filters.
+	 */
+	public Analyzer()
+	{
+		this(WordTokenizer::new);
+	}
+
+	/**
+	 * Constructs an Analyzer with the given tokenizer and no filters.
+	 *
+	 * @param tokenizer Creates the tokenizer of each thread's chain.
+	 */
+	public Analyzer(Supplier<? extends Tokenizer> tokenizer)
+	{
+		this.tokenizer = tokenizer;
+	}
+
+	/**
+	 * Creates an Analyzer that splits text into words and lower cases them.
+	 *
+	 * @return A new Analyzer.
+	 */
+	public static Analyzer standard()
+	{
+		return new Analyzer().addFilter(LowerCaseFilter::new);
+	}
+
+	/**
+	 * Creates an Analyzer that splits text into words, lower cases them and removes the given stop words.
+	 *
+	 * @param stopWords The lower case words to remove.
+	 * @return A new Analyzer.
+	 */
+	public static Analyzer standard(Set<String> stopWords)
+	{
+		return standard().addFilter(input -> new StopFilter(input, stopWords));
+	}
+
+	/**
+	 * Creates an Analyzer that splits text into words, lower cases them, removes the given stop words and reduces the
+	 * rest to their Porter2 stems, caching the stems of up to 10,000 words per thread.
+	 *
+	 * @param stopWords The lower case words to remove.
+	 * @return A new Analyzer.
+	 */
+	public static Analyzer english(Set<String> stopWords)
+	{
+		return standard(stopWords).addFilter(input -> new PorterStemFilter(input, 10000));
+	}
+
+	/**
+	 * Adds a filter to the end of the chain.
+	 *
+	 * @param filter Wraps the stream so far in the filter.
+	 * @return The Analyzer instance for chaining.
+	 * @throws IllegalStateException if the analyzer has already been used.
+	 */
+	public synchronized Analyzer addFilter(UnaryOperator<TokenStream> filter)
+	{
+		if (isUsed) throw new IllegalStateException("Filters must be added before the analyzer is used");
+
+		filters.add(filter);
+		return this;
+	}
+
+	/**
+	 * Returns this thread's token stream, reset to the given text. The stream is only valid until the thread calls
+	 * tokenStream() again.
+	 *
+	 * @param text The text to analyze.
+	 * @return The token stream over the text.
+	 */
+	public TokenStream tokenStream(CharSequence text)
+	{
+		return chains.get().reset(text);
+	}
+
+	/**
+	 * Analyzes the text into a list of Strings, one per token. Convenient, but allocates for every token.
+	 *
+	 * @param text The text to analyze.
+	 * @return The tokens of the text.
+	 */
+	public List<String> analyze(CharSequence text)
+	{
+		List<String> tokens = new ArrayList<>();
+		TokenStream stream = tokenStream(text);
+
+		for (Term term = stream.next(); term != null; term = stream.next())
+		{
+			tokens.add(term.toString());
+		}
+
+		return tokens;
+	}
+
+	private synchronized TokenStream buildChain()
+	{
+		isUsed = true;
+		TokenStream stream = tokenizer.get();
+
+		for (UnaryOperator<TokenStream> filter : filters)
+		{
+			stream = filter.apply(stream);
+		}
+
+		return stream;
+	}
+}
@@ -0,0 +1,34 @@
+package com.helenusdb.index.analysis;
+
+/**
+ * LowerCaseFilter converts each token to lower case in place.
+ */
+public class LowerCaseFilter
+extends TokenFilter
+{
+	/**
+	 * Constructs a LowerCaseFilter.
+	 *
+	 * @param input The stream whose tokens are lower cased.
+	 */
+	public LowerCaseFilter(TokenStream input)
+	{
+		super(input);
+	}
+
+	@Override
+	public Term next()
+	{
+		Term term = input.next();
+		if (term == null) return null;
+
+		char[] buffer = term.buffer();
+
+		for (int i = 0; i < term.length(); i++)
+		{
+			buffer[i] = Character.toLowerCase(buffer[i]);
+		}
+
+		return term;
+	}
+}
@@ -0,0 +1,81 @@
+package com.helenusdb.index.analysis;
+
+/**
+ * PorterStemFilter reduces each token to its Porter2 stem in place. It should follow a LowerCaseFilter, since only
+ * lower case words are stemmed.
+ *
+ * The filter can cache the stems of up to a given number of distinct words. Text repeats a small vocabulary, so most
+ * tokens are then a lookup of the term's characters in a {@link TermMap} and a copy instead of a run of the stemmer; a
+ * word's stem is only computed, and a cache entry allocated, the first time it is seen. Each thread's chain has its own
+ * filter, so the cache needs no locking.
+ *
+ * @see PorterStemmer
+ */
+public class PorterStemFilter
+extends TokenFilter
+{
+	private final PorterStemmer stemmer = new PorterStemmer();
+	private final TermMap<String> cache;
+	private final int cacheSize;
+
+	/**
+	 * Constructs a PorterStemFilter without a cache.
+	 *
+	 * @param input The stream whose tokens are stemmed.
+	 */
+	public PorterStemFilter(TokenStream input)
+	{
+		this(input, 0);
+	}
+
+	/**
+	 * Constructs a PorterStemFilter that caches the stems of up to cacheSize words. Once full, the cache keeps the
+	 * words it has and new words are stemmed each time they are seen.
+	 *
+	 * @param input     The stream whose tokens are stemmed.
+	 * @param cacheSize The maximum number of words to cache, or 0 for no cache.
+	 * @throws IllegalArgumentException if cacheSize is negative.
+	 */
+	public PorterStemFilter(TokenStream input, int cacheSize)
+	{
+		super(input);
+		if (cacheSize < 0) throw new IllegalArgumentException("Cache size cannot be negative: " + cacheSize);
+
+		this.cacheSize = cacheSize;
+		this.cache = cacheSize == 0 ? null : new TermMap<>();
+	}
+
+	@Override
+	public Term next()
+	{
+		Term term = input.next();
+		if (term == null) return null;
+
+		if (cache == null)
+		{
+			stemmer.stem(term);
+			return term;
+		}
+
+		String stem = cache.get(term);
+
+		if (stem != null)
+		{
+			stem.getChars(0, stem.length(), term.resize(stem.length()), 0);
+			return term.setLength(stem.length());
+		}
+
+		if (cache.size() < cacheSize)
+		{
+			String word = term.toString();
+			stemmer.stem(term);
+			cache.put(word, term.toString());
+		}
+		else
+		{
+			stemmer.stem(term);
+		}
+
+		return term;
+	}
+}
@@ -0,0 +1,340 @@
+package com.helenusdb.index.analysis;
+
+/**
+ * PorterStemmer reduces English words to their stems with the Porter2 (Snowball English) algorithm, so that
+ * "charging" and "charge" both become "charg". It stems a Term in place, rewriting its characters without allocating.
+ *
+ * Only lower case words of the letters a to z and apostrophes are stemmed; anything else, such as "usb-c" or "2x",
+ * is left unchanged. A PorterStemmer keeps the state of the word it is stemming, so it is not thread safe.
+ *
+ * @see <a href="https://snowballstem.org/algorithms/english/stemmer.html">The English (Porter2) stemming algorithm</a>
+ */
+public class PorterStemmer
+{
+	private static final String[][] EXCEPTIONS = { { "skis", "ski" }, { "skies", "sky" }, { "dying", "die" },
+		{ "lying", "lie" }, { "tying", "tie" }, { "idly", "idl" }, { "gently", "gentl" }, { "ugly", "ugli" },
+		{ "early", "earli" }, { "only", "onli" }, { "singly", "singl" }, { "sky", "sky" }, { "news", "news" },
+		{ "howe", "howe" }, { "atlas", "atlas" }, { "cosmos", "cosmos" }, { "bias", "bias" }, { "andes", "andes" } };
+
+	private static final String[] INVARIANT_AFTER_STEP_1A = { "inning", "outing", "canning", "herring", "earring",
+		"proceed", "exceed", "succeed" };
+
+	// Longest suffixes first, so the first match is the longest.
+	private static final String[][] STEP_2 = { { "ization", "ize" }, { "ational", "ate" }, { "fulness", "ful" },
+		{ "ousness", "ous" }, { "iveness", "ive" }, { "tional", "tion" }, { "biliti", "ble" }, { "lessli", "less" },
+		{ "entli", "ent" }, { "ation", "ate" }, { "alism", "al" }, { "aliti", "al" }, { "ousli", "ous" },
+		{ "iviti", "ive" }, { "fulli", "ful" }, { "enci", "ence" }, { "anci", "ance" }, { "abli", "able" },
+		{ "izer", "ize" }, { "ator", "ate" }, { "alli", "al" }, { "bli", "ble" }, { "ogi", "og" }, { "li", "" } };
+
+	private static final String[][] STEP_3 = { { "ational", "ate" }, { "tional", "tion" }, { "alize", "al" },
+		{ "icate", "ic" }, { "iciti", "ic" }, { "ative", "" }, { "ical", "ic" }, { "ness", "" }, { "ful", "" } };
+
+	private static final String[] STEP_4 = { "ement", "ance", "ence", "able", "ible", "ment", "ant", "ent", "ism", "ate",
+		"iti", "ous", "ive", "ize", "ion", "al", "er", "ic" };
+
+	private char[] b;
+	private int k;
+	private int r1;
+	private int r2;
+
+	/**
+	 * Stems a word.
+	 *
+	 * @param word The lower case word.
+	 * @return The stem of the word.
+	 */
+	public String stem(String word)
+	{
+		Term term = new Term().set(word, 0, word.length());
+		stem(term);
+		return term.toString();
+	}
+
+	/**
+	 * Stems a term in place.
+	 *
+	 * @param term The term holding a lower case word.
+	 */
+	public void stem(Term term)
+	{
+		k = term.length();
+		if (k <= 2 || !isStemmable(term.buffer(), k)) return;
+
+		// Step 1b may add an e.
+		b = term.resize(k + 1);
+		stem();
+		term.setLength(k);
+		b = null;
+	}
+
+	private void stem()
+	{
+		if (b[0] == '\'')
+		{
+			System.arraycopy(b, 1, b, 0, --k);
+			if (k <= 2) return;
+		}
+
+		for (String[] exception : EXCEPTIONS)
+		{
+			if (is(exception[0]))
+			{
+				replace(0, exception[1]);
+				return;
+			}
+		}
+
+		markConsonantY();
+		findRegions();
+		step0();
+		step1a();
+
+		for (String word : INVARIANT_AFTER_STEP_1A)
+		{
+			if (is(word))
+			{
+				unmarkConsonantY();
+				return;
+			}
+		}
+
+		step1b();
+		step1c();
+		replaceInR1(STEP_2);
+		replaceInR1(STEP_3);
+		step4();
+		step5();
+		unmarkConsonantY();
+	}
+
+	/**
+	 * Marks a y at the start of the word or after a vowel as Y, a consonant.
+	 */
+	private void markConsonantY()
+	{
+		if (b[0] == 'y') b[0] = 'Y';
+
+		for (int i = 1; i < k; i++)
+		{
+			if (b[i] == 'y' && isVowel(b[i - 1])) b[i] = 'Y';
+		}
+	}
+
+	private void unmarkConsonantY()
+	{
+		for (int i = 0; i < k; i++)
+		{
+			if (b[i] == 'Y') b[i] = 'y';
+		}
+	}
+
+	/**
+	 * Finds R1, the region after the first non-vowel following a vowel, and R2, the same region within R1.
+	 */
+	private void findRegions()
+	{
+		if (startsWith("gener") || startsWith("arsen")) r1 = 5;
+		else if (startsWith("commun")) r1 = 6;
+		else r1 = regionAfter(0);
+
+		r2 = regionAfter(r1);
+	}
+
+	private int regionAfter(int start)
+	{
+		for (int i = start + 1; i < k; i++)
+		{
+			if (!isVowel(b[i]) && isVowel(b[i - 1])) return i + 1;
+		}
+
+		return k;
+	}
+
+	private void step0()
+	{
+		if (endsWith("'s'")) k -= 3;
+		else if (endsWith("'s")) k -= 2;
+		else if (endsWith("'")) k -= 1;
+	}
+
+	private void step1a()
+	{
+		if (endsWith("sses")) k -= 2;
+		else if (endsWith("ied") || endsWith("ies")) k -= k > 4 ? 2 : 1;
+		else if (endsWith("us") || endsWith("ss")) return;
+		else if (endsWith("s") && hasVowel(k - 2)) k -= 1;
+	}
+
+	private void step1b()
+	{
+		if (endsWith("eedly") || endsWith("eed"))
+		{
+			int suffix = endsWith("eedly") ? 5 : 3;
+			if (k - suffix >= r1) k -= suffix - 2;
+			return;
+		}
+
+		int suffix = endsWith("ingly") ? 5 : endsWith("edly") ? 4 : endsWith("ing") ? 3 : endsWith("ed") ? 2 : 0;
+		if (suffix == 0 || !hasVowel(k - suffix)) return;
+
+		k -= suffix;
+
+		if (endsWith("at") || endsWith("bl") || endsWith("iz")) b[k++] = 'e';
+		else if (endsWithDouble()) k--;
+		else if (r1 >= k && endsWithShortSyllable(k)) b[k++] = 'e';
+	}
+
+	/**
+	 * Replaces a final y with i after a consonant that is not the first letter.
+	 */
+	private void step1c()
+	{
+		if (k > 2 && (b[k - 1] == 'y' || b[k - 1] == 'Y') && !isVowel(b[k - 2])) b[k - 1] = 'i';
+	}
+
+	/**
+	 * Replaces the longest matching suffix of steps 2 and 3, if it is in R1 and meets its condition.
+	 */
+	private void replaceInR1(String[][] rules)
+	{
+		for (String[] rule : rules)
+		{
+			String suffix = rule[0];
+			if (!endsWith(suffix)) continue;
+
+			int start = k - suffix.length();
+			if (start < r1) return;
+
+			switch (suffix)
+			{
+				case "ogi" -> {
+					if (b[start - 1] != 'l') return;
+				}
+				case "li" -> {
+					if ("cdeghkmnrt".indexOf(b[start - 1]) < 0) return;
+				}
+				case "ative" -> {
+					if (start < r2) return;
+				}
+				default -> {
+					// Unconditional.
+				}
+			}
+
+			replace(start, rule[1]);
+			return;
+		}
+	}
+
+	/**
+	 * Deletes the longest matching suffix if it is in R2, and ion only after an s or t.
+	 */
+	private void step4()
+	{
+		for (String suffix : STEP_4)
+		{
+			if (!endsWith(suffix)) continue;
+
+			int start = k - suffix.length();
+			if (start < r2) return;
+			if (suffix.equals("ion") && b[start - 1] != 's' && b[start - 1] != 't') return;
+
+			k = start;
+			return;
+		}
+	}
+
+	private void step5()
+	{
+		if (endsWith("e"))
+		{
+			if (k - 1 >= r2 || k - 1 >= r1 && !endsWithShortSyllable(k - 1)) k--;
+		}
+		else if (endsWith("l"))
+		{
+			if (k - 1 >= r2 && b[k - 2] == 'l') k--;
+		}
+	}
+
+	/**
+	 * Returns true if the first n letters end in a short syllable: a vowel followed by a non-vowel other than w, x or
+	 * Y and preceded by a non-vowel, or a vowel followed by a non-vowel at the start of the word.
+	 */
+	private boolean endsWithShortSyllable(int n)
+	{
+		if (n == 2) return isVowel(b[0]) && !isVowel(b[1]);
+
+		return n > 2 && !isVowel(b[n - 3]) && isVowel(b[n - 2]) && !isVowel(b[n - 1]) && b[n - 1] != 'w'
+			&& b[n - 1] != 'x' && b[n - 1] != 'Y';
+	}
+
+	private boolean endsWithDouble()
+	{
+		return k >= 2 && b[k - 1] == b[k - 2] && "bdfgmnprt".indexOf(b[k - 1]) >= 0;
+	}
+
+	/**
+	 * Returns true if any of the first n letters is a vowel.
+	 */
+	private boolean hasVowel(int n)
+	{
+		for (int i = 0; i < n; i++)
+		{
+			if (isVowel(b[i])) return true;
+		}
+
+		return false;
+	}
+
+	private boolean endsWith(String suffix)
+	{
+		int start = k - suffix.length();
+		if (start < 0) return false;
+
+		for (int i = 0; i < suffix.length(); i++)
+		{
+			if (b[start + i] != suffix.charAt(i)) return false;
+		}
+
+		return true;
+	}
+
+	private boolean startsWith(String prefix)
+	{
+		if (prefix.length() > k) return false;
+
+		for (int i = 0; i < prefix.length(); i++)
+		{
+			if (b[i] != prefix.charAt(i)) return false;
+		}
+
+		return true;
+	}
+
+	private boolean is(String word)
+	{
+		return word.length() == k && startsWith(word);
+	}
+
+	private void replace(int start, String replacement)
+	{
+		replacement.getChars(0, replacement.length(), b, start);
+		k = start + replacement.length();
+	}
+
+	private static boolean isVowel(char c)
+	{
+		return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u' || c == 'y';
+	}
+
+	private static boolean isStemmable(char[] word, int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			char c = word[i];
+			if ((c < 'a' || c > 'z') && c != '\'') return false;
+		}
+
+		return true;
+	}
+}
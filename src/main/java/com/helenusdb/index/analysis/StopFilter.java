@@ -0,0 +1,44 @@
+package com.helenusdb.index.analysis;
+
+import java.util.Set;
+
+/**
+ * StopFilter removes the tokens found in a set of stop words. The positions of the remaining tokens are unchanged, so
+ * a removed word still leaves its gap for phrase and proximity queries.
+ *
+ * @see com.helenusdb.index.util.StopWords
+ */
+public class StopFilter
+extends TokenFilter
+{
+	private final TermMap<Boolean> stopWords;
+
+	/**
+	 * Constructs a StopFilter. The words are copied into a {@link TermMap}, so each Term is looked up without
+	 * creating a String, and later changes to the set do not affect the filter.
+	 *
+	 * @param input     The stream whose tokens are filtered.
+	 * @param stopWords The words to remove.
+	 */
+	public StopFilter(TokenStream input, Set<String> stopWords)
+	{
+		super(input);
+		this.stopWords = new TermMap<>(stopWords.size());
+
+		for (String word : stopWords)
+		{
+			this.stopWords.put(word, Boolean.TRUE);
+		}
+	}
+
+	@Override
+	public Term next()
+	{
+		for (Term term = input.next(); term != null; term = input.next())
+		{
+			if (!stopWords.containsKey(term)) return term;
+		}
+
+		return null;
+	}
+}
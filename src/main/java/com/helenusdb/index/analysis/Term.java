@@ -0,0 +1,161 @@
+package com.helenusdb.index.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Term is the reusable, mutable text of the current token of a TokenStream, along with its position. A stream hands
+ * out the same Term for every token, overwriting its characters in place, so analyzing text allocates nothing per
+ * token. Call toString() to keep a token past the next call to {@link TokenStream#next()}.
+ *
+ * A Term hashes like a String with the same characters, but only equals another Term with them, since a String never
+ * equals a Term. To look up a String key by a Term without creating a String, use a {@link TermMap}, which compares
+ * the characters itself. A Term changes with every token, so it must never be stored as a key.
+ */
+public final class Term
+implements CharSequence
+{
+	private char[] buffer = new char[16];
+	private int length;
+	private int position = -1;
+
+	/**
+	 * Returns the buffer holding the characters of the term, which may be longer than the term. Filters may rewrite the
+	 * characters in place.
+	 *
+	 * @return The character buffer.
+	 */
+	public char[] buffer()
+	{
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer with room for at least the given number of characters, keeping the current characters.
+	 *
+	 * @param capacity The number of characters needed.
+	 * @return The character buffer.
+	 */
+	public char[] resize(int capacity)
+	{
+		if (capacity > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+		return buffer;
+	}
+
+	/**
+	 * Sets the number of characters in the term.
+	 *
+	 * @param length The length, which must not exceed the buffer length.
+	 * @return The Term instance for chaining.
+	 */
+	public Term setLength(int length)
+	{
+		if (length < 0 || length > buffer.length) throw new IllegalArgumentException("Invalid length: " + length);
+
+		this.length = length;
+		return this;
+	}
+
+	/**
+	 * Replaces the term with the given characters.
+	 *
+	 * @param text  The text to copy from.
+	 * @param start The index of the first character to copy.
+	 * @param end   The index after the last character to copy.
+	 * @return The Term instance for chaining.
+	 */
+	public Term set(CharSequence text, int start, int end)
+	{
+		char[] target = resize(end - start);
+
+		if (text instanceof String string)
+		{
+			string.getChars(start, end, target, 0);
+		}
+		else
+		{
+			for (int i = start; i < end; i++)
+			{
+				target[i - start] = text.charAt(i);
+			}
+		}
+
+		length = end - start;
+		return this;
+	}
+
+	/**
+	 * Returns the position of the token in its text: the number of tokens the tokenizer produced before it, including
+	 * any since removed by a filter.
+	 *
+	 * @return The position of the token.
+	 */
+	public int getPosition()
+	{
+		return position;
+	}
+
+	/**
+	 * Sets the position of the token.
+	 *
+	 * @param position The position of the token.
+	 * @return The Term instance for chaining.
+	 */
+	public Term setPosition(int position)
+	{
+		this.position = position;
+		return this;
+	}
+
+	@Override
+	public int length()
+	{
+		return length;
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+		return buffer[index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		return toString().substring(start, end);
+	}
+
+	/**
+	 * Returns true if the given object is a Term with exactly the same characters.
+	 */
+	@Override
+	public boolean equals(Object o)
+	{
+		if (this == o) return true;
+		if (!(o instanceof Term that) || that.length != length) return false;
+
+		return Arrays.equals(buffer, 0, length, that.buffer, 0, length);
+	}
+
+	/**
+	 * Returns the same hash code as String.hashCode() of the term's characters.
+	 */
+	@Override
+	public int hashCode()
+	{
+		int hash = 0;
+
+		for (int i = 0; i < length; i++)
+		{
+			hash = 31 * hash + buffer[i];
+		}
+
+		return hash;
+	}
+
+	@Override
+	public String toString()
+	{
+		return new String(buffer, 0, length);
+	}
+}
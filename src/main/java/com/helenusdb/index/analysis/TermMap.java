@@ -0,0 +1,221 @@
+package com.helenusdb.index.analysis;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * TermMap is an open addressing hash map from String keys to values that is looked up by characters: get() accepts a
+ * {@link Term}, or any other CharSequence, and compares its characters with the stored keys, so the reused Term of a
+ * TokenStream finds its entry without creating a String. Keys must be Strings when put, so only a new key allocates.
+ *
+ * Entries are kept in linearly probed arrays, at most half full. Removal is not supported, since analysis only ever
+ * adds keys: an index buffer is replaced as a whole once flushed, and a cache keeps the keys it has once full.
+ *
+ * @param <V> The type of the values.
+ */
+public final class TermMap<V>
+extends AbstractMap<String, V>
+{
+	private static final int MIN_CAPACITY = 16;
+
+	private String[] keys;
+	private Object[] values;
+	private int size;
+
+	/**
+	 * Constructs an empty TermMap.
+	 */
+	public TermMap()
+	{
+		this(MIN_CAPACITY / 2);
+	}
+
+	/**
+	 * Constructs an empty TermMap with room for the given number of keys before it grows.
+	 *
+	 * @param expectedSize The number of keys expected.
+	 * @throws IllegalArgumentException if expectedSize is negative.
+	 */
+	public TermMap(int expectedSize)
+	{
+		if (expectedSize < 0) throw new IllegalArgumentException("Expected size cannot be negative: " + expectedSize);
+
+		int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize * 2 - 1)) << 1);
+		this.keys = new String[capacity];
+		this.values = new Object[capacity];
+	}
+
+	/**
+	 * Returns the value of the key with the same characters as the given CharSequence.
+	 *
+	 * @param key The characters to look up, such as a Term or a String.
+	 * @return The value, or null if the map has no such key or the key is not a CharSequence.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key)
+	{
+		if (!(key instanceof CharSequence chars)) return null;
+
+		int slot = slotOf(chars, hash(chars));
+		return slot < 0 ? null : (V) values[slot];
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return key instanceof CharSequence chars && slotOf(chars, hash(chars)) >= 0;
+	}
+
+	/**
+	 * Associates the value with the key, replacing the value of an equal key.
+	 *
+	 * @param key   The key.
+	 * @param value The value.
+	 * @return The previous value of the key, or null if it had none.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public V put(String key, V value)
+	{
+		int hash = key.hashCode();
+		int slot = slotOf(key, hash);
+
+		if (slot >= 0)
+		{
+			V previous = (V) values[slot];
+			values[slot] = value;
+			return previous;
+		}
+
+		if ((size + 1) * 2 > keys.length)
+		{
+			grow();
+			slot = slotOf(key, hash);
+		}
+
+		keys[-slot - 1] = key;
+		values[-slot - 1] = value;
+		size++;
+		return null;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public void clear()
+	{
+		Arrays.fill(keys, null);
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	@Override
+	public Set<Entry<String, V>> entrySet()
+	{
+		return new AbstractSet<>()
+		{
+			@Override
+			public Iterator<Entry<String, V>> iterator()
+			{
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size()
+			{
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Returns the slot of the key with the given characters, or -(slot + 1) of the empty slot it would be put in.
+	 */
+	private int slotOf(CharSequence key, int hash)
+	{
+		int mask = keys.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+
+		for (String candidate = keys[slot]; candidate != null; candidate = keys[slot])
+		{
+			// String caches its hash, so most other keys are skipped without reading their characters.
+			if (candidate.hashCode() == hash && candidate.contentEquals(key)) return slot;
+
+			slot = (slot + 1) & mask;
+		}
+
+		return -slot - 1;
+	}
+
+	private void grow()
+	{
+		String[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new String[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldKeys[i] == null) continue;
+
+			int slot = -slotOf(oldKeys[i], oldKeys[i].hashCode()) - 1;
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		}
+	}
+
+	/**
+	 * Returns the same hash code as String.hashCode() of the characters, which a Term also hashes to.
+	 */
+	private static int hash(CharSequence chars)
+	{
+		if (chars instanceof String || chars instanceof Term) return chars.hashCode();
+
+		int hash = 0;
+
+		for (int i = 0; i < chars.length(); i++)
+		{
+			hash = 31 * hash + chars.charAt(i);
+		}
+
+		return hash;
+	}
+
+	private final class EntryIterator
+	implements Iterator<Entry<String, V>>
+	{
+		private int slot = advance(0);
+
+		@Override
+		public boolean hasNext()
+		{
+			return slot < keys.length;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Entry<String, V> next()
+		{
+			if (!hasNext()) throw new NoSuchElementException();
+
+			Entry<String, V> entry = new SimpleImmutableEntry<>(keys[slot], (V) values[slot]);
+			slot = advance(slot + 1);
+			return entry;
+		}
+
+		private int advance(int from)
+		{
+			while (from < keys.length && keys[from] == null) from++;
+			return from;
+		}
+	}
+}
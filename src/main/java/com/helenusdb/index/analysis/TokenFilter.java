@@ -0,0 +1,27 @@
+package com.helenusdb.index.analysis;
+
+/**
+ * TokenFilter transforms or removes the tokens of another TokenStream, reusing its Term.
+ */
+public abstract class TokenFilter
+extends TokenStream
+{
+	protected final TokenStream input;
+
+	/**
+	 * Constructs a TokenFilter.
+	 *
+	 * @param input The stream whose tokens are filtered.
+	 */
+	protected TokenFilter(TokenStream input)
+	{
+		this.input = input;
+	}
+
+	@Override
+	public TokenFilter reset(CharSequence text)
+	{
+		input.reset(text);
+		return this;
+	}
+}
@@ -0,0 +1,27 @@
+package com.helenusdb.index.analysis;
+
+/**
+ * TokenStream produces the tokens of a text one at a time, each as the same reusable {@link Term}. A stream is reset to
+ * a new text and reused, so a tokenizer followed by any number of filters analyzes text without allocating per token.
+ * Streams are not thread safe; an {@link Analyzer} keeps one chain per thread.
+ *
+ * @see Tokenizer
+ * @see TokenFilter
+ */
+public abstract class TokenStream
+{
+	/**
+	 * Advances to the next token.
+	 *
+	 * @return The term of the next token, valid until the next call, or null once the text is exhausted.
+	 */
+	public abstract Term next();
+
+	/**
+	 * Starts the stream over on a new text.
+	 *
+	 * @param text The text to analyze.
+	 * @return The TokenStream instance for chaining.
+	 */
+	public abstract TokenStream reset(CharSequence text);
+}
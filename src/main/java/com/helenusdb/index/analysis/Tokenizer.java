@@ -0,0 +1,35 @@
+package com.helenusdb.index.analysis;
+
+/**
+ * Tokenizer is the TokenStream at the head of an analysis chain, splitting a text into tokens. It owns the Term that
+ * every filter after it reuses, and numbers the tokens it produces with their positions.
+ */
+public abstract class Tokenizer
+extends TokenStream
+{
+	protected final Term term = new Term();
+	protected CharSequence text = "";
+	protected int offset;
+	private int position;
+
+	@Override
+	public Tokenizer reset(CharSequence text)
+	{
+		this.text = text == null ? "" : text;
+		this.offset = 0;
+		this.position = 0;
+		return this;
+	}
+
+	/**
+	 * Sets the term to the given range of the text, numbered with the next position.
+	 *
+	 * @param start The index of the first character of the token.
+	 * @param end   The index after the last character of the token.
+	 * @return The term.
+	 */
+	protected Term emit(int start, int end)
+	{
+		return term.set(text, start, end).setPosition(position++);
+	}
+}
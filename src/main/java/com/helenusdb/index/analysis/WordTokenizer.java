@@ -0,0 +1,41 @@
+package com.helenusdb.index.analysis;
+
+/**
+ * WordTokenizer splits text into words: runs of letters and digits. Any other character separates words, so
+ * punctuation never sticks to a word ("cable," becomes "cable"), except that a hyphen or apostrophe between two
+ * letters or digits joins them into one word, as in "usb-c" and "don't".
+ */
+public class WordTokenizer
+extends Tokenizer
+{
+	@Override
+	public Term next()
+	{
+		int length = text.length();
+
+		while (offset < length && !Character.isLetterOrDigit(text.charAt(offset)))
+		{
+			offset++;
+		}
+
+		if (offset == length) return null;
+
+		int start = offset;
+
+		while (offset < length)
+		{
+			char c = text.charAt(offset);
+
+			if (Character.isLetterOrDigit(c)) offset++;
+			else if (isJoiner(c) && offset + 1 < length && Character.isLetterOrDigit(text.charAt(offset + 1))) offset += 2;
+			else break;
+		}
+
+		return emit(start, offset);
+	}
+
+	private static boolean isJoiner(char c)
+	{
+		return c == '-' || c == '\'';
+	}
+}
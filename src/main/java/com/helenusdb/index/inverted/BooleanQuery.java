@@ -0,0 +1,95 @@
+package com.helenusdb.index.inverted;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * BooleanQuery combines words for InvertedWordIndex with AND, OR and NOT. A phrase matches when it contains every AND
+ * word, at least one OR word if there are any, and none of the NOT words. Words are normalized and split by the index
+ * they are searched in, so each method accepts one or more space-separated words.
+ *
+ * A query needs at least one AND or OR word; a query of only NOT words matches nothing.
+ *
+ * Usage:
+ *		 BooleanQuery query = new BooleanQuery().and("wireless earbuds").not("case");
+ *		 List<Product> results = index.searchBoolean(query);
+ *
+ * @see InvertedWordIndex#searchBoolean(BooleanQuery)
+ */
+public class BooleanQuery
+{
+	private final List<String> and = new ArrayList<>();
+	private final List<String> or = new ArrayList<>();
+	private final List<String> not = new ArrayList<>();
+
+	/**
+	 * Requires every one of the given words.
+	 *
+	 * @param words The space-separated words a phrase must all contain.
+	 * @return The BooleanQuery instance for chaining.
+	 */
+	public BooleanQuery and(String words)
+	{
+		if (words != null) and.add(words);
+		return this;
+	}
+
+	/**
+	 * Requires at least one of the given words, and of the words of any other OR clause.
+	 *
+	 * @param words The space-separated words a phrase must contain at least one of.
+	 * @return The BooleanQuery instance for chaining.
+	 */
+	public BooleanQuery or(String words)
+	{
+		if (words != null) or.add(words);
+		return this;
+	}
+
+	/**
+	 * Excludes every phrase containing any of the given words.
+	 *
+	 * @param words The space-separated words a phrase must not contain.
+	 * @return The BooleanQuery instance for chaining.
+	 */
+	public BooleanQuery not(String words)
+	{
+		if (words != null) not.add(words);
+		return this;
+	}
+
+	List<String> getAnd()
+	{
+		return Collections.unmodifiableList(and);
+	}
+
+	List<String> getOr()
+	{
+		return Collections.unmodifiableList(or);
+	}
+
+	List<String> getNot()
+	{
+		return Collections.unmodifiableList(not);
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		append(sb, "AND", and);
+		append(sb, "OR", or);
+		append(sb, "NOT", not);
+		return sb.toString();
+	}
+
+	private static void append(StringBuilder sb, String operator, List<String> clauses)
+	{
+		for (String clause : clauses)
+		{
+			if (sb.length() > 0) sb.append(' ');
+			sb.append(operator).append('(').append(clause).append(')');
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.helenusdb.index.inverted;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ConjunctionIterator yields the ids common to several DocIdIterators. The iterators are ordered by ascending cost, and
+ * the cheapest one leads: each of its ids is confirmed by advancing the others to it, and whenever one of them
+ * overshoots, the lead advances past that id instead. The others therefore skip over whole blocks of ids the lead never
+ * holds, and a selective conjunction costs close to the size of its rarest postings.
+ */
+class ConjunctionIterator
+implements DocIdIterator
+{
+	private final DocIdIterator lead;
+	private final DocIdIterator[] others;
+	private int doc = -1;
+
+	/**
+	 * Constructs a ConjunctionIterator.
+	 *
+	 * @param iterators The iterators to intersect, positioned before their first id. There must be at least one.
+	 */
+	ConjunctionIterator(List<? extends DocIdIterator> iterators)
+	{
+		List<DocIdIterator> sorted = new ArrayList<>(iterators);
+		sorted.sort(Comparator.comparingLong(DocIdIterator::cost));
+		this.lead = sorted.get(0);
+		this.others = sorted.subList(1, sorted.size()).toArray(new DocIdIterator[0]);
+	}
+
+	@Override
+	public int docId()
+	{
+		return doc;
+	}
+
+	@Override
+	public int nextDoc()
+	{
+		if (doc == NO_MORE_DOCS) return doc;
+		return doc = align(lead.nextDoc());
+	}
+
+	@Override
+	public int advance(int target)
+	{
+		if (doc >= target) return doc;
+		return doc = align(lead.advance(target));
+	}
+
+	@Override
+	public long cost()
+	{
+		return lead.cost();
+	}
+
+	/**
+	 * Advances the other iterators to the lead's candidate until they all agree on it.
+	 */
+	private int align(int candidate)
+	{
+		while (candidate != NO_MORE_DOCS)
+		{
+			boolean isMatch = true;
+
+			for (DocIdIterator other : others)
+			{
+				int found = other.docId() < candidate ? other.advance(candidate) : other.docId();
+
+				if (found > candidate)
+				{
+					candidate = lead.advance(found);
+					isMatch = false;
+					break;
+				}
+			}
+
+			if (isMatch) return candidate;
+		}
+
+		return NO_MORE_DOCS;
+	}
+}
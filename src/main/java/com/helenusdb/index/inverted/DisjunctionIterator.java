@@ -0,0 +1,71 @@
+package com.helenusdb.index.inverted;
+
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * DisjunctionIterator yields the union of the ids of several DocIdIterators, each id once, by keeping the iterators on
+ * a heap ordered by their current id.
+ */
+class DisjunctionIterator
+implements DocIdIterator
+{
+	private final PriorityQueue<DocIdIterator> heap;
+	private final long cost;
+	private int doc = -1;
+
+	/**
+	 * Constructs a DisjunctionIterator.
+	 *
+	 * @param iterators The iterators to union, positioned before their first id.
+	 */
+	DisjunctionIterator(List<? extends DocIdIterator> iterators)
+	{
+		this.heap = new PriorityQueue<>(Math.max(1, iterators.size()),
+			(a, b) -> Integer.compare(a.docId(), b.docId()));
+		long total = 0;
+
+		for (DocIdIterator iterator : iterators)
+		{
+			total += iterator.cost();
+			if (iterator.nextDoc() != NO_MORE_DOCS) heap.add(iterator);
+		}
+
+		this.cost = total;
+	}
+
+	@Override
+	public int docId()
+	{
+		return doc;
+	}
+
+	@Override
+	public int nextDoc()
+	{
+		return advance(doc + 1);
+	}
+
+	@Override
+	public int advance(int target)
+	{
+		if (doc == NO_MORE_DOCS) return doc;
+
+		DocIdIterator top = heap.peek();
+
+		while (top != null && top.docId() < target)
+		{
+			heap.poll();
+			if (top.advance(target) != NO_MORE_DOCS) heap.add(top);
+			top = heap.peek();
+		}
+
+		return doc = top == null ? NO_MORE_DOCS : top.docId();
+	}
+
+	@Override
+	public long cost()
+	{
+		return cost;
+	}
+}
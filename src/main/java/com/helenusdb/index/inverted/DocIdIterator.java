@@ -0,0 +1,45 @@
+package com.helenusdb.index.inverted;
+
+/**
+ * DocIdIterator walks ascending document ids. Besides stepping to the next id, it can advance to the first id at or
+ * after a target, which lets a posting list skip whole blocks without decoding them.
+ *
+ * An iterator starts positioned before its first id, so docId() returns -1 until nextDoc() or advance() is called, and
+ * NO_MORE_DOCS once it is exhausted.
+ */
+interface DocIdIterator
+{
+	/**
+	 * The id returned once an iterator is exhausted.
+	 */
+	int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+	/**
+	 * Returns the current document id.
+	 *
+	 * @return The current id, -1 before the first call to nextDoc() or advance(), or NO_MORE_DOCS when exhausted.
+	 */
+	int docId();
+
+	/**
+	 * Moves to the next document id.
+	 *
+	 * @return The next id, or NO_MORE_DOCS if there are none.
+	 */
+	int nextDoc();
+
+	/**
+	 * Moves to the first document id at or after the target. The target must be greater than the current id.
+	 *
+	 * @param target The id to advance to.
+	 * @return The first id at or after the target, or NO_MORE_DOCS if there are none.
+	 */
+	int advance(int target);
+
+	/**
+	 * Returns an upper bound of the number of ids this iterator yields, used to order the iterators of a query.
+	 *
+	 * @return The maximum number of ids remaining.
+	 */
+	long cost();
+}
@@ -0,0 +1,97 @@
+package com.helenusdb.index.inverted;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntPredicate;
+
+/**
+ * DocIdSet is a read-only Set view of ascending document ids held in an int array. It iterates in ascending order and
+ * answers contains() with a binary search, without boxing an Integer per id.
+ */
+class DocIdSet
+extends AbstractSet<Integer>
+{
+	private final int[] ids;
+	private final int size;
+
+	/**
+	 * Constructs a DocIdSet over the first size ids of the array, which must be ascending and not modified afterwards.
+	 *
+	 * @param ids  The ascending document ids.
+	 * @param size The number of ids in use.
+	 */
+	DocIdSet(int[] ids, int size)
+	{
+		this.ids = ids;
+		this.size = size;
+	}
+
+	/**
+	 * Collects the ids of an iterator into a DocIdSet.
+	 *
+	 * @param iterator The iterator, positioned before its first id.
+	 * @return The ids the iterator yields.
+	 */
+	static DocIdSet of(DocIdIterator iterator)
+	{
+		return of(iterator, doc -> false);
+	}
+
+	/**
+	 * Collects the ids of an iterator into a DocIdSet, leaving out those of deleted documents.
+	 *
+	 * @param iterator  The iterator, positioned before its first id.
+	 * @param isDeleted The predicate selecting the ids of deleted documents.
+	 * @return The ids the iterator yields that are not deleted.
+	 */
+	static DocIdSet of(DocIdIterator iterator, IntPredicate isDeleted)
+	{
+		int[] ids = new int[(int) Math.min(Math.max(iterator.cost(), 0), 1024)];
+		int size = 0;
+
+		for (int doc = iterator.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS; doc = iterator.nextDoc())
+		{
+			if (isDeleted.test(doc)) continue;
+			if (size == ids.length) ids = Arrays.copyOf(ids, Math.max(16, size * 2));
+			ids[size++] = doc;
+		}
+
+		return new DocIdSet(ids, size);
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return o instanceof Integer i && Arrays.binarySearch(ids, 0, size, i) >= 0;
+	}
+
+	@Override
+	public Iterator<Integer> iterator()
+	{
+		return new Iterator<>()
+		{
+			private int position;
+
+			@Override
+			public boolean hasNext()
+			{
+				return position < size;
+			}
+
+			@Override
+			public Integer next()
+			{
+				if (!hasNext()) throw new NoSuchElementException();
+				return ids[position++];
+			}
+		};
+	}
+}
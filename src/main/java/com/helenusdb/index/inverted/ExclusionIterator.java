@@ -0,0 +1,64 @@
+package com.helenusdb.index.inverted;
+
+/**
+ * ExclusionIterator yields the ids of one DocIdIterator that another does not hold. The excluded iterator is only ever
+ * advanced to the ids of the included one, so it skips over whatever lies between them.
+ */
+class ExclusionIterator
+implements DocIdIterator
+{
+	private final DocIdIterator include;
+	private final DocIdIterator exclude;
+	private int doc = -1;
+
+	/**
+	 * Constructs an ExclusionIterator.
+	 *
+	 * @param include The iterator whose ids are yielded, positioned before its first id.
+	 * @param exclude The iterator whose ids are skipped, positioned before its first id.
+	 */
+	ExclusionIterator(DocIdIterator include, DocIdIterator exclude)
+	{
+		this.include = include;
+		this.exclude = exclude;
+	}
+
+	@Override
+	public int docId()
+	{
+		return doc;
+	}
+
+	@Override
+	public int nextDoc()
+	{
+		if (doc == NO_MORE_DOCS) return doc;
+		return doc = skipExcluded(include.nextDoc());
+	}
+
+	@Override
+	public int advance(int target)
+	{
+		if (doc >= target) return doc;
+		return doc = skipExcluded(include.advance(target));
+	}
+
+	@Override
+	public long cost()
+	{
+		return include.cost();
+	}
+
+	private int skipExcluded(int candidate)
+	{
+		while (candidate != NO_MORE_DOCS)
+		{
+			int excluded = exclude.docId() < candidate ? exclude.advance(candidate) : exclude.docId();
+			if (excluded != candidate) return candidate;
+
+			candidate = include.nextDoc();
+		}
+
+		return NO_MORE_DOCS;
+	}
+}
@@ -1,22 +1,70 @@
 package com.helenusdb.index.inverted;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import com.helenusdb.index.analysis.Analyzer;
+import com.helenusdb.index.analysis.Term;
+import com.helenusdb.index.analysis.TermMap;
+import com.helenusdb.index.analysis.TokenStream;
+import com.helenusdb.index.util.AppendOnlyList;
+import com.helenusdb.index.util.ConcurrentBitSet;
 
 /**
  * An inverted index that supports searching whole words in phrases.
  * Word order is not considered which results in multiple word queries
- * returning phrases that contain the words in any order.
+ * returning phrases that contain the words in any order, unless the index
+ * is positional: it then also stores the position of every word, for exact
+ * phrase and proximity queries. A plain query
+ * matches phrases containing any of its words; use a {@link BooleanQuery}
+ * to require all of them or to exclude some.
  * 
  * The index is case insensitive by default. This can be changed by
  * calling the setCaseSensitive method. However, it must be called
  * before any phrases are inserted.
  * 
+ * Phrases and queries are split into words by an {@link Analyzer}, which
+ * strips punctuation and, unless the index is case sensitive, lower cases
+ * the words. A custom analyzer, for example one removing stop words, can be
+ * set with setAnalyzer. Words are streamed through a reusable buffer, so
+ * indexing a phrase only allocates for words the index has not seen.
+ * 
  * Insertion time complexity: O(n) where n is the number of words in the phrase.
  * Search time complexity: O(n) where n is the number of words in the query.
  * 
  * In contrast to {@link SuffixIndex}, this data structure is much faster at
- * inserting phrases but doesn't support substring searches or 
- * wildcard queries. It is also more memory efficient than the suffix index.
+ * inserting phrases but doesn't support substring searches. Wildcards only
+ * expand whole words. It is also more memory efficient than the suffix index.
+ * 
+ * Each word maps to a {@link PostingList} of the ids of the phrases that
+ * contain it, delta and variable-length encoded in blocks with skip entries,
+ * so a posting takes about a byte instead of a boxed Integer in a HashSet.
+ * 
+ * New phrases are indexed into a mutable buffer. Once it holds the flush
+ * threshold of phrases, the buffer is written into an immutable {@link Segment}
+ * of trimmed postings, whose words are held in a {@link TermDictionary}: a
+ * minimal finite-state transducer, much smaller than the words as HashMap
+ * keys, that also enumerates the words matching a prefix, a range, a
+ * wildcard pattern or, through a {@link LevenshteinAutomaton}, a misspelled
+ * word. A new buffer is then started. Whenever
+ * a {@link TieredMergePolicy} finds enough segments of similar size, they are
+ * merged into one on the merge executor, in the background, so the number of
+ * segments a query reads grows only logarithmically.
+ * 
+ * Writes are serialized. A query looks its words up in the segments and the
+ * buffer while holding the same lock, taking read-only views of the buffered
+ * postings, and then walks and scores them without it, so it always reads a
+ * consistent set of segments and never waits for a merge.
+ * 
+ * Phrases are identified by the ids {@link #getIndicesFor(String)} returns,
+ * handed out in insertion order from 0. Deleting a phrase marks its id in a
+ * live-docs bitmap, which every query checks, and releases its value at once.
+ * Its postings are left in place until merges rewrite its segment or, once
+ * the deleted phrases pass the purge threshold, a background purge rewrites
+ * every segment holding them, so the postings stay proportional to the live
+ * phrases. Updating a phrase deletes it and inserts it again under a new id.
  * 
  * @param <T> The type of the values that are associated with the phrases.
  * @see SuffixIndex
@@ -24,17 +72,47 @@ import java.util.*;
  */
 public class InvertedWordIndex<T>
 {
-	private Map<String, Set<Integer>> index;
+	private static final int DEFAULT_FLUSH_THRESHOLD = 10000;
+	private static final int DEFAULT_MERGE_FACTOR = 10;
+	private static final double DEFAULT_PURGE_THRESHOLD = 0.2;
+	private static final int DEFAULT_MAX_EXPANSIONS = 50;
+
+	// The postings of the phrases inserted since the last flush.
+	private TermMap<PostingList> buffer;
+	// The id of the first phrase in the buffer.
+	private int bufferBase;
+	// The immutable segments, in phrase id order. Replaced, never modified.
+	private List<Segment> segments = List.of();
 	private List<T> phrases;
+	private int[] lengths = new int[16];
+	// The postings the phrase being inserted was added to, reused across inserts.
+	private final List<PostingList> touched = new ArrayList<>();
+	private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+	private TieredMergePolicy mergePolicy = new TieredMergePolicy(DEFAULT_FLUSH_THRESHOLD, DEFAULT_MERGE_FACTOR);
+	private Executor mergeExecutor = ForkJoinPool.commonPool();
+	private boolean isMerging;
+	// The ids of deleted phrases, checked by every query.
+	private final ConcurrentBitSet deleted = new ConcurrentBitSet();
+	// The number of deleted phrases whose postings may not have been purged yet.
+	private int pendingDeletes;
+	private double purgeThreshold = DEFAULT_PURGE_THRESHOLD;
+	private CompletableFuture<Long> purge;
+	private int maxExpansions = DEFAULT_MAX_EXPANSIONS;
+	private long totalLength;
 	private boolean isCaseSensitive = false;
+	private boolean isPositional = false;
+	private Analyzer analyzer;
+
+	private static final Analyzer LOWER_CASE = Analyzer.standard();
+	private static final Analyzer CASE_SENSITIVE = new Analyzer();
 
 	/**
 	 * Constructs a new inverted word index that is case insensitive.
 	 */
 	public InvertedWordIndex()
 	{
-		this.index = new HashMap<>();
-		this.phrases = new ArrayList<>();
+		this.buffer = new TermMap<>();
+		this.phrases = new AppendOnlyList<>();
 	}
 
 	/**
@@ -48,6 +126,19 @@ public class InvertedWordIndex<T>
 		setCaseSensitive(isCaseSensitive);
 	}
 
+	/**
+	 * Constructs a new inverted word index with the specified case sensitivity
+	 * and whether to store word positions.
+	 * 
+	 * @param isCaseSensitive Whether the index should be case sensitive.
+	 * @param isPositional    Whether the index should store word positions.
+	 */
+	public InvertedWordIndex(boolean isCaseSensitive, boolean isPositional)
+	{
+		this(isCaseSensitive);
+		setPositional(isPositional);
+	}
+
 	/**
 	 * Returns whether the index is case sensitive.
 	 * 
@@ -70,23 +161,448 @@ public class InvertedWordIndex<T>
 	}
 
 	/**
-	 * Adds a phrase to the index.
+	 * Returns whether the index stores word positions.
+	 * 
+	 * @return True if the index stores word positions, false otherwise.
+	 */
+	public boolean isPositional()
+	{
+		return isPositional;
+	}
+
+	/**
+	 * Sets whether the index stores the position of every word, which phrase and
+	 * proximity queries require. Positions take about one more byte per word.
+	 * Must be called before any phrases are inserted into the index.
+	 * 
+	 * @param isPositional Whether the index should store word positions.
+	 * @throws IllegalStateException if phrases have already been inserted.
+	 */
+	public void setPositional(boolean isPositional)
+	{
+		if (!phrases.isEmpty()) throw new IllegalStateException("Positions must be set before inserting phrases");
+
+		this.isPositional = isPositional;
+	}
+
+	/**
+	 * Returns the analyzer that splits phrases and queries into words.
+	 * 
+	 * @return The analyzer.
+	 */
+	public Analyzer getAnalyzer()
+	{
+		if (analyzer != null) return analyzer;
+
+		return isCaseSensitive ? CASE_SENSITIVE : LOWER_CASE;
+	}
+
+	/**
+	 * Sets the analyzer that splits phrases and queries into words, replacing
+	 * the default one, which lower cases words unless the index is case
+	 * sensitive. Must be called before any phrases are inserted into the index.
+	 * 
+	 * @param analyzer The analyzer, or null to use the default one.
+	 * @return The InvertedWordIndex instance for chaining.
+	 * @throws IllegalStateException if phrases have already been inserted.
+	 */
+	public InvertedWordIndex<T> setAnalyzer(Analyzer analyzer)
+	{
+		if (!phrases.isEmpty()) throw new IllegalStateException("The analyzer must be set before inserting phrases");
+
+		this.analyzer = analyzer;
+		return this;
+	}
+
+	/**
+	 * Sets the number of phrases the buffer holds before it is flushed into a
+	 * new segment. Larger buffers make fewer, larger segments, at the cost of
+	 * the heap used by the buffer's growable postings. Defaults to 10000.
+	 * 
+	 * @param flushThreshold The number of phrases to buffer.
+	 * @return The InvertedWordIndex instance for chaining.
+	 * @throws IllegalArgumentException if flushThreshold is not positive.
+	 */
+	public synchronized InvertedWordIndex<T> setFlushThreshold(int flushThreshold)
+	{
+		this.mergePolicy = new TieredMergePolicy(flushThreshold, mergePolicy.getMergeFactor());
+		this.flushThreshold = flushThreshold;
+		return this;
+	}
+
+	/**
+	 * Sets the number of segments of similar size that are merged together.
+	 * Larger factors rewrite postings less often but leave more segments for
+	 * queries to read. Defaults to 10.
+	 * 
+	 * @param mergeFactor The number of segments to merge at a time.
+	 * @return The InvertedWordIndex instance for chaining.
+	 * @throws IllegalArgumentException if mergeFactor is less than 2.
+	 */
+	public synchronized InvertedWordIndex<T> setMergeFactor(int mergeFactor)
+	{
+		this.mergePolicy = new TieredMergePolicy(flushThreshold, mergeFactor);
+		return this;
+	}
+
+	/**
+	 * Sets the executor background merges run on. Defaults to the common
+	 * fork/join pool.
+	 * 
+	 * @param executor The executor to run merges on.
+	 * @return The InvertedWordIndex instance for chaining.
+	 */
+	public synchronized InvertedWordIndex<T> setMergeExecutor(Executor executor)
+	{
+		this.mergeExecutor = Objects.requireNonNull(executor);
+		return this;
+	}
+
+	/**
+	 * Sets the ratio of deleted phrases, whose postings have not been purged,
+	 * to all phrases at which a background purge is started. Defaults to 0.2.
+	 * 
+	 * @param threshold The purge threshold, between 0.0 and 1.0 inclusive.
+	 * @return The InvertedWordIndex instance for chaining.
+	 * @throws IllegalArgumentException if the threshold is out of range.
+	 */
+	public synchronized InvertedWordIndex<T> setPurgeThreshold(double threshold)
+	{
+		if (threshold < 0.0 || threshold > 1.0)
+		{
+			throw new IllegalArgumentException("Purge threshold must be between 0.0 and 1.0: " + threshold);
+		}
+
+		this.purgeThreshold = threshold;
+		return this;
+	}
+
+	/**
+	 * Sets the number of words a fuzzy query expands to at most. The words
+	 * with the fewest edits are kept, then those in the most phrases.
+	 * Defaults to 50.
+	 * 
+	 * @param maxExpansions The maximum number of words to expand to.
+	 * @return The InvertedWordIndex instance for chaining.
+	 * @throws IllegalArgumentException if maxExpansions is not positive.
+	 */
+	public synchronized InvertedWordIndex<T> setMaxExpansions(int maxExpansions)
+	{
+		if (maxExpansions < 1) throw new IllegalArgumentException("Max expansions must be positive: " + maxExpansions);
+
+		this.maxExpansions = maxExpansions;
+		return this;
+	}
+
+	/**
+	 * Returns the number of live (inserted and not deleted) phrases.
+	 * 
+	 * @return The number of live phrases.
+	 */
+	public int size()
+	{
+		return phrases.size() - deleted.cardinality();
+	}
+
+	/**
+	 * Returns the number of immutable segments, not counting the buffer.
+	 * 
+	 * @return The number of segments.
+	 */
+	public synchronized int getSegmentCount()
+	{
+		return segments.size();
+	}
+
+	/**
+	 * Adds a phrase to the index, flushing the buffer into a new segment once
+	 * it holds the flush threshold of phrases.
 	 * 
 	 * @param phrase The phrase to add.
 	 */
-	public InvertedWordIndex<T> insert(String phrase, T value)
+	public synchronized InvertedWordIndex<T> insert(String phrase, T value)
 	{
-		phrase = normalizePhrase(phrase);
+		int id = phrases.size();
 		phrases.add(value);
+		int length = 0;
+		TokenStream words = getAnalyzer().tokenStream(phrase);
+
+		// The phrase is analyzed once: its length, which the postings need, is recorded once all its words are added.
+		for (Term word = words.next(); word != null; word = words.next(), length++)
+		{
+			// The buffer is looked up by the reused term's characters, so only a new word allocates a key.
+			PostingList postings = buffer.get(word);
+
+			if (postings == null)
+			{
+				postings = new PostingList(isPositional);
+				buffer.put(word.toString(), postings);
+			}
+
+			postings.addOccurrence(id, word.getPosition());
+			touched.add(postings);
+		}
+
+		for (PostingList postings : touched)
+		{
+			postings.addDocLength(length);
+		}
+
+		touched.clear();
+
+		if (id == lengths.length) lengths = Arrays.copyOf(lengths, id + (id >> 1));
+		lengths[id] = length;
+		totalLength += length;
+
+		if (phrases.size() - bufferBase >= flushThreshold) flush();
+
+		return this;
+	}
+
+	/**
+	 * Deletes a phrase. Queries skip it from then on, and its value is
+	 * released. A background purge is started once the deleted phrases pass
+	 * the purge threshold.
+	 * 
+	 * @param id The id of the phrase.
+	 * @return True if the phrase was deleted, false if it was already deleted or the id is unknown.
+	 */
+	public synchronized boolean delete(int id)
+	{
+		if (id < 0 || id >= phrases.size() || !deleted.set(id)) return false;
+
+		// Mark before releasing, so a query reading the released value knows to skip it.
+		phrases.set(id, null);
+		pendingDeletes++;
+
+		if (pendingDeletes > purgeThreshold * phrases.size())
+		{
+			purgeAsync();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Replaces a phrase by deleting it and inserting the new phrase and value.
+	 * The phrase is given a new id, so it moves to the end of the insertion
+	 * order.
+	 * 
+	 * @param id        The id of the phrase to replace.
+	 * @param newPhrase The phrase to index the value under.
+	 * @param value     The value to associate with the new phrase.
+	 * @return The id of the new phrase.
+	 * @throws IllegalArgumentException if the id is unknown or its phrase was already deleted, in which case nothing
+	 *                                  is inserted.
+	 */
+	public synchronized int update(int id, String newPhrase, T value)
+	{
+		if (!delete(id)) throw new IllegalArgumentException("No live phrase with id " + id);
+
+		int newId = phrases.size();
+		insert(newPhrase, value);
+		return newId;
+	}
 
-		for (String word : phrase.split("\\s+"))
+	/**
+	 * Rewrites the postings of every segment holding deleted phrases without
+	 * them, flushing the buffer first. The segments are rewritten on the
+	 * calling thread without blocking inserts or queries.
+	 * 
+	 * @return The number of postings removed.
+	 */
+	public long purge()
+	{
+		List<Segment> current;
+		BitSet purging;
+
+		synchronized (this)
+		{
+			flush();
+			current = segments;
+			purging = deletedIds();
+		}
+
+		List<Segment> purged = new ArrayList<>();
+		List<Segment> rewritten = new ArrayList<>();
+		long removed = 0;
+
+		for (Segment segment : current)
+		{
+			if (segment.countPendingDeletes(purging) == 0) continue;
+
+			Segment rewrite = Segment.merge(List.of(segment), purging);
+			removed += segment.getPostingCount() - rewrite.getPostingCount();
+			purged.add(segment);
+			rewritten.add(rewrite);
+		}
+
+		synchronized (this)
+		{
+			// A segment merged away meanwhile was rewritten by the merge instead, perhaps before the latest deletes.
+			for (int i = 0; i < purged.size(); i++)
+			{
+				replace(List.of(purged.get(i)), rewritten.get(i));
+			}
+
+			pendingDeletes = countPendingDeletes();
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Runs a purge on the merge executor unless one is already scheduled.
+	 * 
+	 * @return A future completing with the number of postings removed.
+	 */
+	public synchronized CompletableFuture<Long> purgeAsync()
+	{
+		if (purge == null || purge.isDone())
 		{
-			index.computeIfAbsent(word, k -> new HashSet<>()).add(phrases.size() - 1);
+			purge = CompletableFuture.supplyAsync(this::purge, mergeExecutor);
 		}
 
+		return purge;
+	}
+
+	/**
+	 * Writes the buffered phrases into a new immutable segment and starts a
+	 * background merge if the merge policy finds one.
+	 * 
+	 * @return The InvertedWordIndex instance for chaining.
+	 */
+	public synchronized InvertedWordIndex<T> flush()
+	{
+		int count = phrases.size() - bufferBase;
+		if (count == 0) return this;
+
+		List<Segment> flushed = new ArrayList<>(segments);
+		flushed.add(Segment.flush(buffer, bufferBase, count));
+		segments = List.copyOf(flushed);
+		buffer = new TermMap<>();
+		bufferBase = phrases.size();
+		maybeMerge();
 		return this;
 	}
 
+	/**
+	 * Flushes the buffer and merges all the segments into one, which makes
+	 * queries read the fewest postings. The merge runs on the calling thread
+	 * without blocking inserts or queries.
+	 * 
+	 * @return The InvertedWordIndex instance for chaining.
+	 */
+	public InvertedWordIndex<T> forceMerge()
+	{
+		while (true)
+		{
+			List<Segment> current;
+			BitSet merging;
+
+			synchronized (this)
+			{
+				flush();
+				current = segments;
+				merging = deletedIds();
+			}
+
+			// Retry if a background merge replaced some of the segments meanwhile.
+			if (current.size() <= 1 || replace(current, Segment.merge(current, merging))) return this;
+		}
+	}
+
+	/**
+	 * Starts a background merge of the segments the merge policy chooses,
+	 * unless a merge is already running. Must hold the lock.
+	 */
+	private void maybeMerge()
+	{
+		if (isMerging) return;
+
+		List<Segment> merging = mergePolicy.findMerge(segments);
+		if (merging.isEmpty()) return;
+
+		isMerging = true;
+		BitSet deletes = deletedIds();
+		CompletableFuture.runAsync(() ->
+		{
+			Segment merged = null;
+
+			try
+			{
+				merged = Segment.merge(merging, deletes);
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					isMerging = false;
+
+					if (merged != null)
+					{
+						replace(merging, merged);
+						maybeMerge();
+					}
+				}
+			}
+		}, mergeExecutor);
+	}
+
+	/**
+	 * Returns a copy of the ids of the deleted phrases. Must hold the lock, so
+	 * no phrase is deleted meanwhile.
+	 * 
+	 * @return The ids of the deleted phrases.
+	 */
+	private BitSet deletedIds()
+	{
+		return BitSet.valueOf(deleted.toLongArray());
+	}
+
+	/**
+	 * Returns the number of deleted phrases whose postings are still held by
+	 * the segments or the buffer. Must hold the lock.
+	 * 
+	 * @return The number of deleted phrases left to purge.
+	 */
+	private int countPendingDeletes()
+	{
+		BitSet ids = deletedIds();
+		int count = Segment.countDeleted(ids, bufferBase, phrases.size() - bufferBase);
+
+		for (Segment segment : segments)
+		{
+			count += segment.countPendingDeletes(ids);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Replaces adjacent segments with the segment they were merged into.
+	 * 
+	 * @param merging The merged segments.
+	 * @param merged  The segment they were merged into.
+	 * @return True if the segments were replaced, false if they are no longer all present.
+	 */
+	private synchronized boolean replace(List<Segment> merging, Segment merged)
+	{
+		int start = segments.indexOf(merging.get(0));
+		if (start < 0 || start + merging.size() > segments.size()) return false;
+
+		for (int i = 1; i < merging.size(); i++)
+		{
+			if (segments.get(start + i) != merging.get(i)) return false;
+		}
+
+		List<Segment> replaced = new ArrayList<>(segments.subList(0, start));
+		replaced.add(merged);
+		replaced.addAll(segments.subList(start + merging.size(), segments.size()));
+		segments = List.copyOf(replaced);
+		return true;
+	}
+
 	/**
 	 * Searches for all phrases containing the query substring.
 	 * 
@@ -95,50 +611,777 @@ public class InvertedWordIndex<T>
 	 */
 	public List<T> search(String query)
 	{
-		List<T> results = new ArrayList<>();
-		for (int index : getIndicesFor(query))
-		{
-			results.add(phrases.get(index));
-		}
-		return results;
+		return toValues(getIndicesFor(query));
+	}
+
+	/**
+	 * Searches for all phrases matching the boolean query.
+	 * 
+	 * @param query The boolean query to search for.
+	 * @return A list of the matching phrases, in the order they were inserted.
+	 */
+	public List<T> searchBoolean(BooleanQuery query)
+	{
+		return toValues(getIndicesForBoolean(query));
+	}
+
+	/**
+	 * Searches for the phrases containing the query words next to each other, in
+	 * the same order. Candidates are checked against the stored word positions.
+	 * 
+	 * @param phrase The words to search for, in order.
+	 * @return A list of the phrases containing the exact phrase, in the order they were inserted.
+	 * @throws IllegalStateException if the index is not positional.
+	 */
+	public List<T> searchPhrase(String phrase)
+	{
+		requirePositional();
+		DocIdIterator matches = phraseIterator(phrase);
+		return matches == null ? new ArrayList<>() : toValues(collect(matches));
+	}
+
+	/**
+	 * Searches for the phrases containing all the query words within the given
+	 * distance of each other, in any order: the positions of the first and last
+	 * of the words differ by at most the distance, so adjacent words are at
+	 * distance 1. This is the NEAR/distance operator.
+	 * 
+	 * @param words    The words to search for.
+	 * @param distance The greatest distance between the first and last of the words.
+	 * @return A list of the phrases containing the words close together, in the order they were inserted.
+	 * @throws IllegalArgumentException if distance is negative.
+	 * @throws IllegalStateException if the index is not positional.
+	 */
+	public List<T> searchNear(String words, int distance)
+	{
+		if (distance < 0) throw new IllegalArgumentException("Distance cannot be negative: " + distance);
+
+		requirePositional();
+		DocIdIterator matches = nearIterator(words, distance);
+		return matches == null ? new ArrayList<>() : toValues(collect(matches));
 	}
 
 	/**
-	 * Returns the indices of the phrases that contain the query.
+	 * Returns the k phrases that best match the query words, ranked by their BM25 scores. A phrase scores higher the
+	 * more often it contains the query words, the rarer those words are across the index, and the shorter it is.
+	 * Documents that cannot reach the top k are skipped without being scored.
 	 * 
 	 * @param query The words to search for.
-	 * @return The indices of the phrases that contain the query.
+	 * @param k     The maximum number of phrases to return.
+	 * @return At most k phrases containing any of the query words, best first and then in insertion order.
+	 * @throws IllegalArgumentException if k is negative.
 	 */
-	public Set<Integer> getIndicesFor(String query)
+	public List<T> searchTopK(String query, int k)
 	{
-		query = normalizePhrase(query);
-		Set<Integer> resultIndices = new HashSet<>();
-		String[] wordsInQuery = query.split("\\s+");
+		if (k < 0) throw new IllegalArgumentException("k cannot be negative: " + k);
+
+		Set<String> words = distinctWords(query);
+		List<TermPostings> postings = new ArrayList<>(words.size());
+		WandSearcher searcher;
 
-		for (String word : wordsInQuery)
+		synchronized (this)
 		{
-			if (index.containsKey(word))
+			for (String word : words)
 			{
-				resultIndices.addAll(index.get(word));
+				TermPostings list = postingsOf(word);
+				if (list != null) postings.add(list);
 			}
+
+			searcher = newSearcher();
+		}
+
+		int[] ids = searcher.search(postings, k);
+		List<T> results = new ArrayList<>(ids.length);
+
+		for (int id : ids)
+		{
+			addValue(results, id);
 		}
 
-		return resultIndices;
+		return results;
 	}
 
 	/**
-	 * Normalizes the phrase by converting it to lower case if the index is not case sensitive.
+	 * Searches for the phrases containing a word matching a wildcard pattern,
+	 * in which '*' matches any number of characters and '?' exactly one, so
+	 * "wire*" matches "wire", "wired" and "wireless". The pattern is lower
+	 * cased unless the index is case sensitive, but not otherwise analyzed.
 	 * 
-	 * @param phrase The phrase to normalize.
-	 * @return The normalized phrase.
+	 * @param pattern The wildcard pattern, or null to match nothing.
+	 * @return A list of the matching phrases, in the order they were inserted.
+	 * @throws IllegalArgumentException if the pattern is longer than 63 characters.
 	 */
-	private String normalizePhrase(String phrase)
+	public List<T> searchWildcard(String pattern)
 	{
-		if (phrase == null)
-		{
-			return "";
-		}
+		return toValues(getIndicesForWildcard(pattern));
+	}
+
+	/**
+	 * Searches for the phrases containing a word between two bounds, in the
+	 * order of String.compareTo(). The bounds are lower cased unless the index
+	 * is case sensitive, but not otherwise analyzed.
+	 * 
+	 * @param lower The least word, inclusive, or null for no lower bound.
+	 * @param upper The greatest word, inclusive, or null for no upper bound.
+	 * @return A list of the matching phrases, in the order they were inserted.
+	 */
+	public List<T> searchRange(String lower, String upper)
+	{
+		return toValues(getIndicesForRange(lower, upper));
+	}
 
-		return isCaseSensitive ? phrase : phrase.toLowerCase();
+	/**
+	 * Searches for the phrases containing a word within a number of edits of
+	 * the given one, counting each inserted, deleted or substituted character
+	 * as an edit, so "wireles" matches "wireless" in one edit. The word is
+	 * lower cased unless the index is case sensitive, but not otherwise
+	 * analyzed. It expands to at most the max expansions words.
+	 * 
+	 * @param word     The possibly misspelled word, or null to match nothing.
+	 * @param maxEdits The maximum number of edits, between 0 and 2.
+	 * @return A list of the matching phrases, in the order they were inserted.
+	 * @throws IllegalArgumentException if maxEdits is out of range or the word is longer than 63 characters.
+	 * @see #setMaxExpansions(int)
+	 */
+	public List<T> searchFuzzy(String word, int maxEdits)
+	{
+		return toValues(getIndicesForFuzzy(word, maxEdits));
+	}
+
+	/**
+	 * Returns the indices of the phrases containing a word matching a wildcard
+	 * pattern, in ascending order.
+	 * 
+	 * @param pattern The wildcard pattern, or null to match nothing.
+	 * @return The indices of the matching phrases.
+	 * @throws IllegalArgumentException if the pattern is longer than 63 characters.
+	 * @see #searchWildcard(String)
+	 */
+	public Set<Integer> getIndicesForWildcard(String pattern)
+	{
+		if (pattern == null) return Collections.emptySet();
+
+		WildcardAutomaton automaton = new WildcardAutomaton(normalize(pattern));
+		return unionAll(expandWildcard(automaton));
+	}
+
+	/**
+	 * Returns the indices of the phrases containing a word within a number of
+	 * edits of the given one, in ascending order.
+	 * 
+	 * @param word     The possibly misspelled word, or null to match nothing.
+	 * @param maxEdits The maximum number of edits, between 0 and 2.
+	 * @return The indices of the matching phrases.
+	 * @throws IllegalArgumentException if maxEdits is out of range or the word is longer than 63 characters.
+	 * @see #searchFuzzy(String, int)
+	 */
+	public Set<Integer> getIndicesForFuzzy(String word, int maxEdits)
+	{
+		if (word == null) return Collections.emptySet();
+
+		LevenshteinAutomaton automaton = new LevenshteinAutomaton(normalize(word), maxEdits);
+		return unionAll(expandFuzzy(automaton));
+	}
+
+	/**
+	 * Returns the indices of the phrases containing a word between two
+	 * bounds, in ascending order.
+	 * 
+	 * @param lower The least word, inclusive, or null for no lower bound.
+	 * @param upper The greatest word, inclusive, or null for no upper bound.
+	 * @return The indices of the matching phrases.
+	 * @see #searchRange(String, String)
+	 */
+	public Set<Integer> getIndicesForRange(String lower, String upper)
+	{
+		return unionAll(expandRange(lower == null ? null : normalize(lower), upper == null ? null : normalize(upper)));
+	}
+
+	/**
+	 * Returns the postings of a normalized word.
+	 * 
+	 * @param word The word.
+	 * @return The postings of the word, or null if no phrase contains it.
+	 */
+	synchronized TermPostings getPostings(String word)
+	{
+		return postingsOf(word);
+	}
+
+	/**
+	 * Returns a searcher over the current phrase count and lengths.
+	 * 
+	 * @return A new WandSearcher.
+	 */
+	synchronized WandSearcher newSearcher()
+	{
+		int[] current = lengths;
+		int count = phrases.size();
+		return new WandSearcher(count, count == 0 ? 0.0 : totalLength / (double) count, id -> current[id],
+			deleted::get);
+	}
+
+	/**
+	 * Returns the indices of the phrases that contain the query, in ascending order.
+	 * 
+	 * @param query The words to search for.
+	 * @return The indices of the phrases that contain any of the query words.
+	 */
+	public Set<Integer> getIndicesFor(String query)
+	{
+		List<DocIdIterator> cursors = new ArrayList<>();
+
+		synchronized (this)
+		{
+			addCursors(query, cursors);
+		}
+
+		if (cursors.isEmpty()) return Collections.emptySet();
+
+		return collect(union(cursors));
+	}
+
+	/**
+	 * Returns the indices of the phrases matching the boolean query, in ascending order. The AND words are intersected
+	 * rarest first, skipping through the postings of the others, and a query with an AND word that no phrase contains
+	 * returns without reading any postings.
+	 * 
+	 * @param query The boolean query.
+	 * @return The indices of the matching phrases.
+	 */
+	public Set<Integer> getIndicesForBoolean(BooleanQuery query)
+	{
+		DocIdIterator matches = booleanIterator(query);
+		return matches == null ? Collections.emptySet() : collect(matches);
+	}
+
+	/**
+	 * Returns the number of distinct words in the index.
+	 * 
+	 * @return The number of distinct words.
+	 */
+	public synchronized int getWordCount()
+	{
+		if (segments.isEmpty()) return buffer.size();
+
+		Set<String> words = new HashSet<>(buffer.keySet());
+
+		for (Segment segment : segments)
+		{
+			Collections.addAll(words, segment.getTerms());
+		}
+
+		return words.size();
+	}
+
+	/**
+	 * Returns the number of postings in the index: for each word, the number
+	 * of phrases containing it.
+	 * 
+	 * @return The number of postings.
+	 */
+	public synchronized long getPostingCount()
+	{
+		long count = 0;
+
+		for (Segment segment : segments)
+		{
+			count += segment.getPostingCount();
+		}
+
+		for (PostingList postings : buffer.values())
+		{
+			count += postings.size();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns an estimate of the heap used by the words of the index, in
+	 * bytes: the term dictionaries of the segments, and the keys of the
+	 * buffer, estimated as if they were HashMap keys.
+	 * 
+	 * @return The estimated size of the words.
+	 */
+	public synchronized long estimateTermBytes()
+	{
+		long bytes = 0;
+
+		for (Segment segment : segments)
+		{
+			bytes += segment.estimateTermBytes();
+		}
+
+		for (String word : buffer.keySet())
+		{
+			bytes += estimateKeyBytes(word);
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Returns an estimate of the heap used by a word as a HashMap key: its
+	 * String, byte array and map entry, and its slot in the table.
+	 * 
+	 * @param word The word.
+	 * @return The estimated size in bytes.
+	 */
+	static long estimateKeyBytes(String word)
+	{
+		return 24L + 16L + ((word.length() + 7) & ~7) + 32L + 8L;
+	}
+
+	/**
+	 * Returns an estimate of the heap used by the postings of all the words, in bytes.
+	 * 
+	 * @return The estimated size of the postings.
+	 */
+	public synchronized long estimatePostingBytes()
+	{
+		long bytes = 0;
+
+		for (Segment segment : segments)
+		{
+			bytes += segment.estimatePostingBytes();
+		}
+
+		for (PostingList postings : buffer.values())
+		{
+			bytes += postings.estimateBytes();
+		}
+
+		return bytes;
+	}
+
+	private List<T> toValues(Set<Integer> indices)
+	{
+		List<T> results = new ArrayList<>(indices.size());
+
+		for (int index : indices)
+		{
+			addValue(results, index);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Adds the value of a phrase to the results, unless the phrase was deleted
+	 * and its value released while the query was running.
+	 * 
+	 * @param results The results to add to.
+	 * @param id      The id of the phrase.
+	 */
+	private void addValue(List<T> results, int id)
+	{
+		T value = phrases.get(id);
+		if (value != null || !deleted.get(id)) results.add(value);
+	}
+
+	/**
+	 * Collects the ids of the live phrases an iterator yields.
+	 * 
+	 * @param matches The iterator, positioned before its first id.
+	 * @return The ids of the matching live phrases.
+	 */
+	private Set<Integer> collect(DocIdIterator matches)
+	{
+		return deleted.isEmpty() ? DocIdSet.of(matches) : DocIdSet.of(matches, deleted::get);
+	}
+
+	/**
+	 * Returns the postings of a word across the segments and the buffer, whose
+	 * postings are viewed as they are now. Must hold the lock.
+	 * 
+	 * @param word The normalized word.
+	 * @return The postings of the word, or null if no phrase contains it.
+	 */
+	private TermPostings postingsOf(CharSequence word)
+	{
+		List<PostingList> parts = null;
+
+		for (Segment segment : segments)
+		{
+			PostingList postings = segment.getPostings(word);
+
+			if (postings != null)
+			{
+				if (parts == null) parts = new ArrayList<>(segments.size() + 1);
+				parts.add(postings);
+			}
+		}
+
+		PostingList buffered = buffer.get(word);
+
+		if (buffered != null)
+		{
+			if (parts == null) parts = new ArrayList<>(1);
+			parts.add(buffered.view());
+		}
+
+		return parts == null ? null : new TermPostings(parts);
+	}
+
+	/**
+	 * Adds a cursor over the postings of each of the words that is indexed.
+	 * Must hold the lock.
+	 * 
+	 * @param words   The space-separated words.
+	 * @param cursors The list to add the cursors to.
+	 */
+	private void addCursors(String words, List<DocIdIterator> cursors)
+	{
+		TokenStream stream = getAnalyzer().tokenStream(words);
+
+		for (Term word = stream.next(); word != null; word = stream.next())
+		{
+			TermPostings postings = postingsOf(word);
+
+			if (postings != null)
+			{
+				cursors.add(postings.cursor());
+			}
+		}
+	}
+
+	/**
+	 * Returns the postings of the words matching a wildcard pattern, in the
+	 * segments and the buffer, whose words are checked one by one.
+	 * 
+	 * @param pattern The wildcard pattern.
+	 * @return The postings of the matching words.
+	 */
+	private synchronized List<PostingList> expandWildcard(WildcardAutomaton pattern)
+	{
+		List<PostingList> matches = new ArrayList<>();
+
+		for (Segment segment : segments)
+		{
+			segment.addWildcard(pattern, matches);
+		}
+
+		for (Map.Entry<String, PostingList> entry : buffer.entrySet())
+		{
+			if (pattern.matches(entry.getKey())) matches.add(entry.getValue().view());
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Returns the postings of the words between two bounds, in the segments
+	 * and the buffer, whose words are checked one by one.
+	 * 
+	 * @param lower The least word, inclusive, or null for no lower bound.
+	 * @param upper The greatest word, inclusive, or null for no upper bound.
+	 * @return The postings of the matching words.
+	 */
+	private synchronized List<PostingList> expandRange(String lower, String upper)
+	{
+		List<PostingList> matches = new ArrayList<>();
+
+		for (Segment segment : segments)
+		{
+			segment.addRange(lower, upper, matches);
+		}
+
+		for (Map.Entry<String, PostingList> entry : buffer.entrySet())
+		{
+			String word = entry.getKey();
+
+			if ((lower == null || word.compareTo(lower) >= 0) && (upper == null || word.compareTo(upper) <= 0))
+			{
+				matches.add(entry.getValue().view());
+			}
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Returns the postings of the words within the maximum edits of a fuzzy
+	 * query, in the segments and the buffer, whose words are checked one by
+	 * one. Only the max expansions words with the fewest edits, and then in
+	 * the most phrases, are kept.
+	 * 
+	 * @param automaton The automaton of the query.
+	 * @return The postings of the kept words.
+	 */
+	private synchronized List<PostingList> expandFuzzy(LevenshteinAutomaton automaton)
+	{
+		Map<String, Expansion> expansions = new HashMap<>();
+
+		for (Segment segment : segments)
+		{
+			segment.intersect(automaton, (state, ordinal) ->
+				expansions.computeIfAbsent(segment.getTerm(ordinal), k -> new Expansion(automaton.distance(state)))
+					.add(segment.getPostings(ordinal)));
+		}
+
+		for (Map.Entry<String, PostingList> entry : buffer.entrySet())
+		{
+			long[] state = automaton.run(entry.getKey());
+
+			if (state != null && automaton.isAccept(state))
+			{
+				expansions.computeIfAbsent(entry.getKey(), k -> new Expansion(automaton.distance(state)))
+					.add(entry.getValue().view());
+			}
+		}
+
+		List<PostingList> matches = new ArrayList<>();
+		expansions.entrySet().stream()
+			.sorted(Map.Entry.<String, Expansion>comparingByValue().thenComparing(Map.Entry.comparingByKey()))
+			.limit(maxExpansions)
+			.forEach(entry -> matches.addAll(entry.getValue().postings));
+		return matches;
+	}
+
+	/**
+	 * Collects the ids of the live phrases in any of the postings. A bit set
+	 * is filled rather than merging the postings on a heap, since patterns may
+	 * expand to many words. Postings too few to be worth a bit set spanning
+	 * every phrase are copied into an array and sorted instead.
+	 * 
+	 * @param postings The postings.
+	 * @return The ids of the live phrases, in ascending order.
+	 */
+	private Set<Integer> unionAll(List<PostingList> postings)
+	{
+		if (postings.isEmpty()) return Collections.emptySet();
+		if (postings.size() == 1) return collect(postings.get(0).cursor());
+
+		long total = 0;
+
+		for (PostingList list : postings)
+		{
+			total += list.size();
+		}
+
+		if (total < phrases.size() / Long.SIZE) return unionSorted(postings, (int) total);
+
+		BitSet ids = new BitSet();
+
+		for (PostingList list : postings)
+		{
+			for (PostingList.Cursor cursor = list.cursor(); cursor.nextDoc() != DocIdIterator.NO_MORE_DOCS;)
+			{
+				ids.set(cursor.docId());
+			}
+		}
+
+		int[] live = ids.stream().filter(id -> !deleted.get(id)).toArray();
+		return new DocIdSet(live, live.length);
+	}
+
+	private Set<Integer> unionSorted(List<PostingList> postings, int total)
+	{
+		int[] ids = new int[total];
+		int count = 0;
+
+		for (PostingList list : postings)
+		{
+			for (PostingList.Cursor cursor = list.cursor(); cursor.nextDoc() != DocIdIterator.NO_MORE_DOCS;)
+			{
+				ids[count++] = cursor.docId();
+			}
+		}
+
+		Arrays.sort(ids, 0, count);
+		int live = 0;
+
+		for (int i = 0; i < count; i++)
+		{
+			if ((live == 0 || ids[i] != ids[live - 1]) && !deleted.get(ids[i])) ids[live++] = ids[i];
+		}
+
+		return new DocIdSet(ids, live);
+	}
+
+	/**
+	 * Normalizes a pattern or bound like the default analyzer does a word:
+	 * lower cased unless the index is case sensitive.
+	 * 
+	 * @param word The pattern or bound.
+	 * @return The normalized form.
+	 */
+	private String normalize(String word)
+	{
+		if (isCaseSensitive) return word;
+
+		char[] chars = word.toCharArray();
+
+		for (int i = 0; i < chars.length; i++)
+		{
+			chars[i] = Character.toLowerCase(chars[i]);
+		}
+
+		return new String(chars);
+	}
+
+	/**
+	 * Returns an iterator over the phrases matching the boolean query.
+	 * 
+	 * @param query The boolean query.
+	 * @return The iterator, or null if no phrase can match.
+	 */
+	private synchronized DocIdIterator booleanIterator(BooleanQuery query)
+	{
+		List<DocIdIterator> required = new ArrayList<>();
+
+		for (String words : query.getAnd())
+		{
+			TokenStream stream = getAnalyzer().tokenStream(words);
+
+			for (Term word = stream.next(); word != null; word = stream.next())
+			{
+				TermPostings postings = postingsOf(word);
+				if (postings == null) return null;
+
+				required.add(postings.cursor());
+			}
+		}
+
+		if (!query.getOr().isEmpty())
+		{
+			List<DocIdIterator> optional = new ArrayList<>();
+
+			for (String words : query.getOr())
+			{
+				addCursors(words, optional);
+			}
+
+			if (optional.isEmpty()) return null;
+
+			required.add(union(optional));
+		}
+
+		if (required.isEmpty()) return null;
+
+		DocIdIterator matches = required.size() == 1 ? required.get(0) : new ConjunctionIterator(required);
+		List<DocIdIterator> excluded = new ArrayList<>();
+
+		for (String words : query.getNot())
+		{
+			addCursors(words, excluded);
+		}
+
+		if (!excluded.isEmpty())
+		{
+			matches = new ExclusionIterator(matches, union(excluded));
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Returns an iterator over the phrases containing the exact phrase.
+	 * 
+	 * @param phrase The words to search for, in order.
+	 * @return The iterator, or null if no phrase can match.
+	 */
+	private synchronized DocIdIterator phraseIterator(String phrase)
+	{
+		List<PostingCursor> cursors = new ArrayList<>();
+		int[] offsets = new int[8];
+		int first = -1;
+		TokenStream words = getAnalyzer().tokenStream(phrase);
+
+		for (Term word = words.next(); word != null; word = words.next())
+		{
+			TermPostings postings = postingsOf(word);
+			if (postings == null) return null;
+
+			// Words keep their offsets from the first, so a removed stop word still leaves its gap.
+			if (first < 0) first = word.getPosition();
+			if (cursors.size() == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			offsets[cursors.size()] = word.getPosition() - first;
+			cursors.add(postings.cursor());
+		}
+
+		if (cursors.isEmpty()) return null;
+		if (cursors.size() == 1) return cursors.get(0);
+
+		return ProximityIterator.phrase(cursors, offsets);
+	}
+
+	/**
+	 * Returns an iterator over the phrases containing the words within the distance of each other.
+	 * 
+	 * @param words    The words to search for.
+	 * @param distance The greatest distance between the first and last of the words.
+	 * @return The iterator, or null if no phrase can match.
+	 */
+	private synchronized DocIdIterator nearIterator(String words, int distance)
+	{
+		List<PostingCursor> cursors = new ArrayList<>();
+
+		for (String word : distinctWords(words))
+		{
+			TermPostings postings = postingsOf(word);
+			if (postings == null) return null;
+
+			cursors.add(postings.cursor());
+		}
+
+		if (cursors.isEmpty()) return null;
+		if (cursors.size() == 1) return cursors.get(0);
+
+		return ProximityIterator.near(cursors, distance);
+	}
+
+	/**
+	 * Returns the distinct words of a query, in query order.
+	 * 
+	 * @param query The query.
+	 * @return The distinct words.
+	 */
+	private Set<String> distinctWords(String query)
+	{
+		return new LinkedHashSet<>(getAnalyzer().analyze(query));
+	}
+
+	private void requirePositional()
+	{
+		if (!isPositional) throw new IllegalStateException("Phrase and proximity queries require a positional index");
+	}
+
+	private static DocIdIterator union(List<DocIdIterator> iterators)
+	{
+		return iterators.size() == 1 ? iterators.get(0) : new DisjunctionIterator(iterators);
+	}
+
+	/**
+	 * The postings of a word a fuzzy query expands to, across segments, and
+	 * its edit distance from the query. Words with fewer edits sort first,
+	 * then words in more phrases.
+	 */
+	private static final class Expansion
+	implements Comparable<Expansion>
+	{
+		private final int distance;
+		private final List<PostingList> postings = new ArrayList<>(1);
+		private long frequency;
+
+		Expansion(int distance)
+		{
+			this.distance = distance;
+		}
+
+		void add(PostingList list)
+		{
+			postings.add(list);
+			frequency += list.size();
+		}
+
+		@Override
+		public int compareTo(Expansion that)
+		{
+			if (distance != that.distance) return Integer.compare(distance, that.distance);
+
+			return Long.compare(that.frequency, frequency);
+		}
 	}
 }
@@ -0,0 +1,138 @@
+package com.helenusdb.index.inverted;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * LevenshteinAutomaton accepts the terms within a number of edits of a query term: insertions, deletions and
+ * substitutions of one character each. It is the NFA of Wu and Manber simulated bit-parallel: a state holds one bit
+ * mask per number of edits, whose bit i is set when the first i characters of the query can be aligned with the
+ * characters read so far in that many edits or fewer. Reading a character is a few bit operations per row, so
+ * the automaton is run lazily as a TermDictionary is walked instead of being determinized up front.
+ *
+ * Once the last row is empty no extension of the characters read can be within the maximum edits, which ends the
+ * walk down that branch of the dictionary. Only the prefixes of terms within the maximum edits of a prefix of the
+ * query are visited, which for a maximum of one or two edits is a small part of even a large dictionary.
+ *
+ * @see TermDictionary#intersect(TermAutomaton, java.util.function.ObjIntConsumer)
+ */
+class LevenshteinAutomaton
+implements TermAutomaton<long[]>
+{
+	static final int MAX_EDITS = 2;
+	static final int MAX_LENGTH = Long.SIZE - 1;
+
+	private static final int ASCII = 128;
+
+	private final int length;
+	private final int maxEdits;
+	private final long mask;
+	private final long accept;
+
+	// The positions at which each character occurs in the query, as bit masks.
+	private final long[] asciiPositions = new long[ASCII];
+	private final Map<Character, Long> otherPositions = new HashMap<>();
+
+	/**
+	 * Constructs a LevenshteinAutomaton.
+	 *
+	 * @param query    The normalized query term.
+	 * @param maxEdits The maximum number of edits, between 0 and MAX_EDITS.
+	 * @throws IllegalArgumentException if maxEdits is out of range or the query is longer than MAX_LENGTH characters.
+	 */
+	LevenshteinAutomaton(String query, int maxEdits)
+	{
+		if (maxEdits < 0 || maxEdits > MAX_EDITS)
+		{
+			throw new IllegalArgumentException("Max edits must be between 0 and " + MAX_EDITS + ": " + maxEdits);
+		}
+
+		if (query.length() > MAX_LENGTH)
+		{
+			throw new IllegalArgumentException("Fuzzy queries are limited to " + MAX_LENGTH + " characters: " + query);
+		}
+
+		this.length = query.length();
+		this.maxEdits = maxEdits;
+		this.accept = 1L << length;
+		this.mask = (accept << 1) - 1;
+
+		for (int i = 0; i < length; i++)
+		{
+			char c = query.charAt(i);
+
+			if (c < ASCII) asciiPositions[c] |= 1L << i;
+			else otherPositions.merge(c, 1L << i, (a, b) -> a | b);
+		}
+	}
+
+	/**
+	 * Returns the maximum number of edits.
+	 *
+	 * @return The maximum number of edits.
+	 */
+	int getMaxEdits()
+	{
+		return maxEdits;
+	}
+
+	/**
+	 * Returns the state before any character is read: up to d leading characters of the query can be deleted in d
+	 * edits.
+	 */
+	@Override
+	public long[] start()
+	{
+		long[] rows = new long[maxEdits + 1];
+
+		for (int d = 0; d <= maxEdits; d++)
+		{
+			rows[d] = ((1L << (d + 1)) - 1) & mask;
+		}
+
+		return rows;
+	}
+
+	@Override
+	public long[] step(long[] state, char c)
+	{
+		long eq = positionsOf(c);
+		long[] next = new long[state.length];
+		next[0] = ((state[0] & eq) << 1) & mask;
+
+		for (int d = 1; d < state.length; d++)
+		{
+			// A match, an inserted character, a substitution, or a deleted query character after any of them.
+			next[d] = (((state[d] & eq) << 1) | state[d - 1] | (state[d - 1] << 1) | (next[d - 1] << 1)) & mask;
+		}
+
+		return next[maxEdits] == 0 ? null : next;
+	}
+
+	@Override
+	public boolean isAccept(long[] state)
+	{
+		return (state[maxEdits] & accept) != 0;
+	}
+
+	/**
+	 * Returns the edit distance between the query and the characters read, if it is within the maximum edits.
+	 *
+	 * @param state An accepting state.
+	 * @return The least number of edits, or maxEdits + 1 if the state does not accept.
+	 */
+	int distance(long[] state)
+	{
+		int d = 0;
+		while (d <= maxEdits && (state[d] & accept) == 0) d++;
+		return d;
+	}
+
+	private long positionsOf(char c)
+	{
+		if (c < ASCII) return asciiPositions[c];
+
+		Long positions = otherPositions.get(c);
+		return positions == null ? 0L : positions;
+	}
+}
@@ -0,0 +1,27 @@
+package com.helenusdb.index.inverted;
+
+/**
+ * PostingCursor walks the postings of a term: the ascending ids of the documents containing it, the number of times it
+ * occurs in each and, for a positional index, where.
+ *
+ * @see PostingList.Cursor
+ * @see TermPostings
+ */
+interface PostingCursor
+extends DocIdIterator
+{
+	/**
+	 * Returns the number of times the term occurs in the current document.
+	 *
+	 * @return The term frequency of the current document.
+	 */
+	int freq();
+
+	/**
+	 * Returns the next position of the term in the current document. May be called up to freq() times per document.
+	 *
+	 * @return The next position, in ascending order.
+	 * @throws IllegalStateException if the postings have no positions.
+	 */
+	int nextPosition();
+}
@@ -0,0 +1,528 @@
+package com.helenusdb.index.inverted;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * PostingList is the sorted list of ids of the documents containing a term, with the number of times the term occurs
+ * in each, compressed instead of held as a set of boxed Integers. Each id is stored as its difference from the previous
+ * id, followed by its term frequency, both written as variable-length integers of seven bits per byte, so the dense
+ * postings of common terms take about two bytes per document.
+ *
+ * The list is split into blocks of BLOCK_SIZE ids. For every block after the first, a skip entry records the last id
+ * of the previous block and the byte offset the block starts at, so advancing a cursor to a target id jumps straight to
+ * the block that may hold it and decodes only that block. Lists shorter than a block keep no skip entries at all.
+ *
+ * A list created with positions also stores, after each frequency, the byte length of the document's positions and
+ * then the positions themselves as ascending deltas, so phrase and proximity queries can be checked against the
+ * postings alone. Cursors that never ask for positions jump over them using the stored byte length.
+ *
+ * The list also keeps the largest term frequency and the shortest document length among its postings, which bound the
+ * score any of its documents can contribute to a ranked query.
+ *
+ * Ids must be added in ascending order, as InvertedWordIndex hands them out. A PostingList is not thread safe, but a
+ * view taken while holding the writer's lock can be read by any thread, since later additions never change the bytes
+ * it covers.
+ *
+ * @see InvertedWordIndex
+ */
+class PostingList
+{
+	static final int BLOCK_SIZE = 128;
+
+	private static final byte[] EMPTY_BYTES = new byte[0];
+	private static final int[] EMPTY_SKIPS = new int[0];
+
+	private final boolean hasPositions;
+	private byte[] data = EMPTY_BYTES;
+	private int length;
+	private int size;
+	private int lastDoc = -1;
+	private int lastFreq;
+	private int lastFreqOffset;
+	private int maxFreq;
+	private int minDocLength = Integer.MAX_VALUE;
+
+	// The positions of the last document, kept to rewrite its entry as positions are added.
+	private int[] lastPositions = EMPTY_SKIPS;
+
+	// The last id before each block after the first, and the byte offset that block starts at.
+	private int[] skipDocs = EMPTY_SKIPS;
+	private int[] skipOffsets = EMPTY_SKIPS;
+
+	/**
+	 * Constructs a PostingList without positions.
+	 */
+	PostingList()
+	{
+		this(false);
+	}
+
+	/**
+	 * Constructs a PostingList.
+	 *
+	 * @param hasPositions True to store the position of every occurrence, false otherwise.
+	 */
+	PostingList(boolean hasPositions)
+	{
+		this.hasPositions = hasPositions;
+	}
+
+	/**
+	 * Constructs a read-only view of the list as it is now, sharing its arrays.
+	 *
+	 * @param list The list to view.
+	 */
+	private PostingList(PostingList list)
+	{
+		this.hasPositions = list.hasPositions;
+		this.data = list.data;
+		this.length = list.length;
+		this.size = list.size;
+		this.lastDoc = list.lastDoc;
+		this.maxFreq = list.maxFreq;
+		this.minDocLength = list.minDocLength;
+		this.skipDocs = list.skipDocs;
+		this.skipOffsets = list.skipOffsets;
+	}
+
+	/**
+	 * Adds an occurrence of the term in a document of unknown length. Adding the last id again counts another
+	 * occurrence in that document.
+	 *
+	 * @param doc The document id, which must not be less than the last id added.
+	 * @throws IllegalArgumentException if the id is less than the last id added.
+	 */
+	public void add(int doc)
+	{
+		add(doc, 0);
+	}
+
+	/**
+	 * Adds an occurrence of the term in a document. Adding the last id again counts another occurrence in that
+	 * document.
+	 *
+	 * @param doc       The document id, which must not be less than the last id added.
+	 * @param docLength The number of terms in the document, or 0 if unknown.
+	 * @throws IllegalArgumentException if the id is less than the last id added.
+	 */
+	public void add(int doc, int docLength)
+	{
+		add(doc, docLength, -1);
+	}
+
+	/**
+	 * Adds an occurrence of the term at a position in a document. Adding the last id again counts another occurrence
+	 * in that document.
+	 *
+	 * @param doc       The document id, which must not be less than the last id added.
+	 * @param docLength The number of terms in the document, or 0 if unknown.
+	 * @param position  The position of the occurrence, which must be greater than that of the document's previous
+	 *                  occurrence. Ignored if the list has no positions.
+	 * @throws IllegalArgumentException if the id or position is out of order.
+	 */
+	public void add(int doc, int docLength, int position)
+	{
+		addOccurrence(doc, position);
+		addDocLength(docLength);
+	}
+
+	/**
+	 * Adds an occurrence of the term at a position in a document whose length is not known yet, so a document can be
+	 * indexed while it is analyzed. Its length must be recorded with addDocLength once it is.
+	 *
+	 * @param doc      The document id, which must not be less than the last id added.
+	 * @param position The position of the occurrence, which must be greater than that of the document's previous
+	 *                 occurrence. Ignored if the list has no positions.
+	 * @throws IllegalArgumentException if the id or position is out of order.
+	 */
+	void addOccurrence(int doc, int position)
+	{
+		if (doc < lastDoc) throw new IllegalArgumentException("Document ids must ascend: " + doc + " after " + lastDoc);
+
+		if (hasPositions && (position < 0 || doc == lastDoc && position <= lastPositions[lastFreq - 1]))
+		{
+			throw new IllegalArgumentException("Positions must ascend: " + position + " in " + doc);
+		}
+
+		if (doc != lastDoc)
+		{
+			if (size > 0 && size % BLOCK_SIZE == 0) addSkip();
+
+			// The first id is stored as id + 1 so every stored delta is positive.
+			ensureCapacity(length + 5);
+			length = writeVarInt(data, length, doc - lastDoc);
+			lastFreqOffset = length;
+			lastFreq = 0;
+			lastDoc = doc;
+			size++;
+		}
+
+		if (hasPositions)
+		{
+			if (lastFreq == lastPositions.length) lastPositions = Arrays.copyOf(lastPositions, Math.max(4, lastFreq * 2));
+			lastPositions[lastFreq] = position;
+		}
+
+		maxFreq = Math.max(maxFreq, ++lastFreq);
+		writeLastEntry();
+	}
+
+	/**
+	 * Records the length of the last document added, which bounds the length normalization of its score.
+	 *
+	 * @param docLength The number of terms in the document, or 0 if unknown.
+	 */
+	void addDocLength(int docLength)
+	{
+		minDocLength = Math.min(minDocLength, docLength);
+	}
+
+	/**
+	 * Appends the postings of another list, whose ids must all be greater than the last id of this one, except those of
+	 * deleted documents. Used to merge the postings of adjacent segments and purge deleted documents from them.
+	 *
+	 * @param other     The list to append, which must store positions if this one does.
+	 * @param isDeleted The predicate selecting the ids of documents to leave out.
+	 * @throws IllegalArgumentException if the ids of the other list do not follow those of this one.
+	 */
+	public void addAll(PostingList other, IntPredicate isDeleted)
+	{
+		if (other.size > 0 && other.cursor().nextDoc() <= lastDoc)
+		{
+			throw new IllegalArgumentException("Document ids must ascend: postings overlap at " + lastDoc);
+		}
+
+		for (Cursor cursor = other.cursor(); cursor.nextDoc() != DocIdIterator.NO_MORE_DOCS;)
+		{
+			if (isDeleted.test(cursor.docId())) continue;
+
+			for (int i = cursor.freq(); i > 0; i--)
+			{
+				add(cursor.docId(), Integer.MAX_VALUE, hasPositions ? cursor.nextPosition() : -1);
+			}
+		}
+
+		minDocLength = Math.min(minDocLength, other.minDocLength);
+	}
+
+	/**
+	 * Returns a read-only view of the postings added so far. The view shares the arrays of the list, so it is cheap to
+	 * take, and it is unaffected by postings added afterwards, which are written past the bytes it covers. It must not
+	 * be added to.
+	 *
+	 * @return The view.
+	 */
+	public PostingList view()
+	{
+		return new PostingList(this);
+	}
+
+	/**
+	 * Returns true if the list stores positions.
+	 *
+	 * @return True if the list stores positions, false otherwise.
+	 */
+	public boolean hasPositions()
+	{
+		return hasPositions;
+	}
+
+	/**
+	 * Returns the number of document ids.
+	 *
+	 * @return The number of ids.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the last, and largest, document id.
+	 *
+	 * @return The last id, or -1 if the list is empty.
+	 */
+	public int getLastDoc()
+	{
+		return lastDoc;
+	}
+
+	/**
+	 * Returns the largest number of times the term occurs in any one document.
+	 *
+	 * @return The largest term frequency, or 0 if the list is empty.
+	 */
+	public int getMaxFreq()
+	{
+		return maxFreq;
+	}
+
+	/**
+	 * Returns the length of the shortest document containing the term.
+	 *
+	 * @return The shortest document length, 0 if any length was unknown, or Integer.MAX_VALUE if the list is empty.
+	 */
+	public int getMinDocLength()
+	{
+		return minDocLength;
+	}
+
+	/**
+	 * Releases any spare capacity once the list is no longer being added to.
+	 */
+	public void trim()
+	{
+		if (data.length > length) data = Arrays.copyOf(data, length);
+
+		int skips = skipCount();
+		if (skipDocs.length > skips)
+		{
+			skipDocs = Arrays.copyOf(skipDocs, skips);
+			skipOffsets = Arrays.copyOf(skipOffsets, skips);
+		}
+	}
+
+	/**
+	 * Returns an estimate of the heap used by the list: its header, arrays and their contents.
+	 *
+	 * @return The estimated size in bytes.
+	 */
+	public long estimateBytes()
+	{
+		return 64L + 16L + data.length + (skipDocs == EMPTY_SKIPS ? 0L : 32L + 8L * skipDocs.length)
+			+ (lastPositions == EMPTY_SKIPS ? 0L : 16L + 4L * lastPositions.length);
+	}
+
+	/**
+	 * Returns a cursor over the document ids, positioned before the first. The cursor walks the ids present when it
+	 * was created.
+	 *
+	 * @return A new cursor.
+	 */
+	public Cursor cursor()
+	{
+		return new Cursor();
+	}
+
+	private int skipCount()
+	{
+		return size == 0 ? 0 : (size - 1) / BLOCK_SIZE;
+	}
+
+	private void addSkip()
+	{
+		int skip = size / BLOCK_SIZE - 1;
+
+		if (skip == skipDocs.length)
+		{
+			int capacity = Math.max(4, skip + (skip >> 1));
+			skipDocs = Arrays.copyOf(skipDocs, capacity);
+			skipOffsets = Arrays.copyOf(skipOffsets, capacity);
+		}
+
+		skipDocs[skip] = lastDoc;
+		skipOffsets[skip] = length;
+	}
+
+	/**
+	 * Rewrites the frequency, and any positions, of the last document. They are the end of the data, so they can be
+	 * rewritten in place as occurrences are added.
+	 */
+	private void writeLastEntry()
+	{
+		int positionBytes = 0;
+
+		for (int i = 0, previous = -1; hasPositions && i < lastFreq; previous = lastPositions[i++])
+		{
+			positionBytes += varIntSize(lastPositions[i] - previous);
+		}
+
+		ensureCapacity(lastFreqOffset + 10 + positionBytes);
+		int offset = writeVarInt(data, lastFreqOffset, lastFreq);
+
+		if (hasPositions)
+		{
+			offset = writeVarInt(data, offset, positionBytes);
+
+			for (int i = 0, previous = -1; i < lastFreq; previous = lastPositions[i++])
+			{
+				offset = writeVarInt(data, offset, lastPositions[i] - previous);
+			}
+		}
+
+		length = offset;
+	}
+
+	private static int varIntSize(int value)
+	{
+		return value < 0 ? 5 : (38 - Integer.numberOfLeadingZeros(value | 1)) / 7;
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity <= data.length) return;
+
+		data = Arrays.copyOf(data, Math.max(capacity, Math.max(8, data.length + (data.length >> 1))));
+	}
+
+	static int writeVarInt(byte[] target, int offset, int value)
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			target[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		target[offset++] = (byte) value;
+		return offset;
+	}
+
+	/**
+	 * Cursor decodes the ids and frequencies of a PostingList one at a time, using the skip entries to advance past
+	 * whole blocks. The positions of the current document are only decoded when asked for.
+	 */
+	class Cursor
+	implements PostingCursor
+	{
+		private final byte[] bytes = data;
+		private final int count = size;
+		private final int skips = skipCount();
+		private int position = -1;
+		private int offset;
+		private int doc = -1;
+		private int freq;
+		private int positionOffset;
+		private int lastPosition;
+
+		@Override
+		public int docId()
+		{
+			return doc;
+		}
+
+		@Override
+		public int freq()
+		{
+			return freq;
+		}
+
+		@Override
+		public int nextDoc()
+		{
+			if (++position >= count)
+			{
+				position = count;
+				return doc = NO_MORE_DOCS;
+			}
+
+			doc += readVarInt();
+			freq = readVarInt();
+
+			if (hasPositions)
+			{
+				int positionBytes = readVarInt();
+				positionOffset = offset;
+				lastPosition = -1;
+				offset += positionBytes;
+			}
+
+			return doc;
+		}
+
+		@Override
+		public int nextPosition()
+		{
+			if (!hasPositions) throw new IllegalStateException("Postings have no positions");
+
+			int value = 0;
+			int shift = 0;
+			byte b;
+
+			do
+			{
+				b = bytes[positionOffset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while (b < 0);
+
+			return lastPosition += value;
+		}
+
+		@Override
+		public int advance(int target)
+		{
+			if (doc >= target) return doc;
+
+			skipTo(target);
+
+			while (nextDoc() < target)
+			{
+				// Decode within the block the target may be in.
+			}
+
+			return doc;
+		}
+
+		@Override
+		public long cost()
+		{
+			return count;
+		}
+
+		private int readVarInt()
+		{
+			int value = 0;
+			int shift = 0;
+			byte b;
+
+			do
+			{
+				b = bytes[offset++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while (b < 0);
+
+			return value;
+		}
+
+		/**
+		 * Jumps to the last block whose preceding id is below the target, if it is past the current block. The skip
+		 * entries are searched by galloping from the current block, then by binary search, so advancing by a short
+		 * distance stays cheap.
+		 */
+		private void skipTo(int target)
+		{
+			int block = (position + 1) / BLOCK_SIZE;
+			if (block >= skips || skipDocs[block] >= target) return;
+
+			// skipDocs[i] is the last id before block i + 1; find the last i with skipDocs[i] < target.
+			int low = block;
+			int step = 1;
+			int high = low + step;
+
+			while (high < skips && skipDocs[high] < target)
+			{
+				low = high;
+				step <<= 1;
+				high = low + step;
+			}
+
+			high = Math.min(high, skips);
+
+			while (low + 1 < high)
+			{
+				int middle = (low + high) >>> 1;
+
+				if (skipDocs[middle] < target) low = middle;
+				else high = middle;
+			}
+
+			position = (low + 1) * BLOCK_SIZE - 1;
+			offset = skipOffsets[low];
+			doc = skipDocs[low];
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package com.helenusdb.index.inverted;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ProximityIterator yields the documents in which the terms of several positional cursors occur close together. The
+ * cursors are intersected like a ConjunctionIterator, and each common document is then checked against the positions
+ * of its terms, so the stored values are never consulted.
+ *
+ * An ordered match requires term i to occur at position p + offset i for some position p of the first term: an exact
+ * phrase, in which a removed stop word leaves a gap between the offsets of its neighbors.
+ * An unordered match requires one occurrence of every term within a window whose first and last positions differ by
+ * at most the given distance, in any order; two adjacent terms are at distance 1.
+ */
+class ProximityIterator
+implements DocIdIterator
+{
+	private final PostingCursor[] cursors;
+	private final ConjunctionIterator conjunction;
+	private final boolean isOrdered;
+	private final int distance;
+	private final int[] offsets;
+	private final int[][] positions;
+	private final int[] counts;
+	private final int[] next;
+	private int doc = -1;
+
+	/**
+	 * Constructs a ProximityIterator for an exact phrase.
+	 *
+	 * @param cursors The positional cursors of the phrase's terms, in phrase order.
+	 * @param offsets The position of each term relative to the first.
+	 * @return The iterator.
+	 */
+	static ProximityIterator phrase(List<PostingCursor> cursors, int[] offsets)
+	{
+		return new ProximityIterator(cursors, true, 0, offsets);
+	}
+
+	/**
+	 * Constructs a ProximityIterator for terms within a distance of each other.
+	 *
+	 * @param cursors  The positional cursors of the distinct terms.
+	 * @param distance The greatest distance between the first and last of the terms.
+	 * @return The iterator.
+	 */
+	static ProximityIterator near(List<PostingCursor> cursors, int distance)
+	{
+		return new ProximityIterator(cursors, false, distance, null);
+	}
+
+	private ProximityIterator(List<PostingCursor> cursors, boolean isOrdered, int distance, int[] offsets)
+	{
+		this.cursors = cursors.toArray(new PostingCursor[0]);
+		this.conjunction = new ConjunctionIterator(cursors);
+		this.isOrdered = isOrdered;
+		this.distance = distance;
+		this.offsets = offsets;
+		this.positions = new int[this.cursors.length][4];
+		this.counts = new int[this.cursors.length];
+		this.next = new int[this.cursors.length];
+	}
+
+	@Override
+	public int docId()
+	{
+		return doc;
+	}
+
+	@Override
+	public int nextDoc()
+	{
+		if (doc == NO_MORE_DOCS) return doc;
+		return doc = verify(conjunction.nextDoc());
+	}
+
+	@Override
+	public int advance(int target)
+	{
+		if (doc >= target) return doc;
+		return doc = verify(conjunction.advance(target));
+	}
+
+	@Override
+	public long cost()
+	{
+		return conjunction.cost();
+	}
+
+	private int verify(int candidate)
+	{
+		while (candidate != NO_MORE_DOCS)
+		{
+			loadPositions();
+			if (isOrdered ? matchesPhrase() : matchesWindow()) return candidate;
+
+			candidate = conjunction.nextDoc();
+		}
+
+		return NO_MORE_DOCS;
+	}
+
+	private void loadPositions()
+	{
+		for (int i = 0; i < cursors.length; i++)
+		{
+			int freq = cursors[i].freq();
+			if (positions[i].length < freq) positions[i] = new int[Math.max(freq, positions[i].length * 2)];
+
+			for (int j = 0; j < freq; j++)
+			{
+				positions[i][j] = cursors[i].nextPosition();
+			}
+
+			counts[i] = freq;
+		}
+	}
+
+	/**
+	 * Checks for a start position p with term i at p + offsets[i], walking every term's positions forward together.
+	 */
+	private boolean matchesPhrase()
+	{
+		Arrays.fill(next, 0);
+
+		for (int first = 0; first < counts[0]; first++)
+		{
+			int start = positions[0][first];
+			boolean isMatch = true;
+
+			for (int i = 1; i < cursors.length; i++)
+			{
+				int wanted = start + offsets[i];
+				while (next[i] < counts[i] && positions[i][next[i]] < wanted) next[i]++;
+
+				if (next[i] == counts[i]) return false;
+				if (positions[i][next[i]] != wanted)
+				{
+					isMatch = false;
+					break;
+				}
+			}
+
+			if (isMatch) return true;
+		}
+
+		return false;
+	}
+	/**
+	 * Finds the narrowest window holding an occurrence of every term by repeatedly advancing the term at the window's
+	 * start, as in a k-way merge.
+	 */
+	private boolean matchesWindow()
+	{
+		Arrays.fill(next, 0);
+
+		while (true)
+		{
+			int minimum = Integer.MAX_VALUE;
+			int maximum = Integer.MIN_VALUE;
+			int lowest = 0;
+
+			for (int i = 0; i < cursors.length; i++)
+			{
+				int position = positions[i][next[i]];
+				if (position < minimum)
+				{
+					minimum = position;
+					lowest = i;
+				}
+
+				maximum = Math.max(maximum, position);
+			}
+
+			if (maximum - minimum <= distance) return true;
+			if (++next[lowest] == counts[lowest]) return false;
+		}
+	}
+}
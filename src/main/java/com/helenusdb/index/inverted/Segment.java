@@ -0,0 +1,303 @@
+package com.helenusdb.index.inverted;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Segment is an immutable part of an InvertedWordIndex: the postings of the phrases in a consecutive range of document
+ * ids. Its terms are held in a TermDictionary, a minimal finite-state transducer that maps each term to its ordinal in
+ * sorted order, which indexes the array of their compressed, trimmed postings. Besides looking terms up, the dictionary
+ * enumerates the terms matching a prefix, a range or a wildcard pattern without visiting any other term.
+ *
+ * A segment is written once, when the index flushes its buffer, and never changed afterwards, so any number of
+ * threads can read it without locking. Adjacent segments are merged into a new one, whose postings are those of its
+ * inputs appended in order; the inputs are dropped once no query reads them. Merging leaves out the postings of
+ * deleted documents, and a segment is purged of them by merging it alone.
+ *
+ * @see InvertedWordIndex
+ * @see TieredMergePolicy
+ */
+final class Segment
+{
+	private final TermDictionary dictionary;
+	private final PostingList[] postings;
+	private final int docBase;
+	private final int docCount;
+	private final long postingCount;
+
+	// The number of deleted documents in the range whose postings were left out.
+	private final int deletedCount;
+
+	private Segment(TermDictionary dictionary, PostingList[] postings, int docBase, int docCount, int deletedCount)
+	{
+		this.dictionary = dictionary;
+		this.postings = postings;
+		this.docBase = docBase;
+		this.docCount = docCount;
+		this.deletedCount = deletedCount;
+		long count = 0;
+
+		for (PostingList list : postings)
+		{
+			count += list.size();
+		}
+
+		this.postingCount = count;
+	}
+
+	/**
+	 * Writes the postings of a buffer into a new segment. The buffer must not be added to afterwards.
+	 *
+	 * @param buffer   The postings of each term in the buffer.
+	 * @param docBase  The first document id of the buffer.
+	 * @param docCount The number of documents in the buffer.
+	 * @return The new segment.
+	 */
+	static Segment flush(Map<String, PostingList> buffer, int docBase, int docCount)
+	{
+		return flush(buffer, docBase, docCount, 0);
+	}
+
+	private static Segment flush(Map<String, PostingList> buffer, int docBase, int docCount, int deletedCount)
+	{
+		String[] terms = buffer.keySet().toArray(new String[0]);
+		Arrays.sort(terms);
+		PostingList[] postings = new PostingList[terms.length];
+
+		for (int i = 0; i < terms.length; i++)
+		{
+			postings[i] = buffer.get(terms[i]);
+			postings[i].trim();
+		}
+
+		return new Segment(TermDictionary.build(terms), postings, docBase, docCount, deletedCount);
+	}
+
+	/**
+	 * Merges adjacent segments into one, leaving out the postings of deleted documents. Terms left without postings
+	 * are dropped.
+	 *
+	 * @param segments The segments to merge, in document id order, with no gap between their ranges.
+	 * @param deleted  The ids of the deleted documents, which must not change during the merge.
+	 * @return The merged segment.
+	 */
+	static Segment merge(List<Segment> segments, BitSet deleted)
+	{
+		Map<String, PostingList> merged = new TreeMap<>();
+
+		for (Segment segment : segments)
+		{
+			String[] terms = segment.dictionary.terms();
+
+			for (int i = 0; i < terms.length; i++)
+			{
+				PostingList source = segment.postings[i];
+				PostingList target = merged.computeIfAbsent(terms[i], term -> new PostingList(source.hasPositions()));
+				target.addAll(source, deleted::get);
+			}
+		}
+
+		merged.values().removeIf(list -> list.size() == 0);
+		Segment first = segments.get(0);
+		Segment last = segments.get(segments.size() - 1);
+		int docCount = last.docBase + last.docCount - first.docBase;
+		return flush(merged, first.docBase, docCount, countDeleted(deleted, first.docBase, docCount));
+	}
+
+	/**
+	 * Returns the number of deleted documents in a range of ids.
+	 *
+	 * @param deleted  The ids of the deleted documents.
+	 * @param docBase  The first id of the range.
+	 * @param docCount The number of ids in the range.
+	 * @return The number of deleted ids in the range.
+	 */
+	static int countDeleted(BitSet deleted, int docBase, int docCount)
+	{
+		return deleted.get(docBase, docBase + docCount).cardinality();
+	}
+
+	/**
+	 * Returns the postings of a term.
+	 *
+	 * @param term The normalized term.
+	 * @return The postings of the term, or null if no document in the segment contains it.
+	 */
+	PostingList getPostings(CharSequence term)
+	{
+		int ordinal = dictionary.ordinal(term);
+		return ordinal < 0 ? null : postings[ordinal];
+	}
+
+	/**
+	 * Adds the postings of the terms between two bounds.
+	 *
+	 * @param lower   The least term, inclusive, or null for no lower bound.
+	 * @param upper   The greatest term, inclusive, or null for no upper bound.
+	 * @param matches The list to add the postings to.
+	 */
+	void addRange(CharSequence lower, CharSequence upper, List<PostingList> matches)
+	{
+		int from = lower == null ? 0 : dictionary.rank(lower, false);
+		int to = upper == null ? postings.length : dictionary.rank(upper, true);
+		addOrdinals(from, to, matches);
+	}
+
+	/**
+	 * Adds the postings of the terms matching a wildcard pattern. A literal pattern is looked up and a prefix pattern
+	 * is one range of ordinals; only other patterns walk the dictionary with the automaton.
+	 *
+	 * @param pattern The wildcard pattern.
+	 * @param matches The list to add the postings to.
+	 */
+	void addWildcard(WildcardAutomaton pattern, List<PostingList> matches)
+	{
+		if (pattern.isLiteral())
+		{
+			PostingList list = getPostings(pattern.getPrefix());
+			if (list != null) matches.add(list);
+		}
+		else if (pattern.isPrefix())
+		{
+			long range = dictionary.prefixRange(pattern.getPrefix());
+			addOrdinals((int) (range >>> Integer.SIZE), (int) range, matches);
+		}
+		else
+		{
+			dictionary.intersect(pattern, (state, ordinal) -> matches.add(postings[ordinal]));
+		}
+	}
+
+	/**
+	 * Enumerates the ordinals of the terms an automaton accepts, whose postings getPostings(int) returns.
+	 *
+	 * @param automaton The automaton.
+	 * @param visitor   Receives the final state of the automaton and the ordinal of each accepted term.
+	 */
+	<S> void intersect(TermAutomaton<S> automaton, ObjIntConsumer<S> visitor)
+	{
+		dictionary.intersect(automaton, visitor);
+	}
+
+	/**
+	 * Returns the postings of the term with an ordinal.
+	 *
+	 * @param ordinal The ordinal of the term.
+	 * @return The postings of the term.
+	 */
+	PostingList getPostings(int ordinal)
+	{
+		return postings[ordinal];
+	}
+
+	/**
+	 * Returns the term with an ordinal.
+	 *
+	 * @param ordinal The ordinal of the term.
+	 * @return The term.
+	 */
+	String getTerm(int ordinal)
+	{
+		return dictionary.term(ordinal);
+	}
+
+	private void addOrdinals(int from, int to, List<PostingList> matches)
+	{
+		for (int ordinal = from; ordinal < to; ordinal++)
+		{
+			matches.add(postings[ordinal]);
+		}
+	}
+
+	/**
+	 * Returns the first document id of the segment.
+	 *
+	 * @return The first document id.
+	 */
+	int getDocBase()
+	{
+		return docBase;
+	}
+
+	/**
+	 * Returns the number of document ids the segment covers.
+	 *
+	 * @return The number of documents.
+	 */
+	int getDocCount()
+	{
+		return docCount;
+	}
+
+	/**
+	 * Returns the number of deleted documents whose postings the segment still holds, and a purge would remove.
+	 *
+	 * @param deleted The ids of the deleted documents.
+	 * @return The number of deleted documents left to purge.
+	 */
+	int countPendingDeletes(BitSet deleted)
+	{
+		return countDeleted(deleted, docBase, docCount) - deletedCount;
+	}
+
+	/**
+	 * Returns the terms of the segment, spelled out from its dictionary.
+	 *
+	 * @return The terms, in ascending order.
+	 */
+	String[] getTerms()
+	{
+		return dictionary.terms();
+	}
+
+	/**
+	 * Returns the number of terms in the segment.
+	 *
+	 * @return The number of terms.
+	 */
+	int getTermCount()
+	{
+		return postings.length;
+	}
+
+	/**
+	 * Returns an estimate of the heap used by the term dictionary of the segment, in bytes.
+	 *
+	 * @return The estimated size of the dictionary.
+	 */
+	long estimateTermBytes()
+	{
+		return dictionary.estimateBytes();
+	}
+
+	/**
+	 * Returns the number of postings in the segment: for each term, the number of documents containing it.
+	 *
+	 * @return The number of postings.
+	 */
+	long getPostingCount()
+	{
+		return postingCount;
+	}
+
+	/**
+	 * Returns an estimate of the heap used by the postings of the segment, in bytes.
+	 *
+	 * @return The estimated size of the postings.
+	 */
+	long estimatePostingBytes()
+	{
+		long bytes = 0;
+
+		for (PostingList list : postings)
+		{
+			bytes += list.estimateBytes();
+		}
+
+		return bytes;
+	}
+}
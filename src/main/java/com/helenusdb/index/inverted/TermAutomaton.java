@@ -0,0 +1,65 @@
+package com.helenusdb.index.inverted;
+
+/**
+ * TermAutomaton is a deterministic automaton over the characters of a term. It is run in step with a walk of a
+ * TermDictionary, so only the terms it accepts are enumerated, and a prefix it rejects is not followed any further.
+ *
+ * @param <S> The type of the states of the automaton.
+ * @see TermDictionary#intersect(TermAutomaton, java.util.function.ObjIntConsumer)
+ */
+interface TermAutomaton<S>
+{
+	/**
+	 * Returns the start state, before any character is read.
+	 *
+	 * @return The start state.
+	 */
+	S start();
+
+	/**
+	 * Reads a character.
+	 *
+	 * @param state The current state.
+	 * @param c     The character to read.
+	 * @return The next state, or null if no term continuing with the character is accepted.
+	 */
+	S step(S state, char c);
+
+	/**
+	 * Returns true if a term ending in the state is accepted.
+	 *
+	 * @param state The state.
+	 * @return True if the state accepts, false otherwise.
+	 */
+	boolean isAccept(S state);
+
+	/**
+	 * Runs the automaton over a whole term.
+	 *
+	 * @param term The term.
+	 * @return True if the term is accepted, false otherwise.
+	 */
+	default boolean matches(CharSequence term)
+	{
+		S state = run(term);
+		return state != null && isAccept(state);
+	}
+
+	/**
+	 * Reads every character of a term from the start state.
+	 *
+	 * @param term The term.
+	 * @return The state after the term, or null if no term starting with it is accepted.
+	 */
+	default S run(CharSequence term)
+	{
+		S state = start();
+
+		for (int i = 0; i < term.length() && state != null; i++)
+		{
+			state = step(state, term.charAt(i));
+		}
+
+		return state;
+	}
+}
@@ -0,0 +1,437 @@
+package com.helenusdb.index.inverted;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * TermDictionary is the sorted term dictionary of a Segment, held as a minimal acyclic finite-state transducer that
+ * maps each term to its ordinal: its position in sorted order, which indexes the segment's postings. Terms sharing a
+ * suffix share the states that spell it, as terms sharing a prefix do in a trie, so the dictionary takes a fraction of
+ * the heap of the terms as Strings, let alone as HashMap keys.
+ *
+ * Each arc is labelled with a character and outputs the number of terms that sort before any term reached through it
+ * from the same state: those ending at that state and those reached through its lower arcs. Summing the outputs along
+ * the path of a term gives its ordinal. The states are laid out in flat arrays, each state's arcs sorted by label:
+ *
+ * <pre>
+ * arcStart[s]  the index of the first arc of state s; its arcs run until arcStart[s + 1]
+ * isFinal[s]   whether a term ends at state s
+ * count[s]     the number of terms accepted from state s
+ * labels[a]    the character of arc a
+ * targets[a]   the state arc a leads to
+ * outputs[a]   the ordinal offset of arc a
+ * </pre>
+ *
+ * The terms starting with a prefix are one range of ordinals, from the ordinal offset of the prefix's state, so prefix
+ * and range queries need only two walks. Other patterns are enumerated by walking the transducer in step with a
+ * TermAutomaton, never following an arc it rejects.
+ *
+ * The transducer is built from sorted terms with the incremental algorithm of Daciuk et al.: as each term is added,
+ * the states of the previous term's suffix that the new term does not share are frozen and replaced by an equivalent
+ * registered state, if there is one, so the transducer stays minimal without being built as a trie first.
+ *
+ * @see Segment
+ */
+final class TermDictionary
+{
+	private final int root;
+	private final int[] arcStart;
+	private final boolean[] isFinal;
+	private final int[] count;
+	private final char[] labels;
+	private final int[] targets;
+	private final int[] outputs;
+
+	private TermDictionary(int root, int[] arcStart, boolean[] isFinal, int[] count, char[] labels, int[] targets,
+		int[] outputs)
+	{
+		this.root = root;
+		this.arcStart = arcStart;
+		this.isFinal = isFinal;
+		this.count = count;
+		this.labels = labels;
+		this.targets = targets;
+		this.outputs = outputs;
+	}
+
+	/**
+	 * Builds a TermDictionary of the given terms.
+	 *
+	 * @param terms The distinct terms, in ascending order.
+	 * @return The dictionary, which gives each term its index in the array as its ordinal.
+	 * @throws IllegalArgumentException if the terms are not distinct and ascending.
+	 */
+	static TermDictionary build(String[] terms)
+	{
+		Builder builder = new Builder();
+
+		for (String term : terms)
+		{
+			builder.add(term);
+		}
+
+		return builder.finish();
+	}
+
+	/**
+	 * Returns the number of terms.
+	 *
+	 * @return The number of terms.
+	 */
+	int size()
+	{
+		return count[root];
+	}
+
+	/**
+	 * Returns the ordinal of a term.
+	 *
+	 * @param term The term.
+	 * @return The position of the term in sorted order, or -1 if the dictionary does not hold it.
+	 */
+	int ordinal(CharSequence term)
+	{
+		int state = root;
+		int ordinal = 0;
+
+		for (int i = 0; i < term.length(); i++)
+		{
+			int arc = findArc(state, term.charAt(i));
+			if (arc < 0) return -1;
+
+			ordinal += outputs[arc];
+			state = targets[arc];
+		}
+
+		return isFinal[state] ? ordinal : -1;
+	}
+
+	/**
+	 * Spells out the term with an ordinal, choosing at each state the last arc whose output does not pass it.
+	 *
+	 * @param ordinal The ordinal, between 0 and size() - 1.
+	 * @return The term.
+	 */
+	String term(int ordinal)
+	{
+		StringBuilder term = new StringBuilder();
+		int state = root;
+
+		while (ordinal > 0 || !isFinal[state])
+		{
+			int arc = arcStart[state];
+
+			while (arc + 1 < arcStart[state + 1] && outputs[arc + 1] <= ordinal)
+			{
+				arc++;
+			}
+
+			term.append(labels[arc]);
+			ordinal -= outputs[arc];
+			state = targets[arc];
+		}
+
+		return term.toString();
+	}
+
+	/**
+	 * Returns the number of terms that sort before the given one, or up to it if inclusive.
+	 *
+	 * @param term      The term, which the dictionary need not hold.
+	 * @param inclusive True to also count the term itself, if the dictionary holds it.
+	 * @return The number of terms less than, or if inclusive not greater than, the term.
+	 */
+	int rank(CharSequence term, boolean inclusive)
+	{
+		int state = root;
+		int rank = 0;
+
+		for (int i = 0; i < term.length(); i++)
+		{
+			int arc = findArc(state, term.charAt(i));
+
+			if (arc < 0)
+			{
+				// Every term through a lower arc sorts before the term, and none through a higher one.
+				int insertion = -arc - 1;
+				return rank + (insertion < arcStart[state + 1] ? outputs[insertion] : count[state]);
+			}
+
+			rank += outputs[arc];
+			state = targets[arc];
+		}
+
+		return inclusive && isFinal[state] ? rank + 1 : rank;
+	}
+
+	/**
+	 * Returns the ordinals of the terms starting with a prefix, which are consecutive.
+	 *
+	 * @param prefix The prefix.
+	 * @return The first ordinal and one past the last, packed as the high and low halves of a long.
+	 */
+	long prefixRange(CharSequence prefix)
+	{
+		int state = root;
+		int ordinal = 0;
+
+		for (int i = 0; i < prefix.length(); i++)
+		{
+			int arc = findArc(state, prefix.charAt(i));
+			if (arc < 0) return 0L;
+
+			ordinal += outputs[arc];
+			state = targets[arc];
+		}
+
+		return (long) ordinal << Integer.SIZE | (ordinal + count[state]);
+	}
+
+	/**
+	 * Enumerates the terms an automaton accepts, in ascending order, walking only the arcs it can follow.
+	 *
+	 * @param automaton The automaton.
+	 * @param visitor   Receives the final state of the automaton and the ordinal of each accepted term.
+	 */
+	<S> void intersect(TermAutomaton<S> automaton, ObjIntConsumer<S> visitor)
+	{
+		S start = automaton.start();
+		if (start != null) intersect(root, 0, start, automaton, visitor);
+	}
+
+	private <S> void intersect(int state, int ordinal, S automatonState, TermAutomaton<S> automaton,
+		ObjIntConsumer<S> visitor)
+	{
+		if (isFinal[state] && automaton.isAccept(automatonState)) visitor.accept(automatonState, ordinal);
+
+		for (int arc = arcStart[state]; arc < arcStart[state + 1]; arc++)
+		{
+			S next = automaton.step(automatonState, labels[arc]);
+			if (next != null) intersect(targets[arc], ordinal + outputs[arc], next, automaton, visitor);
+		}
+	}
+
+	/**
+	 * Spells out every term, for merging and counting distinct terms across segments.
+	 *
+	 * @return The terms, in ascending order.
+	 */
+	String[] terms()
+	{
+		String[] terms = new String[size()];
+		spell(root, new StringBuilder(), terms, 0);
+		return terms;
+	}
+
+	private int spell(int state, StringBuilder term, String[] terms, int ordinal)
+	{
+		if (isFinal[state]) terms[ordinal++] = term.toString();
+
+		for (int arc = arcStart[state]; arc < arcStart[state + 1]; arc++)
+		{
+			term.append(labels[arc]);
+			ordinal = spell(targets[arc], term, terms, ordinal);
+			term.setLength(term.length() - 1);
+		}
+
+		return ordinal;
+	}
+
+	/**
+	 * Returns an estimate of the heap used by the dictionary: its arrays and their headers.
+	 *
+	 * @return The estimated size in bytes.
+	 */
+	long estimateBytes()
+	{
+		return 48L + 6 * 16L + 9L * isFinal.length + 10L * labels.length;
+	}
+
+	/**
+	 * Returns the number of states.
+	 *
+	 * @return The number of states.
+	 */
+	int getStateCount()
+	{
+		return isFinal.length;
+	}
+
+	/**
+	 * Returns the number of arcs.
+	 *
+	 * @return The number of arcs.
+	 */
+	int getArcCount()
+	{
+		return labels.length;
+	}
+
+	/**
+	 * Finds the arc of a state with a label.
+	 *
+	 * @return The index of the arc, or -(insertion point) - 1 if the state has no such arc.
+	 */
+	private int findArc(int state, char c)
+	{
+		return Arrays.binarySearch(labels, arcStart[state], arcStart[state + 1], c);
+	}
+
+	/**
+	 * Builder adds sorted terms to a transducer, freezing each state once no later term can pass through it and
+	 * replacing it with an equivalent registered state.
+	 */
+	private static final class Builder
+	{
+		private final Map<State, State> register = new HashMap<>();
+		private final List<State> frozen = new ArrayList<>();
+		private final List<State> path = new ArrayList<>(List.of(new State()));
+		private String previous = "";
+		private int termCount;
+		private int arcCount;
+
+		void add(String term)
+		{
+			if (termCount++ > 0 && term.compareTo(previous) <= 0)
+			{
+				throw new IllegalArgumentException("Terms must be distinct and ascending: " + term + " after " + previous);
+			}
+
+			int common = 0;
+			int limit = Math.min(term.length(), previous.length());
+			while (common < limit && term.charAt(common) == previous.charAt(common)) common++;
+
+			freeze(common);
+
+			for (int i = common; i < term.length(); i++)
+			{
+				State next = new State();
+				path.get(i).addArc(term.charAt(i), next);
+				path.add(next);
+			}
+
+			path.get(term.length()).isFinal = true;
+			previous = term;
+		}
+
+		TermDictionary finish()
+		{
+			freeze(0);
+			State root = register(path.get(0));
+			int states = frozen.size();
+			int[] arcStart = new int[states + 1];
+			boolean[] isFinal = new boolean[states];
+			int[] count = new int[states];
+			char[] labels = new char[arcCount];
+			int[] targets = new int[arcCount];
+			int[] outputs = new int[arcCount];
+			int arc = 0;
+
+			// States are frozen after the states they lead to, so counts are known before they are summed.
+			for (int s = 0; s < states; s++)
+			{
+				State state = frozen.get(s);
+				arcStart[s] = arc;
+				isFinal[s] = state.isFinal;
+				int reached = state.isFinal ? 1 : 0;
+
+				for (int i = 0; i < state.size; i++, arc++)
+				{
+					labels[arc] = state.labels[i];
+					targets[arc] = state.targets[i].id;
+					outputs[arc] = reached;
+					reached += count[state.targets[i].id];
+				}
+
+				count[s] = reached;
+			}
+
+			arcStart[states] = arc;
+			return new TermDictionary(root.id, arcStart, isFinal, count, labels, targets, outputs);
+		}
+
+		/**
+		 * Freezes the states of the previous term beyond the given depth, deepest first, replacing each with its
+		 * registered equivalent.
+		 */
+		private void freeze(int depth)
+		{
+			for (int i = path.size() - 1; i > depth; i--)
+			{
+				State parent = path.get(i - 1);
+				parent.targets[parent.size - 1] = register(path.remove(i));
+			}
+		}
+
+		private State register(State state)
+		{
+			State registered = register.putIfAbsent(state, state);
+			if (registered != null) return registered;
+
+			state.id = frozen.size();
+			frozen.add(state);
+			arcCount += state.size;
+			return state;
+		}
+	}
+
+	/**
+	 * State is a state of a transducer being built. Once frozen, its arcs no longer change, and it is equal to any
+	 * frozen state with the same finality and arcs to the same registered states.
+	 */
+	private static final class State
+	{
+		private static final char[] NO_LABELS = new char[0];
+		private static final State[] NO_TARGETS = new State[0];
+
+		private char[] labels = NO_LABELS;
+		private State[] targets = NO_TARGETS;
+		private int size;
+		private boolean isFinal;
+		private int id = -1;
+
+		void addArc(char label, State target)
+		{
+			if (size == labels.length)
+			{
+				int capacity = Math.max(2, size * 2);
+				labels = Arrays.copyOf(labels, capacity);
+				targets = Arrays.copyOf(targets, capacity);
+			}
+
+			labels[size] = label;
+			targets[size++] = target;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (this == o) return true;
+			if (!(o instanceof State that) || isFinal != that.isFinal || size != that.size) return false;
+
+			for (int i = 0; i < size; i++)
+			{
+				if (labels[i] != that.labels[i] || targets[i] != that.targets[i]) return false;
+			}
+
+			return true;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = isFinal ? 1 : 0;
+
+			for (int i = 0; i < size; i++)
+			{
+				hash = 31 * (31 * hash + labels[i]) + targets[i].id;
+			}
+
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package com.helenusdb.index.inverted;
+
+import java.util.List;
+
+/**
+ * TermPostings is the postings of one term across the segments of an InvertedWordIndex that a query reads, and its
+ * buffer. Segments hold consecutive ranges of document ids, so the postings of each part follow those of the one
+ * before, and a cursor walks them one after the other, advancing straight to the part a target id may be in. The
+ * statistics of the parts are combined, so a ranked query scores the term as if the index were a single list.
+ *
+ * The parts are immutable segment postings or views of buffered ones, so a TermPostings can be read by any thread.
+ *
+ * @see Segment
+ */
+class TermPostings
+{
+	private final PostingList[] parts;
+	private final int size;
+	private final int maxFreq;
+	private final int minDocLength;
+
+	/**
+	 * Constructs a TermPostings.
+	 *
+	 * @param parts The postings of the term in each segment containing it, in document id order.
+	 */
+	TermPostings(List<PostingList> parts)
+	{
+		this.parts = parts.toArray(new PostingList[0]);
+		int count = 0;
+		int freq = 0;
+		int length = Integer.MAX_VALUE;
+
+		for (PostingList part : this.parts)
+		{
+			count += part.size();
+			freq = Math.max(freq, part.getMaxFreq());
+			length = Math.min(length, part.getMinDocLength());
+		}
+
+		this.size = count;
+		this.maxFreq = freq;
+		this.minDocLength = length;
+	}
+
+	/**
+	 * Returns the number of documents containing the term.
+	 *
+	 * @return The number of document ids.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the largest number of times the term occurs in any one document.
+	 *
+	 * @return The largest term frequency, or 0 if no document contains the term.
+	 */
+	public int getMaxFreq()
+	{
+		return maxFreq;
+	}
+
+	/**
+	 * Returns the length of the shortest document containing the term.
+	 *
+	 * @return The shortest document length, 0 if any length was unknown, or Integer.MAX_VALUE if there are none.
+	 */
+	public int getMinDocLength()
+	{
+		return minDocLength;
+	}
+
+	/**
+	 * Returns a cursor over the postings of every part, positioned before the first.
+	 *
+	 * @return A new cursor.
+	 */
+	public PostingCursor cursor()
+	{
+		return parts.length == 1 ? parts[0].cursor() : new Cursor();
+	}
+
+	/**
+	 * Cursor walks the cursor of each part in turn.
+	 */
+	private final class Cursor
+	implements PostingCursor
+	{
+		private int part = -1;
+		private PostingList.Cursor current;
+		private int doc = -1;
+
+		@Override
+		public int docId()
+		{
+			return doc;
+		}
+
+		@Override
+		public int freq()
+		{
+			return current.freq();
+		}
+
+		@Override
+		public int nextPosition()
+		{
+			return current.nextPosition();
+		}
+
+		@Override
+		public int nextDoc()
+		{
+			if (doc == NO_MORE_DOCS) return doc;
+
+			if (current != null)
+			{
+				doc = current.nextDoc();
+				if (doc != NO_MORE_DOCS) return doc;
+			}
+
+			return doc = nextPart(-1);
+		}
+
+		@Override
+		public int advance(int target)
+		{
+			if (doc >= target) return doc;
+
+			if (current != null && parts[part].getLastDoc() >= target) return doc = current.advance(target);
+
+			return doc = nextPart(target);
+		}
+
+		@Override
+		public long cost()
+		{
+			return size;
+		}
+
+		/**
+		 * Moves to the first later part holding an id at or after the target, skipping parts that end before it.
+		 *
+		 * @param target The id to advance to, or -1 for the first id of the next part.
+		 * @return The first id at or after the target, or NO_MORE_DOCS if there are none.
+		 */
+		private int nextPart(int target)
+		{
+			while (++part < parts.length)
+			{
+				if (parts[part].getLastDoc() < target) continue;
+
+				current = parts[part].cursor();
+				return target < 0 ? current.nextDoc() : current.advance(target);
+			}
+
+			current = null;
+			return NO_MORE_DOCS;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.helenusdb.index.inverted;
+
+import java.util.List;
+
+/**
+ * TieredMergePolicy chooses the segments of an InvertedWordIndex to merge. Segments are grouped into tiers by size: a
+ * segment holding fewer than mergeFactor times the flush threshold in documents is in tier 0, one holding fewer than
+ * mergeFactor squared times it is in tier 1, and so on. Once mergeFactor adjacent segments share a tier, they are
+ * merged into one segment of a higher tier.
+ *
+ * An index of N documents thus holds at most mergeFactor - 1 segments per tier, about log(N) tiers in all, and each
+ * document is rewritten about once per tier. A larger merge factor rewrites less while indexing but leaves more
+ * segments for queries to read.
+ *
+ * @see Segment
+ */
+final class TieredMergePolicy
+{
+	private final int flushThreshold;
+	private final int mergeFactor;
+
+	/**
+	 * Constructs a TieredMergePolicy.
+	 *
+	 * @param flushThreshold The number of documents a flushed segment holds.
+	 * @param mergeFactor    The number of segments of a tier that are merged together.
+	 * @throws IllegalArgumentException if flushThreshold is not positive or mergeFactor is less than 2.
+	 */
+	TieredMergePolicy(int flushThreshold, int mergeFactor)
+	{
+		if (flushThreshold < 1) throw new IllegalArgumentException("Flush threshold must be positive: " + flushThreshold);
+		if (mergeFactor < 2) throw new IllegalArgumentException("Merge factor must be at least 2: " + mergeFactor);
+
+		this.flushThreshold = flushThreshold;
+		this.mergeFactor = mergeFactor;
+	}
+
+	/**
+	 * Returns the number of segments of a tier that are merged together.
+	 *
+	 * @return The merge factor.
+	 */
+	int getMergeFactor()
+	{
+		return mergeFactor;
+	}
+
+	/**
+	 * Finds the adjacent segments to merge next: the first run of mergeFactor segments in the lowest tier that has one.
+	 *
+	 * @param segments The segments of the index, in document id order.
+	 * @return The segments to merge, or an empty list if no tier is full.
+	 */
+	List<Segment> findMerge(List<Segment> segments)
+	{
+		int bestStart = -1;
+		int bestTier = Integer.MAX_VALUE;
+		int runStart = 0;
+
+		for (int i = 0; i < segments.size(); i++)
+		{
+			int tier = tierOf(segments.get(i));
+			if (i > 0 && tier != tierOf(segments.get(i - 1))) runStart = i;
+
+			if (i - runStart + 1 == mergeFactor && tier < bestTier)
+			{
+				bestStart = runStart;
+				bestTier = tier;
+			}
+		}
+
+		return bestStart < 0 ? List.of() : segments.subList(bestStart, bestStart + mergeFactor);
+	}
+
+	/**
+	 * Returns the tier of a segment.
+	 *
+	 * @param segment The segment.
+	 * @return The tier, 0 for segments of up to mergeFactor flushes.
+	 */
+	int tierOf(Segment segment)
+	{
+		int tier = 0;
+
+		for (long size = (long) flushThreshold * mergeFactor; segment.getDocCount() >= size; size *= mergeFactor)
+		{
+			tier++;
+		}
+
+		return tier;
+	}
+}
@@ -0,0 +1,206 @@
+package com.helenusdb.index.inverted;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * WandSearcher finds the k documents with the highest BM25 scores for a set of terms without scoring every document
+ * that contains one of them, using the WAND (weak AND) algorithm.
+ *
+ * Each term has an upper bound of the score it can add to any document, from the largest term frequency and the
+ * shortest document length in its postings. The term cursors are kept ordered by their current document id. Once k
+ * documents have been found, the k-th best score is a threshold a new document must beat, and the pivot is the first
+ * cursor at which the summed bounds of the cursors up to it exceed the threshold. No document before the pivot's can
+ * beat the threshold, so the cursors behind it advance straight to it, skipping whole blocks of postings, and only the
+ * pivot document is scored.
+ *
+ * BM25 scores a term in a document as idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * length / averageLength)), with
+ * idf = ln(1 + (N - n + 0.5) / (n + 0.5)) for N documents of which n contain the term.
+ *
+ * Deleted documents are skipped at the pivot without being scored, but still count in N and n until they are purged.
+ */
+class WandSearcher
+{
+	static final double K1 = 1.2;
+	static final double B = 0.75;
+
+	// Bounds are widened slightly so that rounding in a sum never prunes a document that ties the threshold.
+	private static final double BOUND_SLACK = 1.0 + 1e-9;
+
+	private final int docCount;
+	private final double averageLength;
+	private final IntUnaryOperator lengthOf;
+	private final IntPredicate isDeleted;
+	private long scored;
+
+	/**
+	 * Constructs a WandSearcher.
+	 *
+	 * @param docCount      The number of documents in the index.
+	 * @param averageLength The average number of terms in a document.
+	 * @param lengthOf      The number of terms in each document, by document id.
+	 * @param isDeleted     The predicate selecting the ids of deleted documents.
+	 */
+	WandSearcher(int docCount, double averageLength, IntUnaryOperator lengthOf, IntPredicate isDeleted)
+	{
+		this.docCount = docCount;
+		this.averageLength = Math.max(averageLength, 1e-9);
+		this.lengthOf = lengthOf;
+		this.isDeleted = isDeleted;
+	}
+
+	/**
+	 * Finds the k documents with the highest scores for the given terms.
+	 *
+	 * @param postings The postings of each distinct term, in query order.
+	 * @param k        The maximum number of documents to return.
+	 * @return The ids of the best documents, by descending score and then ascending id.
+	 */
+	int[] search(List<TermPostings> postings, int k)
+	{
+		if (k <= 0 || postings.isEmpty()) return new int[0];
+
+		Term[] terms = new Term[postings.size()];
+		List<Term> active = new ArrayList<>(terms.length);
+
+		for (int i = 0; i < terms.length; i++)
+		{
+			terms[i] = new Term(postings.get(i));
+			if (terms[i].cursor.nextDoc() != DocIdIterator.NO_MORE_DOCS) active.add(terms[i]);
+		}
+
+		PriorityQueue<ScoredDoc> best = new PriorityQueue<>(Math.min(k, 1024), ScoredDoc.WORST_FIRST);
+		Comparator<Term> byDoc = Comparator.comparingInt(term -> term.cursor.docId());
+
+		while (!active.isEmpty())
+		{
+			active.sort(byDoc);
+			double threshold = best.size() < k ? 0.0 : best.peek().score;
+			int pivot = findPivot(active, threshold);
+			if (pivot < 0) break;
+
+			int pivotDoc = active.get(pivot).cursor.docId();
+
+			if (active.get(0).cursor.docId() == pivotDoc)
+			{
+				if (!isDeleted.test(pivotDoc))
+				{
+					double score = score(terms, pivotDoc);
+					scored++;
+
+					if (best.size() < k) best.add(new ScoredDoc(pivotDoc, score));
+					else if (score > threshold)
+					{
+						best.poll();
+						best.add(new ScoredDoc(pivotDoc, score));
+					}
+				}
+
+				for (Term term : active)
+				{
+					if (term.cursor.docId() == pivotDoc) term.cursor.nextDoc();
+				}
+			}
+			else
+			{
+				for (int i = 0; i < pivot; i++)
+				{
+					active.get(i).cursor.advance(pivotDoc);
+				}
+			}
+
+			active.removeIf(term -> term.cursor.docId() == DocIdIterator.NO_MORE_DOCS);
+		}
+
+		ScoredDoc[] sorted = best.toArray(new ScoredDoc[0]);
+		Arrays.sort(sorted, ScoredDoc.WORST_FIRST.reversed());
+		int[] docs = new int[sorted.length];
+
+		for (int i = 0; i < sorted.length; i++)
+		{
+			docs[i] = sorted[i].doc;
+		}
+
+		return docs;
+	}
+
+	/**
+	 * Returns the number of documents this searcher has fully scored, which shows how much WAND pruned.
+	 *
+	 * @return The number of documents scored.
+	 */
+	long getScoredCount()
+	{
+		return scored;
+	}
+
+	private static int findPivot(List<Term> active, double threshold)
+	{
+		double bound = 0.0;
+
+		for (int i = 0; i < active.size(); i++)
+		{
+			bound += active.get(i).maxScore;
+			if (bound > threshold) return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Scores a document by summing the scores of the terms positioned on it, always in query order so that equal
+	 * documents get bit-identical scores.
+	 */
+	private double score(Term[] terms, int doc)
+	{
+		double length = lengthOf.applyAsInt(doc);
+		double score = 0.0;
+
+		for (Term term : terms)
+		{
+			if (term.cursor.docId() == doc) score += score(term.idf, term.cursor.freq(), length);
+		}
+
+		return score;
+	}
+
+	private double score(double idf, int freq, double length)
+	{
+		return idf * freq * (K1 + 1) / (freq + K1 * (1 - B + B * length / averageLength));
+	}
+
+	private final class Term
+	{
+		private final PostingCursor cursor;
+		private final double idf;
+		private final double maxScore;
+
+		Term(TermPostings postings)
+		{
+			this.cursor = postings.cursor();
+			this.idf = Math.log(1 + (docCount - postings.size() + 0.5) / (postings.size() + 0.5));
+			this.maxScore = score(idf, postings.getMaxFreq(), postings.getMinDocLength()) * BOUND_SLACK;
+		}
+	}
+
+	private static final class ScoredDoc
+	{
+		// Lower scores first, and among equal scores the larger id, which a tie loses to.
+		private static final Comparator<ScoredDoc> WORST_FIRST = Comparator.<ScoredDoc>comparingDouble(d -> d.score)
+			.thenComparing(Comparator.<ScoredDoc>comparingInt(d -> d.doc).reversed());
+
+		private final int doc;
+		private final double score;
+
+		ScoredDoc(int doc, double score)
+		{
+			this.doc = doc;
+			this.score = score;
+		}
+	}
+}
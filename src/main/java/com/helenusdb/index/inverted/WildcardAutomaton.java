@@ -0,0 +1,126 @@
+package com.helenusdb.index.inverted;
+
+/**
+ * WildcardAutomaton accepts the terms matching a wildcard pattern, in which '*' matches any number of characters,
+ * including none, and '?' matches exactly one. The pattern is simulated as an NFA whose set of active positions is a
+ * bit mask, so each step is a few bit operations, and a prefix no term can match leads to the dead state.
+ *
+ * A pattern made of literal characters and one trailing '*' is a prefix, whose terms a TermDictionary can find as one
+ * range of ordinals without running the automaton at all.
+ */
+class WildcardAutomaton
+implements TermAutomaton<Long>
+{
+	static final int MAX_LENGTH = Long.SIZE - 1;
+
+	private final String pattern;
+	private final long stars;
+	private final long accept;
+	private final int prefixLength;
+
+	/**
+	 * Constructs a WildcardAutomaton.
+	 *
+	 * @param pattern The normalized pattern.
+	 * @throws IllegalArgumentException if the pattern is longer than MAX_LENGTH characters.
+	 */
+	WildcardAutomaton(String pattern)
+	{
+		if (pattern.length() > MAX_LENGTH)
+		{
+			throw new IllegalArgumentException("Wildcard patterns are limited to " + MAX_LENGTH + " characters: " + pattern);
+		}
+
+		this.pattern = pattern;
+		long starMask = 0;
+		int prefix = -1;
+
+		for (int i = 0; i < pattern.length(); i++)
+		{
+			char c = pattern.charAt(i);
+			if (c == '*') starMask |= 1L << i;
+			if (prefix < 0 && (c == '*' || c == '?')) prefix = i;
+		}
+
+		this.stars = starMask;
+		this.accept = 1L << pattern.length();
+		this.prefixLength = prefix < 0 ? pattern.length() : prefix;
+	}
+
+	/**
+	 * Returns the literal characters before the first wildcard.
+	 *
+	 * @return The literal prefix of the pattern.
+	 */
+	String getPrefix()
+	{
+		return pattern.substring(0, prefixLength);
+	}
+
+	/**
+	 * Returns true if the pattern has no wildcards, so it matches one term.
+	 *
+	 * @return True if the pattern is a literal term, false otherwise.
+	 */
+	boolean isLiteral()
+	{
+		return prefixLength == pattern.length();
+	}
+
+	/**
+	 * Returns true if the pattern is a literal prefix followed by a single '*'.
+	 *
+	 * @return True if the pattern matches the terms starting with its prefix, false otherwise.
+	 */
+	boolean isPrefix()
+	{
+		return prefixLength == pattern.length() - 1 && pattern.charAt(prefixLength) == '*';
+	}
+
+	@Override
+	public Long start()
+	{
+		return closure(1L);
+	}
+
+	@Override
+	public Long step(Long state, char c)
+	{
+		long active = state;
+		long next = 0;
+
+		for (long bits = active & ~accept; bits != 0; bits &= bits - 1)
+		{
+			int i = Long.numberOfTrailingZeros(bits);
+			char p = pattern.charAt(i);
+
+			if (p == '*') next |= 1L << i;
+			else if (p == '?' || p == c) next |= 1L << (i + 1);
+		}
+
+		return next == 0 ? null : closure(next);
+	}
+
+	@Override
+	public boolean isAccept(Long state)
+	{
+		return (state & accept) != 0;
+	}
+
+	/**
+	 * Adds the positions after each active '*', which may match no characters.
+	 */
+	private long closure(long active)
+	{
+		long previous;
+
+		do
+		{
+			previous = active;
+			active |= (active & stars) << 1;
+		}
+		while (active != previous);
+
+		return active;
+	}
+}
@@ -0,0 +1,116 @@
+package com.helenusdb.index.suffix;
+
+/**
+ * CacheStats is a snapshot of the activity of a SuffixIndex result cache.
+ *
+ * @see SuffixIndex#setResultCacheSize(long)
+ */
+public class CacheStats
+{
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long invalidations;
+	private final int entries;
+	private final long bytes;
+	private final long maxBytes;
+
+	CacheStats(long hits, long misses, long evictions, long invalidations, int entries, long bytes, long maxBytes)
+	{
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.invalidations = invalidations;
+		this.entries = entries;
+		this.bytes = bytes;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache.
+	 *
+	 * @return The number of hits.
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that had to search the index, including those finding a stale entry.
+	 *
+	 * @return The number of misses.
+	 */
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Returns the fraction of lookups answered from the cache.
+	 *
+	 * @return The hit rate, between 0.0 and 1.0, or 0.0 before any lookup.
+	 */
+	public double getHitRate()
+	{
+		long lookups = hits + misses;
+		return lookups == 0 ? 0.0 : (double) hits / lookups;
+	}
+
+	/**
+	 * Returns the number of entries evicted to stay within the size limit.
+	 *
+	 * @return The number of evictions.
+	 */
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of entries dropped because the index was written since they were cached.
+	 *
+	 * @return The number of invalidations.
+	 */
+	public long getInvalidations()
+	{
+		return invalidations;
+	}
+
+	/**
+	 * Returns the number of cached entries.
+	 *
+	 * @return The number of entries.
+	 */
+	public int getEntries()
+	{
+		return entries;
+	}
+
+	/**
+	 * Returns an estimate of the heap used by the cached entries, in bytes.
+	 *
+	 * @return The estimated number of bytes cached.
+	 */
+	public long getBytes()
+	{
+		return bytes;
+	}
+
+	/**
+	 * Returns the maximum estimated size of the cached entries, in bytes.
+	 *
+	 * @return The cache size limit in bytes.
+	 */
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CacheStats{" + "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", invalidations="
+			+ invalidations + ", entries=" + entries + ", bytes=" + bytes + ", maxBytes=" + maxBytes + '}';
+	}
+}
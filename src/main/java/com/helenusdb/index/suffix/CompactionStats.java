@@ -0,0 +1,101 @@
+package com.helenusdb.index.suffix;
+
+/**
+ * CompactionStats reports what a SuffixIndex compaction removed and an estimate of the heap it reclaimed.
+ *
+ * @see SuffixIndex#compact()
+ */
+public class CompactionStats
+{
+	// Rough heap cost of a SuffixNode: the node, its children map entry, its Postings and array headers.
+	private static final long ESTIMATED_BYTES_PER_NODE = 112L;
+	private static final long BYTES_PER_POSTING = Integer.BYTES;
+
+	private int purgedValues;
+	private long removedPostings;
+	private long removedNodes;
+	private long elapsedMillis;
+
+	CompactionStats()
+	{
+		// Only created by SuffixIndex.
+	}
+
+	void addPurgedValue()
+	{
+		purgedValues++;
+	}
+
+	void addRemovedPostings(int count)
+	{
+		removedPostings += count;
+	}
+
+	void addRemovedNode()
+	{
+		removedNodes++;
+	}
+
+	void setElapsedMillis(long elapsedMillis)
+	{
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * Returns the number of deleted values whose references were released by the compaction.
+	 *
+	 * @return The number of purged values.
+	 */
+	public int getPurgedValues()
+	{
+		return purgedValues;
+	}
+
+	/**
+	 * Returns the number of deleted indices removed from node postings.
+	 *
+	 * @return The number of removed postings.
+	 */
+	public long getRemovedPostings()
+	{
+		return removedPostings;
+	}
+
+	/**
+	 * Returns the number of nodes pruned because no live values remained under them.
+	 *
+	 * @return The number of removed nodes.
+	 */
+	public long getRemovedNodes()
+	{
+		return removedNodes;
+	}
+
+	/**
+	 * Returns an estimate of the heap reclaimed by the compaction, in bytes.
+	 *
+	 * @return The estimated number of bytes reclaimed.
+	 */
+	public long getReclaimedBytes()
+	{
+		return removedPostings * BYTES_PER_POSTING + removedNodes * ESTIMATED_BYTES_PER_NODE;
+	}
+
+	/**
+	 * Returns how long the compaction took.
+	 *
+	 * @return The elapsed time in milliseconds.
+	 */
+	public long getElapsedMillis()
+	{
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CompactionStats{" + "purgedValues=" + purgedValues + ", removedPostings=" + removedPostings
+			+ ", removedNodes=" + removedNodes + ", reclaimedBytes=" + getReclaimedBytes() + ", elapsedMillis="
+			+ elapsedMillis + '}';
+	}
+}
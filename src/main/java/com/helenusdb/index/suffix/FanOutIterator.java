@@ -0,0 +1,113 @@
+package com.helenusdb.index.suffix;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+
+/**
+ * FanOutIterator lazily maps an ascending iterator of phrase ids to the ascending value ids of those phrases. The
+ * value ids of different phrases interleave, so they are merged on a heap, but a phrase is only pulled from the source
+ * once the smallest value id on the heap reaches its first value id. First value ids ascend with the phrase ids and
+ * bound their values from below, so no later phrase can hold a smaller value id. Taking the first N results therefore
+ * visits only the phrases holding them, plus the one after, and a phrase holding only its first value never touches the
+ * heap.
+ */
+class FanOutIterator
+implements PrimitiveIterator.OfInt
+{
+	private static final int NONE = -1;
+
+	private final PrimitiveIterator.OfInt phrases;
+	private final PhraseValues table;
+	private final PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+	private int pending = NONE;
+	private int next = NONE;
+
+	/**
+	 * Constructs a FanOutIterator.
+	 *
+	 * @param phrases The ascending, duplicate-free phrase ids.
+	 * @param table   The value ids of each phrase.
+	 */
+	public FanOutIterator(PrimitiveIterator.OfInt phrases, PhraseValues table)
+	{
+		this.phrases = phrases;
+		this.table = table;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (next == NONE) next = advance();
+		return next != NONE;
+	}
+
+	@Override
+	public int nextInt()
+	{
+		if (!hasNext()) throw new NoSuchElementException();
+
+		int value = next;
+		next = NONE;
+		return value;
+	}
+
+	private int advance()
+	{
+		while (true)
+		{
+			if (pending == NONE && phrases.hasNext()) pending = phrases.nextInt();
+
+			Cursor head = cursors.peek();
+
+			if (pending != NONE && (head == null || table.getFirstValue(pending) <= head.head))
+			{
+				int firstValue = table.getFirstValue(pending);
+				PrimitiveIterator.OfInt values = table.valueIterator(pending);
+				pending = NONE;
+				if (!values.hasNext()) continue;
+
+				// A lone value that is still the phrase's first value precedes every later phrase.
+				int value = values.nextInt();
+				if (head == null && value == firstValue && !values.hasNext()) return value;
+
+				cursors.add(new Cursor(values, value));
+				continue;
+			}
+
+			if (head == null) return NONE;
+
+			cursors.poll();
+			int value = head.head;
+			if (head.advance()) cursors.add(head);
+			return value;
+		}
+	}
+
+	private static final class Cursor
+	implements Comparable<Cursor>
+	{
+		private final PrimitiveIterator.OfInt source;
+		private int head;
+
+		Cursor(PrimitiveIterator.OfInt source, int head)
+		{
+			this.source = source;
+			this.head = head;
+		}
+
+		boolean advance()
+		{
+			if (!source.hasNext()) return false;
+
+			head = source.nextInt();
+			return true;
+		}
+
+		@Override
+		public int compareTo(Cursor that)
+		{
+			return Integer.compare(this.head, that.head);
+		}
+	}
+}
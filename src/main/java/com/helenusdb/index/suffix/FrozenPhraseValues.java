@@ -0,0 +1,157 @@
+package com.helenusdb.index.suffix;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * FrozenPhraseValues is the read-only, compact form of the phrase to value id mapping of a frozen SuffixIndex, held in
+ * three flat buffers:
+ *
+ * <pre>
+ * firstValue[p]  the id of the value phrase p was first inserted with
+ * valueStart[p]  the position of the first value id of phrase p; its value ids run until valueStart[p + 1]
+ * values         the value ids of every phrase, concatenated in phrase order
+ * </pre>
+ *
+ * Like FrozenSuffixTrie, the buffers wrap heap arrays when an index is frozen in memory, or memory-mapped file sections
+ * when a snapshot is opened.
+ *
+ * @see FrozenSuffixTrie
+ * @see SuffixSnapshot
+ */
+class FrozenPhraseValues
+implements PhraseValues
+{
+	private final IntBuffer firstValue;
+	private final IntBuffer valueStart;
+	private final IntBuffer values;
+
+	/**
+	 * Constructs a FrozenPhraseValues over the given buffers, laid out as described above.
+	 *
+	 * @param firstValue The first value id of each phrase.
+	 * @param valueStart The position of the first value id of each phrase, plus a trailing entry for the end.
+	 * @param values     The value ids of every phrase, concatenated in phrase order.
+	 */
+	FrozenPhraseValues(IntBuffer firstValue, IntBuffer valueStart, IntBuffer values)
+	{
+		this.firstValue = firstValue;
+		this.valueStart = valueStart;
+		this.values = values;
+	}
+
+	/**
+	 * Copies the given mapping into flat arrays.
+	 *
+	 * @param phrases The mapping to freeze.
+	 * @return The frozen mapping.
+	 */
+	public static FrozenPhraseValues freeze(PhraseValues phrases)
+	{
+		int phraseCount = phrases.size();
+		int[] firstValue = new int[phraseCount];
+		int[] valueStart = new int[phraseCount + 1];
+		int[] values = new int[Math.max(16, phraseCount)];
+		int size = 0;
+
+		for (int p = 0; p < phraseCount; p++)
+		{
+			firstValue[p] = phrases.getFirstValue(p);
+			valueStart[p] = size;
+			int count = phrases.getValueCount(p);
+			if (size + count > values.length) values = Arrays.copyOf(values, Math.max(size + count, values.length * 2));
+
+			for (PrimitiveIterator.OfInt i = phrases.valueIterator(p); i.hasNext() && count-- > 0;)
+			{
+				values[size++] = i.nextInt();
+			}
+		}
+
+		valueStart[phraseCount] = size;
+		return new FrozenPhraseValues(IntBuffer.wrap(firstValue), IntBuffer.wrap(valueStart),
+			IntBuffer.wrap(Arrays.copyOf(values, size)));
+	}
+
+	@Override
+	public int size()
+	{
+		return firstValue.limit();
+	}
+
+	@Override
+	public int getFirstValue(int phrase)
+	{
+		return firstValue.get(phrase);
+	}
+
+	@Override
+	public int getValueCount(int phrase)
+	{
+		return valueStart.get(phrase + 1) - valueStart.get(phrase);
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt valueIterator(int phrase)
+	{
+		return new PrimitiveIterator.OfInt()
+		{
+			private int position = valueStart.get(phrase);
+			private final int end = valueStart.get(phrase + 1);
+
+			@Override
+			public boolean hasNext()
+			{
+				return position < end;
+			}
+
+			@Override
+			public int nextInt()
+			{
+				if (!hasNext()) throw new NoSuchElementException();
+				return values.get(position++);
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of value ids held, across all phrases.
+	 *
+	 * @return The number of value ids.
+	 */
+	public int getValueIdCount()
+	{
+		return values.limit();
+	}
+
+	/**
+	 * Returns a read-only view of the first value buffer, for writing snapshots.
+	 *
+	 * @return The first value id of each phrase.
+	 */
+	IntBuffer getFirstValues()
+	{
+		return firstValue.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a read-only view of the value start buffer, for writing snapshots.
+	 *
+	 * @return The position of the first value id of each phrase.
+	 */
+	IntBuffer getValueStart()
+	{
+		return valueStart.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a read-only view of the values buffer, for writing snapshots.
+	 *
+	 * @return The value ids of every phrase.
+	 */
+	IntBuffer getValues()
+	{
+		return values.asReadOnlyBuffer();
+	}
+}
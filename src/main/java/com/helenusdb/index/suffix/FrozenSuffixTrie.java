@@ -0,0 +1,355 @@
+package com.helenusdb.index.suffix;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * FrozenSuffixTrie is the read-only, compact form of a SuffixNode graph. Nodes are numbered breadth-first, so the
+ * children of a node are a contiguous, label-sorted run of node ids, and the whole trie is held in four flat buffers:
+ *
+ * <pre>
+ * firstChild[n]    the id of the first child of node n; its children are firstChild[n] until firstChild[n + 1]
+ * labels[n]        the character indexing node n in its parent
+ * postingStart[n]  the position of the first index of node n; its indices run until postingStart[n + 1]
+ * postings         the indices of every node, concatenated in node order
+ * </pre>
+ *
+ * There are no per-node objects for the garbage collector to trace, and walking the trie is sequential array access.
+ * The SearchNode views handed to queries are transient flyweights. The buffers wrap heap arrays when an index is frozen
+ * in memory, or memory-mapped file sections when a snapshot is opened, so searches run the same code on either.
+ *
+ * @see SuffixIndex#freeze()
+ * @see SuffixSnapshot
+ */
+class FrozenSuffixTrie
+{
+	private static final int ROOT = 0;
+
+	private final IntBuffer firstChild;
+	private final CharBuffer labels;
+	private final IntBuffer postingStart;
+	private final IntBuffer postings;
+
+	/**
+	 * Constructs a FrozenSuffixTrie over the given buffers, laid out as described above.
+	 *
+	 * @param firstChild   The first child of each node, plus a trailing entry equal to the node count.
+	 * @param labels       The character indexing each node in its parent.
+	 * @param postingStart The position of the first index of each node, plus a trailing entry for the end.
+	 * @param postings     The indices of every node, concatenated in node order.
+	 */
+	FrozenSuffixTrie(IntBuffer firstChild, CharBuffer labels, IntBuffer postingStart, IntBuffer postings)
+	{
+		this.firstChild = firstChild;
+		this.labels = labels;
+		this.postingStart = postingStart;
+		this.postings = postings;
+	}
+
+	/**
+	 * Converts the SuffixNode graph under the given root into flat arrays.
+	 *
+	 * @param root The root of the graph to freeze.
+	 * @return The frozen trie.
+	 */
+	public static FrozenSuffixTrie freeze(SuffixNode root)
+	{
+		List<SuffixNode> nodes = new ArrayList<>();
+		StringBuilder labels = new StringBuilder();
+		nodes.add(root);
+		labels.append('\0');
+		int[] firstChild = new int[16];
+
+		// Breadth-first numbering: the children of node n are appended while n is visited.
+		for (int n = 0; n < nodes.size(); n++)
+		{
+			firstChild = grow(firstChild, n + 2);
+			firstChild[n] = nodes.size();
+			SuffixNode node = nodes.get(n);
+			node.getChildMap().entrySet().stream()
+				.sorted(Map.Entry.comparingByKey())
+				.forEach(child -> {
+					nodes.add(child.getValue());
+					labels.append(child.getKey().charValue());
+				});
+		}
+
+		int nodeCount = nodes.size();
+		firstChild[nodeCount] = nodeCount;
+		int[] postingStart = new int[nodeCount + 1];
+		int[] postings = new int[16];
+		int size = 0;
+
+		for (int n = 0; n < nodeCount; n++)
+		{
+			postingStart[n] = size;
+			SuffixNode node = nodes.get(n);
+			postings = grow(postings, Math.addExact(size, node.getIndexCount()));
+
+			for (PrimitiveIterator.OfInt i = node.indexIterator(0); i.hasNext();)
+			{
+				postings[size++] = i.nextInt();
+			}
+		}
+
+		postingStart[nodeCount] = size;
+		return new FrozenSuffixTrie(IntBuffer.wrap(Arrays.copyOf(firstChild, nodeCount + 1)),
+			CharBuffer.wrap(labels.toString().toCharArray()), IntBuffer.wrap(postingStart),
+			IntBuffer.wrap(Arrays.copyOf(postings, size)));
+	}
+
+	/**
+	 * Returns the root node of the trie.
+	 *
+	 * @return The root node.
+	 */
+	public SearchNode root()
+	{
+		return new FrozenNode(ROOT);
+	}
+
+	/**
+	 * Returns the number of nodes in the trie, including the root.
+	 *
+	 * @return The number of nodes.
+	 */
+	public int getNodeCount()
+	{
+		return labels.limit();
+	}
+
+	/**
+	 * Returns the total number of indices stored across all nodes.
+	 *
+	 * @return The number of postings.
+	 */
+	public int getPostingCount()
+	{
+		return postings.limit();
+	}
+
+	/**
+	 * Returns the size of the buffers holding the trie.
+	 *
+	 * @return The size of the trie in bytes.
+	 */
+	public long getSizeInBytes()
+	{
+		return (long) firstChild.limit() * Integer.BYTES + (long) labels.limit() * Character.BYTES
+			+ (long) postingStart.limit() * Integer.BYTES + (long) postings.limit() * Integer.BYTES;
+	}
+
+	/**
+	 * Returns a read-only view of the first child buffer, for writing snapshots.
+	 *
+	 * @return The first child of each node.
+	 */
+	IntBuffer getFirstChild()
+	{
+		return firstChild.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a read-only view of the label buffer, for writing snapshots.
+	 *
+	 * @return The character indexing each node in its parent.
+	 */
+	CharBuffer getLabels()
+	{
+		return labels.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a read-only view of the posting start buffer, for writing snapshots.
+	 *
+	 * @return The position of the first index of each node.
+	 */
+	IntBuffer getPostingStart()
+	{
+		return postingStart.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a read-only view of the postings buffer, for writing snapshots.
+	 *
+	 * @return The indices of every node.
+	 */
+	IntBuffer getPostings()
+	{
+		return postings.asReadOnlyBuffer();
+	}
+
+	private static int[] grow(int[] array, int capacity)
+	{
+		return capacity <= array.length ? array
+			: Arrays.copyOf(array, Math.max(capacity, array.length + (array.length >> 1)));
+	}
+
+	/**
+	 * A transient view of a node in the frozen trie, identified by its node id.
+	 */
+	private final class FrozenNode
+	implements SearchNode
+	{
+		private final int id;
+
+		FrozenNode(int id)
+		{
+			this.id = id;
+		}
+
+		@Override
+		public SearchNode getChild(char c)
+		{
+			int low = firstChild.get(id);
+			int high = firstChild.get(id + 1) - 1;
+
+			while (low <= high)
+			{
+				int mid = (low + high) >>> 1;
+				char label = labels.get(mid);
+
+				if (label < c) low = mid + 1;
+				else if (label > c) high = mid - 1;
+				else return new FrozenNode(mid);
+			}
+
+			return null;
+		}
+
+		@Override
+		public char getLabel()
+		{
+			return labels.get(id);
+		}
+
+		@Override
+		public List<SearchNode> getChildren()
+		{
+			int start = firstChild.get(id);
+			int count = firstChild.get(id + 1) - start;
+
+			return new AbstractList<>()
+			{
+				@Override
+				public SearchNode get(int index)
+				{
+					if (index < 0 || index >= count) throw new IndexOutOfBoundsException(index);
+					return new FrozenNode(start + index);
+				}
+
+				@Override
+				public int size()
+				{
+					return count;
+				}
+			};
+		}
+
+		@Override
+		public int getIndexCount()
+		{
+			return postingStart.get(id + 1) - postingStart.get(id);
+		}
+
+		@Override
+		public PrimitiveIterator.OfInt indexIterator(int from)
+		{
+			int end = postingStart.get(id + 1);
+
+			return new PrimitiveIterator.OfInt()
+			{
+				private int position = postingStart.get(id) + Math.max(from, 0);
+
+				@Override
+				public boolean hasNext()
+				{
+					return position < end;
+				}
+
+				@Override
+				public int nextInt()
+				{
+					if (!hasNext()) throw new NoSuchElementException();
+					return postings.get(position++);
+				}
+			};
+		}
+
+		@Override
+		public Set<Integer> getIndices()
+		{
+			return new AbstractSet<>()
+			{
+				@Override
+				public Iterator<Integer> iterator()
+				{
+					return indexIterator(0);
+				}
+
+				@Override
+				public int size()
+				{
+					return getIndexCount();
+				}
+
+				@Override
+				public boolean contains(Object o)
+				{
+					return o instanceof Integer i && containsIndex(i);
+				}
+			};
+		}
+
+		private boolean containsIndex(int index)
+		{
+			int low = postingStart.get(id);
+			int high = postingStart.get(id + 1) - 1;
+
+			while (low <= high)
+			{
+				int mid = (low + high) >>> 1;
+				int posting = postings.get(mid);
+
+				if (posting < index) low = mid + 1;
+				else if (posting > index) high = mid - 1;
+				else return true;
+			}
+
+			return false;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof FrozenNode that && this.id == that.id && this.trie() == that.trie();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return id;
+		}
+
+		private FrozenSuffixTrie trie()
+		{
+			return FrozenSuffixTrie.this;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "FrozenNode{" + "id=" + id + ", indices=" + getIndices() + '}';
+		}
+	}
+}
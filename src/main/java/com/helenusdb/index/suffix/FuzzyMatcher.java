@@ -0,0 +1,213 @@
+package com.helenusdb.index.suffix;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FuzzyMatcher computes edit distances against a query of at most 64 characters with Myers' bit-parallel algorithm,
+ * as formulated by Hyyrö. A column of the dynamic-programming matrix is held as two bit vectors of vertical deltas, so
+ * extending it by one character is a handful of word operations regardless of the query length.
+ *
+ * Walking a SuffixIndex, each node extends its parent's column by its label, giving the edit distance between the
+ * query and the substring spelled by the path to the node. Checking a single phrase runs the search variant of the
+ * algorithm, where a match may start anywhere in the phrase.
+ */
+class FuzzyMatcher
+{
+	// The longest query a column can hold, one bit per query character.
+	static final int MAX_LENGTH = Long.SIZE;
+
+	private static final int ASCII = 128;
+
+	private final int length;
+	private final int maxEdits;
+	private final long mask;
+	private final long lastBit;
+
+	// The positions at which each character occurs in the query, as bit masks.
+	private final long[] asciiPositions = new long[ASCII];
+	private final Map<Character, Long> otherPositions = new HashMap<>();
+
+	/**
+	 * Constructs a FuzzyMatcher for the given normalized query.
+	 *
+	 * @param query    The normalized query, at most 64 characters long.
+	 * @param maxEdits The maximum number of insertions, deletions and substitutions allowed.
+	 */
+	FuzzyMatcher(char[] query, int maxEdits)
+	{
+		this.length = query.length;
+		this.maxEdits = maxEdits;
+		this.mask = length == MAX_LENGTH ? -1L : (1L << length) - 1;
+		this.lastBit = length == 0 ? 0 : 1L << (length - 1);
+
+		for (int i = 0; i < length; i++)
+		{
+			char c = query[i];
+
+			if (c < ASCII) asciiPositions[c] |= 1L << i;
+			else otherPositions.merge(c, 1L << i, (a, b) -> a | b);
+		}
+	}
+
+	/**
+	 * Returns the column of the empty string: the edit distance to each prefix of the query is its length.
+	 *
+	 * @return The initial column.
+	 */
+	public Column start()
+	{
+		return new Column(mask, 0L, length, 0);
+	}
+
+	/**
+	 * Extends a column by one character of the text.
+	 *
+	 * @param column The column of the text so far.
+	 * @param c      The next character of the text.
+	 * @return The column of the text extended by the character.
+	 */
+	public Column advance(Column column, char c)
+	{
+		long eq = positionsOf(c);
+		long pv = column.pv;
+		long mv = column.mv;
+		long xv = eq | mv;
+		long xh = (((eq & pv) + pv) ^ pv) | eq;
+		long ph = mv | ~(xh | pv);
+		long mh = pv & xh;
+		int distance = column.distance;
+
+		if ((ph & lastBit) != 0) distance++;
+		else if ((mh & lastBit) != 0) distance--;
+
+		// The top row of a global alignment grows by one per text character, so a +1 delta enters at row 0.
+		ph = (ph << 1) | 1L;
+		mh <<= 1;
+		return new Column((mh | ~(xv | ph)) & mask, (ph & xv) & mask, distance, column.depth + 1);
+	}
+
+	/**
+	 * Returns whether a match needs to be looked for among texts starting with the given character. When the query is
+	 * longer than the maximum edits, a match aligns at least one text character with an equal query character. Any
+	 * text characters before the first such one can be dropped without increasing the distance, and the shorter text
+	 * is a suffix of the longer, so it occurs in every phrase the longer one does. So only texts starting with a
+	 * character of the query need to be walked.
+	 *
+	 * @param c The first character of the text.
+	 * @return True if texts starting with the character must be walked.
+	 */
+	public boolean canStartWith(char c)
+	{
+		return length <= maxEdits || positionsOf(c) != 0;
+	}
+
+	/**
+	 * Returns whether the text of the column is within the maximum edits of the query.
+	 *
+	 * @param column The column to check.
+	 * @return True if the edit distance to the whole query is within the maximum edits.
+	 */
+	public boolean isMatch(Column column)
+	{
+		return column.distance <= maxEdits;
+	}
+
+	/**
+	 * Returns whether extending the text of the column could still bring it within the maximum edits of the query. The
+	 * smallest value in a column never decreases as the text grows, so once it exceeds the maximum edits the branch
+	 * can be pruned.
+	 *
+	 * @param column The column to check.
+	 * @return True if some extension of the text may match.
+	 */
+	public boolean canMatch(Column column)
+	{
+		int value = column.depth;
+		int minimum = value;
+
+		for (int i = 0; i < length && minimum > maxEdits; i++)
+		{
+			value += (int) ((column.pv >>> i) & 1L) - (int) ((column.mv >>> i) & 1L);
+			minimum = Math.min(minimum, value);
+		}
+
+		return minimum <= maxEdits;
+	}
+
+	/**
+	 * Checks whether some substring of the given normalized phrase is within the maximum edits of the query.
+	 *
+	 * @param phrase The normalized phrase to check.
+	 * @return True if the phrase contains an approximate match, false otherwise.
+	 */
+	public boolean matches(String phrase)
+	{
+		if (phrase == null || phrase.isEmpty()) return false;
+		if (length <= maxEdits) return true;
+
+		long pv = mask;
+		long mv = 0L;
+		int distance = length;
+
+		for (int j = 0; j < phrase.length(); j++)
+		{
+			long eq = positionsOf(phrase.charAt(j));
+			long xv = eq | mv;
+			long xh = (((eq & pv) + pv) ^ pv) | eq;
+			long ph = mv | ~(xh | pv);
+			long mh = pv & xh;
+
+			if ((ph & lastBit) != 0) distance++;
+			else if ((mh & lastBit) != 0) distance--;
+
+			if (distance <= maxEdits) return true;
+
+			// A match may start anywhere, so the top row stays zero and no delta enters at row 0.
+			ph <<= 1;
+			mh <<= 1;
+			pv = (mh | ~(xv | ph)) & mask;
+			mv = (ph & xv) & mask;
+		}
+
+		return false;
+	}
+
+	private long positionsOf(char c)
+	{
+		if (c < ASCII) return asciiPositions[c];
+
+		Long positions = otherPositions.get(c);
+		return positions == null ? 0L : positions;
+	}
+
+	/**
+	 * A column of the edit distance matrix: the vertical deltas as positive and negative bit vectors, the distance to
+	 * the whole query and the length of the text.
+	 */
+	static final class Column
+	{
+		private final long pv;
+		private final long mv;
+		private final int distance;
+		private final int depth;
+
+		Column(long pv, long mv, int distance, int depth)
+		{
+			this.pv = pv;
+			this.mv = mv;
+			this.distance = distance;
+			this.depth = depth;
+		}
+
+		int getDistance()
+		{
+			return distance;
+		}
+
+		int getDepth()
+		{
+			return depth;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package com.helenusdb.index.suffix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * ParallelSuffixBuilder builds the SuffixNode graph for a batch of phrases on a fork/join pool. The phrases are split
+ * into contiguous id ranges, each worker builds a private partial graph for its range without any contention, and the
+ * partial graphs are merged pairwise as the tasks join. Because the id ranges are disjoint and ordered, merging only
+ * concatenates postings, so the result is identical to inserting the phrases one by one.
+ *
+ * @see SuffixIndex#buildParallel(java.util.stream.Stream)
+ */
+class ParallelSuffixBuilder
+{
+	// The smallest number of phrases worth building in a task of its own.
+	private static final int MIN_PARTITION_SIZE = 64;
+
+	// Merges below this depth fork a task per shared child; deeper merges are sequential.
+	private static final int MERGE_FORK_DEPTH = 2;
+
+	private final List<String> phrases;
+	private final int firstIndex;
+	private final int maxDepth;
+	private final int partitionSize;
+
+	/**
+	 * Constructs a ParallelSuffixBuilder.
+	 *
+	 * @param phrases     The normalized phrases to index.
+	 * @param firstIndex  The id of the first phrase; the others follow consecutively.
+	 * @param maxDepth    The maximum number of characters of each suffix to index.
+	 * @param parallelism The number of workers the phrases are shared among.
+	 */
+	ParallelSuffixBuilder(List<String> phrases, int firstIndex, int maxDepth, int parallelism)
+	{
+		this.phrases = phrases;
+		this.firstIndex = firstIndex;
+		this.maxDepth = maxDepth;
+		// A few partitions per worker evens out phrases of different lengths.
+		this.partitionSize = Math.max(MIN_PARTITION_SIZE, phrases.size() / (parallelism * 4) + 1);
+	}
+
+	/**
+	 * Builds the node graph of all the phrases on the given pool.
+	 *
+	 * @param pool The pool to build on.
+	 * @return The root of the node graph.
+	 */
+	public SuffixNode build(ForkJoinPool pool)
+	{
+		return pool.invoke(new BuildTask(0, phrases.size()));
+	}
+
+	/**
+	 * Merges a node graph into another on the given pool. Every index in the source graph must be greater than every
+	 * index in the target graph.
+	 *
+	 * @param pool   The pool to merge on.
+	 * @param target The graph to merge into.
+	 * @param source The graph to merge. Must not be used afterwards.
+	 */
+	public static void merge(ForkJoinPool pool, SuffixNode target, SuffixNode source)
+	{
+		pool.invoke(new MergeTask(target, source, 0));
+	}
+
+	private SuffixNode buildRange(int from, int to)
+	{
+		SuffixNode root = new SuffixNode();
+
+		for (int i = from; i < to; i++)
+		{
+			String phrase = phrases.get(i);
+
+			for (int start = 0; start < phrase.length(); start++)
+			{
+				int end = (int) Math.min(phrase.length(), (long) start + maxDepth);
+				root.addSuffix(phrase, start, end, firstIndex + i);
+			}
+		}
+
+		return root;
+	}
+
+	/**
+	 * Builds the node graph of a contiguous range of phrases, splitting the range in two while it is large.
+	 */
+	private final class BuildTask
+	extends RecursiveTask<SuffixNode>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		BuildTask(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected SuffixNode compute()
+		{
+			if (to - from <= partitionSize) return buildRange(from, to);
+
+			int middle = (from + to) >>> 1;
+			BuildTask low = new BuildTask(from, middle);
+			low.fork();
+			SuffixNode high = new BuildTask(middle, to).compute();
+			SuffixNode root = low.join();
+			new MergeTask(root, high, 0).compute();
+			return root;
+		}
+	}
+
+	/**
+	 * Merges a node graph into another, forking the merges of shared children near the root.
+	 */
+	private static final class MergeTask
+	extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final SuffixNode target;
+		private final SuffixNode source;
+		private final int depth;
+
+		MergeTask(SuffixNode target, SuffixNode source, int depth)
+		{
+			this.target = target;
+			this.source = source;
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (depth >= MERGE_FORK_DEPTH)
+			{
+				target.merge(source);
+				return;
+			}
+
+			target.mergeIndices(source);
+			List<MergeTask> subtasks = new ArrayList<>();
+
+			for (Map.Entry<Character, SuffixNode> entry : source.getChildMap().entrySet())
+			{
+				SuffixNode child = target.getChild(entry.getKey());
+
+				if (child == null)
+				{
+					target.adoptChild(entry.getKey(), entry.getValue());
+				}
+				else
+				{
+					subtasks.add(new MergeTask(child, entry.getValue(), depth + 1));
+				}
+			}
+
+			invokeAll(subtasks);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.helenusdb.index.suffix;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.function.IntPredicate;
+
+import com.helenusdb.index.util.AppendOnlyList;
+
+/**
+ * PhraseTable interns the normalized phrases of a mutable SuffixIndex. Each distinct phrase gets the next phrase id
+ * and a Postings list of the value ids inserted with it, so inserting a known phrase again is a hash lookup and an
+ * append instead of a walk of all its suffixes.
+ *
+ * Like the rest of the index, the table has a single writer and lock-free readers: entries are published through an
+ * AppendOnlyList and their value ids are Postings. The map of phrases to ids is only used by the writer.
+ *
+ * @see SuffixIndex
+ */
+class PhraseTable
+implements PhraseValues
+{
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final AppendOnlyList<Entry> entries = new AppendOnlyList<>();
+
+	/**
+	 * Returns the id of the given phrase.
+	 *
+	 * @param phrase The normalized phrase.
+	 * @return The id of the phrase, or -1 if it is unknown.
+	 */
+	public int find(String phrase)
+	{
+		Integer id = ids.get(phrase);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Adds a new phrase with its first value id.
+	 *
+	 * @param phrase The normalized phrase, which must be unknown.
+	 * @param value  The id of the value inserted with the phrase.
+	 * @return The id of the new phrase.
+	 */
+	public int add(String phrase, int value)
+	{
+		int id = entries.size();
+		Postings values = new Postings();
+		values.add(value);
+		entries.add(new Entry(value, values));
+		ids.put(phrase, id);
+		return id;
+	}
+
+	/**
+	 * Adds a value id to a known phrase. Value ids must be added in ascending order.
+	 *
+	 * @param phrase The phrase id.
+	 * @param value  The id of the value inserted with the phrase.
+	 */
+	public void addValue(int phrase, int value)
+	{
+		entries.get(phrase).values.add(value);
+	}
+
+	/**
+	 * Removes the matching value ids from every phrase. Phrases left without any value id are forgotten, so inserting
+	 * them again creates a new phrase id.
+	 *
+	 * @param isRemoved The predicate selecting value ids to remove.
+	 * @param stats     The statistics to record removed postings in.
+	 * @return The ids of the phrases left without any value id.
+	 */
+	public BitSet prune(IntPredicate isRemoved, CompactionStats stats)
+	{
+		BitSet emptied = new BitSet();
+
+		for (Iterator<Map.Entry<String, Integer>> i = ids.entrySet().iterator(); i.hasNext();)
+		{
+			Map.Entry<String, Integer> entry = i.next();
+			Postings values = entries.get(entry.getValue()).values;
+			stats.addRemovedPostings(values.removeIf(isRemoved));
+
+			if (values.isEmpty())
+			{
+				emptied.set(entry.getValue());
+				i.remove();
+			}
+		}
+
+		return emptied;
+	}
+
+	@Override
+	public int size()
+	{
+		return entries.size();
+	}
+
+	@Override
+	public int getFirstValue(int phrase)
+	{
+		return entries.get(phrase).firstValue;
+	}
+
+	@Override
+	public int getValueCount(int phrase)
+	{
+		return entries.get(phrase).values.size();
+	}
+
+	@Override
+	public PrimitiveIterator.OfInt valueIterator(int phrase)
+	{
+		return entries.get(phrase).values.iterator();
+	}
+
+	/**
+	 * The value ids of a phrase and the first of them, which is kept once removed.
+	 */
+	private static final class Entry
+	{
+		private final int firstValue;
+		private final Postings values;
+
+		Entry(int firstValue, Postings values)
+		{
+			this.firstValue = firstValue;
+			this.values = values;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.helenusdb.index.suffix;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * PhraseValues maps the phrase ids held in the postings of a SuffixIndex to the ids of the values inserted with each
+ * phrase. Identical phrases are indexed once, so a phrase id fans out to one or more value ids. It is implemented both
+ * by the mutable PhraseTable and by the flat buffers of a frozen index.
+ *
+ * @see PhraseTable
+ * @see FrozenPhraseValues
+ */
+interface PhraseValues
+{
+	/**
+	 * Gets the number of phrase ids.
+	 *
+	 * @return The number of phrase ids.
+	 */
+	int size();
+
+	/**
+	 * Gets the id of the value the phrase was first inserted with. It never changes, even once that value is removed,
+	 * so it is a lower bound of the phrase's value ids that ascends with the phrase ids.
+	 *
+	 * @param phrase The phrase id.
+	 * @return The first value id of the phrase.
+	 */
+	int getFirstValue(int phrase);
+
+	/**
+	 * Gets the number of value ids of the phrase.
+	 *
+	 * @param phrase The phrase id.
+	 * @return The number of value ids.
+	 */
+	int getValueCount(int phrase);
+
+	/**
+	 * Returns an iterator over the value ids of the phrase in ascending order.
+	 *
+	 * @param phrase The phrase id.
+	 * @return An ascending iterator over the value ids.
+	 */
+	PrimitiveIterator.OfInt valueIterator(int phrase);
+}
@@ -0,0 +1,294 @@
+package com.helenusdb.index.suffix;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Postings is the sorted, duplicate-free list of indices stored at a SuffixNode, where they are phrase ids, and in a
+ * PhraseTable, where they are value ids. Indices are kept in a growable int array instead of a set of boxed Integers.
+ * Since SuffixIndex hands out ids in ascending order, adding an index is normally an O(1) append and iteration yields
+ * indices in stable id order without any sorting.
+ *
+ * Postings have a single writer and any number of lock-free readers. Slot 0 of the array holds the number of indices,
+ * which follow from slot 1. An append writes the index first and then publishes the new size with a release store, so
+ * the published prefix of an array never changes. Anything else (growing, an out-of-order insert or a removal) builds
+ * a new array and publishes it through a volatile field. A reader reads the array once and the size from that same
+ * array, so it always sees a consistent, sorted snapshot even while the writer is adding to it.
+ *
+ * @see SuffixNode
+ */
+class Postings
+{
+	private static final VarHandle SIZE = MethodHandles.arrayElementVarHandle(int[].class);
+	private static final int[] EMPTY = new int[1];
+	private static final int INITIAL_CAPACITY = 2;
+
+	// The number of indices in slot 0, followed by the indices in ascending order.
+	private volatile int[] indices = EMPTY;
+
+	/**
+	 * Adds an index to the postings. Adding an index that is already present has no effect. Must only be called by
+	 * the single writer.
+	 *
+	 * @param index The index to add.
+	 */
+	public void add(int index)
+	{
+		int[] current = indices;
+		int size = current[0];
+
+		if (size > 0 && current[size] >= index)
+		{
+			if (current[size] == index) return;
+
+			int position = Arrays.binarySearch(current, 1, size + 1, index);
+			if (position >= 0) return;
+
+			insertAt(current, size, -position - 1, index);
+			return;
+		}
+
+		int[] target = ensureCapacity(current, size + 1);
+		target[size + 1] = index;
+		publish(current, target, size + 1);
+	}
+
+	/**
+	 * Adds all the indices of another postings list. When every index in the other list is greater than those already
+	 * present, as when merging postings built from consecutive id ranges, the lists are concatenated in one copy. Must
+	 * only be called by the single writer.
+	 *
+	 * @param other The postings to add.
+	 */
+	public void addAll(Postings other)
+	{
+		int[] source = other.indices;
+		int count = sizeOf(source);
+		if (count == 0) return;
+
+		int[] current = indices;
+		int size = current[0];
+
+		if (size > 0 && current[size] >= source[1])
+		{
+			for (int i = 1; i <= count; i++)
+			{
+				add(source[i]);
+			}
+
+			return;
+		}
+
+		int[] target = ensureCapacity(current, size + count);
+		System.arraycopy(source, 1, target, size + 1, count);
+		publish(current, target, size + count);
+	}
+
+	/**
+	 * Removes all indices matching the given predicate. The remaining indices are copied into a right-sized array so
+	 * compaction also releases any spare capacity. Readers keep seeing the previous array until the new one is
+	 * published. Must only be called by the single writer.
+	 *
+	 * @param filter The predicate selecting indices to remove.
+	 * @return The number of indices removed.
+	 */
+	public int removeIf(IntPredicate filter)
+	{
+		int[] current = indices;
+		int size = current[0];
+		int[] retained = new int[size + 1];
+		int count = 0;
+
+		for (int i = 1; i <= size; i++)
+		{
+			if (!filter.test(current[i]))
+			{
+				retained[++count] = current[i];
+			}
+		}
+
+		if (count < size)
+		{
+			retained[0] = count;
+			indices = count == 0 ? EMPTY : Arrays.copyOf(retained, count + 1);
+		}
+
+		return size - count;
+	}
+
+	/**
+	 * Returns the number of indices in the postings.
+	 *
+	 * @return The number of indices.
+	 */
+	public int size()
+	{
+		return sizeOf(indices);
+	}
+
+	/**
+	 * Returns true if the postings contain no indices.
+	 *
+	 * @return True if empty, false otherwise.
+	 */
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	/**
+	 * Returns the index at the given position in ascending order.
+	 *
+	 * @param position The position of the index to return.
+	 * @return The index at the given position.
+	 */
+	public int get(int position)
+	{
+		int[] current = indices;
+		if (position < 0 || position >= sizeOf(current)) throw new IndexOutOfBoundsException(position);
+		return current[position + 1];
+	}
+
+	/**
+	 * Checks whether the postings contain the given index using a binary search.
+	 *
+	 * @param index The index to check for.
+	 * @return True if the index is present, false otherwise.
+	 */
+	public boolean contains(int index)
+	{
+		int[] current = indices;
+		int size = sizeOf(current);
+		return size > 0 && Arrays.binarySearch(current, 1, size + 1, index) >= 0;
+	}
+
+	/**
+	 * Returns an iterator over the indices in ascending order.
+	 *
+	 * @return An ascending iterator over the indices.
+	 */
+	public PrimitiveIterator.OfInt iterator()
+	{
+		return iterator(0);
+	}
+
+	/**
+	 * Returns an iterator over the indices in ascending order, starting at the given position. This allows skipping an
+	 * offset in O(1) when paging through a single posting list. The iterator walks the snapshot of the postings taken
+	 * when it was created.
+	 *
+	 * @param from The position of the first index to return.
+	 * @return An ascending iterator over the indices.
+	 */
+	public PrimitiveIterator.OfInt iterator(int from)
+	{
+		int[] snapshot = indices;
+		int end = sizeOf(snapshot) + 1;
+
+		return new PrimitiveIterator.OfInt()
+		{
+			private int position = Math.max(from, 0) + 1;
+
+			@Override
+			public boolean hasNext()
+			{
+				return position < end;
+			}
+
+			@Override
+			public int nextInt()
+			{
+				if (!hasNext()) throw new NoSuchElementException();
+				return snapshot[position++];
+			}
+		};
+	}
+
+	/**
+	 * Returns an unmodifiable Set view of the indices. The view iterates in ascending order.
+	 *
+	 * @return An unmodifiable Set view of the indices.
+	 */
+	public Set<Integer> asSet()
+	{
+		return new AbstractSet<>()
+		{
+			@Override
+			public Iterator<Integer> iterator()
+			{
+				return Postings.this.iterator();
+			}
+
+			@Override
+			public int size()
+			{
+				return Postings.this.size();
+			}
+
+			@Override
+			public boolean contains(Object o)
+			{
+				return o instanceof Integer i && Postings.this.contains(i);
+			}
+		};
+	}
+
+	private void insertAt(int[] current, int size, int slot, int index)
+	{
+		// Never shift a published array in place: readers may be walking it.
+		int[] copy = new int[Math.max(current.length, size + 2)];
+		System.arraycopy(current, 1, copy, 1, slot - 1);
+		copy[slot] = index;
+		System.arraycopy(current, slot, copy, slot + 1, size + 1 - slot);
+		copy[0] = size + 1;
+		indices = copy;
+	}
+
+	/**
+	 * Returns an array with room for the given number of indices: the current array if it is large enough, otherwise an
+	 * unpublished, larger copy of it.
+	 */
+	private static int[] ensureCapacity(int[] current, int capacity)
+	{
+		if (capacity < current.length) return current;
+
+		int length = current == EMPTY ? Math.max(INITIAL_CAPACITY, capacity) + 1
+			: Math.max(capacity + 1, current.length + (current.length >> 1));
+		return Arrays.copyOf(current, length);
+	}
+
+	/**
+	 * Publishes a new size: in place with a release store when appending to the current array, otherwise by setting
+	 * the size of the new array before publishing it through the volatile field.
+	 */
+	private void publish(int[] current, int[] target, int size)
+	{
+		if (target == current)
+		{
+			SIZE.setRelease(target, 0, size);
+		}
+		else
+		{
+			target[0] = size;
+			indices = target;
+		}
+	}
+
+	private static int sizeOf(int[] snapshot)
+	{
+		return (int) SIZE.getAcquire(snapshot, 0);
+	}
+
+	@Override
+	public String toString()
+	{
+		return asSet().toString();
+	}
+}
@@ -0,0 +1,579 @@
+package com.helenusdb.index.suffix;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RegexAutomaton compiles a subset of regular expressions into a deterministic automaton for walking a SuffixIndex.
+ * The supported syntax is:
+ *
+ * <pre>
+ * abc        literal characters
+ * .          any character
+ * [abc]      a character class, with ranges such as [a-z] and negation such as [^0-9]
+ * \c         the character c, taken literally
+ * x|y        alternation
+ * (x)        grouping
+ * x?         zero or one
+ * x* x+      zero or more, one or more
+ * x{n} x{n,m} x{n,}   bounded repeats
+ * </pre>
+ *
+ * The pattern is parsed and expanded into a Thompson NFA, whose size is capped, and the DFA states are built lazily by
+ * subset construction as the index is walked. A pattern whose DFA grows beyond the state limit fails fast with an
+ * IllegalArgumentException instead of consuming unbounded time and memory.
+ */
+class RegexAutomaton
+{
+	// The default maximum number of DFA states built for a single pattern.
+	static final int DEFAULT_MAX_STATES = 10000;
+
+	// The DFA state reached once no match is possible.
+	static final int DEAD = -1;
+
+	private static final int MAX_NFA_STATES = 100000;
+	private static final int MAX_REPEAT = 1000;
+	private static final int UNBOUNDED = -1;
+	private static final int UNKNOWN = -2;
+	private static final int ASCII = 128;
+
+	// The NFA: the character class of each state's single transition, or null for a state with only epsilon edges.
+	private final List<CharClass> labels = new ArrayList<>();
+	private final List<Integer> targets = new ArrayList<>();
+	private final List<int[]> epsilons = new ArrayList<>();
+	private final int nfaStart;
+	private final int nfaAccept;
+
+	// The DFA, built lazily.
+	private final int maxStates;
+	private final Map<BitSet, Integer> stateIds = new HashMap<>();
+	private final List<BitSet> states = new ArrayList<>();
+	private final List<int[]> asciiTransitions = new ArrayList<>();
+	private final List<Map<Character, Integer>> otherTransitions = new ArrayList<>();
+	private final BitSet accepting = new BitSet();
+	private final int start;
+
+	private RegexAutomaton(Node pattern, int maxStates)
+	{
+		this.maxStates = maxStates;
+		int[] fragment = build(pattern);
+		this.nfaStart = fragment[0];
+		this.nfaAccept = fragment[1];
+
+		BitSet initial = new BitSet();
+		initial.set(nfaStart);
+		this.start = stateOf(closure(initial));
+	}
+
+	/**
+	 * Compiles the given pattern.
+	 *
+	 * @param pattern   The pattern to compile.
+	 * @param maxStates The maximum number of DFA states to build.
+	 * @return The compiled automaton.
+	 * @throws IllegalArgumentException if the pattern is malformed or expands beyond the limits.
+	 */
+	public static RegexAutomaton compile(String pattern, int maxStates)
+	{
+		if (maxStates < 1) throw new IllegalArgumentException("Maximum states must be positive: " + maxStates);
+
+		return new RegexAutomaton(new Parser(pattern).parse(), maxStates);
+	}
+
+	/**
+	 * Returns the initial DFA state.
+	 *
+	 * @return The initial state.
+	 */
+	public int start()
+	{
+		return start;
+	}
+
+	/**
+	 * Returns the DFA state reached from the given state on the given character, building it if needed.
+	 *
+	 * @param state A live DFA state.
+	 * @param c     The next character.
+	 * @return The next state, or DEAD if no match is possible.
+	 * @throws IllegalArgumentException if building the state exceeds the maximum number of states.
+	 */
+	public int step(int state, char c)
+	{
+		if (c < ASCII)
+		{
+			int[] transitions = asciiTransitions.get(state);
+			if (transitions[c] == UNKNOWN) transitions[c] = computeStep(state, c);
+			return transitions[c];
+		}
+
+		return otherTransitions.get(state).computeIfAbsent(c, k -> computeStep(state, k));
+	}
+
+	/**
+	 * Returns whether the text consumed to reach the given state matches the pattern.
+	 *
+	 * @param state A DFA state.
+	 * @return True if the state is accepting, false otherwise.
+	 */
+	public boolean isAccepting(int state)
+	{
+		return state != DEAD && accepting.get(state);
+	}
+
+	/**
+	 * Checks whether the pattern matches a non-empty substring of the given phrase.
+	 *
+	 * @param phrase The normalized phrase to check.
+	 * @return True if the pattern matches a substring of the phrase, false otherwise.
+	 */
+	public boolean matches(String phrase)
+	{
+		if (phrase == null) return false;
+
+		for (int from = 0; from < phrase.length(); from++)
+		{
+			int state = start;
+
+			for (int i = from; i < phrase.length() && state != DEAD; i++)
+			{
+				state = step(state, phrase.charAt(i));
+				if (isAccepting(state)) return true;
+			}
+		}
+
+		return false;
+	}
+
+	private int computeStep(int state, char c)
+	{
+		BitSet current = states.get(state);
+		BitSet next = new BitSet();
+
+		for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1))
+		{
+			CharClass label = labels.get(s);
+			if (label != null && label.contains(c)) next.set(targets.get(s));
+		}
+
+		return next.isEmpty() ? DEAD : stateOf(closure(next));
+	}
+
+	private int stateOf(BitSet nfaStates)
+	{
+		Integer id = stateIds.get(nfaStates);
+		if (id != null) return id;
+
+		if (states.size() >= maxStates)
+		{
+			throw new IllegalArgumentException("Pattern expands to more than " + maxStates + " automaton states");
+		}
+
+		int newId = states.size();
+		stateIds.put(nfaStates, newId);
+		states.add(nfaStates);
+		int[] transitions = new int[ASCII];
+		Arrays.fill(transitions, UNKNOWN);
+		asciiTransitions.add(transitions);
+		otherTransitions.add(new HashMap<>());
+		if (nfaStates.get(nfaAccept)) accepting.set(newId);
+		return newId;
+	}
+
+	private BitSet closure(BitSet nfaStates)
+	{
+		Deque<Integer> pending = new ArrayDeque<>();
+		nfaStates.stream().forEach(pending::push);
+
+		while (!pending.isEmpty())
+		{
+			for (int target : epsilons.get(pending.pop()))
+			{
+				if (!nfaStates.get(target))
+				{
+					nfaStates.set(target);
+					pending.push(target);
+				}
+			}
+		}
+
+		return nfaStates;
+	}
+
+	/**
+	 * Builds the NFA fragment of a pattern node.
+	 *
+	 * @return The start and accept states of the fragment.
+	 */
+	private int[] build(Node node)
+	{
+		switch (node.type)
+		{
+			case CHAR:
+			{
+				int from = newState();
+				int to = newState();
+				labels.set(from, node.chars);
+				targets.set(from, to);
+				return new int[] {from, to};
+			}
+			case CONCAT:
+			{
+				int from = newState();
+				int to = from;
+
+				for (Node child : node.children)
+				{
+					int[] fragment = build(child);
+					epsilon(to, fragment[0]);
+					to = fragment[1];
+				}
+
+				return new int[] {from, to};
+			}
+			case ALTERNATION:
+			{
+				int from = newState();
+				int to = newState();
+
+				for (Node child : node.children)
+				{
+					int[] fragment = build(child);
+					epsilon(from, fragment[0]);
+					epsilon(fragment[1], to);
+				}
+
+				return new int[] {from, to};
+			}
+			default: // REPEAT
+			{
+				Node child = node.children.get(0);
+				int from = newState();
+				int to = from;
+
+				for (int i = 0; i < node.min; i++)
+				{
+					int[] fragment = build(child);
+					epsilon(to, fragment[0]);
+					to = fragment[1];
+				}
+
+				if (node.max == UNBOUNDED)
+				{
+					int[] fragment = build(child);
+					epsilon(to, fragment[0]);
+					epsilon(fragment[1], to);
+					return new int[] {from, to};
+				}
+
+				int end = newState();
+				epsilon(to, end);
+
+				for (int i = node.min; i < node.max; i++)
+				{
+					int[] fragment = build(child);
+					epsilon(to, fragment[0]);
+					to = fragment[1];
+					epsilon(to, end);
+				}
+
+				return new int[] {from, end};
+			}
+		}
+	}
+
+	private int newState()
+	{
+		if (labels.size() >= MAX_NFA_STATES)
+		{
+			throw new IllegalArgumentException("Pattern expands to more than " + MAX_NFA_STATES + " states");
+		}
+
+		labels.add(null);
+		targets.add(-1);
+		epsilons.add(new int[0]);
+		return labels.size() - 1;
+	}
+
+	private void epsilon(int from, int to)
+	{
+		int[] current = epsilons.get(from);
+		int[] expanded = Arrays.copyOf(current, current.length + 1);
+		expanded[current.length] = to;
+		epsilons.set(from, expanded);
+	}
+
+	private enum NodeType
+	{
+		CHAR, CONCAT, ALTERNATION, REPEAT
+	}
+
+	/**
+	 * A node of the parsed pattern.
+	 */
+	private static final class Node
+	{
+		private final NodeType type;
+		private final CharClass chars;
+		private final List<Node> children;
+		private final int min;
+		private final int max;
+
+		private Node(NodeType type, CharClass chars, List<Node> children, int min, int max)
+		{
+			this.type = type;
+			this.chars = chars;
+			this.children = children;
+			this.min = min;
+			this.max = max;
+		}
+
+		static Node chars(CharClass chars)
+		{
+			return new Node(NodeType.CHAR, chars, List.of(), 1, 1);
+		}
+
+		static Node of(NodeType type, List<Node> children)
+		{
+			return children.size() == 1 ? children.get(0) : new Node(type, null, children, 1, 1);
+		}
+
+		static Node repeat(Node child, int min, int max)
+		{
+			return new Node(NodeType.REPEAT, null, List.of(child), min, max);
+		}
+	}
+
+	/**
+	 * A set of characters: sorted, inclusive ranges, possibly negated.
+	 */
+	private static final class CharClass
+	{
+		private static final CharClass ANY = new CharClass(new char[0], true);
+
+		private final char[] ranges;
+		private final boolean isNegated;
+
+		CharClass(char[] ranges, boolean isNegated)
+		{
+			this.ranges = ranges;
+			this.isNegated = isNegated;
+		}
+
+		static CharClass of(char c)
+		{
+			return new CharClass(new char[] {c, c}, false);
+		}
+
+		boolean contains(char c)
+		{
+			for (int i = 0; i < ranges.length; i += 2)
+			{
+				if (c >= ranges[i] && c <= ranges[i + 1]) return !isNegated;
+			}
+
+			return isNegated;
+		}
+	}
+
+	/**
+	 * A recursive descent parser for the supported syntax.
+	 */
+	private static final class Parser
+	{
+		private final String pattern;
+		private int position;
+
+		Parser(String pattern)
+		{
+			this.pattern = pattern;
+		}
+
+		Node parse()
+		{
+			if (pattern.isEmpty()) throw error("empty pattern");
+
+			Node node = parseAlternation();
+			if (position < pattern.length()) throw error("unexpected '" + pattern.charAt(position) + "'");
+			return node;
+		}
+
+		private Node parseAlternation()
+		{
+			List<Node> alternatives = new ArrayList<>();
+			alternatives.add(parseConcatenation());
+
+			while (accept('|'))
+			{
+				alternatives.add(parseConcatenation());
+			}
+
+			return Node.of(NodeType.ALTERNATION, alternatives);
+		}
+
+		private Node parseConcatenation()
+		{
+			List<Node> sequence = new ArrayList<>();
+
+			while (position < pattern.length() && peek() != '|' && peek() != ')')
+			{
+				sequence.add(parseRepeat());
+			}
+
+			if (sequence.isEmpty()) throw error("empty alternative");
+			return Node.of(NodeType.CONCAT, sequence);
+		}
+
+		private Node parseRepeat()
+		{
+			Node node = parseAtom();
+
+			while (position < pattern.length())
+			{
+				if (accept('?')) node = Node.repeat(node, 0, 1);
+				else if (accept('*')) node = Node.repeat(node, 0, UNBOUNDED);
+				else if (accept('+')) node = Node.repeat(node, 1, UNBOUNDED);
+				else if (accept('{')) node = parseBounds(node);
+				else break;
+			}
+
+			return node;
+		}
+
+		private Node parseBounds(Node node)
+		{
+			int min = parseNumber();
+			int max = min;
+
+			if (accept(','))
+			{
+				max = peekIs('}') ? UNBOUNDED : parseNumber();
+			}
+
+			expect('}');
+			if (max != UNBOUNDED && max < min) throw error("repeat maximum below minimum");
+			return Node.repeat(node, min, max);
+		}
+
+		private int parseNumber()
+		{
+			int begin = position;
+
+			while (position < pattern.length() && Character.isDigit(peek()))
+			{
+				position++;
+			}
+
+			if (begin == position) throw error("expected a number");
+
+			int value = position - begin > 4 ? Integer.MAX_VALUE : Integer.parseInt(pattern.substring(begin, position));
+			if (value > MAX_REPEAT) throw error("repeat count above " + MAX_REPEAT);
+			return value;
+		}
+
+		private Node parseAtom()
+		{
+			char c = next();
+
+			switch (c)
+			{
+				case '(':
+				{
+					Node node = parseAlternation();
+					expect(')');
+					return node;
+				}
+				case '[':
+					return Node.chars(parseClass());
+				case '.':
+					return Node.chars(CharClass.ANY);
+				case '\\':
+					return Node.chars(CharClass.of(next()));
+				case '?':
+				case '*':
+				case '+':
+				case '{':
+				case ')':
+				case '|':
+					throw error("unexpected '" + c + "'");
+				default:
+					return Node.chars(CharClass.of(c));
+			}
+		}
+
+		private CharClass parseClass()
+		{
+			boolean isNegated = accept('^');
+			StringBuilder ranges = new StringBuilder();
+
+			do
+			{
+				char low = classChar();
+				char high = low;
+
+				if (peekIs('-') && position + 1 < pattern.length() && pattern.charAt(position + 1) != ']')
+				{
+					position++;
+					high = classChar();
+					if (high < low) throw error("invalid range " + low + "-" + high);
+				}
+
+				ranges.append(low).append(high);
+			}
+			while (!peekIs(']'));
+
+			expect(']');
+			return new CharClass(ranges.toString().toCharArray(), isNegated);
+		}
+
+		private char classChar()
+		{
+			char c = next();
+			return c == '\\' ? next() : c;
+		}
+
+		private char next()
+		{
+			if (position >= pattern.length()) throw error("unexpected end of pattern");
+			return pattern.charAt(position++);
+		}
+
+		private char peek()
+		{
+			return pattern.charAt(position);
+		}
+
+		private boolean peekIs(char c)
+		{
+			if (position >= pattern.length()) throw error("unexpected end of pattern");
+			return peek() == c;
+		}
+
+		private boolean accept(char c)
+		{
+			if (position < pattern.length() && peek() == c)
+			{
+				position++;
+				return true;
+			}
+
+			return false;
+		}
+
+		private void expect(char c)
+		{
+			if (!accept(c)) throw error("expected '" + c + "'");
+		}
+
+		private IllegalArgumentException error(String message)
+		{
+			return new IllegalArgumentException("Invalid pattern at " + position + ": " + message + ": " + pattern);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.helenusdb.index.suffix;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * ResultCache holds the indices of recently searched queries, bounded by an estimate of their size in bytes and evicted
+ * least recently used first. Each entry records the generation of the index it was computed at, and a lookup at any
+ * other generation treats it as stale, so writes invalidate every entry without touching the cache.
+ *
+ * Cached results are immutable sorted arrays, exposed as read-only Set views, so one entry can be shared by any number
+ * of concurrent readers. The cache itself is guarded by its monitor; lookups are short enough that this is not a point
+ * of contention compared to the searches it saves.
+ */
+class ResultCache
+{
+	// Rough heap cost of an entry besides its key characters and indices: the map entry, the entry and array headers.
+	private static final long ENTRY_OVERHEAD_BYTES = 96L;
+
+	private final long maxBytes;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	/**
+	 * Constructs a ResultCache.
+	 *
+	 * @param maxBytes The maximum estimated size of the cached results, in bytes.
+	 */
+	ResultCache(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the cached indices of the given query, if they were computed at the given generation.
+	 *
+	 * @param query      The normalized query.
+	 * @param generation The current generation of the index.
+	 * @return The cached indices, or null on a miss.
+	 */
+	public synchronized Entry get(String query, long generation)
+	{
+		Entry entry = entries.get(query);
+
+		if (entry != null && entry.generation != generation)
+		{
+			remove(query, entry);
+			invalidations++;
+			entry = null;
+		}
+
+		if (entry == null)
+		{
+			misses++;
+			return null;
+		}
+
+		hits++;
+		return entry;
+	}
+
+	/**
+	 * Caches the indices of the given query, evicting the least recently used entries to make room. Results larger
+	 * than the whole cache are not cached.
+	 *
+	 * @param query      The normalized query.
+	 * @param generation The generation of the index the indices were computed at.
+	 * @param indices    The ascending indices, which must not be modified afterwards.
+	 * @return The cached, read-only view of the indices.
+	 */
+	public synchronized Entry put(String query, long generation, int[] indices)
+	{
+		Entry entry = new Entry(indices, generation, ENTRY_OVERHEAD_BYTES + 2L * query.length()
+			+ (long) Integer.BYTES * indices.length);
+		if (entry.bytes > maxBytes) return entry;
+
+		Entry previous = entries.get(query);
+		if (previous != null) remove(query, previous);
+
+		entries.put(query, entry);
+		bytes += entry.bytes;
+		Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+
+		while (bytes > maxBytes)
+		{
+			Map.Entry<String, Entry> evicted = eldest.next();
+			bytes -= evicted.getValue().bytes;
+			eldest.remove();
+			evictions++;
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Returns a snapshot of the cache statistics.
+	 *
+	 * @return The statistics.
+	 */
+	public synchronized CacheStats getStats()
+	{
+		return new CacheStats(hits, misses, evictions, invalidations, entries.size(), bytes, maxBytes);
+	}
+
+	private void remove(String query, Entry entry)
+	{
+		entries.remove(query);
+		bytes -= entry.bytes;
+	}
+
+	/**
+	 * An immutable cached result: ascending indices, the generation they were computed at and their estimated size.
+	 */
+	static final class Entry
+	extends AbstractSet<Integer>
+	{
+		private final int[] indices;
+		private final long generation;
+		private final long bytes;
+
+		Entry(int[] indices, long generation, long bytes)
+		{
+			this.indices = indices;
+			this.generation = generation;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Returns an ascending iterator over the indices, starting at the given offset, without boxing them.
+		 *
+		 * @param offset The number of indices to skip.
+		 * @return An ascending iterator over the indices.
+		 */
+		PrimitiveIterator.OfInt indexIterator(int offset)
+		{
+			return Arrays.stream(indices, Math.min(offset, indices.length), indices.length).iterator();
+		}
+
+		@Override
+		public Iterator<Integer> iterator()
+		{
+			return new Iterator<>()
+			{
+				private int position;
+
+				@Override
+				public boolean hasNext()
+				{
+					return position < indices.length;
+				}
+
+				@Override
+				public Integer next()
+				{
+					if (!hasNext()) throw new NoSuchElementException();
+					return indices[position++];
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return indices.length;
+		}
+
+		@Override
+		public boolean contains(Object o)
+		{
+			return o instanceof Integer i && Arrays.binarySearch(indices, i) >= 0;
+		}
+	}
+}
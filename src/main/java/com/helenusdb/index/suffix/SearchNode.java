@@ -0,0 +1,59 @@
+package com.helenusdb.index.suffix;
+
+import java.util.Collection;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * SearchNode is the read-only view of a node that SuffixIndex queries walk. It is implemented both by the mutable
+ * SuffixNode graph and by the flat arrays of a frozen index, so searches behave identically on either.
+ *
+ * @see SuffixNode
+ * @see FrozenSuffixTrie
+ */
+interface SearchNode
+{
+	/**
+	 * Gets the child node indexed by the given character.
+	 *
+	 * @param c The character to get the child node for.
+	 * @return The child node indexed by the given character, or null if no such child exists.
+	 */
+	SearchNode getChild(char c);
+
+	/**
+	 * Gets the character indexing this node in its parent.
+	 *
+	 * @return The label of this node, or '\0' for the root.
+	 */
+	char getLabel();
+
+	/**
+	 * Gets the children of this node.
+	 *
+	 * @return The children of this node. Never null.
+	 */
+	Collection<? extends SearchNode> getChildren();
+
+	/**
+	 * Gets the number of indices in this node without materializing them.
+	 *
+	 * @return The number of indices in this node.
+	 */
+	int getIndexCount();
+
+	/**
+	 * Returns an iterator over the indices in this node in ascending order, starting at the given position.
+	 *
+	 * @param from The position of the first index to return.
+	 * @return An ascending iterator over the indices in this node.
+	 */
+	PrimitiveIterator.OfInt indexIterator(int from);
+
+	/**
+	 * Gets the unmodifiable set of indices in this node, iterating in ascending order.
+	 *
+	 * @return The set of indices in this node.
+	 */
+	Set<Integer> getIndices();
+}
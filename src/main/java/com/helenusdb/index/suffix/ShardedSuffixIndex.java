@@ -0,0 +1,331 @@
+package com.helenusdb.index.suffix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import com.helenusdb.index.util.AppendOnlyList;
+import com.helenusdb.index.util.ConcurrentBitSet;
+
+/**
+ * ShardedSuffixIndex hash-partitions its values into a number of independent SuffixIndex shards. Each shard is smaller
+ * than a single index over all the values, so its nodes and postings stay closer together in memory, and a query runs
+ * against all the shards concurrently, so its latency is that of the slowest shard rather than the sum of them.
+ *
+ * Values are assigned a global sequence number as they are inserted, and the shards index those numbers. A query's
+ * results from each shard are therefore ascending, and merging them yields the values in the order they were
+ * inserted, exactly as a single SuffixIndex would. Paged queries ask each shard for at most offset + limit results.
+ *
+ * Queries run on the executor set with {@link #setExecutor(Executor)}, the common fork/join pool by default, while the
+ * calling thread searches one of the shards itself. Like SuffixIndex, writes are serialized and searches never lock.
+ *
+ * Usage:
+ *		 ShardedSuffixIndex<User> index = new ShardedSuffixIndex<>(4);
+ *		 index.insert("Alice Brown", alice).insert("Bob Barker", bob);
+ *		 List<User> results = index.search("b*"); // Returns Alice and Bob.
+ *
+ * @see SuffixIndex
+ */
+public class ShardedSuffixIndex<T>
+{
+	// Marks a value released by a removal while a search was mapping sequence numbers to values.
+	private static final Object RELEASED = new Object();
+
+	// The shards, each indexing the sequence numbers of its values.
+	private final List<SuffixIndex<Integer>> shards;
+
+	// The values by sequence number. Append-only, so readers never need to lock.
+	private final List<T> values = new AppendOnlyList<>();
+
+	// The sequence numbers of removed values.
+	private final ConcurrentBitSet deleted = new ConcurrentBitSet();
+
+	// The executor queries fan out on.
+	private volatile Executor executor = ForkJoinPool.commonPool();
+
+	/**
+	 * Constructs a new ShardedSuffixIndex without case sensitivity.
+	 *
+	 * @param shardCount The number of shards.
+	 * @throws IllegalArgumentException if shardCount is not positive.
+	 */
+	public ShardedSuffixIndex(int shardCount)
+	{
+		this(shardCount, false);
+	}
+
+	/**
+	 * Constructs a new ShardedSuffixIndex with the given case sensitivity.
+	 *
+	 * @param shardCount      The number of shards.
+	 * @param isCaseSensitive True if the index is case sensitive, false otherwise.
+	 * @throws IllegalArgumentException if shardCount is not positive.
+	 */
+	public ShardedSuffixIndex(int shardCount, boolean isCaseSensitive)
+	{
+		this(shardCount, isCaseSensitive, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Constructs a new ShardedSuffixIndex with the given case sensitivity and maximum indexed depth.
+	 *
+	 * @param shardCount      The number of shards.
+	 * @param isCaseSensitive True if the index is case sensitive, false otherwise.
+	 * @param maxDepth        The maximum number of characters of each suffix to index.
+	 * @throws IllegalArgumentException if shardCount or maxDepth is not positive.
+	 */
+	public ShardedSuffixIndex(int shardCount, boolean isCaseSensitive, int maxDepth)
+	{
+		if (shardCount < 1) throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+
+		this.shards = new ArrayList<>(shardCount);
+
+		for (int i = 0; i < shardCount; i++)
+		{
+			shards.add(new SuffixIndex<>(isCaseSensitive, maxDepth));
+		}
+	}
+
+	/**
+	 * Sets the executor queries fan out to the shards on. Defaults to the common fork/join pool. Each query submits one
+	 * task per shard but one, so a bounded pool at least as large as the shard count keeps the shards searching in
+	 * parallel. On Java 21 or later, a virtual thread per task executor can be used.
+	 *
+	 * @param executor The executor to run shard searches on.
+	 * @return The ShardedSuffixIndex instance for chaining.
+	 */
+	public ShardedSuffixIndex<T> setExecutor(Executor executor)
+	{
+		this.executor = Objects.requireNonNull(executor);
+		return this;
+	}
+
+	/**
+	 * Returns the number of shards.
+	 *
+	 * @return The number of shards.
+	 */
+	public int getShardCount()
+	{
+		return shards.size();
+	}
+
+	/**
+	 * Inserts a phrase and its associated value into the shard of the value.
+	 *
+	 * @param phrase The phrase to associate with the value.
+	 * @param value  The value to associate with the phrase.
+	 * @return The ShardedSuffixIndex instance for chaining.
+	 */
+	public synchronized ShardedSuffixIndex<T> insert(String phrase, T value)
+	{
+		if (phrase == null || phrase.isEmpty()) return this;
+
+		int sequence = values.size();
+		values.add(value);
+		shardOf(value).insert(phrase, sequence);
+		return this;
+	}
+
+	/**
+	 * Removes every occurrence of the given value that was inserted with the given phrase. Only the sequence numbers
+	 * the shard of the value holds for that exact phrase are compared, so the shard is not searched.
+	 *
+	 * @param phrase The phrase the value was inserted with.
+	 * @param value  The value to remove.
+	 * @return True if any value was removed, false otherwise.
+	 */
+	public synchronized boolean remove(String phrase, T value)
+	{
+		if (phrase == null || phrase.isEmpty()) return false;
+
+		return shardOf(value).removeIf(phrase, sequence ->
+		{
+			if (!Objects.equals(values.get(sequence), value)) return false;
+
+			// Tombstone before releasing, so a search reading the released value knows to skip it.
+			deleted.set(sequence);
+			values.set(sequence, null);
+			return true;
+		});
+	}
+
+	/**
+	 * Returns the number of live values in the index.
+	 *
+	 * @return The number of live values.
+	 */
+	public int size()
+	{
+		int size = 0;
+
+		for (SuffixIndex<Integer> shard : shards)
+		{
+			size += shard.size();
+		}
+
+		return size;
+	}
+
+	/**
+	 * Searches all the shards for the values that contain the given query substring.
+	 *
+	 * @param query The substring to search for.
+	 * @return A list of all values that contain the query substring, in the order they were inserted.
+	 */
+	public List<T> search(String query)
+	{
+		return merge(fanOut(shard -> shard.searchInts(query, Integer.MAX_VALUE, Integer::intValue)), 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Searches all the shards for a page of values that contain the given query substring. Each shard returns at most
+	 * offset + limit results, which are merged in insertion order before the page is taken.
+	 *
+	 * @param query  The substring to search for.
+	 * @param limit  The maximum number of values to return.
+	 * @param offset The number of matching values to skip.
+	 * @return A list of at most limit values that contain the query substring, in the order they were inserted.
+	 * @throws IllegalArgumentException if limit or offset is negative.
+	 */
+	public List<T> search(String query, int limit, int offset)
+	{
+		if (limit < 0) throw new IllegalArgumentException("Limit cannot be negative: " + limit);
+		if (offset < 0) throw new IllegalArgumentException("Offset cannot be negative: " + offset);
+		if (limit == 0) return List.of();
+
+		int perShard = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+		return merge(fanOut(shard -> shard.searchInts(query, perShard, Integer::intValue)), offset, limit);
+	}
+
+	/**
+	 * Counts the values that contain the given query substring across all the shards.
+	 *
+	 * @param query The substring to search for.
+	 * @return The number of values that contain the query substring.
+	 */
+	public int count(String query)
+	{
+		int count = 0;
+
+		for (int shardCount : fanOut(shard -> shard.count(query)))
+		{
+			count += shardCount;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Runs a search against every shard concurrently: all but the first shard on the executor, and the first on the
+	 * calling thread.
+	 *
+	 * @param search The search to run against a shard.
+	 * @return The result of each shard, in shard order.
+	 */
+	private <R> List<R> fanOut(Function<SuffixIndex<Integer>, R> search)
+	{
+		if (shards.size() == 1) return List.of(search.apply(shards.get(0)));
+
+		List<CompletableFuture<R>> futures = new ArrayList<>(shards.size() - 1);
+		Executor current = executor;
+
+		for (int i = 1; i < shards.size(); i++)
+		{
+			SuffixIndex<Integer> shard = shards.get(i);
+			futures.add(CompletableFuture.supplyAsync(() -> search.apply(shard), current));
+		}
+
+		List<R> results = new ArrayList<>(shards.size());
+		results.add(search.apply(shards.get(0)));
+
+		try
+		{
+			for (CompletableFuture<R> future : futures)
+			{
+				results.add(future.join());
+			}
+		}
+		catch (CompletionException e)
+		{
+			if (e.getCause() instanceof RuntimeException cause) throw cause;
+			if (e.getCause() instanceof Error cause) throw cause;
+			throw e;
+		}
+
+		return results;
+	}
+
+	/**
+	 * Merges the ascending sequence numbers found by each shard and maps a page of them to their values.
+	 *
+	 * @param results The sequence numbers found by each shard.
+	 * @param offset  The number of sequence numbers to skip.
+	 * @param limit   The maximum number of values to return.
+	 * @return The values, in the order they were inserted.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<T> merge(List<int[]> results, int offset, int limit)
+	{
+		List<PrimitiveIterator.OfInt> iterators = new ArrayList<>(results.size());
+		int total = 0;
+
+		for (int[] result : results)
+		{
+			if (result.length == 0) continue;
+
+			iterators.add(Arrays.stream(result).iterator());
+			total += result.length;
+		}
+
+		if (total <= offset) return List.of();
+
+		PrimitiveIterator.OfInt merged = iterators.size() == 1 ? iterators.get(0) : new UnionIterator(iterators);
+		List<T> page = new ArrayList<>(Math.min(limit, total - offset));
+
+		for (int skipped = 0; skipped < offset && merged.hasNext(); skipped++)
+		{
+			merged.nextInt();
+		}
+
+		while (page.size() < limit && merged.hasNext())
+		{
+			Object value = valueOrReleased(merged.nextInt());
+			if (value != RELEASED) page.add((T) value);
+		}
+
+		return Collections.unmodifiableList(page);
+	}
+
+	/**
+	 * Returns the value with the given sequence number, or RELEASED if it was removed while the search was running.
+	 *
+	 * @param sequence The sequence number of the value.
+	 * @return The value, or RELEASED.
+	 */
+	private Object valueOrReleased(int sequence)
+	{
+		T value = values.get(sequence);
+		return value == null && deleted.get(sequence) ? RELEASED : value;
+	}
+
+	/**
+	 * Returns the shard a value belongs to, by the spread hash of the value.
+	 *
+	 * @param value The value.
+	 * @return The shard of the value.
+	 */
+	private SuffixIndex<Integer> shardOf(T value)
+	{
+		int hash = Objects.hashCode(value);
+		return shards.get(Math.floorMod(hash ^ (hash >>> 16), shards.size()));
+	}
+}
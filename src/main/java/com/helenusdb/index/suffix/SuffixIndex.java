@@ -1,10 +1,34 @@
 package com.helenusdb.index.suffix;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.helenusdb.index.util.AppendOnlyList;
+import com.helenusdb.index.util.ConcurrentBitSet;
 
 /**
  * This SuffixIndex stores values and associated phrases (like DB records associated with a string column), allowing
@@ -14,6 +38,28 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * The index supports the wildcard characters '*' and '?'. The '*' character matches zero or more characters and the '?'
  * character matches any single character.
  * 
+ * Values can be removed or re-indexed under a new phrase. Removed values are tombstoned and filtered out at query time.
+ * Once the ratio of tombstoned values passes the compaction threshold, a background compaction prunes them from the
+ * node postings and drops nodes left without any live values.
+ * 
+ * Identical phrases are indexed once. Node postings hold phrase ids, and each phrase fans out to the values inserted
+ * with it, so repeated phrases cost neither indexing time nor postings.
+ * 
+ * By default every suffix is indexed to the end of the phrase, costing O(L^2) nodes per phrase of length L. Setting a
+ * maximum depth bounds that to O(L * depth). Queries reaching deeper than the maximum depth are answered from the
+ * depth-limited prefix and the candidates are verified against their stored phrases.
+ * 
+ * Once fully built, an index can be frozen into a compact, read-only form held in a few flat arrays. Searches behave
+ * identically, but there are no per-node objects left for the garbage collector to trace.
+ * 
+ * An index can also be written to a snapshot file and reopened later. Opening a snapshot memory-maps it and searches
+ * run directly against the mapped pages, so startup does not rebuild or deserialize the index.
+ * 
+ * Hot queries can be served from an optional result cache, which every write invalidates.
+ * 
+ * Writes are serialized while searches never lock. A search running concurrently with a write sees each node either
+ * before or after the write, never a torn posting list, and never returns a value released by a concurrent compaction.
+ * 
  * The index is case sensitive by default but can be set to case insensitive at construction time.
  * However, note that case insensitivity essentially causes a doubling in the memory size of the index.
  * 
@@ -40,22 +86,77 @@ public class SuffixIndex<T>
 	// The wildcard character for matching zero or more characters in a query.
 	private static final char ZERO_OR_MORE_WILDCARD = '*';
 
-	// The root node of the phrase index.
+	// The maximum depth meaning every suffix is indexed to the end of its phrase.
+	private static final int UNBOUNDED_DEPTH = Integer.MAX_VALUE;
+
+	// The default ratio of removed to total values that triggers a background compaction.
+	private static final double DEFAULT_COMPACTION_THRESHOLD = 0.2;
+
+	// Marks a value released by a compaction while a search was mapping indices to values.
+	private static final Object RELEASED = new Object();
+
+	// The root node of the phrase index. Null once the index is frozen.
 	private SuffixNode root;
 
-	// The list of values associated with the phrases in the index.
+	// The root node queries start from: the mutable root, or the root of the frozen trie.
+	private volatile SearchNode searchRoot;
+
+	// The compact, read-only form of the index. Null until the index is frozen.
+	private volatile FrozenSuffixTrie frozen;
+
+	// The list of values associated with the phrases in the index. Append-only, so readers never need to lock.
 	private List<T> values;
 
+	// The normalized phrases, by phrase id, kept only when the depth is bounded to verify deeper queries.
+	private List<String> phrases;
+
+	// Interns the distinct normalized phrases and holds the value ids of each. Null once the index is frozen.
+	private PhraseTable phraseTable;
+
+	// The value ids of each phrase id, which node postings hold: the phrase table, or its frozen form.
+	private volatile PhraseValues phraseValues;
+
+	// The maximum number of characters of each suffix that are indexed.
+	private int maxDepth = UNBOUNDED_DEPTH;
+
 	// Whether the index is case sensitive or not. Can only be set at construction time.
 	private boolean isCaseSensitive = false;
 
+	// The indices of removed values. Checked at query time until a compaction prunes them from the postings.
+	private final ConcurrentBitSet deleted = new ConcurrentBitSet();
+
+	// The number of removed values still present in node postings.
+	private volatile int pendingDeletes;
+
+	// The ratio of pending deletes to values at which a background compaction is started.
+	private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+	// The executor background compactions run on.
+	private Executor compactionExecutor = ForkJoinPool.commonPool();
+
+	// The most recently scheduled background compaction, or null if none has been scheduled.
+	private CompletableFuture<CompactionStats> compaction;
+
+	// The statistics of the most recent compaction, or null if none has run.
+	private volatile CompactionStats lastCompaction;
+
+	// Bumped after every write that can change search results, invalidating cached results.
+	private volatile long generation;
+
+	// The cache of query results, or null if caching is disabled.
+	private volatile ResultCache resultCache;
+
 	/**
 	 * Constructs a new SuffixIndex without case sensitivity.
      */
 	public SuffixIndex()
 	{
 		this.root = new SuffixNode();
-		this.values = new CopyOnWriteArrayList<>();
+		this.searchRoot = root;
+		this.values = new AppendOnlyList<>();
+		this.phrases = new AppendOnlyList<>();
+		this.phraseTable = new PhraseTable();
+		this.phraseValues = phraseTable;
 	}
 
 	/**
@@ -69,6 +170,18 @@ public class SuffixIndex<T>
 		setCaseSensitive(isCaseSensitive);
 	}
 
+	/**
+	 * Constructs a new SuffixIndex with the given case sensitivity and maximum indexed depth.
+	 *
+	 * @param isCaseSensitive True if the index is case sensitive, false otherwise.
+	 * @param maxDepth        The maximum number of characters of each suffix to index.
+	 */
+	public SuffixIndex(boolean isCaseSensitive, int maxDepth)
+	{
+		this(isCaseSensitive);
+		setMaxDepth(maxDepth);
+	}
+
 	/**
 	 * Sets whether the index is case sensitive or not. MUST be called
 	 * before inserting any values.
@@ -82,6 +195,35 @@ public class SuffixIndex<T>
 		return this;
 	}
 
+	/**
+	 * Sets the maximum number of characters of each suffix that are indexed. MUST be called before inserting any
+	 * values. Queries longer than the maximum depth remain correct but are verified against the stored phrases, so
+	 * set it just above the longest substring users typically search for.
+	 *
+	 * @param maxDepth The maximum indexed depth. Must be positive.
+	 * @return The SuffixIndex instance for chaining.
+	 * @throws IllegalArgumentException if maxDepth is not positive.
+	 * @throws IllegalStateException if values have already been inserted.
+	 */
+	public SuffixIndex<T> setMaxDepth(int maxDepth)
+	{
+		if (maxDepth < 1) throw new IllegalArgumentException("Maximum depth must be positive: " + maxDepth);
+		if (!values.isEmpty()) throw new IllegalStateException("Maximum depth must be set before inserting values");
+
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * Returns the maximum number of characters of each suffix that are indexed.
+	 *
+	 * @return The maximum indexed depth, or Integer.MAX_VALUE if unbounded.
+	 */
+	public int getMaxDepth()
+	{
+		return maxDepth;
+	}
+
 	/**
 	 * Returns whether the index is case sensitive or not.
 	 * 
@@ -93,124 +235,1343 @@ public class SuffixIndex<T>
     }
 
 	/**
-	 * Inserts a phrase and its associated value into the index.
+	 * Sets the ratio of removed to total values at which a background compaction is started.
+	 *
+	 * @param threshold The compaction threshold, between 0.0 and 1.0 inclusive.
+	 * @return The SuffixIndex instance for chaining.
+	 * @throws IllegalArgumentException if the threshold is out of range.
+	 */
+	public SuffixIndex<T> setCompactionThreshold(double threshold)
+	{
+		if (threshold < 0.0 || threshold > 1.0)
+		{
+			throw new IllegalArgumentException("Compaction threshold must be between 0.0 and 1.0: " + threshold);
+		}
+
+		this.compactionThreshold = threshold;
+		return this;
+	}
+
+	/**
+	 * Sets the executor background compactions run on. Defaults to the common fork/join pool.
+	 *
+	 * @param executor The executor to run background compactions on.
+	 * @return The SuffixIndex instance for chaining.
+	 */
+	public SuffixIndex<T> setCompactionExecutor(Executor executor)
+	{
+		this.compactionExecutor = Objects.requireNonNull(executor);
+		return this;
+	}
+
+	/**
+	 * Sets the size of the cache of query results, replacing any cached results. The cache serves
+	 * {@link #getIndicesFor(String)}, {@link #search(String)}, {@link #search(String, int, int)},
+	 * {@link #searchStream(String)} and {@link #count(String)}, so hot queries are answered without searching the
+	 * index, as long as it is not written in between: every insert or removal invalidates the whole cache. A miss
+	 * materializes all of the query's indices to cache them, even for a page or a short-circuited stream. The least
+	 * recently used results are evicted to stay within the size, which is an estimate of the heap used by the cached
+	 * indices and queries. Disabled by default.
+	 *
+	 * @param maxBytes The maximum estimated size of the cached results in bytes, or 0 to disable caching.
+	 * @return The SuffixIndex instance for chaining.
+	 * @throws IllegalArgumentException if maxBytes is negative.
+	 */
+	public SuffixIndex<T> setResultCacheSize(long maxBytes)
+	{
+		if (maxBytes < 0) throw new IllegalArgumentException("Cache size cannot be negative: " + maxBytes);
+
+		this.resultCache = maxBytes == 0 ? null : new ResultCache(maxBytes);
+		return this;
+	}
+
+	/**
+	 * Returns the statistics of the result cache.
+	 *
+	 * @return The cache statistics, or null if caching is disabled.
+	 * @see #setResultCacheSize(long)
+	 */
+	public CacheStats getResultCacheStats()
+	{
+		ResultCache cache = resultCache;
+		return cache == null ? null : cache.getStats();
+	}
+
+	/**
+	 * Inserts a phrase and its associated value into the index. Identical phrases are indexed once: inserting a phrase
+	 * the index already holds only adds the value to it, in O(|phrase|) to normalize and look the phrase up.
 	 *
 	 * @param phrase The phrase to associate with the value.
 	 * @param value  The value to associate with the phrase.
 	 * @return The SuffixIndex instance for chaining.
 	 */
-	public SuffixIndex<T> insert(String phrase, T value)
+	public synchronized SuffixIndex<T> insert(String phrase, T value)
 	{
 		if (phrase == null || phrase.isEmpty()) return this;
+		if (isFrozen()) throw new IllegalStateException("Cannot insert into a frozen index");
 
-		int index = values.size();
-		values.add(value);
 		String normalizedPhrase = normalizeCase(phrase);
 
-		for (int i = 0; i < phrase.length(); i++)
+		int phraseId = internPhrase(normalizedPhrase, value);
+
+		if (phraseId >= 0)
 		{
-			insertSuffix(normalizedPhrase.substring(i), index);
+			for (int i = 0; i < normalizedPhrase.length(); i++)
+			{
+				insertSuffix(normalizedPhrase, i, phraseId);
+			}
 		}
 
+		generation++;
 		return this;
 	}
 
 	/**
-	 * Searches the index for all values that contain the given query substring.
+	 * Inserts a batch of phrases and their associated values, building the index on the common fork/join pool.
 	 *
-	 * @param query The substring to search for.
-	 * @return A list of all values that contain the query substring.
+	 * @param entries The phrases and their associated values, in the order to insert them.
+	 * @return The SuffixIndex instance for chaining.
+	 * @see #buildParallel(Stream, ForkJoinPool)
 	 */
-	public List<T> search(String query)
+	public SuffixIndex<T> buildParallel(Stream<? extends Map.Entry<String, ? extends T>> entries)
 	{
-		return getIndicesFor(query).stream().map(values::get).toList();
+		return buildParallel(entries, ForkJoinPool.commonPool());
 	}
 
 	/**
-	 * Searches the index for the given query returning a list of indices for the query. If the query is not found an
-	 * empty list is returned.
-	 * 
-	 * @param query The query to search for.
-	 * @return The list of indices for the query. Never null.
+	 * Inserts a batch of phrases and their associated values, building the index on the given fork/join pool. The
+	 * phrases are shared among the workers in contiguous id ranges, each worker builds a private partial index, and
+	 * the partial indexes are merged by concatenating their postings. The result is identical to inserting the
+	 * entries one by one in encounter order, including the positions assigned to the values. Only phrases new to the
+	 * index are built; the values of known phrases are added to them.
+	 *
+	 * @param entries The phrases and their associated values, in the order to insert them.
+	 * @param pool    The pool to build the index on.
+	 * @return The SuffixIndex instance for chaining.
+	 * @throws IllegalStateException if the index is frozen.
 	 */
-	public Set<Integer> getIndicesFor(String query)
+	public synchronized SuffixIndex<T> buildParallel(Stream<? extends Map.Entry<String, ? extends T>> entries,
+		ForkJoinPool pool)
 	{
-		if (query == null || query.isEmpty()) return Collections.emptySet();
-		String normalizedQuery = normalizeCase(query);
-		return getIndicesFor(normalizedQuery.toCharArray(), 0, root);
+		if (isFrozen()) throw new IllegalStateException("Cannot insert into a frozen index");
+
+		List<String> newPhrases = new ArrayList<>();
+		int firstPhraseId = phraseTable.size();
+
+		entries.sequential()
+			.filter(entry -> entry.getKey() != null && !entry.getKey().isEmpty())
+			.forEachOrdered(entry -> {
+				String normalizedPhrase = normalizeCase(entry.getKey());
+				if (internPhrase(normalizedPhrase, entry.getValue()) >= 0) newPhrases.add(normalizedPhrase);
+			});
+
+		if (!newPhrases.isEmpty())
+		{
+			SuffixNode built = new ParallelSuffixBuilder(newPhrases, firstPhraseId, maxDepth, pool.getParallelism())
+				.build(pool);
+			ParallelSuffixBuilder.merge(pool, root, built);
+		}
+
+		generation++;
+		return this;
 	}
 
 	/**
-	 * A recursive helper method to search the index for the given query returning a list of indices for the query. If
-	 * the query is not found an empty list is returned. It supports the wildcard characters '*' and '?'.
-	 * 
-	 * @param query  The query being processed.
-	 * @param index  The index into the current query character being processed.
-	 * @param current The current node in the phrase index.
+	 * Removes every occurrence of the given value that was inserted with the given phrase. Values inserted with other
+	 * phrases are left alone, even if their phrases contain this one. The phrase is looked up in the phrase table, so
+	 * only the values of that phrase are compared.
+	 *
+	 * @param phrase The phrase the value was inserted with.
+	 * @param value  The value to remove.
+	 * @return True if any value was removed, false otherwise.
 	 */
-	private Set<Integer> getIndicesFor(char[] query, int index, SuffixNode current)
+	public boolean remove(String phrase, T value)
 	{
-		if (query == null || query.length == 0) return Collections.emptySet();
-		if (index == query.length) return current.getIndices();
+		return removeIf(phrase, candidate -> Objects.equals(candidate, value));
+	}
 
-		char c = query[index];
-		Set<Integer> indices = new HashSet<>();
+	/**
+	 * Removes the values inserted with the given phrase that the filter accepts. The filter is only called with the
+	 * live values of that phrase, while holding the write lock, so it may record what it removes.
+	 *
+	 * @param phrase The phrase the values were inserted with.
+	 * @param filter Accepts the values to remove.
+	 * @return True if any value was removed, false otherwise.
+	 */
+	synchronized boolean removeIf(String phrase, Predicate<? super T> filter)
+	{
+		if (phrase == null || phrase.isEmpty()) return false;
 
-		if (c == ZERO_OR_MORE_WILDCARD) // Match zero or more characters.
+		int phraseId = findPhrase(normalizeCase(phrase));
+		if (phraseId < 0) return false;
+
+		return removeIf(phraseValues.valueIterator(phraseId), filter);
+	}
+
+	/**
+	 * Removes every occurrence of the given value from the index. Without the phrase to narrow the search, every
+	 * value is compared, so prefer {@link #remove(String, Object)} when the phrase is known.
+	 *
+	 * @param value The value to remove.
+	 * @return True if any value was removed, false otherwise.
+	 */
+	public synchronized boolean remove(T value)
+	{
+		return removeIf(IntStream.range(0, values.size()).iterator(), candidate -> Objects.equals(candidate, value));
+	}
+
+	/**
+	 * Re-indexes a value under a new phrase by removing it from its old phrase and inserting it again. The value is
+	 * assigned a new position, so it moves to the end of the insertion order.
+	 *
+	 * @param oldPhrase The phrase the value was inserted with.
+	 * @param newPhrase The phrase to index the value under.
+	 * @param value     The value to re-index.
+	 * @return The SuffixIndex instance for chaining.
+	 */
+	public synchronized SuffixIndex<T> update(String oldPhrase, String newPhrase, T value)
+	{
+		if (isFrozen()) throw new IllegalStateException("Cannot update a frozen index");
+
+		remove(oldPhrase, value);
+		return insert(newPhrase, value);
+	}
+
+	/**
+	 * Prunes removed values from their phrases, prunes phrases left without live values from the node postings, drops
+	 * nodes left without live phrases and releases the references to removed values. Runs synchronously and blocks
+	 * writers, but not readers. The structure of a frozen index is never rebuilt, so it only releases the removed
+	 * values and keeps filtering them at query time.
+	 *
+	 * @return The statistics of the compaction, including an estimate of the memory reclaimed.
+	 */
+	public synchronized CompactionStats compact()
+	{
+		long start = System.currentTimeMillis();
+		CompactionStats stats = new CompactionStats();
+
+		if (pendingDeletes > 0)
 		{
-			for (SuffixNode child : current.getChildren())
+			if (!isFrozen())
 			{
-				indices.addAll(getIndicesFor(query, index, child));
-				indices.addAll(getIndicesFor(query, index + 1, child));
+				BitSet emptied = phraseTable.prune(deleted::get, stats);
+				root.prune(emptied::get, stats);
+				emptied.stream().forEach(phraseId -> phrases.set(phraseId, null));
 			}
-		}
-		else if (c == SINGLE_CHARACTER_WILDCARD) // Match any single character.
-		{
-			for (SuffixNode child : current.getChildren())
+
+			for (int index = 0; index < values.size(); index++)
 			{
-				indices.addAll(getIndicesFor(query, index + 1, child));
+				if (deleted.get(index) && values.get(index) != null)
+				{
+					values.set(index, null);
+					stats.addPurgedValue();
+				}
 			}
 
-			indices.addAll(getIndicesFor(query, index + 1, current));
+			if (!isFrozen())
+			{
+				pendingDeletes = 0;
+			}
 		}
-		else // Exact match.
+
+		stats.setElapsedMillis(System.currentTimeMillis() - start);
+		lastCompaction = stats;
+		return stats;
+	}
+
+	/**
+	 * Converts the index into its compact, read-only form. Pending removals are compacted first, then the node graph is
+	 * flattened into arrays and released. Searches behave identically afterwards, while inserts and updates throw
+	 * IllegalStateException. Values can still be removed; they are filtered at query time.
+	 *
+	 * @return The SuffixIndex instance for chaining.
+	 */
+	public synchronized SuffixIndex<T> freeze()
+	{
+		if (isFrozen()) return this;
+
+		compact();
+		FrozenSuffixTrie trie = FrozenSuffixTrie.freeze(root);
+		phraseValues = FrozenPhraseValues.freeze(phraseTable);
+		frozen = trie;
+		searchRoot = trie.root();
+		root = null;
+		phraseTable = null;
+		return this;
+	}
+
+	/**
+	 * Returns whether the index has been frozen into its compact, read-only form.
+	 *
+	 * @return True if the index is frozen, false otherwise.
+	 */
+	public boolean isFrozen()
+	{
+		return frozen != null;
+	}
+
+	/**
+	 * Writes a snapshot of the index to the given file. The snapshot is written to a temporary file and atomically
+	 * moved into place, so a concurrently opened snapshot is never partially written. Only the value ids are written;
+	 * the values themselves are supplied again when the snapshot is opened.
+	 *
+	 * @param file The file to write.
+	 * @throws IOException if the snapshot cannot be written.
+	 * @see #openSnapshot(Path, List, boolean)
+	 */
+	public synchronized void writeSnapshot(Path file) throws IOException
+	{
+		FrozenSuffixTrie trie = isFrozen() ? frozen : FrozenSuffixTrie.freeze(root);
+		FrozenPhraseValues frozenPhrases = phraseValues instanceof FrozenPhraseValues f ? f
+			: FrozenPhraseValues.freeze(phraseValues);
+		new SuffixSnapshot(trie, frozenPhrases, isCaseSensitive, maxDepth, values.size(), deleted.toLongArray(),
+			isBounded() ? phrases : null).write(file);
+	}
+
+	/**
+	 * Opens a snapshot written by {@link #writeSnapshot(Path)} without verifying its body checksum.
+	 *
+	 * @param <T>    The type of the values.
+	 * @param file   The snapshot file.
+	 * @param values The values by value id, in insertion order, as they were when the snapshot was written.
+	 * @return A frozen SuffixIndex searching the mapped snapshot.
+	 * @throws IOException if the file cannot be read, or is not a valid snapshot.
+	 */
+	public static <T> SuffixIndex<T> openSnapshot(Path file, List<? extends T> values) throws IOException
+	{
+		return openSnapshot(file, values, false);
+	}
+
+	/**
+	 * Opens a snapshot written by {@link #writeSnapshot(Path)}. The snapshot is memory-mapped and the returned index is
+	 * frozen, searching the mapped pages directly, so opening costs the same regardless of the size of the index
+	 * unless the checksum is verified. Removed values stay removed.
+	 *
+	 * @param <T>            The type of the values.
+	 * @param file           The snapshot file.
+	 * @param values         The values by value id, in insertion order, as they were when the snapshot was written.
+	 * @param verifyChecksum True to read the whole file and verify its checksum.
+	 * @return A frozen SuffixIndex searching the mapped snapshot.
+	 * @throws IOException if the file cannot be read, or is not a valid snapshot.
+	 * @throws IllegalArgumentException if the number of values does not match the snapshot.
+	 */
+	public static <T> SuffixIndex<T> openSnapshot(Path file, List<? extends T> values, boolean verifyChecksum)
+		throws IOException
+	{
+		SuffixSnapshot snapshot = SuffixSnapshot.open(file, verifyChecksum);
+
+		if (values.size() != snapshot.getValueCount())
 		{
-			SuffixNode child = current.getChild(c);
+			throw new IllegalArgumentException(
+				"Snapshot holds " + snapshot.getValueCount() + " value ids but " + values.size() + " values were given");
+		}
 
-			if (child != null)
+		SuffixIndex<T> index = new SuffixIndex<>(snapshot.isCaseSensitive());
+		index.maxDepth = snapshot.getMaxDepth();
+		index.values.addAll(values);
+		index.phrases = snapshot.getPhrases();
+		long[] words = snapshot.getDeleted();
+
+		for (int word = 0; word < words.length; word++)
+		{
+			for (long bits = words[word]; bits != 0; bits &= bits - 1)
 			{
-				indices.addAll(getIndicesFor(query, index + 1, child));
+				index.deleted.set(word * Long.SIZE + Long.numberOfTrailingZeros(bits));
 			}
 		}
-	
-		return indices;
+
+		index.pendingDeletes = index.deleted.cardinality();
+		index.phraseValues = snapshot.getPhraseValues();
+		index.phraseTable = null;
+		index.frozen = snapshot.getTrie();
+		index.searchRoot = index.frozen.root();
+		index.root = null;
+		return index;
 	}
 
 	/**
-	 * Inserts a suffix into the index with the given index.
-	 * 
-	 * @param suffix The suffix to insert.
-	 * @param index  The index to associate with the suffix.
+	 * Runs a compaction on the compaction executor unless one is already scheduled.
+	 *
+	 * @return A future completing with the statistics of the scheduled compaction.
 	 */
-	private void insertSuffix(String suffix, int index)
+	public synchronized CompletableFuture<CompactionStats> compactAsync()
 	{
-		SuffixNode current = root;
-
-		for (char c : suffix.toCharArray())
+		if (compaction == null || compaction.isDone())
 		{
-			current = current.addChildIfAbsent(c);
-			current.addIndex(index);
+			compaction = CompletableFuture.supplyAsync(this::compact, compactionExecutor);
 		}
+
+		return compaction;
 	}
 
 	/**
-	 * Normalizes the case of the given text based on the case sensitivity of the index.
+	 * Returns the statistics of the most recent compaction.
+	 *
+	 * @return The statistics of the most recent compaction, or null if none has run.
+	 */
+	public CompactionStats getLastCompaction()
+	{
+		return lastCompaction;
+	}
+
+	/**
+	 * Returns the number of live (inserted and not removed) values in the index.
+	 *
+	 * @return The number of live values.
+	 */
+	public int size()
+	{
+		return values.size() - deleted.cardinality();
+	}
+
+	/**
+	 * Searches the index for all values that contain the given query substring.
+	 *
+	 * @param query The substring to search for.
+	 * @return A list of all values that contain the query substring, in the order they were inserted.
+	 */
+	public List<T> search(String query)
+	{
+		return searchStream(query).toList();
+	}
+
+	/**
+	 * Searches the index for a page of values that contain the given query substring. Results are returned in the
+	 * order the values were inserted, so paging with the same query is deterministic. Only offset + limit postings are
+	 * visited, even when the query matches most of the index.
+	 *
+	 * @param query  The substring to search for.
+	 * @param limit  The maximum number of values to return.
+	 * @param offset The number of matching values to skip.
+	 * @return A list of at most limit values that contain the query substring.
+	 * @throws IllegalArgumentException if limit or offset is negative.
+	 */
+	public List<T> search(String query, int limit, int offset)
+	{
+		if (limit < 0) throw new IllegalArgumentException("Limit cannot be negative: " + limit);
+		if (offset < 0) throw new IllegalArgumentException("Offset cannot be negative: " + offset);
+
+		return valuesOf(stream(indexIterator(query, offset)).limit(limit)).toList();
+	}
+
+	/**
+	 * Returns a lazy stream of the values that contain the given query substring, in the order they were inserted.
+	 * Postings are walked only as far as the stream is consumed, so short-circuiting operations such as limit() or
+	 * findFirst() avoid materializing the full result set.
+	 *
+	 * @param query The substring to search for.
+	 * @return A lazy, ordered stream of the values that contain the query substring.
+	 */
+	public Stream<T> searchStream(String query)
+	{
+		return valuesOf(stream(indexIterator(query, 0)));
+	}
+
+	/**
+	 * Searches the index for at most limit values that contain the given query substring, converted to ints, for an
+	 * index whose values are numbers such as the sequence numbers of a {@link ShardedSuffixIndex}. The values are
+	 * returned as an array, in the order they were inserted, without boxing a list of them.
+	 *
+	 * @param query The substring to search for.
+	 * @param limit The maximum number of values to return.
+	 * @param toInt Converts a value to an int.
+	 * @return The converted values, in the order they were inserted.
+	 */
+	int[] searchInts(String query, int limit, ToIntFunction<? super T> toInt)
+	{
+		return valuesOf(stream(indexIterator(query, 0)).limit(limit)).mapToInt(toInt).toArray();
+	}
+
+	/**
+	 * Maps indices to their values. A value removed and released by a compaction while the search was running is
+	 * skipped rather than returned as null: the release store of the null value is ordered after its tombstone, so
+	 * checking the tombstone after reading the value detects it.
 	 * 
-	 * @param text The text to normalize.
-	 * @return The normalized text.
+	 * @param indices The indices to map.
+	 * @return The values at the given indices.
 	 */
-	private String normalizeCase(String text)
+	@SuppressWarnings("unchecked")
+	private Stream<T> valuesOf(IntStream indices)
 	{
-		return isCaseSensitive ? text : text.toLowerCase();
+		return (Stream<T>) indices.mapToObj(this::valueOrReleased).filter(value -> value != RELEASED);
+	}
+
+	/**
+	 * Returns the value at the given index, or RELEASED if it was removed and released by a compaction.
+	 * 
+	 * @param index The index of the value.
+	 * @return The value at the given index, or RELEASED.
+	 */
+	private Object valueOrReleased(int index)
+	{
+		T value = values.get(index);
+		return value == null && deleted.get(index) ? RELEASED : value;
+	}
+
+	/**
+	 * Searches the index for each of the given queries at once. Queries without wildcards are normalized once, sorted
+	 * and deduplicated, so identical queries are searched once and share their results. They are then walked in
+	 * order, each walk resuming from the path shared with the previous query rather than from the root, so a prefix
+	 * common to several queries is traversed once. Wildcard queries are searched individually.
+	 *
+	 * @param queries The substrings to search for.
+	 * @return The results of each query, in the order of the queries. Each is a list of the values that contain the
+	 *         query substring, in the order they were inserted.
+	 */
+	public List<List<T>> searchAll(List<String> queries)
+	{
+		String[] normalizedQueries = new String[queries.size()];
+		String[] literals = new String[normalizedQueries.length];
+		int literalCount = 0;
+
+		for (int i = 0; i < normalizedQueries.length; i++)
+		{
+			String query = queries.get(i);
+			if (query == null || query.isEmpty()) continue;
+
+			String normalizedQuery = normalizeCase(query);
+			normalizedQueries[i] = normalizedQuery;
+			if (!hasWildcards(normalizedQuery)) literals[literalCount++] = normalizedQuery;
+		}
+
+		Arrays.sort(literals, 0, literalCount);
+		int distinct = 0;
+
+		for (int i = 0; i < literalCount; i++)
+		{
+			if (distinct == 0 || !literals[i].equals(literals[distinct - 1])) literals[distinct++] = literals[i];
+		}
+
+		List<T>[] literalResults = searchLiterals(literals, distinct);
+		List<List<T>> results = new ArrayList<>(normalizedQueries.length);
+
+		for (int i = 0; i < normalizedQueries.length; i++)
+		{
+			String normalizedQuery = normalizedQueries[i];
+
+			if (normalizedQuery == null) results.add(List.of());
+			else if (hasWildcards(normalizedQuery)) results.add(search(queries.get(i)));
+			else results.add(literalResults[Arrays.binarySearch(literals, 0, distinct, normalizedQuery)]);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Searches the index for all values containing a substring within the given number of edits (insertions, deletions
+	 * or substitutions) of the query, so a typo such as "earbds" still finds "earbuds". Wildcard characters are matched
+	 * literally.
+	 * 
+	 * The index is walked with a bit-parallel edit distance column per node. A node within maxEdits of the query
+	 * contributes all its values without being descended further, and a branch is pruned as soon as the smallest
+	 * distance in its column exceeds maxEdits, so only the neighbourhood of the query is visited. Since every suffix
+	 * is indexed, only branches starting with a character of the query are walked.
+	 *
+	 * @param query    The substring to search for, at most 64 characters long.
+	 * @param maxEdits The maximum number of edits allowed.
+	 * @return A list of all values containing an approximate match of the query, in the order they were inserted.
+	 * @throws IllegalArgumentException if maxEdits is negative or the query is longer than 64 characters.
+	 */
+	public List<T> searchFuzzy(String query, int maxEdits)
+	{
+		if (maxEdits < 0) throw new IllegalArgumentException("Maximum edits cannot be negative: " + maxEdits);
+		if (query == null || query.isEmpty()) return List.of();
+		if (query.length() > FuzzyMatcher.MAX_LENGTH)
+		{
+			throw new IllegalArgumentException("Fuzzy queries are limited to " + FuzzyMatcher.MAX_LENGTH
+				+ " characters: " + query.length());
+		}
+
+		char[] normalizedQuery = normalizeCase(query).toCharArray();
+		FuzzyMatcher matcher = new FuzzyMatcher(normalizedQuery, maxEdits);
+		NodeMatches matches = new NodeMatches(normalizedQuery, false);
+		matches.verifier = index -> matcher.matches(phrases.get(index));
+		collectFuzzy(searchRoot, matcher.start(), matcher, matches);
+		return valuesOf(stream(indexIterator(matches, 0))).toList();
+	}
+
+	/**
+	 * Searches the index for all values containing a non-empty substring matching the given regular expression. A
+	 * subset of the syntax is supported: literals, '.', character classes such as [a-z] or [^0-9], alternation,
+	 * grouping, the '?', '*' and '+' quantifiers and bounded repeats such as {2} or {1,3}. '\' escapes the next
+	 * character.
+	 *
+	 * The pattern is compiled to a DFA, built lazily, and intersected with the index: each node is reached with the
+	 * DFA state of the path to it, dead states prune their branch, and a node in an accepting state contributes all
+	 * its values without being descended further.
+	 *
+	 * @param pattern The regular expression to search for.
+	 * @return A list of all values containing a match of the pattern, in the order they were inserted.
+	 * @throws IllegalArgumentException if the pattern is malformed or expands to too many automaton states.
+	 */
+	public List<T> searchRegex(String pattern)
+	{
+		return searchRegex(pattern, RegexAutomaton.DEFAULT_MAX_STATES);
+	}
+
+	/**
+	 * Searches the index for all values containing a non-empty substring matching the given regular expression,
+	 * building at most the given number of automaton states so that pathological patterns fail fast.
+	 *
+	 * @param pattern   The regular expression to search for.
+	 * @param maxStates The maximum number of DFA states to build.
+	 * @return A list of all values containing a match of the pattern, in the order they were inserted.
+	 * @throws IllegalArgumentException if the pattern is malformed or expands beyond maxStates automaton states.
+	 * @see #searchRegex(String)
+	 */
+	public List<T> searchRegex(String pattern, int maxStates)
+	{
+		if (pattern == null) return List.of();
+
+		RegexAutomaton automaton = RegexAutomaton.compile(normalizeCase(pattern), maxStates);
+		NodeMatches matches = new NodeMatches(new char[0], false);
+		matches.verifier = index -> automaton.matches(phrases.get(index));
+		collectRegex(searchRoot, automaton.start(), 0, automaton, matches);
+		return valuesOf(stream(indexIterator(matches, 0))).toList();
+	}
+
+	/**
+	 * Counts the values that contain the given query substring without materializing them. For queries without
+	 * wildcards this is O(|query|), since the count is read from the matched node, as long as no removals are waiting
+	 * for compaction and the query is within the maximum depth. Otherwise the matching postings are counted. When the
+	 * result cache is enabled, the count is the size of the cached indices instead.
+	 *
+	 * @param query The substring to search for.
+	 * @return The number of values that contain the query substring.
+	 */
+	public int count(String query)
+	{
+		ResultCache.Entry cached = cachedIndices(query);
+		if (cached != null) return cached.size();
+
+		NodeMatches matches = getNodesFor(query, true);
+		if (matches.isEmpty()) return 0;
+
+		if (matches.isSingleNode() && pendingDeletes == 0)
+		{
+			// Checked after reading the count: a node counts its values only while no phrase has been repeated.
+			int count = matches.getSingleNode().getIndexCount();
+			if (identityLimit(phraseValues) >= 0) return count;
+		}
+
+		return (int) stream(indexIterator(matches, 0)).count();
+	}
+
+	/**
+	 * Checks whether any value contains the given query substring. For queries without wildcards this is O(|query|).
+	 * Wildcard queries stop traversing the index at the first matching node.
+	 *
+	 * @param query The substring to search for.
+	 * @return True if at least one value contains the query substring, false otherwise.
+	 */
+	public boolean matches(String query)
+	{
+		if (query == null || query.isEmpty()) return false;
+
+		String normalizedQuery = normalizeCase(query);
+
+		if (pendingDeletes == 0 && !isBounded() && hasWildcards(normalizedQuery))
+		{
+			return collectNodes(0, searchRoot, 0, new NodeMatches(normalizedQuery.toCharArray(), false), true);
+		}
+
+		return indexIterator(getNodesFor(query, true), 0).hasNext();
+	}
+
+	/**
+	 * Searches the index for the given query returning a list of indices for the query. If the query is not found an
+	 * empty list is returned. When the result cache is enabled, results are served from and added to it.
+	 * 
+	 * @param query The query to search for.
+	 * @return The unmodifiable set of indices for the query, iterating in ascending order. Never null.
+	 * @see #setResultCacheSize(long)
+	 */
+	public Set<Integer> getIndicesFor(String query)
+	{
+		Set<Integer> cached = cachedIndices(query);
+		return cached != null ? cached : findIndices(query);
+	}
+
+	/**
+	 * Returns the indices for the given query from the result cache, searching the index and caching them on a miss.
+	 * 
+	 * @param query The query to search for.
+	 * @return The cached indices for the query, or null if caching is disabled or the query is null or empty.
+	 */
+	private ResultCache.Entry cachedIndices(String query)
+	{
+		ResultCache cache = resultCache;
+		if (cache == null || query == null || query.isEmpty()) return null;
+
+		// Read the generation first: a write completing during the search makes the entry stale rather than wrong.
+		long current = generation;
+		String normalizedQuery = normalizeCase(query);
+		ResultCache.Entry cached = cache.get(normalizedQuery, current);
+		if (cached != null) return cached;
+
+		int[] indices = stream(indexIterator(getNodesFor(normalizedQuery, true), 0)).toArray();
+		return cache.put(normalizedQuery, current, indices);
+	}
+
+	/**
+	 * Searches the index for the given query without the result cache.
+	 * 
+	 * @param query The query to search for.
+	 * @return The unmodifiable set of indices for the query, iterating in ascending order. Never null.
+	 */
+	private Set<Integer> findIndices(String query)
+	{
+		NodeMatches matches = getNodesFor(query, true);
+		if (matches.isEmpty()) return Collections.emptySet();
+
+		// A frozen node's indices are its values for good if no phrase was repeated; a mutable node's may not stay so.
+		if (matches.isSingleNode() && pendingDeletes == 0 && isFrozen() && identityLimit(phraseValues) >= 0)
+		{
+			return matches.getSingleNode().getIndices();
+		}
+
+		Set<Integer> indices = new LinkedHashSet<>();
+		indexIterator(matches, 0).forEachRemaining((int index) -> indices.add(index));
+		return Collections.unmodifiableSet(indices);
+	}
+
+	/**
+	 * Returns an ascending iterator over the live indices for the given query, starting at the given offset into the
+	 * results. When the result cache is enabled, the indices are served from and added to it.
+	 * 
+	 * @param query  The query to search for.
+	 * @param offset The number of matching indices to skip.
+	 * @return An ascending iterator over the matching indices.
+	 */
+	private PrimitiveIterator.OfInt indexIterator(String query, int offset)
+	{
+		ResultCache.Entry cached = cachedIndices(query);
+		return cached != null ? cached.indexIterator(offset) : indexIterator(getNodesFor(query, true), offset);
+	}
+
+	/**
+	 * Returns an ascending iterator over the live indices of the given matches, starting at the given offset into the
+	 * results. The matching nodes hold phrase ids: they are lazily unioned, candidates beyond the maximum depth are
+	 * verified against their phrases, and the phrase ids are fanned out to value ids. While no phrase has been
+	 * inserted twice, every phrase id is also the id of its only value and the fan-out is skipped, so a single exactly
+	 * matching node without pending removals is skipped into directly.
+	 * 
+	 * @param matches The matching nodes.
+	 * @param offset  The number of matching indices to skip.
+	 * @return An ascending iterator over the matching indices.
+	 */
+	private PrimitiveIterator.OfInt indexIterator(NodeMatches matches, int offset)
+	{
+		if (matches.isEmpty()) return IntStream.empty().iterator();
+
+		PhraseValues table = phraseValues;
+		int identityLimit = identityLimit(table);
+
+		if (identityLimit >= 0 && matches.isSingleNode() && pendingDeletes == 0)
+		{
+			return below(matches.getSingleNode().indexIterator(offset), identityLimit);
+		}
+
+		PrimitiveIterator.OfInt phraseIds = union(matches.exact);
+
+		if (!matches.candidates.isEmpty())
+		{
+			IntPredicate verifier = verifierFor(matches);
+			PrimitiveIterator.OfInt verified = stream(union(matches.candidates))
+				.filter(phraseId -> phrases.get(phraseId) != null && verifier.test(phraseId)).iterator();
+			phraseIds = new UnionIterator(List.of(phraseIds, verified));
+		}
+
+		IntStream indices = stream(identityLimit >= 0 ? below(phraseIds, identityLimit)
+			: new FanOutIterator(phraseIds, table));
+
+		if (pendingDeletes > 0)
+		{
+			indices = indices.filter(index -> !deleted.get(index));
+		}
+
+		return indices.skip(offset).iterator();
+	}
+
+	/**
+	 * Searches the given distinct, normalized queries without wildcards, in ascending order. Each walk starts from the
+	 * longest prefix the query shares with the previous one, on a path of the nodes along the previous query. A query
+	 * extending the previous one whose node holds as many phrases holds the same phrases, so it shares the previous
+	 * results. While no value is pending removal and no phrase was repeated, the values of a node are read straight
+	 * from its postings.
+	 * 
+	 * @param literals The sorted, distinct queries to search for.
+	 * @param count    The number of queries.
+	 * @return The results of each query, in the order of the queries.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<T>[] searchLiterals(String[] literals, int count)
+	{
+		List<T>[] results = new List[count];
+		if (count == 0) return results;
+
+		int longest = 0;
+
+		for (int q = 0; q < count; q++)
+		{
+			longest = Math.max(longest, literals[q].length());
+		}
+
+		int identityLimit = identityLimit(phraseValues);
+		SearchNode[] path = new SearchNode[Math.min(longest, maxDepth) + 1];
+		path[0] = searchRoot;
+		String previous = "";
+		int reached = 0;
+
+		for (int q = 0; q < count; q++)
+		{
+			String query = literals[q];
+			int depth = Math.min(query.length(), maxDepth);
+			int i = Math.min(reached, commonPrefixLength(previous, query));
+
+			while (i < depth)
+			{
+				SearchNode child = path[i].getChild(query.charAt(i));
+				if (child == null) break;
+				path[++i] = child;
+			}
+
+			SearchNode node = path[i];
+			boolean isExtension = q > 0 && i == depth && depth == query.length()
+				&& reached == previous.length() && query.startsWith(previous);
+
+			if (i < depth || node.getIndexCount() == 0)
+			{
+				results[q] = List.of();
+			}
+			else if (isExtension && node.getIndexCount() == path[reached].getIndexCount())
+			{
+				// Every phrase containing the query contains the previous one, so as many phrases are the same ones.
+				results[q] = results[q - 1];
+			}
+			else if (depth == query.length() && identityLimit >= 0 && pendingDeletes == 0)
+			{
+				results[q] = collectValues(below(node.indexIterator(0), identityLimit), node.getIndexCount());
+			}
+			else
+			{
+				NodeMatches matches = new NodeMatches(query.toCharArray(), true);
+				addMatch(matches, node, depth);
+				results[q] = collectValues(indexIterator(matches, 0), 0);
+			}
+
+			previous = query;
+			reached = i;
+		}
+
+		return results;
+	}
+
+	/**
+	 * Collects the values at the given indices into an unmodifiable list, without the overhead of a stream pipeline.
+	 * 
+	 * @param indices      The indices of the values.
+	 * @param expectedSize The expected number of values, used to size the list.
+	 * @return An unmodifiable list of the values.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<T> collectValues(PrimitiveIterator.OfInt indices, int expectedSize)
+	{
+		if (!indices.hasNext()) return List.of();
+
+		List<T> results = new ArrayList<>(expectedSize);
+
+		while (indices.hasNext())
+		{
+			Object value = valueOrReleased(indices.nextInt());
+			if (value != RELEASED) results.add((T) value);
+		}
+
+		return Collections.unmodifiableList(results);
+	}
+
+	private static int commonPrefixLength(String a, String b)
+	{
+		int length = Math.min(a.length(), b.length());
+		int i = 0;
+
+		while (i < length && a.charAt(i) == b.charAt(i))
+		{
+			i++;
+		}
+
+		return i;
+	}
+
+	/**
+	 * Returns a predicate verifying candidate indices against their stored phrases.
+	 * 
+	 * @param matches The matches holding the query to verify.
+	 * @return A predicate that is true for indices whose phrase matches the query.
+	 */
+	private IntPredicate verifierFor(NodeMatches matches)
+	{
+		if (matches.verifier != null) return matches.verifier;
+
+		if (matches.isLiteral)
+		{
+			String query = new String(matches.query);
+			return index -> phrases.get(index).contains(query);
+		}
+
+		WildcardMatcher matcher = new WildcardMatcher(matches.query, ZERO_OR_MORE_WILDCARD, SINGLE_CHARACTER_WILDCARD);
+		return index -> matcher.matches(phrases.get(index));
+	}
+
+	/**
+	 * Returns the nodes whose indices, taken together, are the results of the given query.
+	 * 
+	 * @param query         The query to search for.
+	 * @param withWildcards True to interpret wildcard characters, false to match them literally.
+	 * @return The matching nodes. Never null.
+	 */
+	private NodeMatches getNodesFor(String query, boolean withWildcards)
+	{
+		if (query == null || query.isEmpty()) return new NodeMatches(new char[0], true);
+
+		String normalizedQuery = normalizeCase(query);
+		boolean isLiteral = !withWildcards || !hasWildcards(normalizedQuery);
+		NodeMatches matches = new NodeMatches(normalizedQuery.toCharArray(), isLiteral);
+
+		if (isLiteral)
+		{
+			collectExact(matches);
+		}
+		else
+		{
+			collectNodes(0, searchRoot, 0, matches, false);
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Walks the index along a query without wildcards in O(|query|). A query longer than the maximum depth yields the
+	 * node of its depth-limited prefix as a candidate.
+	 * 
+	 * @param matches The matches to collect the node into.
+	 */
+	private void collectExact(NodeMatches matches)
+	{
+		char[] query = matches.query;
+		int depth = Math.min(query.length, maxDepth);
+		SearchNode current = searchRoot;
+
+		for (int i = 0; i < depth && current != null; i++)
+		{
+			current = current.getChild(query[i]);
+		}
+
+		if (current != null) addMatch(matches, current, depth);
+	}
+
+	/**
+	 * Adds the node reached by walking a query without wildcards to the given matches: as an exact match if the whole
+	 * query was walked, or as a candidate if the walk stopped at the maximum depth.
+	 * 
+	 * @param matches The matches to add the node to.
+	 * @param node    The node reached.
+	 * @param depth   The number of query characters walked to reach the node.
+	 */
+	private static void addMatch(NodeMatches matches, SearchNode node, int depth)
+	{
+		if (node.getIndexCount() == 0) return;
+
+		if (depth < matches.query.length)
+		{
+			matches.candidates.add(node);
+		}
+		else
+		{
+			matches.exact.add(node);
+		}
+	}
+
+	/**
+	 * A recursive helper method to collect the nodes matching the given query. It supports the wildcard characters '*'
+	 * and '?'. Nodes at the maximum depth with query characters left over are collected as candidates to verify.
+	 * 
+	 * @param index     The index into the current query character being processed.
+	 * @param current   The current node in the phrase index.
+	 * @param depth     The depth of the current node.
+	 * @param matches   The matching nodes collected so far.
+	 * @param firstOnly True to stop at the first exactly matching node.
+	 * @return True if firstOnly is set and a matching node was found, false otherwise.
+	 */
+	private boolean collectNodes(int index, SearchNode current, int depth, NodeMatches matches, boolean firstOnly)
+	{
+		char[] query = matches.query;
+
+		if (index == query.length)
+		{
+			if (current.getIndexCount() > 0) matches.exact.add(current);
+			return firstOnly && !matches.exact.isEmpty();
+		}
+
+		if (depth == maxDepth)
+		{
+			matches.candidates.add(current);
+		}
+
+		char c = query[index];
+
+		if (c == ZERO_OR_MORE_WILDCARD) // Match zero or more characters.
+		{
+			for (SearchNode child : current.getChildren())
+			{
+				if (collectNodes(index, child, depth + 1, matches, firstOnly)) return true;
+				if (collectNodes(index + 1, child, depth + 1, matches, firstOnly)) return true;
+			}
+		}
+		else if (c == SINGLE_CHARACTER_WILDCARD) // Match any single character.
+		{
+			for (SearchNode child : current.getChildren())
+			{
+				if (collectNodes(index + 1, child, depth + 1, matches, firstOnly)) return true;
+			}
+
+			return collectNodes(index + 1, current, depth, matches, firstOnly);
+		}
+		else // Exact match.
+		{
+			SearchNode child = current.getChild(c);
+
+			if (child != null)
+			{
+				return collectNodes(index + 1, child, depth + 1, matches, firstOnly);
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * A recursive helper method to collect the nodes within the maximum edits of a fuzzy query. Nodes at the maximum
+	 * depth that could still match deeper are collected as candidates to verify.
+	 * 
+	 * @param current The current node in the phrase index.
+	 * @param column  The edit distance column of the path to the current node.
+	 * @param matcher The matcher computing the columns.
+	 * @param matches The matching nodes collected so far.
+	 */
+	private void collectFuzzy(SearchNode current, FuzzyMatcher.Column column, FuzzyMatcher matcher,
+		NodeMatches matches)
+	{
+		for (SearchNode child : current.getChildren())
+		{
+			if (column.getDepth() == 0 && !matcher.canStartWith(child.getLabel())) continue;
+
+			FuzzyMatcher.Column next = matcher.advance(column, child.getLabel());
+
+			if (matcher.isMatch(next))
+			{
+				if (child.getIndexCount() > 0) matches.exact.add(child);
+			}
+			else if (matcher.canMatch(next))
+			{
+				if (column.getDepth() + 1 == maxDepth) matches.candidates.add(child);
+				else collectFuzzy(child, next, matcher, matches);
+			}
+		}
+	}
+
+	/**
+	 * A recursive helper method to collect the nodes whose path matches a regular expression. Nodes at the maximum
+	 * depth in a live state are collected as candidates to verify.
+	 *
+	 * @param current   The current node in the phrase index.
+	 * @param state     The DFA state of the path to the current node.
+	 * @param depth     The depth of the current node.
+	 * @param automaton The compiled pattern.
+	 * @param matches   The matching nodes collected so far.
+	 */
+	private void collectRegex(SearchNode current, int state, int depth, RegexAutomaton automaton, NodeMatches matches)
+	{
+		for (SearchNode child : current.getChildren())
+		{
+			int next = automaton.step(state, child.getLabel());
+
+			if (next == RegexAutomaton.DEAD) continue;
+
+			if (automaton.isAccepting(next))
+			{
+				if (child.getIndexCount() > 0) matches.exact.add(child);
+			}
+			else if (depth + 1 == maxDepth) matches.candidates.add(child);
+			else collectRegex(child, next, depth + 1, automaton, matches);
+		}
+	}
+
+	/**
+	 * Lazily unions the indices of the given nodes into a single ascending iterator.
+	 * 
+	 * @param nodes The nodes to union.
+	 * @return An ascending, duplicate-free iterator over the indices of all the nodes.
+	 */
+	private static PrimitiveIterator.OfInt union(Collection<SearchNode> nodes)
+	{
+		if (nodes.size() == 1) return nodes.iterator().next().indexIterator(0);
+
+		List<PrimitiveIterator.OfInt> iterators = new ArrayList<>(nodes.size());
+
+		for (SearchNode node : nodes)
+		{
+			iterators.add(node.indexIterator(0));
+		}
+
+		return new UnionIterator(iterators);
+	}
+
+	/**
+	 * Returns the number of phrase ids if each is still the id of its only value, or -1 otherwise. Once a phrase is
+	 * inserted again the value count stays ahead of the phrase count for good, so reading the phrase count first makes
+	 * a positive answer safe for every phrase id below the returned limit, even while phrases are being inserted.
+	 * 
+	 * @param table The value ids of each phrase.
+	 * @return The number of phrase ids that are also value ids, or -1.
+	 */
+	private int identityLimit(PhraseValues table)
+	{
+		int phraseCount = table.size();
+		return values.size() == phraseCount ? phraseCount : -1;
+	}
+
+	/**
+	 * Truncates an ascending iterator before the first index at or above the given limit.
+	 * 
+	 * @param iterator The ascending iterator.
+	 * @param limit    The limit, exclusive.
+	 * @return An ascending iterator over the indices below the limit.
+	 */
+	private static PrimitiveIterator.OfInt below(PrimitiveIterator.OfInt iterator, int limit)
+	{
+		return new PrimitiveIterator.OfInt()
+		{
+			private int next = -1;
+
+			@Override
+			public boolean hasNext()
+			{
+				if (next < 0)
+				{
+					if (!iterator.hasNext()) return false;
+					next = iterator.nextInt();
+				}
+
+				return next < limit;
+			}
+
+			@Override
+			public int nextInt()
+			{
+				if (!hasNext()) throw new NoSuchElementException();
+
+				int index = next;
+				next = -1;
+				return index;
+			}
+		};
+	}
+
+	/**
+	 * Wraps an ascending index iterator in a lazy, ordered IntStream.
+	 * 
+	 * @param iterator The iterator to wrap.
+	 * @return A lazy IntStream over the iterator.
+	 */
+	private static IntStream stream(PrimitiveIterator.OfInt iterator)
+	{
+		return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(iterator,
+			Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Tombstones the live candidate indices whose values the filter accepts and starts a background compaction once
+	 * the ratio of pending removals passes the compaction threshold.
+	 * 
+	 * @param candidates The indices to check.
+	 * @param filter     Accepts the values to remove.
+	 * @return True if any value was removed, false otherwise.
+	 */
+	private boolean removeIf(PrimitiveIterator.OfInt candidates, Predicate<? super T> filter)
+	{
+		boolean isRemoved = false;
+
+		while (candidates.hasNext())
+		{
+			int index = candidates.nextInt();
+
+			if (!deleted.get(index) && filter.test(values.get(index)) && deleted.set(index))
+			{
+				pendingDeletes++;
+				isRemoved = true;
+			}
+		}
+
+		if (isRemoved) generation++;
+
+		if (isRemoved && !isFrozen() && pendingDeletes > compactionThreshold * values.size())
+		{
+			compactAsync();
+		}
+
+		return isRemoved;
+	}
+
+	/**
+	 * Inserts the suffix of a phrase starting at the given position into the index with the given index, up to the
+	 * maximum depth.
+	 * 
+	 * @param phrase The normalized phrase.
+	 * @param start  The position of the first character of the suffix.
+	 * @param index  The index to associate with the suffix.
+	 */
+	private void insertSuffix(String phrase, int start, int index)
+	{
+		root.addSuffix(phrase, start, (int) Math.min(phrase.length(), (long) start + maxDepth), index);
+	}
+
+	/**
+	 * Adds a value to the index, interning its phrase: a known phrase gets the value's id added, an unknown one is
+	 * given the next phrase id, whose suffixes the caller must then index.
+	 * 
+	 * @param normalizedPhrase The normalized phrase of the value.
+	 * @param value            The value to add.
+	 * @return The id of the phrase if it is new to the index, or -1 if it was already known.
+	 */
+	private int internPhrase(String normalizedPhrase, T value)
+	{
+		int index = values.size();
+		int phraseId = phraseTable.find(normalizedPhrase);
+		values.add(value);
+
+		if (phraseId >= 0)
+		{
+			phraseTable.addValue(phraseId, index);
+			return -1;
+		}
+
+		phrases.add(isBounded() ? normalizedPhrase : null);
+		return phraseTable.add(normalizedPhrase, index);
+	}
+
+	/**
+	 * Finds the id of a normalized phrase. A frozen index has no phrase table: with a bounded depth its phrases are
+	 * compared directly, and otherwise the phrase is the only one containing it with no character before or after it.
+	 * 
+	 * @param normalizedPhrase The normalized phrase.
+	 * @return The id of the phrase, or -1 if it was never inserted or has been compacted away.
+	 */
+	private int findPhrase(String normalizedPhrase)
+	{
+		if (phraseTable != null) return phraseTable.find(normalizedPhrase);
+
+		NodeMatches matches = getNodesFor(normalizedPhrase, false);
+		if (matches.isEmpty()) return -1;
+
+		SearchNode node = matches.isSingleNode() ? matches.getSingleNode() : matches.candidates.iterator().next();
+
+		if (isBounded())
+		{
+			return stream(node.indexIterator(0))
+				.filter(phraseId -> normalizedPhrase.equals(phrases.get(phraseId)))
+				.findFirst().orElse(-1);
+		}
+
+		BitSet containing = new BitSet();
+		node.indexIterator(0).forEachRemaining((int phraseId) -> containing.set(phraseId));
+		IntConsumer extended = containing::clear;
+
+		for (SearchNode child : node.getChildren())
+		{
+			child.indexIterator(0).forEachRemaining(extended);
+		}
+
+		for (SearchNode first : searchRoot.getChildren())
+		{
+			SearchNode current = first;
+
+			for (int i = 0; i < normalizedPhrase.length() && current != null; i++)
+			{
+				current = current.getChild(normalizedPhrase.charAt(i));
+			}
+
+			if (current != null) current.indexIterator(0).forEachRemaining(extended);
+		}
+
+		return containing.nextSetBit(0);
+	}
+
+	/**
+	 * Returns whether the indexed depth is bounded.
+	 * 
+	 * @return True if a maximum depth is set, false otherwise.
+	 */
+	private boolean isBounded()
+	{
+		return maxDepth != UNBOUNDED_DEPTH;
+	}
+
+	/**
+	 * Checks whether the given query contains any wildcard characters.
+	 * 
+	 * @param query The query to check.
+	 * @return True if the query contains a wildcard, false otherwise.
+	 */
+	private static boolean hasWildcards(String query)
+	{
+		return query.indexOf(ZERO_OR_MORE_WILDCARD) >= 0 || query.indexOf(SINGLE_CHARACTER_WILDCARD) >= 0;
+	}
+
+	/**
+	 * Normalizes the case of the given text based on the case sensitivity of the index.
+	 * 
+	 * @param text The text to normalize.
+	 * @return The normalized text.
+	 */
+	private String normalizeCase(String text)
+	{
+		return isCaseSensitive ? text : text.toLowerCase();
+	}
+
+	/**
+	 * The nodes matching a query: exact matches, whose indices are all results, and candidates at the maximum depth,
+	 * whose indices must be verified against their phrases.
+	 */
+	private static final class NodeMatches
+	{
+		private final char[] query;
+		private final boolean isLiteral;
+		private final Set<SearchNode> exact = new LinkedHashSet<>();
+		private final Set<SearchNode> candidates = new LinkedHashSet<>();
+
+		// Verifies candidates when the query is neither literal nor a wildcard pattern.
+		private IntPredicate verifier;
+
+		NodeMatches(char[] query, boolean isLiteral)
+		{
+			this.query = query;
+			this.isLiteral = isLiteral;
+		}
+
+		boolean isEmpty()
+		{
+			return exact.isEmpty() && candidates.isEmpty();
+		}
+
+		boolean isSingleNode()
+		{
+			return exact.size() == 1 && candidates.isEmpty();
+		}
+
+		SearchNode getSingleNode()
+		{
+			return exact.iterator().next();
+		}
 	}
 }
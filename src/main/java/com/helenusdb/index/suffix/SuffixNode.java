@@ -2,26 +2,57 @@ package com.helenusdb.index.suffix;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.PrimitiveIterator;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
 /**
  * SuffixNode is a node in SuffixIndex to store phrases and indices into their associated values.
+ *
+ * Nodes are modified by a single writer at a time and read by any number of threads without locking. The children map
+ * and postings are published through volatile fields, children are added through a ConcurrentHashMap, and Postings
+ * never change a snapshot a reader may be walking.
  */
 class SuffixNode
+implements SearchNode
 {
 	/**
 	 * The children of this node, indexed by the first character of the phrase.
 	 */
-	private Map<Character, SuffixNode> children;
+	private volatile Map<Character, SuffixNode> children;
 
 	/**
-	 * The indices of the values associated with the phrase ending. Only populated if this node is the end of a phrase
-	 * (a leaf node).
+	 * The indices of the values associated with the phrase ending, in ascending order. Only populated if this node is
+	 * the end of a phrase (a leaf node).
 	 */
-	private Set<Integer> indices;
+	private volatile Postings indices;
+
+	/**
+	 * The character indexing this node in its parent. Fits in the padding of the object, so it costs no memory.
+	 */
+	private final char label;
+
+	/**
+	 * Constructs a root node.
+	 */
+	public SuffixNode()
+	{
+		this('\0');
+	}
+
+	/**
+	 * Constructs a node indexed by the given character in its parent.
+	 *
+	 * @param label The character indexing this node.
+	 */
+	SuffixNode(char label)
+	{
+		this.label = label;
+	}
 
 	/**
 	 * Adds a child node to this node. If the child already exists, it is not replaced.
@@ -35,7 +66,27 @@ class SuffixNode
 			children = new ConcurrentHashMap<>();
 		}
 
-		return children.computeIfAbsent(c, k -> new SuffixNode());
+		return children.computeIfAbsent(c, SuffixNode::new);
+	}
+
+	/**
+	 * Adds the characters of a phrase from start until end as a path of descendants of this node, adding the given
+	 * index to every node along the path.
+	 *
+	 * @param phrase The phrase to add.
+	 * @param start  The position of the first character to add.
+	 * @param end    The position after the last character to add.
+	 * @param index  The index to add to every node along the path.
+	 */
+	public void addSuffix(String phrase, int start, int end, int index)
+	{
+		SuffixNode current = this;
+
+		for (int i = start; i < end; i++)
+		{
+			current = current.addChildIfAbsent(phrase.charAt(i));
+			current.addIndex(index);
+		}
 	}
 
 	/**
@@ -44,11 +95,18 @@ class SuffixNode
 	 * @param c The character to get the child node for.
 	 * @return The child node indexed by the given character, or null if no such child exists.
 	 */
+	@Override
 	public SuffixNode getChild(char c)
 	{
 		return children == null ? null : children.get(c);
 	}
 
+	@Override
+	public char getLabel()
+	{
+		return label;
+	}
+
 	/**
 	 * Checks if this node has a child indexed by the given character.
 	 *
@@ -62,14 +120,26 @@ class SuffixNode
 	}
 
 	/**
-	 * 
-	 * @return
+	 * Gets the children of this node.
+	 *
+	 * @return An unmodifiable collection of the children of this node.
 	 */
+	@Override
 	public Collection<SuffixNode> getChildren()
 	{
 		return children == null ? Collections.emptyList() : Collections.unmodifiableCollection(children.values());
 	}
 
+	/**
+	 * Gets the children of this node keyed by the character indexing them.
+	 *
+	 * @return An unmodifiable map of the children of this node.
+	 */
+	Map<Character, SuffixNode> getChildMap()
+	{
+		return children == null ? Collections.emptyMap() : Collections.unmodifiableMap(children);
+	}
+
 	/**
 	 * Adds an index to the list of indices in this leaf node.
 	 *
@@ -80,7 +150,7 @@ class SuffixNode
 	{
 		if (indices == null)
 		{
-			indices = new HashSet<>();
+			indices = new Postings();
 		}
 
 		indices.add(index);
@@ -92,9 +162,121 @@ class SuffixNode
 	 * 
 	 * @return The set of indices (into the PhraseIndex) in this leaf node.
 	 */
+	@Override
 	public Set<Integer> getIndices()
 	{
-		return indices == null ? Collections.emptySet() : Collections.unmodifiableSet(indices);
+		return indices == null ? Collections.emptySet() : indices.asSet();
+	}
+
+	/**
+	 * Gets the number of indices in this node without materializing them.
+	 *
+	 * @return The number of indices in this node.
+	 */
+	@Override
+	public int getIndexCount()
+	{
+		return indices == null ? 0 : indices.size();
+	}
+
+	/**
+	 * Returns an iterator over the indices in this node in ascending order, starting at the given position.
+	 *
+	 * @param from The position of the first index to return.
+	 * @return An ascending iterator over the indices in this node.
+	 */
+	@Override
+	public PrimitiveIterator.OfInt indexIterator(int from)
+	{
+		return indices == null ? IntStream.empty().iterator() : indices.iterator(from);
+	}
+
+	/**
+	 * Merges another node graph into this one. Every index in the other graph must be greater than every index in this
+	 * one, as when the graphs were built from consecutive id ranges, so postings are simply concatenated. Children
+	 * missing from this node are adopted along with their whole subtree rather than copied.
+	 *
+	 * @param other The node to merge into this one. Must not be used afterwards.
+	 */
+	void merge(SuffixNode other)
+	{
+		mergeIndices(other);
+		if (other.children == null) return;
+
+		for (Map.Entry<Character, SuffixNode> entry : other.children.entrySet())
+		{
+			SuffixNode child = getChild(entry.getKey());
+
+			if (child == null)
+			{
+				adoptChild(entry.getKey(), entry.getValue());
+			}
+			else
+			{
+				child.merge(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Adds the given node as a child of this node. Used when merging node graphs.
+	 *
+	 * @param c     The character to index the child node by.
+	 * @param child The child node to add.
+	 */
+	void adoptChild(char c, SuffixNode child)
+	{
+		if (children == null)
+		{
+			children = new ConcurrentHashMap<>();
+		}
+
+		children.put(c, child);
+	}
+
+	/**
+	 * Merges only the postings of another node into this one, leaving the children to the caller.
+	 *
+	 * @param other The node whose postings to merge.
+	 * @see #merge(SuffixNode)
+	 */
+	void mergeIndices(SuffixNode other)
+	{
+		if (other.indices == null) return;
+
+		if (indices == null) indices = other.indices;
+		else indices.addAll(other.indices);
+	}
+
+	/**
+	 * Removes the indices matching the given predicate from this node and its descendants. Since a node's indices
+	 * include those of every node below it, a child left without indices is pruned along with its whole subtree.
+	 *
+	 * @param isRemoved The predicate selecting indices to remove.
+	 * @param stats     The statistics to record removed postings and nodes in.
+	 */
+	void prune(IntPredicate isRemoved, CompactionStats stats)
+	{
+		if (indices != null)
+		{
+			stats.addRemovedPostings(indices.removeIf(isRemoved));
+		}
+
+		if (children == null) return;
+
+		Iterator<Map.Entry<Character, SuffixNode>> iterator = children.entrySet().iterator();
+
+		while (iterator.hasNext())
+		{
+			SuffixNode child = iterator.next().getValue();
+			child.prune(isRemoved, stats);
+
+			if (child.getIndexCount() == 0 && child.isLeaf())
+			{
+				iterator.remove();
+				stats.addRemovedNode();
+			}
+		}
 	}
 
 	/**
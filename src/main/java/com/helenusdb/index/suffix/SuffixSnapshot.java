@@ -0,0 +1,563 @@
+package com.helenusdb.index.suffix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.zip.CRC32C;
+
+/**
+ * SuffixSnapshot reads and writes the on-disk form of a frozen SuffixIndex. The file holds the buffers of a
+ * FrozenSuffixTrie and of its FrozenPhraseValues verbatim, so opening a snapshot memory-maps each section and searches
+ * run directly against the mapped pages with no deserialization. The page cache is shared by every process opening the
+ * same file.
+ *
+ * All values are little-endian and every section starts on an 8-byte boundary:
+ *
+ * <pre>
+ * header        64 bytes: magic, version, flags, maxDepth, valueCount, nodeCount, postingCount, deletedWords,
+ *               phraseBytes (long), bodyChecksum (long), phraseCount, valueIdCount, headerChecksum, reserved
+ * firstChild    (nodeCount + 1) ints
+ * labels        nodeCount chars
+ * postingStart  (nodeCount + 1) ints
+ * postings      postingCount ints, the phrase ids of each node
+ * deleted       deletedWords longs, the bitmap of removed value ids
+ * firstValue    phraseCount ints
+ * valueStart    (phraseCount + 1) ints
+ * values        valueIdCount ints, the value ids of each phrase
+ * phraseStart   (phraseCount + 1) ints, only when the depth is bounded
+ * phrases       phraseBytes bytes of UTF-8, only when the depth is bounded
+ * </pre>
+ *
+ * Both checksums are CRC32C. The header checksum is always verified on open, while verifying the body checksum reads
+ * the whole file and is optional. Snapshots are written to a temporary file and atomically moved into place, so readers
+ * never observe a partially written snapshot.
+ *
+ * @see SuffixIndex#writeSnapshot(Path)
+ * @see SuffixIndex#openSnapshot(Path, List, boolean)
+ */
+class SuffixSnapshot
+{
+	static final int MAGIC = 0x48535849; // "HSXI"
+	static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 64;
+	private static final int HEADER_CHECKSUM_OFFSET = 56;
+	private static final int FLAG_CASE_SENSITIVE = 1;
+	private static final int ALIGNMENT = 8;
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	private final FrozenSuffixTrie trie;
+	private final FrozenPhraseValues phraseValues;
+	private final boolean isCaseSensitive;
+	private final int maxDepth;
+	private final int valueCount;
+	private final long[] deleted;
+	private final List<String> phrases;
+
+	/**
+	 * Constructs a SuffixSnapshot of the given index state.
+	 *
+	 * @param trie            The frozen trie.
+	 * @param phraseValues    The frozen value ids of each phrase.
+	 * @param isCaseSensitive Whether the index is case sensitive.
+	 * @param maxDepth        The maximum indexed depth, or Integer.MAX_VALUE if unbounded.
+	 * @param valueCount      The number of value ids, including removed ones.
+	 * @param deleted         The bitmap of removed value ids.
+	 * @param phrases         The normalized phrases by phrase id, or null if the depth is unbounded.
+	 */
+	SuffixSnapshot(FrozenSuffixTrie trie, FrozenPhraseValues phraseValues, boolean isCaseSensitive, int maxDepth,
+		int valueCount, long[] deleted, List<String> phrases)
+	{
+		this.trie = trie;
+		this.phraseValues = phraseValues;
+		this.isCaseSensitive = isCaseSensitive;
+		this.maxDepth = maxDepth;
+		this.valueCount = valueCount;
+		this.deleted = deleted;
+		this.phrases = phrases;
+	}
+
+	/**
+	 * Returns the frozen trie, backed by the mapped sections of an opened snapshot.
+	 *
+	 * @return The frozen trie.
+	 */
+	public FrozenSuffixTrie getTrie()
+	{
+		return trie;
+	}
+
+	/**
+	 * Returns the value ids of each phrase, backed by the mapped sections of an opened snapshot.
+	 *
+	 * @return The frozen value ids of each phrase.
+	 */
+	public FrozenPhraseValues getPhraseValues()
+	{
+		return phraseValues;
+	}
+
+	/**
+	 * Returns whether the snapshotted index is case sensitive.
+	 *
+	 * @return True if the index is case sensitive, false otherwise.
+	 */
+	public boolean isCaseSensitive()
+	{
+		return isCaseSensitive;
+	}
+
+	/**
+	 * Returns the maximum indexed depth of the snapshotted index.
+	 *
+	 * @return The maximum indexed depth, or Integer.MAX_VALUE if unbounded.
+	 */
+	public int getMaxDepth()
+	{
+		return maxDepth;
+	}
+
+	/**
+	 * Returns the number of value ids, including removed ones.
+	 *
+	 * @return The number of value ids.
+	 */
+	public int getValueCount()
+	{
+		return valueCount;
+	}
+
+	/**
+	 * Returns the bitmap of removed value ids, as words of 64 bits.
+	 *
+	 * @return The removed value ids.
+	 */
+	public long[] getDeleted()
+	{
+		return deleted;
+	}
+
+	/**
+	 * Returns the normalized phrases by phrase id. Phrases without live values are null, as are all phrases when the
+	 * depth is unbounded, since they are never needed to verify a query.
+	 *
+	 * @return The phrases by phrase id.
+	 */
+	public List<String> getPhrases()
+	{
+		return phrases == null ? Collections.nCopies(phraseValues.size(), null) : phrases;
+	}
+
+	/**
+	 * Writes the snapshot to the given file atomically: the snapshot is written and forced to a new, uniquely named
+	 * temporary file in the same directory, which then replaces the target file in a single rename. The directory is
+	 * forced after the rename, so the new file survives a crash. Concurrent writers to the same file each write their
+	 * own temporary file, and the file ends up holding whichever snapshot was renamed last.
+	 *
+	 * @param file The file to write.
+	 * @throws IOException if the snapshot cannot be written.
+	 */
+	public void write(Path file) throws IOException
+	{
+		Path directory = file.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		byte[][] encoded = encodePhrases();
+		long phraseBytes = 0;
+
+		for (byte[] phrase : encoded)
+		{
+			phraseBytes += phrase.length;
+		}
+
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+		{
+			SectionWriter out = new SectionWriter(channel, HEADER_SIZE);
+			out.putInts(trie.getFirstChild());
+			out.putChars(trie.getLabels());
+			out.putInts(trie.getPostingStart());
+			out.putInts(trie.getPostings());
+
+			for (long word : deleted)
+			{
+				out.putLong(word);
+			}
+
+			out.align();
+			out.putInts(phraseValues.getFirstValues());
+			out.putInts(phraseValues.getValueStart());
+			out.putInts(phraseValues.getValues());
+
+			if (phrases != null)
+			{
+				int start = 0;
+				out.putInt(start);
+
+				for (byte[] phrase : encoded)
+				{
+					start = Math.addExact(start, phrase.length);
+					out.putInt(start);
+				}
+
+				out.align();
+
+				for (byte[] phrase : encoded)
+				{
+					out.putBytes(phrase);
+				}
+
+				out.align();
+			}
+
+			out.flush();
+			writeHeader(channel, phraseBytes, out.getChecksum());
+			channel.force(true);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+
+		try
+		{
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+
+		forceDirectory(directory);
+	}
+
+	/**
+	 * Forces a directory to storage, making the renames within it durable. Windows cannot open a directory, and makes
+	 * renames durable itself, so it is skipped there.
+	 *
+	 * @param directory The directory to force.
+	 * @throws IOException if the directory cannot be forced.
+	 */
+	private static void forceDirectory(Path directory) throws IOException
+	{
+		if (System.getProperty("os.name").startsWith("Windows")) return;
+
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ))
+		{
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Opens a snapshot by memory-mapping its sections. Only the header is read up front, so opening is O(1) in the size
+	 * of the index unless the body checksum is verified.
+	 *
+	 * @param file           The snapshot file.
+	 * @param verifyChecksum True to read the whole file and verify the body checksum.
+	 * @return The opened snapshot.
+	 * @throws IOException if the file cannot be read, or is not a valid snapshot.
+	 */
+	public static SuffixSnapshot open(Path file, boolean verifyChecksum) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+			while (header.hasRemaining())
+			{
+				if (channel.read(header, header.position()) < 0) throw corrupted(file, "truncated header");
+			}
+
+			header.flip();
+			if (header.getInt(0) != MAGIC) throw corrupted(file, "bad magic number");
+			if (header.getInt(4) != VERSION) throw corrupted(file, "unsupported version " + header.getInt(4));
+			long headerChecksum = checksum(header.duplicate().limit(HEADER_CHECKSUM_OFFSET));
+			if (header.getInt(HEADER_CHECKSUM_OFFSET) != (int) headerChecksum) throw corrupted(file, "bad header checksum");
+
+			int flags = header.getInt(8);
+			int maxDepth = header.getInt(12);
+			int valueCount = header.getInt(16);
+			int nodeCount = header.getInt(20);
+			int postingCount = header.getInt(24);
+			int deletedWords = header.getInt(28);
+			long phraseBytes = header.getLong(32);
+			long bodyChecksum = header.getLong(40);
+			int phraseCount = header.getInt(48);
+			int valueIdCount = header.getInt(52);
+			boolean isBounded = maxDepth != Integer.MAX_VALUE;
+
+			SectionMapper in = new SectionMapper(channel, HEADER_SIZE);
+			IntBuffer firstChild = in.map((nodeCount + 1L) * Integer.BYTES).asIntBuffer();
+			CharBuffer labels = in.map((long) nodeCount * Character.BYTES).asCharBuffer();
+			IntBuffer postingStart = in.map((nodeCount + 1L) * Integer.BYTES).asIntBuffer();
+			IntBuffer postings = in.map((long) postingCount * Integer.BYTES).asIntBuffer();
+			ByteBuffer deletedSection = in.map((long) deletedWords * Long.BYTES);
+			IntBuffer firstValue = in.map((long) phraseCount * Integer.BYTES).asIntBuffer();
+			IntBuffer valueStart = in.map((phraseCount + 1L) * Integer.BYTES).asIntBuffer();
+			IntBuffer values = in.map((long) valueIdCount * Integer.BYTES).asIntBuffer();
+			List<String> phrases = null;
+
+			if (isBounded)
+			{
+				IntBuffer phraseStart = in.map((phraseCount + 1L) * Integer.BYTES).asIntBuffer();
+				phrases = new MappedPhrases(phraseStart, in.map(phraseBytes));
+			}
+
+			if (in.getPosition() != channel.size()) throw corrupted(file, "unexpected file size " + channel.size());
+
+			if (verifyChecksum && bodyChecksum != checksum(channel, HEADER_SIZE, channel.size()))
+			{
+				throw corrupted(file, "body checksum mismatch");
+			}
+
+			long[] deleted = new long[deletedWords];
+			deletedSection.asLongBuffer().get(deleted);
+			FrozenSuffixTrie trie = new FrozenSuffixTrie(firstChild, labels, postingStart, postings);
+			FrozenPhraseValues phraseValues = new FrozenPhraseValues(firstValue, valueStart, values);
+			return new SuffixSnapshot(trie, phraseValues, (flags & FLAG_CASE_SENSITIVE) != 0, maxDepth, valueCount,
+				deleted, phrases);
+		}
+	}
+
+	private void writeHeader(FileChannel channel, long phraseBytes, long bodyChecksum) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC)
+			.putInt(VERSION)
+			.putInt(isCaseSensitive ? FLAG_CASE_SENSITIVE : 0)
+			.putInt(maxDepth)
+			.putInt(valueCount)
+			.putInt(trie.getNodeCount())
+			.putInt(trie.getPostingCount())
+			.putInt(deleted.length)
+			.putLong(phraseBytes)
+			.putLong(bodyChecksum)
+			.putInt(phraseValues.size())
+			.putInt(phraseValues.getValueIdCount());
+		header.putInt(HEADER_CHECKSUM_OFFSET, (int) checksum(header.duplicate().flip()));
+		header.clear();
+
+		while (header.hasRemaining())
+		{
+			channel.write(header, header.position());
+		}
+	}
+
+	private byte[][] encodePhrases()
+	{
+		if (phrases == null) return new byte[0][];
+
+		byte[][] encoded = new byte[phrases.size()][];
+
+		for (int i = 0; i < encoded.length; i++)
+		{
+			String phrase = phrases.get(i);
+			encoded[i] = phrase == null ? new byte[0] : phrase.getBytes(StandardCharsets.UTF_8);
+		}
+
+		return encoded;
+	}
+
+	private static long checksum(ByteBuffer buffer)
+	{
+		CRC32C crc = new CRC32C();
+		crc.update(buffer);
+		return crc.getValue();
+	}
+
+	private static long checksum(FileChannel channel, long from, long to) throws IOException
+	{
+		CRC32C crc = new CRC32C();
+
+		for (long position = from; position < to; position += Integer.MAX_VALUE)
+		{
+			crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Integer.MAX_VALUE, to - position)));
+		}
+
+		return crc.getValue();
+	}
+
+	private static long alignUp(long position)
+	{
+		return (position + ALIGNMENT - 1) & -ALIGNMENT;
+	}
+
+	private static IOException corrupted(Path file, String reason)
+	{
+		return new IOException("Invalid SuffixIndex snapshot " + file + ": " + reason);
+	}
+
+	/**
+	 * Writes sections sequentially through a buffer, padding each to the alignment and checksumming every byte written.
+	 */
+	private static final class SectionWriter
+	{
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private final CRC32C crc = new CRC32C();
+		private long position;
+
+		SectionWriter(FileChannel channel, long position)
+		{
+			this.channel = channel;
+			this.position = position;
+		}
+
+		void putInts(IntBuffer ints) throws IOException
+		{
+			for (int i = 0; i < ints.limit(); i++)
+			{
+				putInt(ints.get(i));
+			}
+
+			align();
+		}
+
+		void putChars(CharBuffer chars) throws IOException
+		{
+			for (int i = 0; i < chars.limit(); i++)
+			{
+				ensureRemaining(Character.BYTES);
+				buffer.putChar(chars.get(i));
+			}
+
+			align();
+		}
+
+		void putInt(int value) throws IOException
+		{
+			ensureRemaining(Integer.BYTES);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException
+		{
+			ensureRemaining(Long.BYTES);
+			buffer.putLong(value);
+		}
+
+		void putBytes(byte[] bytes) throws IOException
+		{
+			for (int offset = 0; offset < bytes.length;)
+			{
+				ensureRemaining(1);
+				int length = Math.min(buffer.remaining(), bytes.length - offset);
+				buffer.put(bytes, offset, length);
+				offset += length;
+			}
+		}
+
+		void align() throws IOException
+		{
+			long written = position + buffer.position();
+			int padding = (int) (alignUp(written) - written);
+			ensureRemaining(padding);
+
+			for (int i = 0; i < padding; i++)
+			{
+				buffer.put((byte) 0);
+			}
+		}
+
+		void flush() throws IOException
+		{
+			buffer.flip();
+			crc.update(buffer.duplicate());
+
+			while (buffer.hasRemaining())
+			{
+				position += channel.write(buffer, position);
+			}
+
+			buffer.clear();
+		}
+
+		long getChecksum()
+		{
+			return crc.getValue();
+		}
+
+		private void ensureRemaining(int bytes) throws IOException
+		{
+			if (buffer.remaining() < bytes) flush();
+		}
+	}
+
+	/**
+	 * Maps consecutive, aligned sections of a snapshot as read-only, little-endian buffers. Each section is mapped on
+	 * its own, so a section is limited to 2 GB rather than the whole file.
+	 */
+	private static final class SectionMapper
+	{
+		private final FileChannel channel;
+		private long position;
+
+		SectionMapper(FileChannel channel, long position)
+		{
+			this.channel = channel;
+			this.position = position;
+		}
+
+		ByteBuffer map(long size) throws IOException
+		{
+			if (size < 0 || size > Integer.MAX_VALUE) throw new IOException("Snapshot section too large: " + size);
+			if (position + size > channel.size()) throw new IOException("Snapshot truncated at " + position);
+
+			ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, position, size)
+				.order(ByteOrder.LITTLE_ENDIAN);
+			position = alignUp(position + size);
+			return section;
+		}
+
+		long getPosition()
+		{
+			return position;
+		}
+	}
+
+	/**
+	 * The phrases of a snapshot, decoded from the mapped UTF-8 section on access. An empty phrase is one without live
+	 * values, since empty phrases are never indexed.
+	 */
+	private static final class MappedPhrases
+	extends AbstractList<String>
+	implements RandomAccess
+	{
+		private final IntBuffer starts;
+		private final ByteBuffer bytes;
+
+		MappedPhrases(IntBuffer starts, ByteBuffer bytes)
+		{
+			this.starts = starts;
+			this.bytes = bytes;
+		}
+
+		@Override
+		public String get(int index)
+		{
+			if (index < 0 || index >= size()) throw new IndexOutOfBoundsException(index);
+
+			int start = starts.get(index);
+			int length = starts.get(index + 1) - start;
+			return length == 0 ? null : StandardCharsets.UTF_8.decode(bytes.slice(start, length)).toString();
+		}
+
+		@Override
+		public int size()
+		{
+			return starts.limit() - 1;
+		}
+	}
+}
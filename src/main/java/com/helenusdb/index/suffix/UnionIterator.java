@@ -0,0 +1,101 @@
+package com.helenusdb.index.suffix;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+
+/**
+ * UnionIterator lazily unions several ascending index iterators into a single ascending, duplicate-free iterator. Only
+ * the head of each source is held in memory, so taking the first N results costs O(N log k) for k sources regardless of
+ * how long the underlying postings are.
+ */
+class UnionIterator
+implements PrimitiveIterator.OfInt
+{
+	private final PriorityQueue<Cursor> cursors;
+	private boolean hasLast = false;
+	private int last;
+
+	/**
+	 * Constructs a UnionIterator over the given ascending iterators.
+	 *
+	 * @param sources The ascending iterators to union.
+	 */
+	public UnionIterator(Collection<PrimitiveIterator.OfInt> sources)
+	{
+		this.cursors = new PriorityQueue<>(Math.max(1, sources.size()));
+
+		for (PrimitiveIterator.OfInt source : sources)
+		{
+			if (source.hasNext())
+			{
+				cursors.add(new Cursor(source));
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		skipDuplicates();
+		return !cursors.isEmpty();
+	}
+
+	@Override
+	public int nextInt()
+	{
+		if (!hasNext()) throw new NoSuchElementException();
+
+		Cursor cursor = cursors.poll();
+		last = cursor.head;
+		hasLast = true;
+
+		if (cursor.advance())
+		{
+			cursors.add(cursor);
+		}
+
+		return last;
+	}
+
+	private void skipDuplicates()
+	{
+		while (hasLast && !cursors.isEmpty() && cursors.peek().head == last)
+		{
+			Cursor cursor = cursors.poll();
+
+			if (cursor.advance())
+			{
+				cursors.add(cursor);
+			}
+		}
+	}
+
+	private static final class Cursor
+	implements Comparable<Cursor>
+	{
+		private final PrimitiveIterator.OfInt source;
+		private int head;
+
+		Cursor(PrimitiveIterator.OfInt source)
+		{
+			this.source = source;
+			this.head = source.nextInt();
+		}
+
+		boolean advance()
+		{
+			if (!source.hasNext()) return false;
+
+			head = source.nextInt();
+			return true;
+		}
+
+		@Override
+		public int compareTo(Cursor that)
+		{
+			return Integer.compare(this.head, that.head);
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.helenusdb.index.suffix;
+
+import java.util.Arrays;
+
+/**
+ * WildcardMatcher checks a single phrase against a SuffixIndex query, with the same semantics as walking the index: the
+ * query must match a non-empty substring of the phrase, '*' matches one or more characters and '?' matches zero or one
+ * character. Used to verify candidates when a query runs deeper than a depth-limited index.
+ *
+ * The query is simulated as an NFA over the phrase, so a check is O(|phrase| * |query|) with no backtracking.
+ */
+class WildcardMatcher
+{
+	private final char[] query;
+	private final char zeroOrMore;
+	private final char single;
+
+	// Reusable NFA state sets, indexed by query position.
+	private boolean[] active;
+	private boolean[] next;
+
+	/**
+	 * Constructs a WildcardMatcher for the given normalized query.
+	 *
+	 * @param query      The normalized query.
+	 * @param zeroOrMore The wildcard character that matches one or more characters.
+	 * @param single     The wildcard character that matches zero or one character.
+	 */
+	WildcardMatcher(char[] query, char zeroOrMore, char single)
+	{
+		this.query = query;
+		this.zeroOrMore = zeroOrMore;
+		this.single = single;
+		this.active = new boolean[query.length + 1];
+		this.next = new boolean[query.length + 1];
+	}
+
+	/**
+	 * Checks whether the query matches a substring of the given normalized phrase.
+	 *
+	 * @param phrase The normalized phrase to check.
+	 * @return True if the query matches, false otherwise.
+	 */
+	public boolean matches(String phrase)
+	{
+		if (phrase == null || query.length == 0) return false;
+
+		clear(active);
+
+		for (int p = 0; p < phrase.length(); p++)
+		{
+			// A match may start at any position in the phrase.
+			active[0] = true;
+			closure(active);
+			clear(next);
+			char c = phrase.charAt(p);
+
+			for (int q = 0; q < query.length; q++)
+			{
+				if (!active[q]) continue;
+
+				if (query[q] == zeroOrMore)
+				{
+					next[q] = true;
+					next[q + 1] = true;
+				}
+				else if (query[q] == single || query[q] == c)
+				{
+					next[q + 1] = true;
+				}
+			}
+
+			closure(next);
+			if (next[query.length]) return true;
+
+			boolean[] swap = active;
+			active = next;
+			next = swap;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Adds the states reachable by letting '?' match zero characters.
+	 */
+	private void closure(boolean[] states)
+	{
+		for (int q = 0; q < query.length; q++)
+		{
+			if (states[q] && query[q] == single)
+			{
+				states[q + 1] = true;
+			}
+		}
+	}
+
+	private static void clear(boolean[] states)
+	{
+		Arrays.fill(states, false);
+	}
+}
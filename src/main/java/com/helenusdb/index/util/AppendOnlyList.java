@@ -0,0 +1,104 @@
+package com.helenusdb.index.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * An append-only list that stores its elements in fixed-size segments. Appending never copies existing elements, so
+ * bulk loading N elements is O(N) rather than the O(N^2) copying of a CopyOnWriteArrayList. Only the small segment
+ * directory is copied as the list grows.
+ *
+ * Writes are serialized, while reads are lock-free: an element is written before the size is published through a
+ * volatile field, so any reader that sees an index below size() also sees the element stored there. Replacing an
+ * element uses a release store, so a reader that sees the new element also sees everything written before it.
+ *
+ * @param <T> The type of the elements in the list.
+ * @author Todd Fredrich
+ */
+public class AppendOnlyList<T>
+extends AbstractList<T>
+implements RandomAccess
+{
+	private static final int SEGMENT_SHIFT = 10;
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+	private static final int INITIAL_SEGMENTS = 4;
+	private static final VarHandle ELEMENT = MethodHandles.arrayElementVarHandle(Object[].class);
+
+	private volatile Object[][] segments = new Object[INITIAL_SEGMENTS][];
+	private volatile int size;
+
+	/**
+	 * Appends an element to the end of the list in O(1) amortized time.
+	 *
+	 * @param value The element to append. May be null.
+	 * @return Always true.
+	 */
+	@Override
+	public synchronized boolean add(T value)
+	{
+		int index = size;
+		Object[][] current = segments;
+		int segment = index >>> SEGMENT_SHIFT;
+
+		if (segment == current.length)
+		{
+			current = Arrays.copyOf(current, current.length << 1);
+			segments = current;
+		}
+
+		if (current[segment] == null)
+		{
+			current[segment] = new Object[SEGMENT_SIZE];
+		}
+
+		current[segment][index & SEGMENT_MASK] = value;
+		size = index + 1;
+		return true;
+	}
+
+	/**
+	 * Returns the element at the given index in O(1) time without locking.
+	 *
+	 * @param index The index of the element to return.
+	 * @return The element at the given index.
+	 * @throws IndexOutOfBoundsException if the index is out of range.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index)
+	{
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+		return (T) ELEMENT.getAcquire(segments[index >>> SEGMENT_SHIFT], index & SEGMENT_MASK);
+	}
+
+	/**
+	 * Replaces the element at the given index. Used to release references to deleted elements without shifting the
+	 * indices of the others.
+	 *
+	 * @param index The index of the element to replace.
+	 * @param value The new element. May be null.
+	 * @return The element previously at the given index.
+	 * @throws IndexOutOfBoundsException if the index is out of range.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public synchronized T set(int index, T value)
+	{
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+
+		Object[] segment = segments[index >>> SEGMENT_SHIFT];
+		T previous = (T) segment[index & SEGMENT_MASK];
+		ELEMENT.setRelease(segment, index & SEGMENT_MASK, value);
+		return previous;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+}
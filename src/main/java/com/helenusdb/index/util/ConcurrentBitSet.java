@@ -0,0 +1,116 @@
+package com.helenusdb.index.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A growable bit set that can be read without locking while another thread sets bits. Writes are serialized and the
+ * backing word array is republished through a volatile field whenever it grows, so readers always see a complete array.
+ *
+ * Useful as a tombstone (deleted id) bitmap that queries check while the index is being updated.
+ *
+ * @author Todd Fredrich
+ */
+public class ConcurrentBitSet
+{
+	private static final int ADDRESS_BITS_PER_WORD = 6;
+
+	private volatile AtomicLongArray words = new AtomicLongArray(1);
+	private volatile int cardinality;
+
+	/**
+	 * Sets the bit at the given index.
+	 *
+	 * @param index The index of the bit to set. Must not be negative.
+	 * @return True if the bit was previously clear, false if it was already set.
+	 */
+	public synchronized boolean set(int index)
+	{
+		if (index < 0) throw new IndexOutOfBoundsException(index);
+
+		int wordIndex = index >>> ADDRESS_BITS_PER_WORD;
+		AtomicLongArray current = ensureCapacity(wordIndex + 1);
+		long mask = 1L << index;
+		long previous = current.getAndAccumulate(wordIndex, mask, (a, b) -> a | b);
+
+		if ((previous & mask) != 0) return false;
+
+		cardinality++;
+		return true;
+	}
+
+	/**
+	 * Returns the value of the bit at the given index. Never locks.
+	 *
+	 * @param index The index of the bit to read.
+	 * @return True if the bit is set, false otherwise.
+	 */
+	public boolean get(int index)
+	{
+		if (index < 0) return false;
+
+		AtomicLongArray current = words;
+		int wordIndex = index >>> ADDRESS_BITS_PER_WORD;
+		return wordIndex < current.length() && (current.get(wordIndex) & (1L << index)) != 0;
+	}
+
+	/**
+	 * Returns the number of bits set.
+	 *
+	 * @return The number of bits set.
+	 */
+	public int cardinality()
+	{
+		return cardinality;
+	}
+
+	/**
+	 * Returns true if no bits are set.
+	 *
+	 * @return True if no bits are set, false otherwise.
+	 */
+	public boolean isEmpty()
+	{
+		return cardinality == 0;
+	}
+
+	/**
+	 * Returns a copy of the bits as words of 64 bits, in the layout of {@link java.util.BitSet#toLongArray()}.
+	 *
+	 * @return The bits set, as an array of words.
+	 */
+	public long[] toLongArray()
+	{
+		AtomicLongArray current = words;
+		int length = current.length();
+
+		while (length > 0 && current.get(length - 1) == 0)
+		{
+			length--;
+		}
+
+		long[] copy = new long[length];
+
+		for (int i = 0; i < length; i++)
+		{
+			copy[i] = current.get(i);
+		}
+
+		return copy;
+	}
+
+	private AtomicLongArray ensureCapacity(int wordsRequired)
+	{
+		AtomicLongArray current = words;
+		if (wordsRequired <= current.length()) return current;
+
+		AtomicLongArray expanded = new AtomicLongArray(Math.max(wordsRequired, current.length() << 1));
+
+		for (int i = 0; i < current.length(); i++)
+		{
+			expanded.set(i, current.get(i));
+		}
+
+		words = expanded;
+		return expanded;
+	}
+}
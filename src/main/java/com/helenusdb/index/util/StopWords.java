@@ -7,6 +7,10 @@ import java.util.List;
 import java.util.Set;
 import java.util.stream.Stream;
 
+import com.helenusdb.index.analysis.Analyzer;
+import com.helenusdb.index.analysis.StopFilter;
+import com.helenusdb.index.analysis.TokenStream;
+
 /**
  * A utility class for filtering out stop words from text. This is useful for text analysis and search indexing.
  * 
@@ -15,8 +19,6 @@ import java.util.stream.Stream;
  */
 public class StopWords
 {
-	private static final String FILTER_REGEX = "[^a-zA-Z0-9 ]";
-
 	/**
 	 * A minimal list of stop words for use in general use cases for names, descriptions, etc.
 	 */
@@ -128,6 +130,9 @@ public class StopWords
 
 	private Set<String> wordSet;
 
+	// Built on first use and rebuilt after set(), since its stop filter holds the current set.
+	private volatile Analyzer analyzer;
+
 	/**
 	 * Factory method to create a StopWords instance with the Snowball stop words list from the Porter2 stemmer.
 	 * 
@@ -206,6 +211,7 @@ public class StopWords
 	public StopWords add(String word)
 	{
 		wordSet.add(word);
+		this.analyzer = null;
 		return this;
 	}
 
@@ -217,6 +223,7 @@ public class StopWords
 	public StopWords addAll(String[] words)
 	{
 		wordSet.addAll(Arrays.asList(words));
+		this.analyzer = null;
 		return this;
 	}
 
@@ -228,6 +235,7 @@ public class StopWords
 	public void set(String[] words)
 	{
 		this.wordSet = new HashSet<>(Arrays.asList(words));
+		this.analyzer = null;
 	}
 
 	/**
@@ -240,10 +248,28 @@ public class StopWords
 		return wordSet.toArray(new String[0]);
 	}
 
+	/**
+	 * Returns a filter that removes these stop words from a token stream, for use in an {@link Analyzer} chain after
+	 * the tokens have been lower cased.
+	 * 
+	 * @param input the stream to filter.
+	 * @return a new StopFilter over the current stop words.
+	 */
+	public StopFilter asFilter(TokenStream input)
+	{
+		return new StopFilter(input, wordSet);
+	}
+
 	/**
 	 * Tokenizes the input text, removes punctuation, converts to lowercase, and filters out stop words
 	 * based on the internal stop words list.
 	 *
+	 * Words are split by a {@link com.helenusdb.index.analysis.WordTokenizer}: a hyphen or apostrophe between
+	 * two letters or digits is kept inside the word, and any other punctuation separates words. Earlier versions
+	 * deleted every character but ASCII letters, digits and spaces instead, so "USB-C" is now "usb-c" rather than
+	 * "usbc", "don't" stays "don't" rather than "dont", "3.5mm" is now "3" and "5mm" rather than "35mm", and
+	 * non-ASCII letters are kept.
+	 *
 	 * @param text the input text
 	 * @return a list of filtered tokens
 	 */
@@ -254,11 +280,14 @@ public class StopWords
 			return Collections.emptyList();
 		}
 
-		// Convert to lowercase and remove punctuation
-		String normalizedText = text.toLowerCase().replaceAll(FILTER_REGEX, "");
-		// Split the text into words
-		String[] words = normalizedText.split("\\s+");
-		// Filter out stop words
-		return Arrays.stream(words).filter(word -> !wordSet.contains(word)).toList();
+		Analyzer current = analyzer;
+
+		if (current == null)
+		{
+			current = Analyzer.standard().addFilter(this::asFilter);
+			analyzer = current;
+		}
+
+		return Collections.unmodifiableList(current.analyze(text));
 	}
 }
@@ -0,0 +1,129 @@
+package com.helenusdb.index.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class AnalyzerTest
+{
+	@Test
+	void shouldSplitWords()
+	{
+		Analyzer analyzer = new Analyzer();
+		assertEquals(List.of("USB-C", "charging", "cable", "Don't", "miss", "it", "2-pack", "x"),
+			analyzer.analyze("  USB-C charging cable, -- Don't miss it! (2-pack) x-"));
+		assertTrue(analyzer.analyze(null).isEmpty());
+		assertTrue(analyzer.analyze(" ,.; ").isEmpty());
+		assertEquals(List.of("naïve", "café"), analyzer.analyze("naïve café."));
+	}
+
+	@Test
+	void shouldLowerCaseAndRemoveStopWords()
+	{
+		Analyzer analyzer = Analyzer.standard(Set.of("the", "a", "and"));
+		TokenStream stream = analyzer.tokenStream("The Quick fox and a DOG");
+		Term term = stream.next();
+		assertEquals("quick", term.toString());
+		assertEquals(1, term.getPosition());
+
+		// The same term is reused for every token, and positions keep the gaps of removed words.
+		assertSame(term, stream.next());
+		assertEquals("fox", term.toString());
+		assertEquals(2, term.getPosition());
+		assertSame(term, stream.next());
+		assertEquals("dog", term.toString());
+		assertEquals(5, term.getPosition());
+		assertNull(stream.next());
+
+		assertSame(stream, analyzer.tokenStream("again"));
+		assertEquals("again", stream.next().toString());
+	}
+
+	@Test
+	void shouldLookUpStringKeys()
+	{
+		TermMap<Integer> map = new TermMap<>();
+		map.put("wireless", 1);
+		map.put("earbuds", 2);
+
+		TokenStream stream = Analyzer.standard().tokenStream("Wireless EARBUDS case");
+		assertEquals(1, map.get(stream.next()));
+		Term term = stream.next();
+		assertEquals(2, map.get(term));
+		assertTrue(map.containsKey(term));
+		assertEquals("earbuds".hashCode(), term.hashCode());
+		assertNull(map.get(stream.next()));
+		assertEquals("as", term.subSequence(1, 3));
+
+		// Equality is symmetric: a Term only equals another Term, never a String.
+		Term earbuds = new Term().set("earbuds", 0, 7);
+		Term same = new Term().set("my earbuds", 3, 10);
+		assertEquals(earbuds, same);
+		assertEquals(same.hashCode(), earbuds.hashCode());
+		assertNotEquals(earbuds, "earbuds");
+		assertNotEquals("earbuds", earbuds);
+		assertNotEquals(earbuds, new Term().set("earbud", 0, 6));
+	}
+
+	@Test
+	void shouldGrowTermMap()
+	{
+		TermMap<Integer> map = new TermMap<>();
+		Map<String, Integer> expected = new HashMap<>();
+
+		for (int i = 0; i < 1000; i++)
+		{
+			assertNull(map.put("word" + i, i));
+			expected.put("word" + i, i);
+		}
+
+		assertEquals(0, map.put("word0", -1));
+		expected.put("word0", -1);
+		assertEquals(1000, map.size());
+		assertEquals(expected, map);
+		assertEquals(expected.keySet(), map.keySet());
+
+		Term term = new Term();
+		assertEquals(999, map.get(term.set("word999", 0, 7)));
+		assertNull(map.get(term.set("word1000", 0, 8)));
+		assertNull(map.get(42));
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get("word0"));
+		assertThrows(IllegalArgumentException.class, () -> new TermMap<>(-1));
+	}
+
+	@Test
+	void shouldRejectFiltersOnceUsed()
+	{
+		Analyzer analyzer = new Analyzer();
+		analyzer.addFilter(LowerCaseFilter::new);
+		assertEquals(List.of("a"), analyzer.analyze("A"));
+		assertThrows(IllegalStateException.class, () -> analyzer.addFilter(LowerCaseFilter::new));
+	}
+
+	@Test
+	void shouldKeepChainPerThread() throws InterruptedException
+	{
+		Analyzer analyzer = Analyzer.standard();
+		TokenStream mine = analyzer.tokenStream("one");
+		TokenStream[] theirs = new TokenStream[1];
+		Thread thread = new Thread(() -> theirs[0] = analyzer.tokenStream("two"));
+		thread.start();
+		thread.join();
+
+		assertNotEquals(mine, theirs[0]);
+		assertEquals("one", mine.next().toString());
+	}
+}
@@ -0,0 +1,63 @@
+package com.helenusdb.index.analysis;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class PorterStemmerTest
+{
+	// Words and their stems from the Snowball English sample vocabulary.
+	private static final String[][] STEMS = { { "consign", "consign" }, { "consigned", "consign" },
+		{ "consigning", "consign" }, { "consignment", "consign" }, { "consist", "consist" }, { "consisted", "consist" },
+		{ "consistency", "consist" }, { "consistent", "consist" }, { "consistently", "consist" },
+		{ "consisting", "consist" }, { "consists", "consist" }, { "consolation", "consol" }, { "consolations", "consol" },
+		{ "consolatory", "consolatori" }, { "console", "consol" }, { "consoled", "consol" }, { "consoles", "consol" },
+		{ "consolidate", "consolid" }, { "consolidated", "consolid" }, { "consolidating", "consolid" },
+		{ "consoling", "consol" }, { "consolingly", "consol" }, { "consols", "consol" }, { "consonant", "conson" },
+		{ "consort", "consort" }, { "consorted", "consort" }, { "consorting", "consort" }, { "conspicuous", "conspicu" },
+		{ "conspicuously", "conspicu" }, { "conspiracy", "conspiraci" }, { "conspirator", "conspir" },
+		{ "conspirators", "conspir" }, { "conspire", "conspir" }, { "conspired", "conspir" }, { "conspiring", "conspir" },
+		{ "constable", "constabl" }, { "constables", "constabl" }, { "constance", "constanc" },
+		{ "constancy", "constanc" }, { "constant", "constant" }, { "knack", "knack" }, { "knackeries", "knackeri" },
+		{ "knacks", "knack" }, { "knave", "knave" }, { "knaves", "knave" }, { "knavish", "knavish" },
+		{ "kneaded", "knead" }, { "kneading", "knead" }, { "knee", "knee" }, { "kneel", "kneel" },
+		{ "kneeled", "kneel" }, { "kneeling", "kneel" }, { "kneels", "kneel" }, { "knees", "knee" },
+		{ "knell", "knell" }, { "knelt", "knelt" }, { "knew", "knew" }, { "knife", "knife" }, { "knightly", "knight" },
+		{ "knights", "knight" }, { "knitted", "knit" }, { "knitting", "knit" }, { "knives", "knive" },
+		{ "knocked", "knock" }, { "knocker", "knocker" }, { "knocking", "knock" }, { "hoped", "hope" },
+		{ "hopping", "hop" }, { "cries", "cri" }, { "ties", "tie" }, { "gaps", "gap" }, { "gas", "gas" },
+		{ "kiwis", "kiwi" }, { "cry", "cri" }, { "by", "by" }, { "say", "say" }, { "generously", "generous" },
+		{ "generate", "generat" }, { "skies", "sky" }, { "dying", "die" }, { "news", "news" }, { "succeeding", "succeed" },
+		{ "proceed", "proceed" }, { "agreed", "agre" }, { "luxuriating", "luxuri" }, { "communication", "communic" },
+		{ "arsenal", "arsenal" }, { "'tis", "tis" }, { "dog's", "dog" }, { "charging", "charg" }, { "charge", "charg" },
+		{ "charges", "charg" }, { "charged", "charg" }, { "usb-c", "usb-c" }, { "2x", "2x" }, { "Running", "Running" } };
+
+	@Test
+	void shouldStemWords()
+	{
+		PorterStemmer stemmer = new PorterStemmer();
+
+		for (String[] stem : STEMS)
+		{
+			assertEquals(stem[1], stemmer.stem(stem[0]), stem[0]);
+		}
+	}
+
+	@Test
+	void shouldStemTokens()
+	{
+		for (int cacheSize : new int[] {0, 2, 100})
+		{
+			Analyzer analyzer = Analyzer.standard().addFilter(input -> new PorterStemFilter(input, cacheSize));
+			assertEquals(List.of("wireless", "charg", "pad", "charg", "usb-c", "charger", "charg", "pad"),
+				analyzer.analyze("Wireless charging pads charges USB-C chargers, charged pad"));
+		}
+
+		assertThrows(IllegalArgumentException.class, () -> new PorterStemFilter(new WordTokenizer(), -1));
+		assertEquals(List.of("consist", "cabl"), Analyzer.english(Set.of("the")).analyze("The consistent cables"));
+	}
+}
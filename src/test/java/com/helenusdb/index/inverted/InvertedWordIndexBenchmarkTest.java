@@ -2,10 +2,24 @@ package com.helenusdb.index.inverted;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
 import org.junit.jupiter.api.Test;
 
 import com.helenusdb.index.Corpus;
+import com.helenusdb.index.analysis.Analyzer;
+import com.helenusdb.index.analysis.PorterStemFilter;
+import com.helenusdb.index.analysis.TokenStream;
 import com.helenusdb.index.inverted.InvertedWordIndex;
+import com.helenusdb.index.util.StopWords;
 
 class InvertedWordIndexBenchmarkTest
 {
@@ -15,9 +29,60 @@ class InvertedWordIndexBenchmarkTest
 	void test()
 	{
 		System.out.println("\nInverted Word Index Benchmark:");
+		timeAnalysis();
 		InvertedWordIndex<String> index = timeIndexing();
 		assertNotNull(index);
 		timeSearch(index);
+		timeBooleanSearch(index);
+		timeTopK(index);
+		timePhraseSearch();
+		measureStemming();
+		timeSegments();
+		timeTermDictionary();
+		timeFuzzy();
+		measurePostings(index);
+	}
+
+	private void timeAnalysis()
+	{
+		Analyzer analyzer = Analyzer.standard();
+		int rounds = 200;
+		long tokens = 0;
+
+		for (int round = 0; round < rounds / 4; round++)
+		{
+			for (String description : Corpus.DESCRIPTIONS)
+			{
+				tokens += description.toLowerCase().split("\\s+").length;
+				for (TokenStream stream = analyzer.tokenStream(description); stream.next() != null; tokens++);
+			}
+		}
+
+		long start = System.nanoTime();
+
+		for (int round = 0; round < rounds; round++)
+		{
+			for (String description : Corpus.DESCRIPTIONS)
+			{
+				tokens += description.toLowerCase().split("\\s+").length;
+			}
+		}
+
+		long split = System.nanoTime() - start;
+		start = System.nanoTime();
+
+		for (int round = 0; round < rounds; round++)
+		{
+			for (String description : Corpus.DESCRIPTIONS)
+			{
+				for (TokenStream stream = analyzer.tokenStream(description); stream.next() != null; tokens++);
+			}
+		}
+
+		long analyzed = System.nanoTime() - start;
+		int phrases = rounds * Corpus.DESCRIPTIONS.length;
+		System.out.println(String.format("Tokenizing %d phrases took %.3f microseconds per phrase with toLowerCase and split,"
+			+ " %.3f with the analyzer (%d tokens)", phrases, split / 1000.0 / phrases, analyzed / 1000.0 / phrases, tokens));
 	}
 
 	private InvertedWordIndex<String> timeIndexing()
@@ -38,6 +103,327 @@ class InvertedWordIndexBenchmarkTest
 		return index;
 	}
 
+	private void timeBooleanSearch(InvertedWordIndex<String> index)
+	{
+		BooleanQuery[] queries = { new BooleanQuery().and("wireless earbuds"), new BooleanQuery().and("gaming keyboard"),
+			new BooleanQuery().and("water bottle").not("plastic"), new BooleanQuery().and("with").or("usb-c bluetooth"),
+			new BooleanQuery().and("a and with for"), new BooleanQuery().and("the notfound") };
+
+		for (BooleanQuery query : queries)
+		{
+			long start = System.nanoTime();
+			int count = 0;
+
+			for (int i = 0; i < SEARCHES; i++)
+			{
+				count = index.getIndicesForBoolean(query).size();
+			}
+
+			long end = System.nanoTime();
+			System.out.println(String.format("%d %s searches took %.3f microseconds per search (%d results)",
+				SEARCHES, query, (end - start) / 1000.0 / SEARCHES, count));
+		}
+	}
+
+	private void timeTopK(InvertedWordIndex<String> index)
+	{
+		String[] queries = { "wireless charging pad", "stainless steel water bottle", "with a for and", "earbuds" };
+
+		for (int k : new int[] {10, Integer.MAX_VALUE})
+		{
+			long start = System.nanoTime();
+
+			for (int i = 0; i < SEARCHES; i++)
+			{
+				index.searchTopK(queries[i % queries.length], k);
+			}
+
+			long end = System.nanoTime();
+			System.out.println(String.format("%d top-%s BM25 searches took %.3f microseconds per search", SEARCHES,
+				k == Integer.MAX_VALUE ? "all" : String.valueOf(k), (end - start) / 1000.0 / SEARCHES));
+		}
+	}
+
+	private void timePhraseSearch()
+	{
+		InvertedWordIndex<String> index = new InvertedWordIndex<>(false, true);
+
+		for (String description : Corpus.DESCRIPTIONS)
+		{
+			index.insert(description, description);
+		}
+
+		String[] phrases = { "gaming keyboard", "water bottle", "wireless charging pad", "stainless steel", "a" };
+		long start = System.nanoTime();
+
+		for (int i = 0; i < SEARCHES; i++)
+		{
+			index.searchPhrase(phrases[i % phrases.length]);
+		}
+
+		long positional = System.nanoTime() - start;
+		start = System.nanoTime();
+
+		// What a phrase query used to cost: an AND query, then checking every candidate's text.
+		for (int i = 0; i < SEARCHES; i++)
+		{
+			String phrase = phrases[i % phrases.length];
+			List<String> matches = new ArrayList<>();
+
+			for (String candidate : index.searchBoolean(new BooleanQuery().and(phrase)))
+			{
+				if (candidate.toLowerCase().contains(phrase)) matches.add(candidate);
+			}
+		}
+
+		long verified = System.nanoTime() - start;
+		System.out.println(String.format("%d phrase searches took %.3f microseconds per search (%.3f checking candidates)",
+			SEARCHES, positional / 1000.0 / SEARCHES, verified / 1000.0 / SEARCHES));
+	}
+
+	private void measureStemming()
+	{
+		// The english analyzer caches stems; the uncached stemmer shows what the cache saves.
+		String[] labels = { "Unstemmed", "Stemmed without cache", "Stemmed with cache",
+			"Stemmed with cache without stop words" };
+		Analyzer[] analyzers = { Analyzer.standard(), Analyzer.standard().addFilter(PorterStemFilter::new),
+			Analyzer.english(Set.of()), Analyzer.english(Set.of(StopWords.MINIMAL)) };
+
+		for (int a = 0; a < analyzers.length; a++)
+		{
+			InvertedWordIndex<String> index = null;
+			long start = System.nanoTime();
+
+			for (int round = 0; round < 20; round++)
+			{
+				index = new InvertedWordIndex<String>().setAnalyzer(analyzers[a]);
+
+				for (String description : Corpus.DESCRIPTIONS)
+				{
+					index.insert(description, description);
+				}
+			}
+
+			long indexing = (System.nanoTime() - start) / 20;
+			start = System.nanoTime();
+			int results = 0;
+
+			for (int i = 0; i < SEARCHES; i++)
+			{
+				results = index.search("wireless charging pads").size();
+			}
+
+			long searching = System.nanoTime() - start;
+			System.out.println(String.format("%s: %d words, %d postings (~%dKB), indexing took %.3fms, searches %.3f "
+				+ "microseconds (%d results)", labels[a], index.getWordCount(), index.getPostingCount(),
+				index.estimatePostingBytes() / 1024, indexing / 1000000.0, searching / 1000.0 / SEARCHES, results));
+		}
+	}
+
+	private void timeSegments()
+	{
+		int copies = 100;
+		InvertedWordIndex<String> index = new InvertedWordIndex<String>().setFlushThreshold(5000);
+		long start = System.nanoTime();
+
+		for (int copy = 0; copy < copies; copy++)
+		{
+			for (String description : Corpus.DESCRIPTIONS)
+			{
+				index.insert(description, description);
+			}
+		}
+
+		long indexing = System.nanoTime() - start;
+		int phrases = copies * Corpus.DESCRIPTIONS.length;
+		System.out.println(String.format("Indexing %d phrases into segments took %.3fms (%.0f phrases per second), "
+			+ "leaving %d segments", phrases, indexing / 1000000.0, phrases / (indexing / 1e9), index.getSegmentCount()));
+		String segments = index.getSegmentCount() + " segments";
+		timeSegmentSearch(index, segments);
+		start = System.nanoTime();
+		index.forceMerge();
+		System.out.println(String.format("Force merging took %.3fms", (System.nanoTime() - start) / 1000000.0));
+		timeSegmentSearch(index, "1 segment");
+	}
+
+	private void timeTermDictionary()
+	{
+		InvertedWordIndex<String> corpus = new InvertedWordIndex<>();
+
+		for (String description : Corpus.DESCRIPTIONS)
+		{
+			corpus.insert(description, description);
+		}
+
+		corpus.forceMerge();
+		String[] words = new TreeSet<>(Analyzer.standard().analyze(String.join(" ", Corpus.DESCRIPTIONS)))
+			.toArray(new String[0]);
+		printTermBytes("Corpus", words.length, corpus.estimateTermBytes(), Arrays.stream(words)
+			.mapToLong(InvertedWordIndex::estimateKeyBytes).sum());
+
+		// Compound words make a vocabulary far larger than the corpus. Being a cross product, it shares prefixes and
+		// suffixes far more than natural terms do, so its ratio is a best case, not what real terms get.
+		InvertedWordIndex<String> index = new InvertedWordIndex<String>().setFlushThreshold(50000);
+		long keyBytes = 0;
+
+		for (String first : words)
+		{
+			for (int i = 0; i < words.length; i += 3)
+			{
+				String term = first + words[i];
+				index.insert(term, term);
+				keyBytes += InvertedWordIndex.estimateKeyBytes(term);
+			}
+		}
+
+		index.forceMerge();
+		printTermBytes("Best case, compound words", index.size(), index.estimateTermBytes(), keyBytes);
+
+		for (String pattern : List.of("wireless*", "*charging", "wire?ess*", "*pad*"))
+		{
+			int searches = SEARCHES / 100;
+			int count = 0;
+			long start = System.nanoTime();
+
+			for (int i = 0; i < searches; i++)
+			{
+				count = index.getIndicesForWildcard(pattern).size();
+			}
+
+			System.out.println(String.format("Wildcard %s took %.3f microseconds (%d results)", pattern,
+				(System.nanoTime() - start) / 1000.0 / searches, count));
+		}
+	}
+
+	private static void printTermBytes(String vocabulary, int terms, long termBytes, long keyBytes)
+	{
+		System.out.println(String.format("%s: dictionary of %d terms takes ~%.1fKB, ~%.1fKB as HashMap keys (%.1fx)",
+			vocabulary, terms, termBytes / 1024.0, keyBytes / 1024.0, keyBytes / (double) termBytes));
+	}
+
+	private void timeFuzzy()
+	{
+		// A million pronounceable made-up words, each the only word of a phrase.
+		String[] syllables = { "ba", "ce", "di", "fo", "gu", "ha", "je", "ki", "lo", "mu", "na", "pe", "qui", "ro", "su",
+			"ta", "ve", "wi", "xo", "zu", "ar", "el", "in", "or", "us", "an", "en", "st", "ng", "th" };
+		Set<String> words = new HashSet<>();
+		Random random = new Random(7);
+
+		while (words.size() < 1000000)
+		{
+			StringBuilder word = new StringBuilder();
+			int length = 3 + random.nextInt(4);
+
+			for (int i = 0; i < length; i++)
+			{
+				word.append(syllables[random.nextInt(syllables.length)]);
+			}
+
+			words.add(word.toString());
+		}
+
+		InvertedWordIndex<String> index = new InvertedWordIndex<String>().setFlushThreshold(100000);
+
+		for (String word : words)
+		{
+			index.insert(word, word);
+		}
+
+		index.forceMerge();
+		printTermBytes("Made-up words", words.size(), index.estimateTermBytes(), words.stream()
+			.mapToLong(InvertedWordIndex::estimateKeyBytes).sum());
+		List<String> queries = new ArrayList<>();
+
+		for (String word : words)
+		{
+			if (queries.size() == 100) break;
+
+			// Misspell the word: drop a character and swap another.
+			StringBuilder query = new StringBuilder(word).deleteCharAt(random.nextInt(word.length()));
+			query.setCharAt(random.nextInt(query.length()), (char) ('a' + random.nextInt(26)));
+			queries.add(query.toString());
+		}
+
+		// Warm up the automaton and the dictionary walk before timing.
+		for (int i = 0; i < SEARCHES / 10; i++)
+		{
+			index.getIndicesForFuzzy(queries.get(i % queries.size()), 2);
+		}
+
+		for (int maxEdits = 1; maxEdits <= 2; maxEdits++)
+		{
+			int searches = SEARCHES / 10;
+			long count = 0;
+			long start = System.nanoTime();
+
+			for (int i = 0; i < searches; i++)
+			{
+				count += index.getIndicesForFuzzy(queries.get(i % queries.size()), maxEdits).size();
+			}
+
+			long elapsed = System.nanoTime() - start;
+			System.out.println(String.format("Fuzzy searches with %d edits of %d words took %.3f microseconds "
+				+ "(%.1f results on average)", maxEdits, words.size(), elapsed / 1000.0 / searches,
+				count / (double) searches));
+		}
+	}
+
+	private void timeSegmentSearch(InvertedWordIndex<String> index, String segments)
+	{
+		int searches = SEARCHES / 10;
+		int count = 0;
+		long start = System.nanoTime();
+
+		for (int i = 0; i < searches; i++)
+		{
+			count = index.searchBoolean(new BooleanQuery().and("wireless bluetooth")).size();
+		}
+
+		long booleans = System.nanoTime() - start;
+		start = System.nanoTime();
+
+		for (int i = 0; i < searches; i++)
+		{
+			index.searchTopK("wireless charging pad", 10);
+		}
+
+		long topK = System.nanoTime() - start;
+		System.out.println(String.format("With %s, AND searches took %.3f microseconds (%d results) and top-10 "
+			+ "searches %.3f microseconds", segments, booleans / 1000.0 / searches, count, topK / 1000.0 / searches));
+	}
+
+	private void measurePostings(InvertedWordIndex<String> index)
+	{
+		// The layout the compressed postings replaced, built from the same words.
+		Map<String, Set<Integer>> sets = new HashMap<>();
+		long before = usedMemory();
+
+		for (int i = 0; i < Corpus.DESCRIPTIONS.length; i++)
+		{
+			for (String word : index.getAnalyzer().analyze(Corpus.DESCRIPTIONS[i]))
+			{
+				sets.computeIfAbsent(word, k -> new HashSet<>()).add(i);
+			}
+		}
+
+		long setBytes = usedMemory() - before;
+		long postingBytes = index.estimatePostingBytes();
+		System.out.println(String.format("Postings of %d words take ~%dKB compressed, ~%dKB as sets of Integers (%.1fx)",
+			sets.size(), postingBytes / 1024, setBytes / 1024, setBytes / (double) postingBytes));
+	}
+
+	private static long usedMemory()
+	{
+		Runtime runtime = Runtime.getRuntime();
+
+		for (int i = 0; i < 3; i++)
+		{
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
 	private void timeSearch(InvertedWordIndex<String> index)
 	{
 		String[] phrases = { "waxing kit", "eco-friendly", "gaming keyboard", "water bottle", "wireless charging pad",
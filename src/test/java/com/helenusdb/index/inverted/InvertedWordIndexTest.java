@@ -1,14 +1,28 @@
 package com.helenusdb.index.inverted;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
 
 import org.junit.jupiter.api.Test;
 
+import com.helenusdb.index.Corpus;
+import com.helenusdb.index.analysis.Analyzer;
 import com.helenusdb.index.inverted.InvertedWordIndex;
 
 class InvertedWordIndexTest
@@ -78,4 +92,548 @@ class InvertedWordIndexTest
 		assertTrue(index.getIndicesFor("the").containsAll(Set.of(FOX_INDEX, DOG_INDEX, MOOSE_INDEX, MOUSE_INDEX)));
 	}
 
+	@Test
+	void shouldSearchBooleanQueries()
+	{
+		InvertedWordIndex<String> index = new InvertedWordIndex<>();
+		index.insert(FOX_PHRASE, FOX_PHRASE)
+			.insert(DOG_PHRASE, DOG_PHRASE)
+			.insert(MOOSE_PHRASE, MOOSE_PHRASE)
+			.insert(MOUSE_PHRASE, MOUSE_PHRASE);
+
+		assertEquals(List.of(FOX_PHRASE), index.searchBoolean(new BooleanQuery().and("quick brown")));
+		assertEquals(List.of(FOX_PHRASE, DOG_PHRASE), index.searchBoolean(new BooleanQuery().and("LAZY").and("dog")));
+		assertEquals(List.of(DOG_PHRASE), index.searchBoolean(new BooleanQuery().and("lazy dog").not("fox")));
+		assertEquals(List.of(MOOSE_PHRASE, MOUSE_PHRASE), index.searchBoolean(new BooleanQuery().or("moose mouse")));
+		assertEquals(List.of(MOUSE_PHRASE), index.searchBoolean(new BooleanQuery().and("wants").or("cookie notfound")));
+		assertEquals(List.of(MOOSE_PHRASE), index.searchBoolean(new BooleanQuery().and("the").not("brown cookie")));
+		assertTrue(index.searchBoolean(new BooleanQuery().and("the notfound")).isEmpty());
+		assertTrue(index.searchBoolean(new BooleanQuery().and("the").or("notfound")).isEmpty());
+		assertTrue(index.searchBoolean(new BooleanQuery().not("fox")).isEmpty());
+		assertTrue(index.searchBoolean(new BooleanQuery()).isEmpty());
+		assertEquals("AND(lazy dog) NOT(fox)", new BooleanQuery().and("lazy dog").not("fox").toString());
+	}
+
+	@Test
+	void shouldMatchBruteForceBooleanQueries()
+	{
+		InvertedWordIndex<Integer> index = new InvertedWordIndex<>();
+		List<Set<String>> words = new ArrayList<>();
+
+		for (int i = 0; i < Corpus.DESCRIPTIONS.length; i++)
+		{
+			index.insert(Corpus.DESCRIPTIONS[i], i);
+			words.add(new HashSet<>(Analyzer.standard().analyze(Corpus.DESCRIPTIONS[i])));
+		}
+
+		List<String> vocabulary = words.stream().flatMap(Set::stream).distinct().sorted().toList();
+		Random random = new Random(42);
+
+		for (int trial = 0; trial < 500; trial++)
+		{
+			// Bias towards common words so that conjunctions are often non-empty.
+			String and = pick(vocabulary, words, random) + " " + pick(vocabulary, words, random);
+			String or = random.nextBoolean() ? pick(vocabulary, words, random) + " " + pick(vocabulary, words, random) : null;
+			String not = random.nextBoolean() ? pick(vocabulary, words, random) : null;
+			BooleanQuery query = new BooleanQuery().and(and).or(or).not(not);
+
+			List<Integer> expected = new ArrayList<>();
+
+			for (int i = 0; i < words.size(); i++)
+			{
+				Set<String> phrase = words.get(i);
+				boolean isMatch = phrase.containsAll(List.of(and.split(" ")))
+					&& (or == null || Arrays.stream(or.split(" ")).anyMatch(phrase::contains))
+					&& (not == null || !phrase.contains(not));
+				if (isMatch) expected.add(i);
+			}
+
+			assertEquals(expected, index.searchBoolean(query), query.toString());
+		}
+	}
+
+	@Test
+	void shouldRankTopK()
+	{
+		InvertedWordIndex<String> index = new InvertedWordIndex<>();
+		index.insert("usb cable", "short")
+			.insert("usb charging cable for phones and tablets", "long")
+			.insert("usb usb hub", "repeated")
+			.insert("phone case", "other");
+
+		assertEquals(List.of("repeated", "short", "long"), index.searchTopK("USB", 5));
+		assertEquals(List.of("short", "long"), index.searchTopK("cable", 5));
+		assertEquals(List.of("short"), index.searchTopK("usb cable", 1));
+		assertEquals(List.of("other"), index.searchTopK("case notfound", 3));
+		assertTrue(index.searchTopK("notfound", 3).isEmpty());
+		assertTrue(index.searchTopK("usb", 0).isEmpty());
+		assertTrue(index.searchTopK(null, 3).isEmpty());
+		assertThrows(IllegalArgumentException.class, () -> index.searchTopK("usb", -1));
+	}
+
+	@Test
+	void shouldMatchBruteForceTopK()
+	{
+		InvertedWordIndex<Integer> index = new InvertedWordIndex<>();
+		List<List<String>> phrases = new ArrayList<>();
+		Map<String, Integer> documentFrequency = new HashMap<>();
+		long totalLength = 0;
+
+		for (int i = 0; i < Corpus.DESCRIPTIONS.length; i++)
+		{
+			index.insert(Corpus.DESCRIPTIONS[i], i);
+			List<String> words = Analyzer.standard().analyze(Corpus.DESCRIPTIONS[i]);
+			phrases.add(words);
+			totalLength += words.size();
+
+			for (String word : new HashSet<>(words))
+			{
+				documentFrequency.merge(word, 1, Integer::sum);
+			}
+		}
+
+		double averageLength = totalLength / (double) phrases.size();
+		List<String> vocabulary = new ArrayList<>(new TreeSet<>(documentFrequency.keySet()));
+		List<Set<String>> wordSets = phrases.stream().map(Set::copyOf).toList();
+		Random random = new Random(3);
+
+		for (int trial = 0; trial < 300; trial++)
+		{
+			List<String> query = new ArrayList<>();
+
+			for (int i = 1 + random.nextInt(4); i > 0; i--)
+			{
+				String word = pick(vocabulary, wordSets, random);
+				if (!query.contains(word)) query.add(word);
+			}
+
+			List<double[]> scores = new ArrayList<>();
+
+			for (int doc = 0; doc < phrases.size(); doc++)
+			{
+				List<String> words = phrases.get(doc);
+				double score = 0;
+
+				for (String word : query)
+				{
+					int freq = Collections.frequency(words, word);
+					if (freq == 0) continue;
+
+					int n = documentFrequency.get(word);
+					double idf = Math.log(1 + (phrases.size() - n + 0.5) / (n + 0.5));
+					score += idf * freq * (WandSearcher.K1 + 1)
+						/ (freq + WandSearcher.K1 * (1 - WandSearcher.B + WandSearcher.B * words.size() / averageLength));
+				}
+
+				if (score > 0) scores.add(new double[] {score, doc});
+			}
+
+			// Compare the scores at each rank, since documents may tie within rounding.
+			scores.sort((a, b) -> Double.compare(b[0], a[0]));
+			int k = 1 + random.nextInt(20);
+			List<Integer> results = index.searchTopK(String.join(" ", query), k);
+			assertEquals(Math.min(k, scores.size()), results.size(), query.toString());
+
+			for (int rank = 0; rank < results.size(); rank++)
+			{
+				double expected = scores.get(rank)[0];
+				double actual = scoreOf(scores, results.get(rank));
+				assertEquals(expected, actual, 1e-9, query + " rank " + rank);
+			}
+		}
+	}
+
+	@Test
+	void shouldPruneTopK()
+	{
+		InvertedWordIndex<Integer> index = new InvertedWordIndex<>();
+
+		for (int i = 0; i < 10000; i++)
+		{
+			index.insert(i % 1000 == 0 ? "common rare" : "common filler words", i);
+		}
+
+		// Once the first three rare phrases fill the top 3, the rest of the common postings are skipped.
+		WandSearcher searcher = index.newSearcher();
+		List<TermPostings> postings = List.of(index.getPostings("common"), index.getPostings("rare"));
+		assertArrayEquals(new int[] {0, 1000, 2000}, searcher.search(postings, 3));
+		assertTrue(searcher.getScoredCount() < 2100, "Scored " + searcher.getScoredCount());
+		assertEquals(List.of(0, 1000, 2000), index.searchTopK("common rare", 3));
+	}
+
+	@Test
+	void shouldSearchPhrases()
+	{
+		InvertedWordIndex<String> index = new InvertedWordIndex<>(false, true);
+		index.insert(FOX_PHRASE, FOX_PHRASE)
+			.insert(DOG_PHRASE, DOG_PHRASE)
+			.insert(MOOSE_PHRASE, MOOSE_PHRASE)
+			.insert(MOUSE_PHRASE, MOUSE_PHRASE);
+
+		assertEquals(List.of(FOX_PHRASE, DOG_PHRASE), index.searchPhrase("lazy"));
+		assertEquals(List.of(FOX_PHRASE, DOG_PHRASE), index.searchPhrase("the lazy"));
+		assertEquals(List.of(FOX_PHRASE), index.searchPhrase("LAZY DOG"));
+		assertEquals(List.of(DOG_PHRASE), index.searchPhrase("lazy brown dog"));
+		assertEquals(List.of(FOX_PHRASE), index.searchPhrase(FOX_PHRASE));
+		assertTrue(index.searchPhrase("dog lazy").isEmpty());
+		assertTrue(index.searchPhrase("the dog").isEmpty());
+		assertTrue(index.searchPhrase("lazy notfound").isEmpty());
+		assertTrue(index.searchPhrase("").isEmpty());
+
+		assertEquals(List.of(FOX_PHRASE, DOG_PHRASE), index.searchNear("dog lazy", 2));
+		assertEquals(List.of(FOX_PHRASE), index.searchNear("dog lazy", 1));
+		assertEquals(List.of(DOG_PHRASE), index.searchNear("nap dog", 3));
+		assertEquals(List.of(FOX_PHRASE), index.searchNear("quick fox brown", 2));
+		assertTrue(index.searchNear("quick fox brown", 1).isEmpty());
+		assertEquals(List.of(MOOSE_PHRASE, MOUSE_PHRASE), index.searchNear("wants wants", 0));
+		assertThrows(IllegalArgumentException.class, () -> index.searchNear("dog", -1));
+		assertThrows(IllegalStateException.class, () -> index.setPositional(false));
+		assertThrows(IllegalStateException.class, () -> new InvertedWordIndex<String>().searchPhrase("lazy dog"));
+	}
+
+	@Test
+	void shouldMatchBruteForcePhrases()
+	{
+		InvertedWordIndex<Integer> index = new InvertedWordIndex<>(false, true);
+		List<List<String>> phrases = new ArrayList<>();
+
+		for (int i = 0; i < Corpus.DESCRIPTIONS.length; i++)
+		{
+			index.insert(Corpus.DESCRIPTIONS[i], i);
+			List<String> words = Analyzer.standard().analyze(Corpus.DESCRIPTIONS[i]);
+			phrases.add(words);
+		}
+
+		Random random = new Random(17);
+
+		for (int trial = 0; trial < 300; trial++)
+		{
+			// Take a run of words from a phrase, sometimes reversed or with a word dropped.
+			List<String> source = phrases.get(random.nextInt(phrases.size()));
+			int start = random.nextInt(source.size());
+			List<String> query = new ArrayList<>(source.subList(start, Math.min(source.size(), start + 1 + random.nextInt(4))));
+			if (random.nextBoolean()) Collections.reverse(query);
+			if (query.size() > 2 && random.nextBoolean()) query.remove(1);
+
+			int distance = random.nextInt(4);
+			List<Integer> phraseMatches = new ArrayList<>();
+			List<Integer> nearMatches = new ArrayList<>();
+
+			for (int doc = 0; doc < phrases.size(); doc++)
+			{
+				List<String> words = phrases.get(doc);
+				if (Collections.indexOfSubList(words, query) >= 0) phraseMatches.add(doc);
+				if (isNear(words, new ArrayList<>(new LinkedHashSet<>(query)), distance)) nearMatches.add(doc);
+			}
+
+			String joined = String.join(" ", query);
+			assertEquals(phraseMatches, index.searchPhrase(joined), joined);
+			assertEquals(nearMatches, index.searchNear(joined, distance), joined + " NEAR/" + distance);
+		}
+	}
+
+	@Test
+	void shouldAnalyzePhrases()
+	{
+		InvertedWordIndex<String> index = new InvertedWordIndex<>(false, true);
+		index.setAnalyzer(Analyzer.standard(Set.of("the", "a", "of")));
+		index.insert("USB-C charging cable, braided (pack of 2)", "cable")
+			.insert("The case of the missing charger!", "case");
+
+		assertEquals(List.of("cable"), index.search("usb-c"));
+		assertEquals(List.of("cable"), index.search("Cable."));
+		assertEquals(List.of("cable"), index.searchPhrase("pack of 2"));
+		assertEquals(List.of("cable"), index.searchPhrase("pack a 2"));
+		assertTrue(index.searchPhrase("pack 2").isEmpty());
+		assertEquals(List.of("case"), index.searchPhrase("case of the missing"));
+		assertTrue(index.search("the").isEmpty());
+		assertThrows(IllegalStateException.class, () -> index.setAnalyzer(null));
+	}
+
+	@Test
+	void shouldStemWords()
+	{
+		InvertedWordIndex<String> index = new InvertedWordIndex<String>().setAnalyzer(Analyzer.english(Set.of("the")));
+		index.insert("Fast charging cable", "cable")
+			.insert("The charge indicator", "indicator")
+			.insert("Phone charger", "charger");
+
+		assertEquals(List.of("cable", "indicator"), index.search("charged"));
+		assertEquals(List.of("cable", "indicator"), index.searchBoolean(new BooleanQuery().and("charges")));
+		assertEquals(List.of("charger"), index.search("chargers"));
+		assertEquals(List.of("cable"), index.search("cables"));
+		assertEquals(6, index.getWordCount());
+		assertEquals(7, index.getPostingCount());
+	}
+
+	@Test
+	void shouldSearchAcrossSegments()
+	{
+		InvertedWordIndex<Integer> single = new InvertedWordIndex<>(false, true);
+		InvertedWordIndex<Integer> segmented = new InvertedWordIndex<Integer>(false, true)
+			.setFlushThreshold(10)
+			.setMergeFactor(3)
+			.setMergeExecutor(Runnable::run);
+
+		for (int i = 0; i < Corpus.DESCRIPTIONS.length; i++)
+		{
+			single.insert(Corpus.DESCRIPTIONS[i], i);
+			segmented.insert(Corpus.DESCRIPTIONS[i], i);
+		}
+
+		// Merging by threes leaves one segment per nonzero digit of the flush count in base 3.
+		int flushes = Corpus.DESCRIPTIONS.length / 10;
+		assertEquals(Integer.toString(flushes, 3).chars().map(digit -> digit - '0').sum(), segmented.getSegmentCount());
+		assertEquals(single.getWordCount(), segmented.getWordCount());
+		assertEquals(single.getPostingCount(), segmented.getPostingCount());
+
+		for (String query : List.of("wireless", "usb cable", "stainless steel", "water resistant", "notfound"))
+		{
+			assertEquals(single.search(query), segmented.search(query), query);
+			assertEquals(single.searchBoolean(new BooleanQuery().and(query)),
+				segmented.searchBoolean(new BooleanQuery().and(query)), query);
+			assertEquals(single.searchPhrase(query), segmented.searchPhrase(query), query);
+			assertEquals(single.searchNear(query, 3), segmented.searchNear(query, 3), query);
+			assertEquals(single.searchTopK(query, 10), segmented.searchTopK(query, 10), query);
+		}
+
+		segmented.forceMerge();
+		assertEquals(1, segmented.getSegmentCount());
+		assertEquals(single.search("wireless charging"), segmented.search("wireless charging"));
+		assertEquals(single.searchTopK("wireless charging", 10), segmented.searchTopK("wireless charging", 10));
+	}
+
+	@Test
+	void shouldSearchWhileMerging() throws InterruptedException
+	{
+		InvertedWordIndex<Integer> index = new InvertedWordIndex<Integer>().setFlushThreshold(50).setMergeFactor(4);
+		int count = 20000;
+		Thread writer = new Thread(() ->
+		{
+			for (int i = 0; i < count; i++)
+			{
+				index.insert(i % 2 == 0 ? "even number" : "odd number", i);
+			}
+		});
+
+		writer.start();
+
+		while (writer.isAlive())
+		{
+			// Every query reads a consistent index: a prefix of the phrases, in insertion order.
+			List<Integer> numbers = index.search("number");
+
+			for (int i = 0; i < numbers.size(); i++)
+			{
+				assertEquals(i, numbers.get(i));
+			}
+		}
+
+		writer.join();
+		index.forceMerge();
+		assertEquals(1, index.getSegmentCount());
+		assertEquals(count, index.search("number").size());
+		assertEquals(count / 2, index.search("odd").size());
+	}
+
+	@Test
+	void shouldRejectInvalidSegmentSettings()
+	{
+		InvertedWordIndex<String> index = new InvertedWordIndex<>();
+		assertThrows(IllegalArgumentException.class, () -> index.setFlushThreshold(0));
+		assertThrows(IllegalArgumentException.class, () -> index.setMergeFactor(1));
+		assertThrows(NullPointerException.class, () -> index.setMergeExecutor(null));
+	}
+
+	@Test
+	void shouldDeleteAndUpdatePhrases()
+	{
+		InvertedWordIndex<String> index = new InvertedWordIndex<>(false, true);
+		index.insert(DOG_PHRASE, DOG_PHRASE)
+			.insert(FOX_PHRASE, FOX_PHRASE)
+			.insert(MOOSE_PHRASE, MOOSE_PHRASE)
+			.insert(MOUSE_PHRASE, MOUSE_PHRASE);
+
+		assertTrue(index.delete(DOG_INDEX));
+		assertFalse(index.delete(DOG_INDEX));
+		assertFalse(index.delete(-1));
+		assertFalse(index.delete(4));
+		assertEquals(3, index.size());
+		assertEquals(List.of(FOX_PHRASE), index.search("lazy"));
+		assertEquals(Set.of(FOX_INDEX), index.getIndicesFor("lazy nap"));
+		assertEquals(List.of(FOX_PHRASE), index.searchBoolean(new BooleanQuery().and("brown").and("dog")));
+		assertEquals(List.of(FOX_PHRASE), index.searchPhrase("lazy"));
+		assertTrue(index.searchNear("nap dog", 3).isEmpty());
+		assertEquals(List.of(FOX_PHRASE), index.searchTopK("lazy dog nap", 10));
+
+		String redFox = "the quick red fox";
+		assertEquals(4, index.update(FOX_INDEX, redFox, redFox));
+		assertEquals(3, index.size());
+		assertTrue(index.search("lazy").isEmpty());
+		assertEquals(List.of(redFox), index.search("fox"));
+		assertEquals(List.of(MOOSE_PHRASE, MOUSE_PHRASE, redFox), index.search("the"));
+
+		// A stale id is rejected without inserting anything.
+		assertThrows(IllegalArgumentException.class, () -> index.update(FOX_INDEX, "the quick fox", "stale"));
+		assertThrows(IllegalArgumentException.class, () -> index.update(9, "the quick fox", "unknown"));
+		assertEquals(3, index.size());
+		assertEquals(List.of(redFox), index.search("fox"));
+	}
+
+	@Test
+	void shouldPurgeDeletedPostings()
+	{
+		InvertedWordIndex<Integer> live = new InvertedWordIndex<>(false, true);
+		InvertedWordIndex<Integer> index = new InvertedWordIndex<Integer>(false, true)
+			.setFlushThreshold(100)
+			.setMergeExecutor(Runnable::run)
+			.setPurgeThreshold(1.0);
+
+		for (int i = 0; i < Corpus.DESCRIPTIONS.length; i++)
+		{
+			index.insert(Corpus.DESCRIPTIONS[i], i);
+			if (i % 3 != 0) live.insert(Corpus.DESCRIPTIONS[i], i);
+		}
+
+		for (int i = 0; i < Corpus.DESCRIPTIONS.length; i += 3)
+		{
+			assertTrue(index.delete(i));
+		}
+
+		long postings = index.getPostingCount();
+		long bytes = index.estimatePostingBytes();
+		assertEquals(postings - live.getPostingCount(), index.purge());
+		assertEquals(live.getPostingCount(), index.getPostingCount());
+		assertEquals(live.getWordCount(), index.getWordCount());
+		assertTrue(index.estimatePostingBytes() < bytes * 0.8, index.estimatePostingBytes() + " of " + bytes);
+		assertEquals(0, index.purge());
+
+		for (String query : List.of("wireless", "usb cable", "stainless steel", "water resistant"))
+		{
+			assertEquals(live.search(query), index.search(query), query);
+			assertEquals(live.searchPhrase(query), index.searchPhrase(query), query);
+		}
+	}
+
+	@Test
+	void shouldPurgeAutomatically()
+	{
+		InvertedWordIndex<Integer> index = new InvertedWordIndex<Integer>()
+			.setFlushThreshold(100)
+			.setMergeExecutor(Runnable::run)
+			.setPurgeThreshold(0.1);
+
+		for (int i = 0; i < 1000; i++)
+		{
+			index.insert(i % 2 == 0 ? "even number" : "odd number", i);
+		}
+
+		for (int i = 0; i < 1000; i += 2)
+		{
+			index.delete(i);
+		}
+
+		// A purge runs once more than 100 deletes are pending, so at most 100 deleted phrases keep their 2 postings.
+		assertTrue(index.getPostingCount() <= 1000 + 2 * 100, "Postings " + index.getPostingCount());
+		assertEquals(500, index.search("number").size());
+		assertTrue(index.search("even").isEmpty());
+		assertThrows(IllegalArgumentException.class, () -> index.setPurgeThreshold(1.5));
+	}
+
+	@Test
+	void shouldSearchWildcardsAndRanges()
+	{
+		InvertedWordIndex<Integer> index = new InvertedWordIndex<Integer>()
+			.setFlushThreshold(100)
+			.setMergeExecutor(Runnable::run);
+		List<List<String>> phrases = new ArrayList<>();
+
+		for (int i = 0; i < Corpus.DESCRIPTIONS.length; i++)
+		{
+			index.insert(Corpus.DESCRIPTIONS[i], i);
+			phrases.add(Analyzer.standard().analyze(Corpus.DESCRIPTIONS[i]));
+		}
+
+		index.delete(0);
+
+		for (String pattern : List.of("wire*", "Wire*", "*less", "w?re*", "bluetooth", "c*b?e", "zz*"))
+		{
+			Pattern regex = Pattern.compile(
+				pattern.toLowerCase().replace("?", ".").replace("*", ".*"));
+			List<Integer> expected = new ArrayList<>();
+
+			for (int i = 1; i < phrases.size(); i++)
+			{
+				if (phrases.get(i).stream().anyMatch(word -> regex.matcher(word).matches())) expected.add(i);
+			}
+
+			assertEquals(expected, index.searchWildcard(pattern), pattern);
+		}
+
+		List<Integer> expected = new ArrayList<>();
+
+		for (int i = 1; i < phrases.size(); i++)
+		{
+			if (phrases.get(i).stream().anyMatch(word -> word.compareTo("wire") >= 0 && word.compareTo("wool") <= 0))
+			{
+				expected.add(i);
+			}
+		}
+
+		assertEquals(expected, index.searchRange("wire", "WOOL"));
+		assertEquals(index.size(), index.searchRange(null, null).size());
+		assertTrue(index.searchRange("z", "a").isEmpty());
+		assertTrue(index.searchWildcard(null).isEmpty());
+		assertTrue(index.getIndicesForWildcard(null).isEmpty());
+	}
+
+	@Test
+	void shouldSearchFuzzy()
+	{
+		InvertedWordIndex<String> index = new InvertedWordIndex<String>()
+			.setFlushThreshold(2)
+			.setMergeExecutor(Runnable::run);
+		index.insert("Wireless charging pad", "pad");
+		index.insert("Wired keyboard", "keyboard");
+		index.insert("Wireless earbuds", "earbuds");
+		index.insert("Tireless worker", "worker");
+		index.insert("Wire cutters", "cutters");
+		index.delete(4);
+
+		assertEquals(List.of("pad", "earbuds"), index.searchFuzzy("wireless", 0));
+		assertEquals(List.of("pad", "earbuds", "worker"), index.searchFuzzy("Wireles", 2));
+		assertEquals(List.of("keyboard"), index.searchFuzzy("wirex", 2));
+		assertTrue(index.searchFuzzy("bluetooth", 2).isEmpty());
+		assertTrue(index.searchFuzzy(null, 2).isEmpty());
+
+		// "wireless" is one edit away, "tireless" two: the closer word is kept.
+		index.setMaxExpansions(1);
+		assertEquals(List.of("pad", "earbuds"), index.searchFuzzy("wireles", 2));
+		assertThrows(IllegalArgumentException.class, () -> index.setMaxExpansions(0));
+		assertThrows(IllegalArgumentException.class, () -> index.searchFuzzy("wireless", 3));
+	}
+
+	private static boolean isNear(List<String> words, List<String> query, int distance)
+	{
+		for (int start = 0; start < words.size(); start++)
+		{
+			List<String> window = words.subList(start, Math.min(words.size(), start + distance + 1));
+			if (window.contains(query.get(0)) && window.containsAll(query) && query.contains(words.get(start))) return true;
+		}
+
+		return false;
+	}
+
+	private static double scoreOf(List<double[]> scores, int doc)
+	{
+		return scores.stream().filter(score -> score[1] == doc).findFirst().orElseThrow()[0];
+	}
+
+	private static String pick(List<String> vocabulary, List<Set<String>> words, Random random)
+	{
+		if (random.nextBoolean()) return vocabulary.get(random.nextInt(vocabulary.size()));
+
+		List<String> phrase = new ArrayList<>(words.get(random.nextInt(words.size())));
+		return phrase.get(random.nextInt(phrase.size()));
+	}
 }
@@ -0,0 +1,108 @@
+package com.helenusdb.index.inverted;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import com.helenusdb.index.Corpus;
+import com.helenusdb.index.analysis.Analyzer;
+
+class LevenshteinAutomatonTest
+{
+	@Test
+	void shouldMatchWithinMaxEdits()
+	{
+		String[] terms = vocabulary();
+
+		for (String query : List.of("wireless", "wireles", "wirelss", "bluetoth", "chargng", "pad", "a", "", "usbc"))
+		{
+			for (int maxEdits = 0; maxEdits <= LevenshteinAutomaton.MAX_EDITS; maxEdits++)
+			{
+				LevenshteinAutomaton automaton = new LevenshteinAutomaton(query, maxEdits);
+
+				for (String term : terms)
+				{
+					int distance = distance(query, term);
+					long[] state = automaton.run(term);
+					assertEquals(distance <= maxEdits, state != null && automaton.isAccept(state), query + " " + term);
+					if (distance <= maxEdits) assertEquals(distance, automaton.distance(state), query + " " + term);
+				}
+			}
+		}
+	}
+
+	@Test
+	void shouldIntersectDictionary()
+	{
+		String[] terms = vocabulary();
+		TermDictionary dictionary = TermDictionary.build(terms);
+
+		for (String query : List.of("wireles", "kepboard", "bottel", "ear"))
+		{
+			LevenshteinAutomaton automaton = new LevenshteinAutomaton(query, 2);
+			List<String> expected = new ArrayList<>();
+
+			for (String term : terms)
+			{
+				if (distance(query, term) <= 2) expected.add(term);
+			}
+
+			List<String> actual = new ArrayList<>();
+			dictionary.intersect(automaton, (state, ordinal) -> actual.add(dictionary.term(ordinal)));
+			assertEquals(expected, actual, query);
+		}
+	}
+
+	@Test
+	void shouldRejectInvalidQueries()
+	{
+		assertThrows(IllegalArgumentException.class, () -> new LevenshteinAutomaton("word", 3));
+		assertThrows(IllegalArgumentException.class, () -> new LevenshteinAutomaton("word", -1));
+		assertThrows(IllegalArgumentException.class, () -> new LevenshteinAutomaton("w".repeat(64), 1));
+	}
+
+	private static int distance(String a, String b)
+	{
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+
+		for (int j = 0; j <= b.length(); j++)
+		{
+			previous[j] = j;
+		}
+
+		for (int i = 1; i <= a.length(); i++)
+		{
+			current[0] = i;
+
+			for (int j = 1; j <= b.length(); j++)
+			{
+				int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+				current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+			}
+
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+
+		return previous[b.length()];
+	}
+
+	private static String[] vocabulary()
+	{
+		TreeSet<String> words = new TreeSet<>();
+
+		for (String description : Corpus.DESCRIPTIONS)
+		{
+			words.addAll(Analyzer.standard().analyze(description));
+		}
+
+		return words.toArray(new String[0]);
+	}
+}
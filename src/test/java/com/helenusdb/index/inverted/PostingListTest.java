@@ -0,0 +1,180 @@
+package com.helenusdb.index.inverted;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class PostingListTest
+{
+	@Test
+	void shouldIterateInOrder()
+	{
+		PostingList postings = new PostingList();
+		TreeSet<Integer> expected = fill(postings, new Random(7), 1000, 50);
+		assertEquals(expected.size(), postings.size());
+		assertEquals(expected.last(), postings.getLastDoc());
+
+		PostingList.Cursor cursor = postings.cursor();
+		assertEquals(-1, cursor.docId());
+
+		for (int doc : expected)
+		{
+			assertEquals(doc, cursor.nextDoc());
+		}
+
+		assertEquals(DocIdIterator.NO_MORE_DOCS, cursor.nextDoc());
+		assertEquals(DocIdIterator.NO_MORE_DOCS, cursor.nextDoc());
+	}
+
+	@Test
+	void shouldAdvanceAcrossBlocks()
+	{
+		Random random = new Random(11);
+
+		for (int size : new int[] {1, PostingList.BLOCK_SIZE - 1, PostingList.BLOCK_SIZE, PostingList.BLOCK_SIZE + 1, 5000})
+		{
+			PostingList postings = new PostingList();
+			TreeSet<Integer> expected = fill(postings, random, size, 1 + random.nextInt(300));
+			postings.trim();
+
+			for (int trial = 0; trial < 200; trial++)
+			{
+				PostingList.Cursor cursor = postings.cursor();
+				int target = -1;
+
+				while (true)
+				{
+					target += 1 + random.nextInt(random.nextBoolean() ? 3 : 5000);
+					Integer next = expected.ceiling(target);
+					int doc = cursor.advance(target);
+
+					if (next == null)
+					{
+						assertEquals(DocIdIterator.NO_MORE_DOCS, doc);
+						break;
+					}
+
+					assertEquals(next, doc);
+					assertEquals(doc, cursor.advance(doc));
+					Integer following = expected.higher(doc);
+					assertEquals(following == null ? DocIdIterator.NO_MORE_DOCS : following, cursor.nextDoc());
+					if (following == null) break;
+
+					target = following;
+				}
+			}
+		}
+	}
+
+	@Test
+	void shouldIgnoreRepeatedIds()
+	{
+		PostingList postings = new PostingList();
+		postings.add(0);
+		postings.add(0);
+		postings.add(3);
+		postings.add(3);
+		assertEquals(2, postings.size());
+		assertThrows(IllegalArgumentException.class, () -> postings.add(2));
+	}
+
+	@Test
+	void shouldCountFrequencies()
+	{
+		PostingList postings = new PostingList();
+
+		for (int i = 0; i < 300; i++)
+		{
+			postings.add(i / 150 * 10, 7);
+		}
+
+		postings.add(11, 3);
+		postings.add(12);
+		assertEquals(4, postings.size());
+		assertEquals(150, postings.getMaxFreq());
+		assertEquals(0, postings.getMinDocLength());
+
+		PostingList.Cursor cursor = postings.cursor();
+		assertEquals(0, cursor.nextDoc());
+		assertEquals(150, cursor.freq());
+		assertEquals(10, cursor.nextDoc());
+		assertEquals(150, cursor.freq());
+		assertEquals(11, cursor.advance(11));
+		assertEquals(1, cursor.freq());
+		assertEquals(12, cursor.nextDoc());
+		assertEquals(DocIdIterator.NO_MORE_DOCS, cursor.nextDoc());
+	}
+
+	@Test
+	void shouldStorePositions()
+	{
+		PostingList postings = new PostingList(true);
+		Random random = new Random(5);
+		int[][] positions = new int[400][];
+
+		for (int doc = 0; doc < positions.length; doc++)
+		{
+			positions[doc] = random.ints(1 + random.nextInt(4), 0, 300).distinct().sorted().toArray();
+
+			for (int position : positions[doc])
+			{
+				postings.add(doc, 300, position);
+			}
+		}
+
+		assertTrue(postings.hasPositions());
+		assertThrows(IllegalArgumentException.class, () -> postings.add(399, 300, 0));
+		assertThrows(IllegalArgumentException.class, () -> postings.add(400, 300, -1));
+
+		// Positions are skipped unless read, including across blocks.
+		PostingList.Cursor cursor = postings.cursor();
+		assertEquals(1, cursor.advance(1));
+		assertEquals(300, cursor.advance(300));
+		assertEquals(positions[300].length, cursor.freq());
+
+		for (int position : positions[300])
+		{
+			assertEquals(position, cursor.nextPosition());
+		}
+
+		assertEquals(301, cursor.nextDoc());
+		assertEquals(positions[301][0], cursor.nextPosition());
+		assertEquals(302, cursor.nextDoc());
+		assertThrows(IllegalStateException.class, () -> new PostingList().cursor().nextPosition());
+	}
+
+	@Test
+	void shouldCompressDensePostings()
+	{
+		PostingList postings = new PostingList();
+
+		for (int doc = 0; doc < 100000; doc += 3)
+		{
+			postings.add(doc);
+		}
+
+		postings.trim();
+		assertTrue(postings.estimateBytes() < 3L * postings.size(), "Estimated " + postings.estimateBytes());
+		assertEquals(99999, postings.cursor().advance(99998));
+	}
+
+	private static TreeSet<Integer> fill(PostingList postings, Random random, int size, int maxGap)
+	{
+		TreeSet<Integer> expected = new TreeSet<>();
+		int doc = random.nextInt(maxGap);
+
+		for (int i = 0; i < size; i++)
+		{
+			postings.add(doc);
+			expected.add(doc);
+			doc += 1 + random.nextInt(maxGap);
+		}
+
+		return expected;
+	}
+}
@@ -0,0 +1,136 @@
+package com.helenusdb.index.inverted;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import com.helenusdb.index.Corpus;
+import com.helenusdb.index.analysis.Analyzer;
+
+class TermDictionaryTest
+{
+	@Test
+	void shouldMapTermsToOrdinals()
+	{
+		String[] terms = vocabulary();
+		TermDictionary dictionary = TermDictionary.build(terms);
+		assertEquals(terms.length, dictionary.size());
+		assertArrayEquals(terms, dictionary.terms());
+
+		for (int i = 0; i < terms.length; i++)
+		{
+			assertEquals(i, dictionary.ordinal(terms[i]), terms[i]);
+			assertEquals(terms[i], dictionary.term(i));
+		}
+
+		assertEquals(-1, dictionary.ordinal("notfound"));
+		assertEquals(-1, dictionary.ordinal(""));
+		assertEquals(-1, dictionary.ordinal(terms[0] + "zzz"));
+		assertEquals(-1, dictionary.ordinal(terms[0].substring(0, terms[0].length() - 1)));
+	}
+
+	@Test
+	void shouldShareSuffixes()
+	{
+		String[] terms = vocabulary();
+		TermDictionary dictionary = TermDictionary.build(terms);
+		int characters = Arrays.stream(terms).mapToInt(String::length).sum();
+
+		// A trie would need an arc per character not shared with the previous term; suffixes are shared too.
+		assertTrue(dictionary.getArcCount() < characters / 2, dictionary.getArcCount() + " arcs for " + characters);
+		assertEquals(5, TermDictionary.build(new String[] {"cat", "cats", "hat", "hats"}).getArcCount());
+	}
+
+	@Test
+	void shouldRankTerms()
+	{
+		String[] terms = vocabulary();
+		TermDictionary dictionary = TermDictionary.build(terms);
+		Random random = new Random(5);
+
+		for (int trial = 0; trial < 2000; trial++)
+		{
+			String term = terms[random.nextInt(terms.length)];
+			if (random.nextBoolean()) term = term.substring(0, random.nextInt(term.length() + 1));
+			if (random.nextBoolean()) term += (char) ('a' + random.nextInt(26));
+
+			int position = Arrays.binarySearch(terms, term);
+			int less = position >= 0 ? position : -position - 1;
+			assertEquals(less, dictionary.rank(term, false), term);
+			assertEquals(position >= 0 ? less + 1 : less, dictionary.rank(term, true), term);
+
+			long range = dictionary.prefixRange(term);
+			String prefix = term;
+			long matches = Arrays.stream(terms).filter(t -> t.startsWith(prefix)).count();
+			assertEquals(matches, (int) range - (int) (range >>> Integer.SIZE), term);
+			if (matches > 0) assertTrue(terms[(int) (range >>> Integer.SIZE)].startsWith(term), term);
+		}
+	}
+
+	@Test
+	void shouldIntersectWildcards()
+	{
+		String[] terms = vocabulary();
+		TermDictionary dictionary = TermDictionary.build(terms);
+
+		for (String pattern : List.of("wire*", "*less", "w?re*", "*o*o*", "?", "??", "*", "c*b?e", "bluetooth", "x*z"))
+		{
+			Pattern regex = Pattern.compile(pattern.replace("?", ".").replace("*", ".*"));
+			List<Integer> expected = new ArrayList<>();
+
+			for (int i = 0; i < terms.length; i++)
+			{
+				if (regex.matcher(terms[i]).matches()) expected.add(i);
+			}
+
+			List<Integer> actual = new ArrayList<>();
+			WildcardAutomaton automaton = new WildcardAutomaton(pattern);
+			dictionary.intersect(automaton, (state, ordinal) -> actual.add(ordinal));
+			assertEquals(expected, actual, pattern);
+
+			for (String term : terms)
+			{
+				assertEquals(regex.matcher(term).matches(), automaton.matches(term), pattern + " " + term);
+			}
+		}
+	}
+
+	@Test
+	void shouldBuildEdgeCases()
+	{
+		TermDictionary empty = TermDictionary.build(new String[0]);
+		assertEquals(0, empty.size());
+		assertEquals(-1, empty.ordinal("a"));
+		assertEquals(0, empty.rank("a", true));
+
+		TermDictionary single = TermDictionary.build(new String[] {""});
+		assertEquals(0, single.ordinal(""));
+		assertEquals(1, single.rank("a", false));
+
+		assertThrows(IllegalArgumentException.class, () -> TermDictionary.build(new String[] {"b", "a"}));
+		assertThrows(IllegalArgumentException.class, () -> TermDictionary.build(new String[] {"a", "a"}));
+		assertThrows(IllegalArgumentException.class, () -> new WildcardAutomaton("*".repeat(64)));
+	}
+
+	private static String[] vocabulary()
+	{
+		TreeSet<String> words = new TreeSet<>();
+
+		for (String description : Corpus.DESCRIPTIONS)
+		{
+			words.addAll(Analyzer.standard().analyze(description));
+		}
+
+		return words.toArray(new String[0]);
+	}
+}
@@ -0,0 +1,46 @@
+package com.helenusdb.index.suffix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class FrozenSuffixTrieTest
+{
+	@Test
+	void shouldFreezeNodeGraph()
+	{
+		SuffixNode root = new SuffixNode();
+		SuffixNode b = root.addChildIfAbsent('b');
+		b.addIndex(1);
+		SuffixNode a = root.addChildIfAbsent('a');
+		a.addIndex(0);
+		a.addIndex(2);
+		SuffixNode ab = a.addChildIfAbsent('b');
+		ab.addIndex(2);
+
+		FrozenSuffixTrie trie = FrozenSuffixTrie.freeze(root);
+		assertEquals(4, trie.getNodeCount());
+		assertEquals(4, trie.getPostingCount());
+		assertTrue(trie.getSizeInBytes() > 0);
+
+		SearchNode frozenRoot = trie.root();
+		assertEquals(2, frozenRoot.getChildren().size());
+		assertEquals(0, frozenRoot.getIndexCount());
+
+		SearchNode frozenA = frozenRoot.getChild('a');
+		assertNotNull(frozenA);
+		assertEquals(Set.of(0, 2), frozenA.getIndices());
+		assertEquals(List.of(0, 2), List.copyOf(frozenA.getIndices()));
+		assertEquals(Set.of(2), frozenA.getChild('b').getIndices());
+		assertEquals(Set.of(1), frozenRoot.getChild('b').getIndices());
+		assertNull(frozenRoot.getChild('c'));
+		assertNull(frozenA.getChild('a'));
+		assertEquals(frozenA, frozenRoot.getChildren().iterator().next());
+	}
+}
@@ -0,0 +1,106 @@
+package com.helenusdb.index.suffix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class FuzzyMatcherTest
+{
+	private static final List<String> WORDS = List.of("", "a", "earbuds", "earbds", "wireless", "wirless", "kitten",
+		"sitting", "saturday", "sunday", "ünïcödé", "unicode");
+
+	@Test
+	void shouldComputeEditDistanceAlongPath()
+	{
+		for (String query : WORDS)
+		{
+			if (query.isEmpty()) continue;
+
+			FuzzyMatcher matcher = new FuzzyMatcher(query.toCharArray(), 0);
+
+			for (String text : WORDS)
+			{
+				FuzzyMatcher.Column column = matcher.start();
+
+				for (char c : text.toCharArray())
+				{
+					column = matcher.advance(column, c);
+				}
+
+				assertEquals(distance(query, text), column.getDistance(), query + " / " + text);
+				assertEquals(text.length(), column.getDepth());
+			}
+		}
+	}
+
+	@Test
+	void shouldMatchSubstrings()
+	{
+		for (String query : WORDS)
+		{
+			if (query.isEmpty()) continue;
+
+			for (int maxEdits = 0; maxEdits <= 3; maxEdits++)
+			{
+				FuzzyMatcher matcher = new FuzzyMatcher(query.toCharArray(), maxEdits);
+
+				for (String text : WORDS)
+				{
+					boolean expected = !text.isEmpty() && substringDistance(query, text) <= maxEdits;
+					assertEquals(expected, matcher.matches(text), query + " in " + text + "~" + maxEdits);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The edit distance between two strings, by the textbook dynamic program.
+	 */
+	static int distance(String a, String b)
+	{
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+
+		for (int j = 0; j <= b.length(); j++)
+		{
+			previous[j] = j;
+		}
+
+		for (int i = 1; i <= a.length(); i++)
+		{
+			current[0] = i;
+
+			for (int j = 1; j <= b.length(); j++)
+			{
+				int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+				current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+			}
+
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+
+		return previous[b.length()];
+	}
+
+	/**
+	 * The smallest edit distance between the query and any non-empty substring of the text.
+	 */
+	static int substringDistance(String query, String text)
+	{
+		int best = Integer.MAX_VALUE;
+
+		for (int start = 0; start < text.length(); start++)
+		{
+			for (int end = start + 1; end <= Math.min(text.length(), start + query.length() + 3); end++)
+			{
+				best = Math.min(best, distance(query, text.substring(start, end)));
+			}
+		}
+
+		return best;
+	}
+}
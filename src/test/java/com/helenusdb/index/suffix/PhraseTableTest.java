@@ -0,0 +1,115 @@
+package com.helenusdb.index.suffix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class PhraseTableTest
+{
+	@Test
+	void shouldInternPhrases()
+	{
+		PhraseTable table = new PhraseTable();
+		assertEquals(-1, table.find("red mug"));
+		assertEquals(0, table.add("red mug", 0));
+		assertEquals(1, table.add("blue mug", 1));
+		table.addValue(table.find("red mug"), 2);
+		table.addValue(table.find("red mug"), 3);
+
+		assertEquals(0, table.find("red mug"));
+		assertEquals(2, table.size());
+		assertEquals(List.of(0, 2, 3), valuesOf(table, 0));
+		assertEquals(List.of(1), valuesOf(table, 1));
+		assertEquals(3, table.getValueCount(0));
+	}
+
+	@Test
+	void shouldPruneRemovedValues()
+	{
+		PhraseTable table = new PhraseTable();
+		table.add("red mug", 0);
+		table.add("blue mug", 1);
+		table.addValue(0, 2);
+
+		BitSet emptied = table.prune(value -> value < 2, new CompactionStats());
+		assertEquals(BitSet.valueOf(new long[] {0b10}), emptied);
+		assertEquals(List.of(2), valuesOf(table, 0));
+		assertEquals(0, table.getFirstValue(0));
+
+		// A forgotten phrase comes back under a new id.
+		assertEquals(-1, table.find("blue mug"));
+		assertEquals(2, table.add("blue mug", 3));
+	}
+
+	@Test
+	void shouldFreezeIdentically()
+	{
+		PhraseTable table = new PhraseTable();
+
+		for (int value = 0; value < 100; value++)
+		{
+			String phrase = "phrase " + (value % 7 == 0 ? 0 : value);
+			int id = table.find(phrase);
+			if (id < 0) table.add(phrase, value);
+			else table.addValue(id, value);
+		}
+
+		FrozenPhraseValues frozen = FrozenPhraseValues.freeze(table);
+		assertEquals(table.size(), frozen.size());
+		assertEquals(100, frozen.getValueIdCount());
+
+		for (int phrase = 0; phrase < table.size(); phrase++)
+		{
+			assertEquals(table.getFirstValue(phrase), frozen.getFirstValue(phrase));
+			assertEquals(table.getValueCount(phrase), frozen.getValueCount(phrase));
+			assertEquals(valuesOf(table, phrase), valuesOf(frozen, phrase));
+		}
+	}
+
+	@Test
+	void shouldFanOutInValueOrder()
+	{
+		PhraseTable table = new PhraseTable();
+		table.add("a", 0);
+		table.add("b", 1);
+		table.addValue(0, 2);
+		table.add("c", 3);
+		table.addValue(1, 4);
+		table.addValue(0, 5);
+		table.add("d", 6);
+
+		assertEquals(List.of(0, 1, 2, 3, 4, 5, 6), fanOut(table, 0, 1, 2, 3));
+		assertEquals(List.of(0, 2, 3, 5, 6), fanOut(table, 0, 2, 3));
+		assertEquals(List.of(1, 4, 6), fanOut(table, 1, 3));
+
+		// Removing a phrase's first value leaves later values that must still wait for the phrases before them.
+		table.prune(value -> value == 0 || value == 1, new CompactionStats());
+		assertEquals(List.of(2, 3, 4, 5, 6), fanOut(table, 0, 1, 2, 3));
+		assertEquals(List.of(2, 5, 6), fanOut(table, 0, 3));
+	}
+
+	private static List<Integer> fanOut(PhraseValues table, int... phrases)
+	{
+		List<Integer> values = new ArrayList<>();
+		new FanOutIterator(IntStream.of(phrases).iterator(), table).forEachRemaining((int value) -> values.add(value));
+		return values;
+	}
+
+	private static List<Integer> valuesOf(PhraseValues table, int phrase)
+	{
+		List<Integer> values = new ArrayList<>();
+
+		for (PrimitiveIterator.OfInt i = table.valueIterator(phrase); i.hasNext();)
+		{
+			values.add(i.nextInt());
+		}
+
+		return values;
+	}
+}
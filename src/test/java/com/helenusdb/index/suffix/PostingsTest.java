@@ -0,0 +1,98 @@
+package com.helenusdb.index.suffix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import org.junit.jupiter.api.Test;
+
+class PostingsTest
+{
+	@Test
+	void shouldAppendInOrder()
+	{
+		Postings postings = new Postings();
+		postings.add(1);
+		postings.add(3);
+		postings.add(3);
+		postings.add(7);
+
+		assertEquals(3, postings.size());
+		assertEquals(List.of(1, 3, 7), toList(postings.iterator()));
+		assertEquals(List.of(3, 7), toList(postings.iterator(1)));
+		assertTrue(postings.contains(3));
+		assertFalse(postings.contains(4));
+	}
+
+	@Test
+	void shouldInsertOutOfOrder()
+	{
+		Postings postings = new Postings();
+		postings.add(5);
+		postings.add(2);
+		postings.add(9);
+		postings.add(2);
+		postings.add(0);
+
+		assertEquals(List.of(0, 2, 5, 9), toList(postings.iterator()));
+		assertEquals("[0, 2, 5, 9]", postings.toString());
+	}
+
+	@Test
+	void shouldConcatenateOrderedPostings()
+	{
+		Postings postings = new Postings();
+		postings.add(1);
+		postings.add(4);
+		Postings higher = new Postings();
+		higher.add(6);
+		higher.add(8);
+		Postings overlapping = new Postings();
+		overlapping.add(0);
+		overlapping.add(8);
+
+		postings.addAll(higher);
+		assertEquals(List.of(1, 4, 6, 8), toList(postings.iterator()));
+		postings.addAll(overlapping);
+		assertEquals(List.of(0, 1, 4, 6, 8), toList(postings.iterator()));
+		postings.addAll(new Postings());
+		assertEquals(5, postings.size());
+	}
+
+	@Test
+	void shouldUnionAscending()
+	{
+		Postings a = new Postings();
+		Postings b = new Postings();
+		Postings c = new Postings();
+		List.of(1, 4, 6).forEach(a::add);
+		List.of(2, 4, 8).forEach(b::add);
+
+		UnionIterator union = new UnionIterator(List.of(a.iterator(), b.iterator(), c.iterator()));
+		assertEquals(List.of(1, 2, 4, 6, 8), toList(union));
+	}
+
+	@Test
+	void shouldHaveUnmodifiableSetView()
+	{
+		Postings postings = new Postings();
+		postings.add(1);
+
+		assertTrue(postings.asSet().contains(1));
+		assertFalse(postings.asSet().contains("1"));
+		assertThrows(UnsupportedOperationException.class, () -> postings.asSet().add(2));
+		assertThrows(IndexOutOfBoundsException.class, () -> postings.get(1));
+	}
+
+	private List<Integer> toList(PrimitiveIterator.OfInt iterator)
+	{
+		List<Integer> list = new ArrayList<>();
+		iterator.forEachRemaining((int i) -> list.add(i));
+		return list;
+	}
+}
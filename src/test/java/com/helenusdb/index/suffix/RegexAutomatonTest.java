@@ -0,0 +1,87 @@
+package com.helenusdb.index.suffix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class RegexAutomatonTest
+{
+	private static final List<String> PATTERNS = List.of("a", "ab|cd", "c(a|o)t", "colou?r", "[a-c]x", "[^a-z ]",
+		"x{2}", "(ab){1,2}c", "a.c", "b+a", "ca*t", "\\.", "[0-9]{2,}", "(c|h)at|dog");
+	private static final List<String> TEXTS = List.of("", "a", "abc", "cat", "cot", "cut", "color", "colour", "bx",
+		"dx", "xx", "ababc", "abac", "ba", "bba", "ct", "caaat", "e.g.", "room 101", "that hog", "a dog", "z9");
+
+	@Test
+	void shouldMatchLikeJavaRegex()
+	{
+		for (String pattern : PATTERNS)
+		{
+			RegexAutomaton automaton = RegexAutomaton.compile(pattern, RegexAutomaton.DEFAULT_MAX_STATES);
+			Pattern expected = Pattern.compile(pattern);
+
+			for (String text : TEXTS)
+			{
+				assertEquals(expected.matcher(text).find(), automaton.matches(text), pattern + " in " + text);
+			}
+		}
+	}
+
+	@Test
+	void shouldAcceptOnlyNonEmptyMatches()
+	{
+		RegexAutomaton automaton = RegexAutomaton.compile("a?", RegexAutomaton.DEFAULT_MAX_STATES);
+		assertFalse(automaton.matches(""));
+		assertFalse(automaton.matches("bcd"));
+		assertTrue(automaton.matches("bad"));
+	}
+
+	@Test
+	void shouldStepAlongPath()
+	{
+		RegexAutomaton automaton = RegexAutomaton.compile("ab{1,2}", RegexAutomaton.DEFAULT_MAX_STATES);
+		int state = automaton.step(automaton.start(), 'a');
+		assertFalse(automaton.isAccepting(state));
+		state = automaton.step(state, 'b');
+		assertTrue(automaton.isAccepting(state));
+		state = automaton.step(state, 'b');
+		assertTrue(automaton.isAccepting(state));
+		assertEquals(RegexAutomaton.DEAD, automaton.step(state, 'b'));
+		assertEquals(RegexAutomaton.DEAD, automaton.step(automaton.start(), 'b'));
+	}
+
+	@Test
+	void shouldRejectMalformedPatterns()
+	{
+		for (String pattern : List.of("", "(ab", "ab)", "[ab", "a||b", "*a", "a{2", "a{3,1}", "[z-a]", "a\\", "a{9999}"))
+		{
+			assertThrows(IllegalArgumentException.class,
+				() -> RegexAutomaton.compile(pattern, RegexAutomaton.DEFAULT_MAX_STATES), pattern);
+		}
+	}
+
+	@Test
+	void shouldFailFastOnStateExplosion()
+	{
+		// (a|b)*a(a|b){n} needs 2^n DFA states.
+		RegexAutomaton automaton = RegexAutomaton.compile("(a|b)*a(a|b){20}", 1000);
+		Random random = new Random(42);
+		assertThrows(IllegalArgumentException.class, () -> {
+			int state = automaton.start();
+
+			for (int i = 0; i < 100000; i++)
+			{
+				state = automaton.step(state, random.nextBoolean() ? 'a' : 'b');
+			}
+		});
+
+		// Nested repeats are capped while expanding, before any DFA state is built.
+		assertThrows(IllegalArgumentException.class, () -> RegexAutomaton.compile("((a{1000}){1000}){1000}", 1000));
+	}
+}
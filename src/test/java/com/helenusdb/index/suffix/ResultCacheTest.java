@@ -0,0 +1,71 @@
+package com.helenusdb.index.suffix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class ResultCacheTest
+{
+	@Test
+	void shouldServeCachedResults()
+	{
+		ResultCache cache = new ResultCache(1024);
+		assertNull(cache.get("usb", 0));
+
+		Set<Integer> cached = cache.put("usb", 0, new int[] {1, 4, 9});
+		assertEquals(List.of(1, 4, 9), List.copyOf(cached));
+		assertTrue(cached.contains(4));
+		assertFalse(cached.contains(5));
+		assertThrows(UnsupportedOperationException.class, () -> cached.add(5));
+		assertEquals(cached, cache.get("usb", 0));
+
+		CacheStats stats = cache.getStats();
+		assertEquals(1, stats.getHits());
+		assertEquals(1, stats.getMisses());
+		assertEquals(0.5, stats.getHitRate());
+		assertEquals(1, stats.getEntries());
+	}
+
+	@Test
+	void shouldInvalidateOnNewGeneration()
+	{
+		ResultCache cache = new ResultCache(1024);
+		cache.put("usb", 0, new int[] {1});
+
+		assertNull(cache.get("usb", 1));
+		assertNull(cache.get("usb", 0));
+		assertEquals(1, cache.getStats().getInvalidations());
+		assertEquals(0, cache.getStats().getEntries());
+		assertEquals(0, cache.getStats().getBytes());
+	}
+
+	@Test
+	void shouldEvictLeastRecentlyUsed()
+	{
+		// Each entry is a little over 100 bytes, so only two fit.
+		ResultCache cache = new ResultCache(250);
+		cache.put("a", 0, new int[] {1});
+		cache.put("b", 0, new int[] {2});
+		cache.get("a", 0);
+		cache.put("c", 0, new int[] {3});
+
+		assertTrue(cache.get("a", 0) != null);
+		assertNull(cache.get("b", 0));
+		assertTrue(cache.get("c", 0) != null);
+		assertEquals(1, cache.getStats().getEvictions());
+		assertTrue(cache.getStats().getBytes() <= 250);
+
+		// A result larger than the whole cache is returned but not cached.
+		assertEquals(100, cache.put("big", 0, IntStream.range(0, 100).toArray()).size());
+		assertNull(cache.get("big", 0));
+		assertEquals(2, cache.getStats().getEntries());
+	}
+}
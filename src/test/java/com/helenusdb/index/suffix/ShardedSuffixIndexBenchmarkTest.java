@@ -0,0 +1,77 @@
+package com.helenusdb.index.suffix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import com.helenusdb.index.Corpus;
+
+class ShardedSuffixIndexBenchmarkTest
+{
+	private static final int SEARCHES = 10000;
+	private static final String[] PHRASES = { "waxing kit", "eco-friendly", "gaming keyboard", "water bottle",
+		"wireless charging pad", "usb-c", "anti-bacterial", "lip balm", "earbuds", "a", "m*se" };
+
+	@Test
+	void test()
+	{
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.println("\nSharded Suffix Index Benchmark (" + cores + " cores):");
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, cores));
+
+		try
+		{
+			for (int shards = 1; shards <= Math.max(4, cores * 2); shards <<= 1)
+			{
+				timeSearch(shards, executor);
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	private void timeSearch(int shardCount, ExecutorService executor)
+	{
+		ShardedSuffixIndex<String> index = new ShardedSuffixIndex<String>(shardCount).setExecutor(executor);
+
+		for (String description : Corpus.DESCRIPTIONS)
+		{
+			index.insert(description, description);
+		}
+
+		assertEquals(Corpus.DESCRIPTIONS.length, index.size());
+
+		// Warm up the shards and the executor before timing.
+		for (int i = 0; i < SEARCHES / 10; i++)
+		{
+			index.search(PHRASES[i % PHRASES.length]);
+		}
+
+		long[] latencies = new long[SEARCHES];
+
+		for (int i = 0; i < SEARCHES; i++)
+		{
+			long start = System.nanoTime();
+			index.search(PHRASES[i % PHRASES.length], 20, 0);
+			latencies[i] = System.nanoTime() - start;
+		}
+
+		Arrays.sort(latencies);
+		long total = 0;
+
+		for (long latency : latencies)
+		{
+			total += latency;
+		}
+
+		System.out.println(String.format("%d shards: %d paged searches took %.3f microseconds on average, p50 %.3f, p99 %.3f",
+			shardCount, SEARCHES, total / 1000.0 / SEARCHES, latencies[SEARCHES / 2] / 1000.0,
+			latencies[SEARCHES * 99 / 100] / 1000.0));
+	}
+}
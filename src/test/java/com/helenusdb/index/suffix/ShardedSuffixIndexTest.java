@@ -0,0 +1,113 @@
+package com.helenusdb.index.suffix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import com.helenusdb.index.Corpus;
+
+class ShardedSuffixIndexTest
+{
+	private static final List<String> QUERIES = List.of("a", "usb", "earbuds", "gaming keyboard", "lazy*dog", "m*se",
+		"d?g", "stainless steel w?ter", "notfound anywhere");
+
+	@Test
+	void shouldSearchLikeSingleIndex()
+	{
+		SuffixIndex<String> expected = new SuffixIndex<>();
+
+		for (String description : Corpus.DESCRIPTIONS)
+		{
+			expected.insert(description, description);
+		}
+
+		for (int shardCount : new int[] {1, 2, 3, 8})
+		{
+			ShardedSuffixIndex<String> index = new ShardedSuffixIndex<>(shardCount);
+			assertEquals(shardCount, index.getShardCount());
+
+			for (String description : Corpus.DESCRIPTIONS)
+			{
+				index.insert(description, description);
+			}
+
+			assertEquals(expected.size(), index.size());
+
+			for (String query : QUERIES)
+			{
+				assertEquals(expected.search(query), index.search(query), query);
+				assertEquals(expected.count(query), index.count(query), query);
+				assertEquals(expected.search(query, 5, 0), index.search(query, 5, 0), query);
+				assertEquals(expected.search(query, 7, 30), index.search(query, 7, 30), query);
+			}
+		}
+	}
+
+	@Test
+	void shouldRemoveFromOwningShard()
+	{
+		ShardedSuffixIndex<Integer> index = new ShardedSuffixIndex<>(4);
+
+		for (int id = 0; id < 20; id++)
+		{
+			index.insert("item " + id + (id % 2 == 0 ? " even" : " odd"), id);
+		}
+
+		assertEquals(10, index.count("even"));
+		assertFalse(index.remove("item 4", 4));
+		assertTrue(index.remove("item 4 even", 4));
+		assertFalse(index.remove("item 4 even", 4));
+		assertFalse(index.remove("item 5 odd", 6));
+		assertEquals(List.of(0, 2, 6, 8, 10), index.search("even", 5, 0));
+		assertEquals(19, index.size());
+
+		// Every occurrence under the phrase goes, but not those under other phrases.
+		index.insert("Item 7 odd", 7).insert("item 7 odd again", 7);
+		assertEquals(List.of(7, 7, 7), index.search("item 7"));
+		assertTrue(index.remove("ITEM 7 ODD", 7));
+		assertEquals(List.of(7), index.search("item 7"));
+		assertEquals(19, index.size());
+	}
+
+	@Test
+	void shouldFanOutOnGivenExecutor()
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+
+		try
+		{
+			ShardedSuffixIndex<String> index = new ShardedSuffixIndex<String>(4, true).setExecutor(executor);
+			index.insert("Quick Fox", "fox").insert("quick dog", "dog").insert("QUICK cat", "cat");
+
+			assertEquals(List.of("dog"), index.search("quick"));
+			assertEquals(List.of("fox", "dog"), index.search("ick"));
+			assertEquals(List.of("fox", "dog", "cat"), index.search(" "));
+			assertEquals(List.of("cat"), index.search(" ", 1, 2));
+			assertTrue(index.search(" ", 0, 0).isEmpty());
+			assertTrue(index.search(" ", 5, 3).isEmpty());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void shouldRejectInvalidArguments()
+	{
+		assertThrows(IllegalArgumentException.class, () -> new ShardedSuffixIndex<String>(0));
+		assertThrows(IllegalArgumentException.class, () -> new ShardedSuffixIndex<String>(2, false, 0));
+
+		ShardedSuffixIndex<String> index = new ShardedSuffixIndex<>(2);
+		assertThrows(IllegalArgumentException.class, () -> index.search("a", -1, 0));
+		assertThrows(IllegalArgumentException.class, () -> index.search("a", 1, -1));
+		assertThrows(NullPointerException.class, () -> index.setExecutor(null));
+	}
+}
@@ -2,6 +2,12 @@ package com.helenusdb.index.suffix;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
 import org.junit.jupiter.api.Test;
 
 import com.helenusdb.index.Corpus;
@@ -9,6 +15,8 @@ import com.helenusdb.index.Corpus;
 class SuffixIndexBenchmarkTest
 {
 	private static final int SEARCHES = 10000;
+	private static final String[] PHRASES = { "waxing kit", "eco-friendly", "gaming keyboard", "water bottle",
+		"wireless charging pad", "usb-c", "anti-bacterial", "lip balm", "earbuds" };
 
 	@Test
 	void test()
@@ -17,6 +25,122 @@ class SuffixIndexBenchmarkTest
 		SuffixIndex<String> index = timeIndexing();
 		assertNotNull(index);
 		timeSearch(index);
+		timeBatchSearch(index);
+		timeFuzzySearch(index);
+		timeCachedLookups(index);
+		System.out.println("Frozen:");
+		timeSearch(index.freeze());
+		timeBatchSearch(index);
+		timeFuzzySearch(index);
+
+		for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors() && threads <= 16; threads <<= 1)
+		{
+			timeParallelIndexing(threads);
+		}
+	}
+
+	private void timeFuzzySearch(SuffixIndex<String> index)
+	{
+		long start = System.nanoTime();
+
+		for (int i = 0; i < SEARCHES; i++)
+		{
+			index.searchFuzzy(PHRASES[i % PHRASES.length], 1);
+		}
+
+		long end = System.nanoTime();
+		long totalTimeMillis = (end - start) / 1000000;
+		double avgTimeMicros = totalTimeMillis / (double) SEARCHES * 1000.0;
+		System.out.println(String.format("%d Fuzzy searches (1 edit) took %dms (%.3f microseconds per search)",
+			SEARCHES, totalTimeMillis, avgTimeMicros));
+	}
+
+	private void timeCachedLookups(SuffixIndex<String> index)
+	{
+		for (long cacheSize : new long[] {0L, 1L << 20})
+		{
+			index.setResultCacheSize(cacheSize);
+			long start = System.nanoTime();
+
+			for (int i = 0; i < SEARCHES; i++)
+			{
+				index.getIndicesFor(PHRASES[i % PHRASES.length]).size();
+			}
+
+			long end = System.nanoTime();
+			long totalTimeMillis = (end - start) / 1000000;
+			double avgTimeMicros = totalTimeMillis / (double) SEARCHES * 1000.0;
+			System.out.println(String.format("%d Index lookups (%s) took %dms (%.3f microseconds per lookup)",
+				SEARCHES, cacheSize == 0 ? "uncached" : "cached", totalTimeMillis, avgTimeMicros));
+		}
+
+		System.out.println(index.getResultCacheStats());
+		index.setResultCacheSize(0);
+	}
+
+	private void timeBatchSearch(SuffixIndex<String> index)
+	{
+		// Search-as-you-type probes: every prefix of a few keywords, so most probes share a path with another.
+		List<String> queries = new ArrayList<>();
+
+		for (String keyword : new String[] { "wireless charging pad", "water bottle", "gaming keyboard" })
+		{
+			for (int length = 3; length <= keyword.length(); length++)
+			{
+				queries.add(keyword.substring(0, length));
+			}
+		}
+
+		int batches = SEARCHES / queries.size();
+		long independent = Long.MAX_VALUE;
+		long batched = Long.MAX_VALUE;
+
+		// Alternate the two over several rounds, so each is as warm as the other, and keep the best round of each.
+		for (int round = 0; round < 5; round++)
+		{
+			long start = System.nanoTime();
+
+			for (int i = 0; i < batches; i++)
+			{
+				for (String query : queries)
+				{
+					index.search(query);
+				}
+			}
+
+			independent = Math.min(independent, System.nanoTime() - start);
+			start = System.nanoTime();
+
+			for (int i = 0; i < batches; i++)
+			{
+				index.searchAll(queries);
+			}
+
+			batched = Math.min(batched, System.nanoTime() - start);
+		}
+
+		System.out.println(String.format("Batches of %d prefix probes took %.3f microseconds per batch independently, "
+			+ "%.3f microseconds per batch with searchAll", queries.size(), independent / 1000.0 / batches,
+			batched / 1000.0 / batches));
+	}
+
+	private void timeParallelIndexing(int threads)
+	{
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		try
+		{
+			long start = System.currentTimeMillis();
+			new SuffixIndex<String>().buildParallel(
+				Stream.of(Corpus.DESCRIPTIONS).map(description -> Map.entry(description, description)), pool);
+			long totalTimeMillis = System.currentTimeMillis() - start;
+			System.out.println(String.format("Parallel indexing of %d phrases on %d threads took %dms",
+				Corpus.DESCRIPTIONS.length, threads, totalTimeMillis));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
 	}
 
 	private SuffixIndex<String> timeIndexing()
@@ -39,14 +163,12 @@ class SuffixIndexBenchmarkTest
 
 	private void timeSearch(SuffixIndex<String> index)
 	{
-		String[] phrases = { "waxing kit", "eco-friendly", "gaming keyboard", "water bottle", "wireless charging pad",
-			"usb-c", "anti-bacterial", "lip balm", "earbuds" };
 
 		long start = System.nanoTime();
 
 		for (int i = 0; i < SEARCHES; i++)
 		{
-			index.search(phrases[i % phrases.length]);
+			index.search(PHRASES[i % PHRASES.length]);
 		}
 
 		long end = System.nanoTime();
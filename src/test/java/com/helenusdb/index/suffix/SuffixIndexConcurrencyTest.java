@@ -0,0 +1,181 @@
+package com.helenusdb.index.suffix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.helenusdb.index.Corpus;
+
+/**
+ * Races a writer against lock-free readers. Readers check every result is a live value whose phrase contains the
+ * query, in ascending id order, and that results for a query never shrink while values are only being inserted.
+ */
+class SuffixIndexConcurrencyTest
+{
+	private static final int READERS = 4;
+	private static final List<String> QUERIES = List.of("a", "usb", "earbuds", "water bottle", "wireless", "kit",
+		"m*se", "d?g", "noise cancel*");
+
+	@Test
+	void shouldSearchWhileInserting() throws Exception
+	{
+		SuffixIndex<Integer> index = new SuffixIndex<>();
+		List<Throwable> failures = race(index, true, () -> {
+			for (int id = 0; id < Corpus.DESCRIPTIONS.length; id++)
+			{
+				index.insert(Corpus.DESCRIPTIONS[id], id);
+			}
+		});
+
+		assertEquals(List.of(), failures);
+		assertMatchesSequential(index, id -> false);
+	}
+
+	@Test
+	void shouldSearchWhileBuildingInParallel() throws Exception
+	{
+		SuffixIndex<Integer> index = new SuffixIndex<>();
+		int half = Corpus.DESCRIPTIONS.length / 2;
+		List<Throwable> failures = race(index, true, () -> {
+			index.buildParallel(IntStream.range(0, half).mapToObj(id -> Map.entry(Corpus.DESCRIPTIONS[id], id)));
+			index.buildParallel(IntStream.range(half, Corpus.DESCRIPTIONS.length)
+				.mapToObj(id -> Map.entry(Corpus.DESCRIPTIONS[id], id)), ForkJoinPool.commonPool());
+		});
+
+		assertEquals(List.of(), failures);
+		assertMatchesSequential(index, id -> false);
+	}
+
+	@Test
+	void shouldSearchWhileRemovingAndCompacting() throws Exception
+	{
+		SuffixIndex<Integer> index = new SuffixIndex<Integer>().setCompactionExecutor(Runnable::run);
+
+		for (int id = 0; id < Corpus.DESCRIPTIONS.length; id++)
+		{
+			index.insert(Corpus.DESCRIPTIONS[id], id);
+		}
+
+		List<Throwable> failures = race(index, false, () -> {
+			for (int id = 0; id < Corpus.DESCRIPTIONS.length; id += 3)
+			{
+				index.remove(Corpus.DESCRIPTIONS[id], id);
+				if (id % 90 == 0) index.compact();
+			}
+		});
+
+		assertEquals(List.of(), failures);
+		assertMatchesSequential(index, id -> id % 3 == 0);
+	}
+
+	/**
+	 * Runs the writer while readers search the index, until the writer finishes.
+	 *
+	 * @return The failures seen by the readers and the writer.
+	 */
+	private static List<Throwable> race(SuffixIndex<Integer> index, boolean isGrowing, Runnable writer)
+		throws InterruptedException
+	{
+		ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		AtomicBoolean isWriting = new AtomicBoolean(true);
+		CountDownLatch started = new CountDownLatch(READERS);
+		List<Thread> threads = new ArrayList<>();
+
+		for (int r = 0; r < READERS; r++)
+		{
+			threads.add(new Thread(() -> {
+				int[] lastCounts = new int[QUERIES.size()];
+				started.countDown();
+
+				try
+				{
+					do
+					{
+						for (int q = 0; q < QUERIES.size(); q++)
+						{
+							List<Integer> results = index.search(QUERIES.get(q));
+							assertValid(QUERIES.get(q), results);
+
+							if (isGrowing)
+							{
+								assertTrue(results.size() >= lastCounts[q], "results shrank for " + QUERIES.get(q));
+								lastCounts[q] = results.size();
+							}
+
+							index.count(QUERIES.get(q));
+							index.getIndicesFor(QUERIES.get(q)).forEach(id -> {});
+						}
+					}
+					while (isWriting.get());
+				}
+				catch (Throwable t)
+				{
+					failures.add(t);
+				}
+			}));
+		}
+
+		threads.forEach(Thread::start);
+		started.await();
+
+		try
+		{
+			writer.run();
+		}
+		catch (Throwable t)
+		{
+			failures.add(t);
+		}
+		finally
+		{
+			isWriting.set(false);
+		}
+
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		return new ArrayList<>(failures);
+	}
+
+	private static void assertValid(String query, List<Integer> results)
+	{
+		int previous = -1;
+
+		for (Integer id : results)
+		{
+			assertTrue(id != null && id > previous, "results out of order for " + query + ": " + results);
+			assertTrue(query.indexOf('*') >= 0 || query.indexOf('?') >= 0
+				|| Corpus.DESCRIPTIONS[id].toLowerCase().contains(query), query + " returned " + id);
+			previous = id;
+		}
+	}
+
+	private static void assertMatchesSequential(SuffixIndex<Integer> index, IntPredicate isRemoved)
+	{
+		SuffixIndex<Integer> expected = new SuffixIndex<>();
+
+		for (int id = 0; id < Corpus.DESCRIPTIONS.length; id++)
+		{
+			expected.insert(Corpus.DESCRIPTIONS[id], id);
+			if (isRemoved.test(id)) expected.remove(Corpus.DESCRIPTIONS[id], id);
+		}
+
+		for (String query : QUERIES)
+		{
+			assertEquals(expected.search(query), index.search(query), query);
+		}
+	}
+}
@@ -2,13 +2,24 @@ package com.helenusdb.index.suffix;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 
+import com.helenusdb.index.Corpus;
 import com.helenusdb.index.suffix.SuffixIndex;
 
 class SuffixIndexTest {
@@ -20,6 +31,10 @@ class SuffixIndexTest {
 	private static final Integer MOOSE_INDEX = 2;
 	private static final String MOUSE_PHRASE = "the tiny mouse wants a cookie";
 	private static final Integer MOUSE_INDEX = 3;
+	private static final List<String> CORPUS_QUERIES = List.of("a", "usb", "earbuds", "gaming keyboard",
+		"wireless charging pad", "usb-c", "lazy*dog", "m*se", "d?g", "ideal for*ing", "wireless*cancellation",
+		"stainless steel w?ter", "noise cancel*", "?", "eco-friendly reusable grocery bags, set of 5",
+		"notfound anywhere");
 
 	@Test
 	void shouldConstructTrie() {
@@ -124,4 +139,477 @@ class SuffixIndexTest {
 		assertTrue(index.search("lazy*dog").containsAll(List.of(DOG_PHRASE, FOX_PHRASE)));
 		assertEquals(2, index.search("lazy*dog").size());
 	}
+
+	@Test
+	void shouldPageInInsertionOrder() {
+		SuffixIndex<String> index = new SuffixIndex<>();
+		index.insert(FOX_PHRASE, FOX_PHRASE).insert(DOG_PHRASE, DOG_PHRASE).insert(MOOSE_PHRASE, MOOSE_PHRASE)
+				.insert(MOUSE_PHRASE, MOUSE_PHRASE);
+
+		assertEquals(List.of(FOX_PHRASE, DOG_PHRASE, MOOSE_PHRASE, MOUSE_PHRASE), index.search("the"));
+		assertEquals(List.of(FOX_PHRASE, DOG_PHRASE), index.search("the", 2, 0));
+		assertEquals(List.of(MOOSE_PHRASE, MOUSE_PHRASE), index.search("the", 2, 2));
+		assertEquals(List.of(MOUSE_PHRASE), index.search("the", 2, 3));
+		assertTrue(index.search("the", 2, 4).isEmpty());
+		assertTrue(index.search("the", 0, 0).isEmpty());
+
+		// Wildcard queries union several nodes but still page in insertion order.
+		assertEquals(List.of(FOX_PHRASE, MOOSE_PHRASE, MOUSE_PHRASE), index.search("m*"));
+		assertEquals(List.of(MOOSE_PHRASE), index.search("m*", 1, 1));
+		assertEquals(List.of(FOX_PHRASE, DOG_PHRASE), index.search("d?g", 5, 0));
+		assertThrows(IllegalArgumentException.class, () -> index.search("the", -1, 0));
+		assertThrows(IllegalArgumentException.class, () -> index.search("the", 1, -1));
+	}
+
+	@Test
+	void shouldStreamLazily() {
+		SuffixIndex<String> index = new SuffixIndex<>();
+		index.insert(FOX_PHRASE, FOX_PHRASE).insert(DOG_PHRASE, DOG_PHRASE).insert(MOOSE_PHRASE, MOOSE_PHRASE)
+				.insert(MOUSE_PHRASE, MOUSE_PHRASE);
+
+		assertEquals(List.of(FOX_PHRASE, DOG_PHRASE), index.searchStream("o").limit(2).toList());
+		assertEquals(DOG_PHRASE, index.searchStream("lazy").skip(1).findFirst().orElse(null));
+		assertEquals(0, index.searchStream("notfound").count());
+		assertEquals(0, index.searchStream(null).count());
+	}
+
+	@Test
+	void shouldCountAndMatch() {
+		SuffixIndex<String> index = new SuffixIndex<>();
+		index.insert(FOX_PHRASE, FOX_PHRASE).insert(DOG_PHRASE, DOG_PHRASE).insert(MOOSE_PHRASE, MOOSE_PHRASE)
+				.insert(MOUSE_PHRASE, MOUSE_PHRASE);
+
+		assertEquals(4, index.count("THE"));
+		assertEquals(2, index.count("lazy"));
+		assertEquals(0, index.count("notfound"));
+		assertEquals(0, index.count(""));
+		assertEquals(0, index.count(null));
+		assertEquals(2, index.count("m*se"));
+		assertEquals(3, index.count("m*"));
+		assertEquals(2, index.count("d?g"));
+
+		assertTrue(index.matches("fox"));
+		assertTrue(index.matches("lazy*dog"));
+		assertTrue(index.matches("mo?se"));
+		assertFalse(index.matches("notfound"));
+		assertFalse(index.matches("z*q"));
+		assertFalse(index.matches(null));
+	}
+
+	@Test
+	void shouldRemoveAndUpdate() {
+		SuffixIndex<String> index = new SuffixIndex<String>().setCompactionThreshold(1.0);
+		index.insert(FOX_PHRASE, FOX_PHRASE).insert(DOG_PHRASE, DOG_PHRASE).insert(MOOSE_PHRASE, MOOSE_PHRASE)
+				.insert(MOUSE_PHRASE, MOUSE_PHRASE);
+
+		assertTrue(index.remove(DOG_PHRASE, DOG_PHRASE));
+		assertFalse(index.remove(DOG_PHRASE, DOG_PHRASE));
+		assertFalse(index.remove(FOX_PHRASE, MOOSE_PHRASE));
+		assertEquals(3, index.size());
+		assertEquals(List.of(FOX_PHRASE), index.search("lazy"));
+		assertEquals(1, index.count("lazy"));
+		assertEquals(Set.of(0), index.getIndicesFor("lazy"));
+		assertFalse(index.matches("nap"));
+		assertEquals(List.of(MOOSE_PHRASE, MOUSE_PHRASE), index.search("the", 5, 1));
+
+		index.update(MOUSE_PHRASE, "the tiny mouse wants a muffin", MOUSE_PHRASE);
+		assertEquals(List.of(MOOSE_PHRASE, MOUSE_PHRASE), index.search("muffin"));
+		assertTrue(index.search("cookie").isEmpty());
+
+		assertTrue(index.remove(FOX_PHRASE));
+		assertTrue(index.search("fox").isEmpty());
+		assertEquals(2, index.size());
+	}
+
+	@Test
+	void shouldRemoveOnlyFromExactPhrase() {
+		List<SuffixIndex<String>> indexes = List.of(new SuffixIndex<>(), new SuffixIndex<>(false, 3),
+				new SuffixIndex<String>(), new SuffixIndex<String>(false, 3));
+
+		for (int i = 0; i < indexes.size(); i++) {
+			SuffixIndex<String> index = indexes.get(i);
+			index.insert("usb", "v").insert("usb cable", "v").insert("mini usb hub", "v").insert("Usb", "w");
+			if (i >= 2) index.freeze();
+
+			assertTrue(index.remove("USB", "v"));
+			assertFalse(index.remove("usb", "v"));
+			assertFalse(index.remove("usb c", "v"));
+			assertEquals(List.of("v", "v", "w"), index.search("usb"));
+			assertEquals(List.of("v"), index.search("usb cable"));
+			assertEquals(List.of("v"), index.search("usb hub"));
+		}
+
+		SuffixIndex<String> index = new SuffixIndex<>();
+		index.insert("usb", "v").insert("usb cable", "v");
+		index.update("usb", "usb-c", "v");
+		assertEquals(List.of("v", "v"), index.search("usb"));
+		assertEquals(List.of("v"), index.search("cable"));
+	}
+
+	@Test
+	void shouldCompactRemovedValues() {
+		SuffixIndex<String> index = new SuffixIndex<String>().setCompactionThreshold(1.0);
+		index.insert(FOX_PHRASE, FOX_PHRASE).insert(DOG_PHRASE, DOG_PHRASE).insert(MOOSE_PHRASE, MOOSE_PHRASE)
+				.insert(MOUSE_PHRASE, MOUSE_PHRASE);
+		index.remove(MOOSE_PHRASE, MOOSE_PHRASE);
+		index.remove(MOUSE_PHRASE, MOUSE_PHRASE);
+
+		CompactionStats stats = index.compact();
+		assertEquals(2, stats.getPurgedValues());
+		assertTrue(stats.getRemovedNodes() > 0);
+		assertTrue(stats.getReclaimedBytes() > 0);
+		assertEquals(stats, index.getLastCompaction());
+		assertFalse(index.matches("moose"));
+		assertFalse(index.matches("m?se"));
+		assertEquals(0, index.count("wants"));
+		assertEquals(List.of(FOX_PHRASE, DOG_PHRASE), index.search("the"));
+		assertEquals(2, index.count("the"));
+	}
+
+	@Test
+	void shouldCompactInBackground() throws Exception {
+		SuffixIndex<String> index = new SuffixIndex<String>().setCompactionThreshold(0.25)
+			.setCompactionExecutor(Runnable::run);
+		index.insert(FOX_PHRASE, FOX_PHRASE).insert(DOG_PHRASE, DOG_PHRASE).insert(MOOSE_PHRASE, MOOSE_PHRASE)
+				.insert(MOUSE_PHRASE, MOUSE_PHRASE);
+
+		index.remove(FOX_PHRASE, FOX_PHRASE);
+		assertEquals(null, index.getLastCompaction());
+		index.remove(DOG_PHRASE, DOG_PHRASE);
+		assertNotNull(index.getLastCompaction());
+		assertEquals(2, index.getLastCompaction().getPurgedValues());
+		assertEquals(List.of(MOOSE_PHRASE, MOUSE_PHRASE), index.search("the"));
+		assertEquals(0, index.compactAsync().get().getPurgedValues());
+	}
+
+	@Test
+	void shouldMatchUnboundedWhenDepthLimited() {
+		SuffixIndex<String> unbounded = new SuffixIndex<>();
+		SuffixIndex<String> bounded = new SuffixIndex<>(false, 4);
+
+		for (String description : Corpus.DESCRIPTIONS) {
+			unbounded.insert(description, description);
+			bounded.insert(description, description);
+		}
+
+		assertSameResults(unbounded, bounded);
+
+		assertEquals(4, bounded.getMaxDepth());
+		assertThrows(IllegalStateException.class, () -> bounded.setMaxDepth(8));
+		assertThrows(IllegalArgumentException.class, () -> new SuffixIndex<String>().setMaxDepth(0));
+	}
+
+	@Test
+	void shouldRemoveWhenDepthLimited() {
+		SuffixIndex<String> index = new SuffixIndex<String>(false, 3).setCompactionThreshold(1.0);
+		index.insert(FOX_PHRASE, FOX_PHRASE).insert(DOG_PHRASE, DOG_PHRASE);
+
+		assertFalse(index.remove("the lazy brown", DOG_PHRASE));
+		assertTrue(index.remove(DOG_PHRASE, DOG_PHRASE));
+		assertEquals(List.of(FOX_PHRASE), index.search("the lazy"));
+		index.compact();
+		assertEquals(List.of(FOX_PHRASE), index.search("lazy dog"));
+		assertTrue(index.search("takes a nap").isEmpty());
+	}
+
+	@Test
+	void shouldSearchFrozenIdentically() {
+		SuffixIndex<String> index = new SuffixIndex<>();
+		SuffixIndex<String> frozen = new SuffixIndex<>();
+		SuffixIndex<String> bounded = new SuffixIndex<>(false, 5);
+
+		for (String description : Corpus.DESCRIPTIONS) {
+			index.insert(description, description);
+			frozen.insert(description, description);
+			bounded.insert(description, description);
+		}
+
+		assertFalse(frozen.isFrozen());
+		assertTrue(frozen.freeze().isFrozen());
+		assertSameResults(index, frozen);
+		assertSameResults(index, bounded.freeze());
+
+		for (String query : CORPUS_QUERIES) {
+			assertEquals(index.getIndicesFor(query), frozen.getIndicesFor(query), query);
+		}
+
+		assertThrows(IllegalStateException.class, () -> frozen.insert("new phrase", "new phrase"));
+		assertThrows(IllegalStateException.class, () -> frozen.update("anything", "new phrase", "new phrase"));
+
+		String removed = Corpus.DESCRIPTIONS[0];
+		assertTrue(frozen.remove(removed, removed));
+		index.remove(removed, removed);
+		frozen.compact();
+		assertSameResults(index, frozen);
+	}
+
+	@Test
+	void shouldBuildInParallelIdentically() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		try {
+			for (int maxDepth : new int[] {Integer.MAX_VALUE, 5}) {
+				SuffixIndex<String> sequential = new SuffixIndex<>(maxDepth == 5, maxDepth);
+				SuffixIndex<String> parallel = new SuffixIndex<>(maxDepth == 5, maxDepth);
+
+				sequential.insert(DOG_PHRASE, DOG_PHRASE);
+				parallel.insert(DOG_PHRASE, DOG_PHRASE);
+
+				for (String description : Corpus.DESCRIPTIONS) {
+					sequential.insert(description, description);
+				}
+
+				sequential.insert(FOX_PHRASE, FOX_PHRASE);
+				Stream<Map.Entry<String, String>> entries = Stream.concat(
+					Stream.of(Corpus.DESCRIPTIONS).map(description -> Map.entry(description, description)),
+					Stream.of(Map.entry("", "empty")));
+				parallel.buildParallel(entries, pool).insert(FOX_PHRASE, FOX_PHRASE);
+
+				assertEquals(sequential.size(), parallel.size());
+				assertSameResults(sequential, parallel);
+
+				for (String query : CORPUS_QUERIES) {
+					assertEquals(List.copyOf(sequential.getIndicesFor(query)), List.copyOf(parallel.getIndicesFor(query)),
+						query);
+				}
+
+				sequential.freeze();
+				parallel.freeze();
+				assertSameResults(sequential, parallel);
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void shouldSearchAllAtOnce() {
+		SuffixIndex<String> index = new SuffixIndex<>();
+		SuffixIndex<String> bounded = new SuffixIndex<>(false, 4);
+
+		for (String description : Corpus.DESCRIPTIONS) {
+			index.insert(description, description);
+			bounded.insert(description, description);
+		}
+
+		List<String> queries = new ArrayList<>(CORPUS_QUERIES);
+		queries.addAll(Arrays.asList("USB", "usb", "", null, "wi", "wire", "wireless", "wireless charging", "wirez",
+				"wir?less", "wireless"));
+
+		for (int length = 1; length <= "wireless charging pad".length(); length++) {
+			queries.add("wireless charging pad".substring(0, length));
+		}
+
+		for (SuffixIndex<String> searched : List.of(index, bounded)) {
+			List<List<String>> results = searched.searchAll(queries);
+			assertEquals(queries.size(), results.size());
+
+			for (int i = 0; i < queries.size(); i++) {
+				assertEquals(index.search(queries.get(i)), results.get(i), queries.get(i));
+			}
+		}
+
+		index.remove(Corpus.DESCRIPTIONS[0], Corpus.DESCRIPTIONS[0]);
+		List<List<String>> results = index.searchAll(queries);
+
+		for (int i = 0; i < queries.size(); i++) {
+			assertEquals(index.search(queries.get(i)), results.get(i), queries.get(i));
+		}
+
+		assertEquals(List.of(), index.searchAll(List.of()));
+	}
+
+	@Test
+	void shouldSearchFuzzy() {
+		SuffixIndex<String> index = new SuffixIndex<>();
+		SuffixIndex<String> bounded = new SuffixIndex<>(false, 3);
+
+		for (String description : Corpus.DESCRIPTIONS) {
+			index.insert(description, description);
+			bounded.insert(description, description);
+		}
+
+		assertTrue(index.search("earbds").isEmpty());
+		assertEquals(index.search("earbuds"), index.searchFuzzy("earbds", 1));
+		assertEquals(index.search("usb-c"), index.searchFuzzy("USB-C", 0));
+
+		for (String query : List.of("earbds", "wireles chargng", "gamng keybord", "stanless", "xyzzy", "ab")) {
+			int[] distances = Arrays.stream(Corpus.DESCRIPTIONS)
+				.mapToInt(description -> FuzzyMatcherTest.substringDistance(query, description.toLowerCase()))
+				.toArray();
+
+			for (int maxEdits = 0; maxEdits <= 2; maxEdits++) {
+				List<String> expected = new ArrayList<>();
+
+				for (int i = 0; i < distances.length; i++) {
+					if (distances[i] <= maxEdits) expected.add(Corpus.DESCRIPTIONS[i]);
+				}
+
+				assertEquals(expected, index.searchFuzzy(query, maxEdits), query + "~" + maxEdits);
+				assertEquals(expected, bounded.searchFuzzy(query, maxEdits), query + "~" + maxEdits);
+				assertEquals(expected, bounded.freeze().searchFuzzy(query, maxEdits), query + "~" + maxEdits);
+			}
+		}
+
+		assertThrows(IllegalArgumentException.class, () -> index.searchFuzzy("earbuds", -1));
+		assertThrows(IllegalArgumentException.class, () -> index.searchFuzzy("x".repeat(65), 1));
+	}
+
+	@Test
+	void shouldIndexRepeatedPhrasesOnce() {
+		SuffixIndex<Integer> index = new SuffixIndex<>();
+		index.insert("red mug", 0).insert("blue mug", 1).insert("RED MUG", 2).insert("green mug", 3)
+			.insert("blue mug", 4).insert("red mug", 5);
+
+		assertEquals(List.of(0, 2, 5), index.search("red"));
+		assertEquals(List.of(0, 1, 2, 3, 4, 5), index.search("mug"));
+		assertEquals(List.of(2, 3), index.search("mug", 2, 2));
+		assertEquals(6, index.count("mug"));
+		assertEquals(Set.of(1, 4), index.getIndicesFor("blue"));
+
+		// Removing one value leaves the others of its phrase.
+		assertTrue(index.remove("red mug", 2));
+		assertEquals(List.of(0, 5), index.search("red"));
+		index.compact();
+		assertEquals(List.of(0, 5), index.search("red"));
+		assertEquals(5, index.count("mug"));
+
+		// Once every value of a phrase is gone, inserting it again starts afresh.
+		assertTrue(index.remove("red mug", 0));
+		assertTrue(index.remove("red mug", 5));
+		index.compact();
+		assertTrue(index.search("red").isEmpty());
+		index.insert("red mug", 6);
+		assertEquals(List.of(6), index.search("red"));
+		assertEquals(List.of(1, 3, 4, 6), index.search("m?g"));
+	}
+
+	@Test
+	void shouldMatchBruteForceWithRepeatedPhrases() {
+		List<SuffixIndex<Integer>> indexes = List.of(new SuffixIndex<>(), new SuffixIndex<>(false, 4),
+			new SuffixIndex<Integer>().setCompactionThreshold(1.0));
+		List<Integer> removed = List.of(3, 17, 42, 500, 501);
+
+		for (SuffixIndex<Integer> index : indexes) {
+			for (int round = 0; round < 2; round++) {
+				for (int id = 0; id < Corpus.DESCRIPTIONS.length; id++) {
+					index.insert(Corpus.DESCRIPTIONS[id], round * Corpus.DESCRIPTIONS.length + id);
+				}
+			}
+
+			for (int id : removed) {
+				assertTrue(index.remove(Corpus.DESCRIPTIONS[id], id));
+			}
+		}
+
+		indexes.get(0).compact();
+
+		for (String query : List.of("a", "usb", "earbuds", "gaming keyboard", "water bottle", "ideal for daily use")) {
+			List<Integer> expected = new ArrayList<>();
+
+			for (int i = 0; i < 2 * Corpus.DESCRIPTIONS.length; i++) {
+				String description = Corpus.DESCRIPTIONS[i % Corpus.DESCRIPTIONS.length].toLowerCase();
+				if (description.contains(query) && !removed.contains(i)) expected.add(i);
+			}
+
+			for (SuffixIndex<Integer> index : indexes) {
+				assertEquals(expected, index.search(query), query);
+				assertEquals(expected.size(), index.count(query), query);
+				assertEquals(expected.stream().skip(10).limit(5).toList(), index.search(query, 5, 10), query);
+			}
+
+			assertEquals(expected, indexes.get(1).freeze().search(query), query);
+		}
+	}
+
+	@Test
+	void shouldCacheResults() {
+		SuffixIndex<String> index = new SuffixIndex<String>().setResultCacheSize(1 << 20);
+		index.insert(FOX_PHRASE, FOX_PHRASE).insert(DOG_PHRASE, DOG_PHRASE);
+
+		Set<Integer> first = index.getIndicesFor("LAZY");
+		assertEquals(Set.of(FOX_INDEX, DOG_INDEX), first);
+		assertSame(first, index.getIndicesFor("lazy"));
+		assertEquals(1, index.getResultCacheStats().getHits());
+		assertEquals(1, index.getResultCacheStats().getMisses());
+
+		// Writes bump the generation, so stale results are never served.
+		index.insert(MOOSE_PHRASE, MOOSE_PHRASE);
+		assertEquals(Set.of(FOX_INDEX, DOG_INDEX, MOOSE_INDEX), index.getIndicesFor("the"));
+		index.insert("a lazy cat", "a lazy cat");
+		assertEquals(List.of(0, 1, 3), List.copyOf(index.getIndicesFor("lazy")));
+		index.remove(DOG_PHRASE, DOG_PHRASE);
+		assertEquals(List.of(0, 3), List.copyOf(index.getIndicesFor("lazy")));
+		assertEquals(List.of(0, 3), List.copyOf(index.getIndicesFor("l?zy")));
+		assertEquals(2, index.getResultCacheStats().getInvalidations());
+		assertTrue(index.getIndicesFor("").isEmpty());
+		assertTrue(index.getIndicesFor(null).isEmpty());
+
+		index.setResultCacheSize(0);
+		assertNull(index.getResultCacheStats());
+		assertEquals(List.of(0, 3), List.copyOf(index.getIndicesFor("lazy")));
+		assertThrows(IllegalArgumentException.class, () -> index.setResultCacheSize(-1));
+	}
+
+	@Test
+	void shouldServeSearchesFromResultCache() {
+		SuffixIndex<String> index = new SuffixIndex<String>().setResultCacheSize(1 << 20);
+		index.insert(FOX_PHRASE, FOX_PHRASE).insert(DOG_PHRASE, DOG_PHRASE).insert(MOOSE_PHRASE, MOOSE_PHRASE);
+
+		assertEquals(List.of(FOX_PHRASE, DOG_PHRASE), index.search("lazy"));
+		assertEquals(List.of(FOX_PHRASE, DOG_PHRASE), index.search("LAZY"));
+		assertEquals(1, index.getResultCacheStats().getHits());
+		assertEquals(1, index.getResultCacheStats().getMisses());
+
+		assertEquals(List.of(DOG_PHRASE), index.search("lazy", 1, 1));
+		assertEquals(List.of(), index.search("lazy", 1, 5));
+		assertEquals(List.of(FOX_PHRASE), index.searchStream("lazy").limit(1).toList());
+		assertEquals(2, index.count("lazy"));
+		assertEquals(5, index.getResultCacheStats().getHits());
+
+		index.remove(FOX_PHRASE, FOX_PHRASE);
+		assertEquals(List.of(DOG_PHRASE), index.search("lazy"));
+		assertEquals(1, index.count("lazy"));
+		assertEquals(1, index.getResultCacheStats().getInvalidations());
+		assertEquals(6, index.getResultCacheStats().getHits());
+	}
+
+	@Test
+	void shouldSearchRegex() {
+		SuffixIndex<String> index = new SuffixIndex<>();
+		SuffixIndex<String> bounded = new SuffixIndex<>(false, 3);
+
+		for (String description : Corpus.DESCRIPTIONS) {
+			index.insert(description, description);
+			bounded.insert(description, description);
+		}
+
+		assertEquals(index.search("earbuds"), index.searchRegex("EARBUDS"));
+		assertEquals(index.search("d?g"), index.searchRegex("d.?g"));
+
+		for (String pattern : List.of("ear(buds|phones)", "wireless (charging|mouse)", "usb-?c", "[0-9]{3,}",
+			"(ba|na){2}", "gam(e|ing) [a-z]+board", "st[aeiou]+l", "\\(", "x[^a-z ]", "zzz|qq")) {
+			Pattern expected = Pattern.compile(pattern);
+			List<String> matching = Arrays.stream(Corpus.DESCRIPTIONS)
+				.filter(description -> expected.matcher(description.toLowerCase()).find())
+				.toList();
+
+			assertEquals(matching, index.searchRegex(pattern), pattern);
+			assertEquals(matching, bounded.searchRegex(pattern), pattern);
+			assertEquals(matching, bounded.freeze().searchRegex(pattern), pattern);
+		}
+
+		assertThrows(IllegalArgumentException.class, () -> index.searchRegex("(ab"));
+		assertThrows(IllegalArgumentException.class, () -> index.searchRegex("(.|a)*a(.|a){20}", 500));
+	}
+
+	private void assertSameResults(SuffixIndex<String> expected, SuffixIndex<String> actual) {
+		for (String query : CORPUS_QUERIES) {
+			assertEquals(expected.search(query), actual.search(query), query);
+			assertEquals(expected.count(query), actual.count(query), query);
+			assertEquals(expected.matches(query), actual.matches(query), query);
+			assertEquals(expected.search(query, 3, 2), actual.search(query, 3, 2), query);
+		}
+	}
 }
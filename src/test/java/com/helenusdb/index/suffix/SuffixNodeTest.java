@@ -82,6 +82,21 @@ class SuffixNodeTest
 		assertThrows(UnsupportedOperationException.class, () -> indices.add(2), "Indices list should be unmodifiable.");
 	}
 
+	@Test
+	void testMerge()
+	{
+		SuffixNode node = new SuffixNode();
+		node.addSuffix("ab", 0, 2, 0);
+		SuffixNode other = new SuffixNode();
+		other.addSuffix("ac", 0, 2, 1);
+		other.addSuffix("ab", 0, 2, 2);
+
+		node.merge(other);
+		assertEquals(Set.of(0, 1, 2), node.getChild('a').getIndices());
+		assertEquals(Set.of(0, 2), node.getChild('a').getChild('b').getIndices());
+		assertEquals(Set.of(1), node.getChild('a').getChild('c').getIndices());
+	}
+
 	@Test
 	void testToString()
 	{
@@ -0,0 +1,186 @@
+package com.helenusdb.index.suffix;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.helenusdb.index.Corpus;
+
+class SuffixSnapshotTest
+{
+	private static final List<String> QUERIES = List.of("a", "usb", "earbuds", "gaming keyboard", "usb-c",
+		"lazy*dog", "m*se", "d?g", "ideal for*ing", "stainless steel w?ter", "noise cancel*", "notfound anywhere");
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void shouldSearchOpenedSnapshotIdentically() throws IOException
+	{
+		SuffixIndex<String> index = build(new SuffixIndex<>());
+		Path file = directory.resolve("index.snapshot");
+		index.writeSnapshot(file);
+
+		SuffixIndex<String> opened = SuffixIndex.openSnapshot(file, List.of(Corpus.DESCRIPTIONS), true);
+		assertTrue(opened.isFrozen());
+		assertFalse(index.isFrozen());
+		assertEquals(index.size(), opened.size());
+		assertSameResults(index, opened);
+		assertThrows(IllegalStateException.class, () -> opened.insert("new phrase", "new phrase"));
+	}
+
+	@Test
+	void shouldSnapshotBoundedIndexWithRemovals() throws IOException
+	{
+		SuffixIndex<String> index = build(new SuffixIndex<String>(true, 4).setCompactionThreshold(1.0));
+		String removed = Corpus.DESCRIPTIONS[3];
+		assertTrue(index.remove(removed, removed));
+		Path file = directory.resolve("bounded.snapshot");
+		index.writeSnapshot(file);
+
+		SuffixIndex<String> opened = SuffixIndex.openSnapshot(file, List.of(Corpus.DESCRIPTIONS));
+		assertTrue(opened.isCaseSensitive());
+		assertEquals(4, opened.getMaxDepth());
+		assertEquals(Corpus.DESCRIPTIONS.length - 1, opened.size());
+		assertSameResults(index, opened);
+		assertFalse(opened.search(removed).contains(removed));
+
+		// Removing from an opened snapshot tombstones in memory; the mapped file is never written.
+		String other = Corpus.DESCRIPTIONS[5];
+		assertTrue(opened.remove(other, other));
+		assertFalse(opened.search(other).contains(other));
+	}
+
+	@Test
+	void shouldReplaceSnapshotAtomically() throws IOException
+	{
+		Path file = directory.resolve("index.snapshot");
+		new SuffixIndex<String>().insert("old phrase", "old").writeSnapshot(file);
+		SuffixIndex<String> frozen = build(new SuffixIndex<>()).freeze();
+		frozen.writeSnapshot(file);
+
+		try (var files = Files.list(directory))
+		{
+			assertEquals(List.of(file), files.toList());
+		}
+
+		SuffixIndex<String> opened = SuffixIndex.openSnapshot(file, List.of(Corpus.DESCRIPTIONS), true);
+		assertSameResults(frozen, opened);
+	}
+
+	@Test
+	void shouldWriteConcurrentlyToOneFile() throws Exception
+	{
+		Path file = directory.resolve("index.snapshot");
+		SuffixIndex<String> small = new SuffixIndex<String>().insert("old phrase", "old").freeze();
+		SuffixIndex<String> large = build(new SuffixIndex<>()).freeze();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try
+		{
+			for (int round = 0; round < 10; round++)
+			{
+				CountDownLatch start = new CountDownLatch(1);
+				Future<?> first = executor.submit(() -> writeAfter(start, small, file));
+				Future<?> second = executor.submit(() -> writeAfter(start, large, file));
+				start.countDown();
+				first.get();
+				second.get();
+
+				// Each writer renames its own temporary file, so the file is always one whole snapshot.
+				boolean isSmall = SuffixSnapshot.open(file, true).getValueCount() == 1;
+				List<String> values = isSmall ? List.of("old") : List.of(Corpus.DESCRIPTIONS);
+				assertSameResults(isSmall ? small : large, SuffixIndex.openSnapshot(file, values, true));
+
+				try (var files = Files.list(directory))
+				{
+					assertEquals(List.of(file), files.toList());
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void shouldRejectInvalidSnapshots() throws IOException
+	{
+		Path file = directory.resolve("index.snapshot");
+		build(new SuffixIndex<>()).writeSnapshot(file);
+		List<String> values = List.of(Corpus.DESCRIPTIONS);
+
+		assertThrows(IllegalArgumentException.class, () -> SuffixIndex.openSnapshot(file, values.subList(0, 1)));
+
+		// Corrupt the last byte of the body: only the body checksum can detect it.
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw"))
+		{
+			flip(raf, raf.length() - 1);
+		}
+
+		SuffixIndex.openSnapshot(file, values, false);
+		assertThrows(IOException.class, () -> SuffixIndex.openSnapshot(file, values, true));
+
+		// Corrupt the header.
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw"))
+		{
+			flip(raf, 20);
+		}
+
+		assertThrows(IOException.class, () -> SuffixIndex.openSnapshot(file, values, false));
+
+		Files.write(file, new byte[] {1, 2, 3});
+		assertThrows(IOException.class, () -> SuffixIndex.openSnapshot(file, values));
+	}
+
+	private static void flip(RandomAccessFile raf, long position) throws IOException
+	{
+		raf.seek(position);
+		int b = raf.read();
+		raf.seek(position);
+		raf.write(b ^ 0xFF);
+	}
+
+	private static Void writeAfter(CountDownLatch start, SuffixIndex<String> index, Path file) throws Exception
+	{
+		start.await();
+		index.writeSnapshot(file);
+		return null;
+	}
+
+	private static SuffixIndex<String> build(SuffixIndex<String> index)
+	{
+		for (String description : Corpus.DESCRIPTIONS)
+		{
+			index.insert(description, description);
+		}
+
+		return index;
+	}
+
+	private static void assertSameResults(SuffixIndex<String> expected, SuffixIndex<String> actual)
+	{
+		for (String query : QUERIES)
+		{
+			assertEquals(expected.search(query), actual.search(query), query);
+			assertEquals(expected.count(query), actual.count(query), query);
+			assertEquals(expected.matches(query), actual.matches(query), query);
+			assertEquals(expected.search(query, 3, 2), actual.search(query, 3, 2), query);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.helenusdb.index.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class AppendOnlyListTest
+{
+	@Test
+	void shouldAppendAcrossSegments()
+	{
+		AppendOnlyList<Integer> list = new AppendOnlyList<>();
+
+		for (int i = 0; i < 10000; i++)
+		{
+			list.add(i);
+		}
+
+		assertEquals(10000, list.size());
+
+		for (int i = 0; i < 10000; i++)
+		{
+			assertEquals(i, list.get(i));
+		}
+	}
+
+	@Test
+	void shouldAllowNull()
+	{
+		AppendOnlyList<String> list = new AppendOnlyList<>();
+		list.add(null);
+		list.add("one");
+
+		assertNull(list.get(0));
+		assertEquals(List.of("one"), list.subList(1, 2));
+	}
+
+	@Test
+	void shouldRejectOutOfRange()
+	{
+		AppendOnlyList<String> list = new AppendOnlyList<>();
+		assertTrue(list.isEmpty());
+		assertThrows(IndexOutOfBoundsException.class, () -> list.get(0));
+		list.add("zero");
+		assertThrows(IndexOutOfBoundsException.class, () -> list.get(1));
+		assertThrows(IndexOutOfBoundsException.class, () -> list.get(-1));
+		assertThrows(UnsupportedOperationException.class, () -> list.remove(0));
+	}
+
+	@Test
+	void shouldReadWhileWriting() throws InterruptedException
+	{
+		AppendOnlyList<Integer> list = new AppendOnlyList<>();
+		Thread writer = new Thread(() -> {
+			for (int i = 0; i < 200000; i++)
+			{
+				list.add(i);
+			}
+		});
+
+		writer.start();
+
+		while (writer.isAlive())
+		{
+			int size = list.size();
+
+			if (size > 0)
+			{
+				assertEquals(size - 1, list.get(size - 1));
+			}
+		}
+
+		writer.join();
+		assertEquals(200000, list.size());
+	}
+}
@@ -0,0 +1,35 @@
+package com.helenusdb.index.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ConcurrentBitSetTest
+{
+	@Test
+	void shouldSetAndGet()
+	{
+		ConcurrentBitSet bits = new ConcurrentBitSet();
+		assertTrue(bits.isEmpty());
+
+		assertTrue(bits.set(0));
+		assertTrue(bits.set(63));
+		assertTrue(bits.set(64));
+		assertTrue(bits.set(100000));
+		assertFalse(bits.set(64));
+
+		assertEquals(4, bits.cardinality());
+		assertTrue(bits.get(0));
+		assertTrue(bits.get(63));
+		assertTrue(bits.get(64));
+		assertTrue(bits.get(100000));
+		assertFalse(bits.get(1));
+		assertFalse(bits.get(65));
+		assertFalse(bits.get(200000));
+		assertFalse(bits.get(-1));
+		assertThrows(IndexOutOfBoundsException.class, () -> bits.set(-1));
+	}
+}
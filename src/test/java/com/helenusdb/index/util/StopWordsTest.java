@@ -71,6 +71,28 @@ class StopWordsTest {
 		assertNotContains(filteredTokens, "The", "the", "by");
 	}
 
+	@Test
+	void shouldKeepJoinedWords() {
+		StopWords stopWords = StopWords.minimal();
+
+		assertEquals(List.of("usb-c", "cable"), stopWords.filter("USB-C cable"));
+		assertEquals(List.of("don't", "miss"), stopWords.filter("Don't miss it"));
+		assertEquals(List.of("3", "5mm", "jack"), stopWords.filter("3.5mm jack"));
+		assertEquals(List.of("2-pack"), stopWords.filter("(2-pack) -- !"));
+		assertEquals(List.of("naïve", "café"), stopWords.filter("Naïve café."));
+	}
+
+	@Test
+	void shouldFilterWordsAddedAfterUse() {
+		StopWords stopWords = new StopWords(new String[] { "the" });
+		assertEquals(List.of("lazy", "dog"), stopWords.filter("the lazy dog"));
+
+		stopWords.add("lazy");
+		assertEquals(List.of("dog"), stopWords.filter("the lazy dog"));
+		stopWords.addAll(new String[] { "dog" });
+		assertTrue(stopWords.filter("the lazy dog").isEmpty());
+	}
+
 	@Test
 	void shouldHandleNull() {
 		assertReturnsEmpty(null);